@@ -0,0 +1,1058 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+
+/**
+ * <p>A single automaton compiled from the method and path matchers of a set
+ * of responses.</p>
+ *
+ * <p>The input to the automaton is the request method, followed by a
+ * separator symbol that cannot appear in any text, followed by the request
+ * path. Every response contributes one branch to a combined NFA, and the
+ * NFA is converted to a DFA lazily, one state at a time, as requests are
+ * matched. A single pass over the input therefore yields the set of
+ * responses whose method and path both match, in the order in which the
+ * responses were added.</p>
+ *
+ * <p>Only a subset of regular expressions can be compiled: literals,
+ * {@code .}, character classes, the predefined classes {@code \d},
+ * {@code \w}, and {@code \s}, groups, alternation, and the greedy and
+ * reluctant quantifiers. Patterns using anything else (backreferences,
+ * lookaround, boundaries, possessive quantifiers, or flags other than
+ * {@link Pattern#CASE_INSENSITIVE}) are rejected by
+ * {@link #compile(QMutableResponse)}, and the responses that use them must
+ * be matched by other means.</p>
+ */
+
+final class QAutomaton
+{
+  private static final int SEPARATOR = 0x10000;
+  private static final int CHAR_MAXIMUM = 0xffff;
+  private static final int DFA_STATES_MAXIMUM = 16384;
+  private static final int REPETITION_MAXIMUM = 256;
+  private static final int[] ANY = {0, CHAR_MAXIMUM};
+  private static final int[] DOT = complement(new int[]{
+    '\n', '\n',
+    '\r', '\r',
+    0x85, 0x85,
+    0x2028, 0x2029,
+  });
+  private static final int[] DIGIT = {'0', '9'};
+  private static final int[] WORD = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+  private static final int[] SPACE = {'\t', '\r', ' ', ' '};
+  private static final int[] NOT_SLASH = complement(new int[]{'/', '/'});
+
+  private final List<Rule> rules;
+  private final int[][] ranges;
+  private final int[] next;
+  private final int[][] epsilon;
+  private final int[] accept;
+  private final int start;
+  private volatile Cache cache;
+
+  private QAutomaton(
+    final List<Rule> inRules,
+    final NFABuilder builder,
+    final int inStart)
+  {
+    this.rules = List.copyOf(inRules);
+    this.ranges = builder.ranges.toArray(new int[0][]);
+    this.next = builder.next.stream().mapToInt(Integer::intValue).toArray();
+    this.epsilon = builder.epsilon.toArray(new int[0][]);
+    this.accept = builder.accept.stream().mapToInt(Integer::intValue).toArray();
+    this.start = inStart;
+    this.cache = new Cache(this);
+  }
+
+  /**
+   * A response along with its compiled method and path expressions.
+   *
+   * @param response The response
+   * @param method   The method expression
+   * @param path     The path expression
+   */
+
+  record Rule(
+    QMutableResponse response,
+    Node method,
+    Node path)
+  {
+    Rule
+    {
+      Objects.requireNonNull(response, "response");
+      Objects.requireNonNull(method, "method");
+      Objects.requireNonNull(path, "path");
+    }
+  }
+
+  /**
+   * Compile the matchers of the given response, if possible.
+   *
+   * @param response The response
+   *
+   * @return The compiled rule, or nothing if the matchers cannot be compiled
+   */
+
+  static Optional<Rule> compile(
+    final QMutableResponse response)
+  {
+    final var method = toNode(response.methodMatcher());
+    if (method == null) {
+      return Optional.empty();
+    }
+    final var path = toNode(response.pathMatcher());
+    if (path == null) {
+      return Optional.empty();
+    }
+    return Optional.of(new Rule(response, method, path));
+  }
+
+  /**
+   * Build an automaton that matches the given rules. The rules are expected
+   * to be in the order in which their responses were added.
+   *
+   * @param rules The rules
+   *
+   * @return An automaton
+   */
+
+  static QAutomaton build(
+    final List<Rule> rules)
+  {
+    final var builder = new NFABuilder();
+    final var starts = new int[rules.size()];
+
+    for (int index = 0; index < rules.size(); ++index) {
+      final var rule = rules.get(index);
+      final var acceptState = builder.acceptState(index);
+      final var pathStart = builder.build(rule.path, acceptState);
+      final var separator =
+        builder.charState(new int[]{SEPARATOR, SEPARATOR}, pathStart);
+      starts[index] = builder.build(rule.method, separator);
+    }
+
+    final var start = builder.splitState(starts);
+    return new QAutomaton(rules, builder, start);
+  }
+
+  /**
+   * @return The number of rules in the automaton
+   */
+
+  int size()
+  {
+    return this.rules.size();
+  }
+
+  /**
+   * @param index The rule index
+   *
+   * @return The rule at the given index
+   */
+
+  Rule rule(
+    final int index)
+  {
+    return this.rules.get(index);
+  }
+
+  /**
+   * Find the rules that match the given method and path.
+   *
+   * @param method The method
+   * @param path   The path
+   *
+   * @return The indices of the matching rules in ascending order, or
+   * {@code null} if the input cannot be matched by the automaton
+   */
+
+  int[] matching(
+    final String method,
+    final String path)
+  {
+    if (hasSurrogates(method) || hasSurrogates(path)) {
+      return null;
+    }
+
+    var current = this.cache;
+    if (current.states.size() > DFA_STATES_MAXIMUM) {
+      current = new Cache(this);
+      this.cache = current;
+    }
+
+    var state = current.start;
+    for (int index = 0; index < method.length(); ++index) {
+      state = current.step(state, method.charAt(index));
+    }
+    state = current.step(state, SEPARATOR);
+    for (int index = 0; index < path.length(); ++index) {
+      state = current.step(state, path.charAt(index));
+    }
+    return state.accepts;
+  }
+
+  private static boolean hasSurrogates(
+    final String text)
+  {
+    for (int index = 0; index < text.length(); ++index) {
+      if (Character.isSurrogate(text.charAt(index))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Node toNode(
+    final QMatcher matcher)
+  {
+    return switch (matcher) {
+      case final QMatcher.Exact exact -> {
+        yield literal(exact.value(), exact.ignoreCase());
+      }
+      case final QMatcher.Prefix prefix -> {
+        yield new Concat(List.of(
+          literal(prefix.prefix(), false),
+          new Repeat(new Chars(ANY), 0, -1)
+        ));
+      }
+      case final QMatcher.Glob glob -> {
+        yield globNode(glob.glob());
+      }
+      case final QMatcher.Regex regex -> {
+        final var flags = regex.pattern().flags();
+        if ((flags & ~Pattern.CASE_INSENSITIVE) != 0) {
+          yield null;
+        }
+        yield new Parser(regex.pattern().pattern(), flags != 0).parse();
+      }
+    };
+  }
+
+  private static Node literal(
+    final String text,
+    final boolean ignoreCase)
+  {
+    final var nodes = new ArrayList<Node>(text.length());
+    for (int index = 0; index < text.length(); ++index) {
+      nodes.add(character(text.charAt(index), ignoreCase));
+    }
+    return new Concat(nodes);
+  }
+
+  private static Node character(
+    final char c,
+    final boolean ignoreCase)
+  {
+    final var set = new int[]{c, c};
+    return new Chars(ignoreCase ? fold(set) : set);
+  }
+
+  private static Node globNode(
+    final String glob)
+  {
+    final var nodes = new ArrayList<Node>(glob.length());
+    int index = 0;
+    while (index < glob.length()) {
+      final var c = glob.charAt(index);
+      switch (c) {
+        case '*' -> {
+          if (index + 1 < glob.length() && glob.charAt(index + 1) == '*') {
+            nodes.add(new Repeat(new Chars(ANY), 0, -1));
+            index += 2;
+          } else {
+            nodes.add(new Repeat(new Chars(NOT_SLASH), 0, -1));
+            ++index;
+          }
+        }
+        case '?' -> {
+          nodes.add(new Chars(NOT_SLASH));
+          ++index;
+        }
+        default -> {
+          if (c == '\\' && index + 1 < glob.length()) {
+            nodes.add(character(glob.charAt(index + 1), false));
+            index += 2;
+          } else {
+            nodes.add(character(c, false));
+            ++index;
+          }
+        }
+      }
+    }
+    return new Concat(nodes);
+  }
+
+  /*
+   * Character sets are represented as sorted, non-overlapping, inclusive
+   * ranges: {@code [lo0, hi0, lo1, hi1, ...]}.
+   */
+
+  private static int[] union(
+    final int[] a,
+    final int[] b)
+  {
+    final var pairs = new int[(a.length + b.length) / 2][];
+    int count = 0;
+    for (int index = 0; index < a.length; index += 2) {
+      pairs[count++] = new int[]{a[index], a[index + 1]};
+    }
+    for (int index = 0; index < b.length; index += 2) {
+      pairs[count++] = new int[]{b[index], b[index + 1]};
+    }
+    Arrays.sort(pairs, (x, y) -> Integer.compare(x[0], y[0]));
+
+    final var result = new int[pairs.length * 2];
+    int size = 0;
+    for (final var pair : pairs) {
+      if (size > 0 && pair[0] <= result[size - 1] + 1) {
+        result[size - 1] = Math.max(result[size - 1], pair[1]);
+      } else {
+        result[size++] = pair[0];
+        result[size++] = pair[1];
+      }
+    }
+    return Arrays.copyOf(result, size);
+  }
+
+  private static int[] complement(
+    final int[] set)
+  {
+    final var result = new int[set.length + 2];
+    int size = 0;
+    int low = 0;
+    for (int index = 0; index < set.length; index += 2) {
+      if (set[index] > low) {
+        result[size++] = low;
+        result[size++] = set[index] - 1;
+      }
+      low = set[index + 1] + 1;
+    }
+    if (low <= CHAR_MAXIMUM) {
+      result[size++] = low;
+      result[size++] = CHAR_MAXIMUM;
+    }
+    return Arrays.copyOf(result, size);
+  }
+
+  /**
+   * Add the other case of every ASCII letter in the set. This is the
+   * folding performed by {@link Pattern#CASE_INSENSITIVE} without
+   * {@link Pattern#UNICODE_CASE}.
+   */
+
+  private static int[] fold(
+    final int[] set)
+  {
+    var result = set;
+    for (int index = 0; index < set.length; index += 2) {
+      result = union(result, shifted(set[index], set[index + 1], 'a', 'z', 'A' - 'a'));
+      result = union(result, shifted(set[index], set[index + 1], 'A', 'Z', 'a' - 'A'));
+    }
+    return result;
+  }
+
+  private static int[] shifted(
+    final int low,
+    final int high,
+    final int rangeLow,
+    final int rangeHigh,
+    final int offset)
+  {
+    final var l = Math.max(low, rangeLow);
+    final var h = Math.min(high, rangeHigh);
+    if (l > h) {
+      return new int[0];
+    }
+    return new int[]{l + offset, h + offset};
+  }
+
+  private static boolean contains(
+    final int[] set,
+    final int symbol)
+  {
+    for (int index = 0; index < set.length; index += 2) {
+      if (symbol < set[index]) {
+        return false;
+      }
+      if (symbol <= set[index + 1]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A regular expression syntax tree.
+   */
+
+  sealed interface Node
+  {
+    // No extra methods
+  }
+
+  private record Chars(int[] set)
+    implements Node
+  {
+
+  }
+
+  private record Concat(List<Node> nodes)
+    implements Node
+  {
+
+  }
+
+  private record Alternation(List<Node> nodes)
+    implements Node
+  {
+
+  }
+
+  private record Repeat(
+    Node node,
+    int minimum,
+    int maximum)
+    implements Node
+  {
+
+  }
+
+  /**
+   * A parser for the supported subset of {@link Pattern} syntax. The parser
+   * returns {@code null} for any pattern that uses unsupported syntax.
+   */
+
+  private static final class Parser
+  {
+    private final String text;
+    private final boolean ignoreCase;
+    private int position;
+    private boolean unsupported;
+
+    Parser(
+      final String inText,
+      final boolean inIgnoreCase)
+    {
+      this.text = inText;
+      this.ignoreCase = inIgnoreCase;
+    }
+
+    Node parse()
+    {
+      if (hasSurrogates(this.text)) {
+        return null;
+      }
+      if (this.text.startsWith("^")) {
+        ++this.position;
+      }
+
+      final var node = this.alternation();
+      if (this.unsupported || this.position != this.text.length()) {
+        return null;
+      }
+      return node;
+    }
+
+    private boolean atEnd()
+    {
+      return this.position >= this.text.length();
+    }
+
+    private char peek()
+    {
+      return this.text.charAt(this.position);
+    }
+
+    private Node fail()
+    {
+      this.unsupported = true;
+      this.position = this.text.length();
+      return new Concat(List.of());
+    }
+
+    private Node alternation()
+    {
+      final var nodes = new ArrayList<Node>();
+      nodes.add(this.concatenation());
+      while (!this.atEnd() && this.peek() == '|') {
+        ++this.position;
+        nodes.add(this.concatenation());
+      }
+      return nodes.size() == 1 ? nodes.get(0) : new Alternation(nodes);
+    }
+
+    private Node concatenation()
+    {
+      final var nodes = new ArrayList<Node>();
+      while (!this.atEnd() && this.peek() != '|' && this.peek() != ')') {
+        nodes.add(this.repetition());
+      }
+      return new Concat(nodes);
+    }
+
+    private Node repetition()
+    {
+      final var quoted = this.text.startsWith("\\Q", this.position);
+      final var atom = this.atom();
+      if (this.atEnd()) {
+        return atom;
+      }
+
+      final int minimum;
+      final int maximum;
+      switch (this.peek()) {
+        case '*' -> {
+          ++this.position;
+          minimum = 0;
+          maximum = -1;
+        }
+        case '+' -> {
+          ++this.position;
+          minimum = 1;
+          maximum = -1;
+        }
+        case '?' -> {
+          ++this.position;
+          minimum = 0;
+          maximum = 1;
+        }
+        case '{' -> {
+          ++this.position;
+          minimum = this.number();
+          if (!this.atEnd() && this.peek() == ',') {
+            ++this.position;
+            if (!this.atEnd() && this.peek() == '}') {
+              maximum = -1;
+            } else {
+              maximum = this.number();
+            }
+          } else {
+            maximum = minimum;
+          }
+          if (this.atEnd() || this.peek() != '}') {
+            return this.fail();
+          }
+          ++this.position;
+          if (maximum != -1 && maximum < minimum) {
+            return this.fail();
+          }
+          if (Math.max(minimum, maximum) > REPETITION_MAXIMUM) {
+            return this.fail();
+          }
+        }
+        default -> {
+          return atom;
+        }
+      }
+
+      if (!this.atEnd()) {
+        if (this.peek() == '?') {
+          ++this.position;
+        } else if (this.peek() == '+') {
+          return this.fail();
+        }
+      }
+
+      /*
+       * A quantifier following quoted text applies only to the last
+       * quoted character.
+       */
+
+      if (quoted) {
+        final var nodes = ((Concat) atom).nodes;
+        if (nodes.isEmpty()) {
+          return this.fail();
+        }
+        final var init = new ArrayList<>(nodes.subList(0, nodes.size() - 1));
+        init.add(new Repeat(nodes.get(nodes.size() - 1), minimum, maximum));
+        return new Concat(init);
+      }
+      return new Repeat(atom, minimum, maximum);
+    }
+
+    private int number()
+    {
+      final var begin = this.position;
+      while (!this.atEnd() && this.peek() >= '0' && this.peek() <= '9') {
+        ++this.position;
+      }
+      if (begin == this.position || this.position - begin > 4) {
+        this.fail();
+        return 0;
+      }
+      return Integer.parseInt(this.text, begin, this.position, 10);
+    }
+
+    private Node atom()
+    {
+      final var c = this.peek();
+      switch (c) {
+        case '(' -> {
+          ++this.position;
+          if (this.text.startsWith("?:", this.position)) {
+            this.position += 2;
+          } else if (!this.atEnd() && this.peek() == '?') {
+            return this.fail();
+          }
+          final var node = this.alternation();
+          if (this.atEnd() || this.peek() != ')') {
+            return this.fail();
+          }
+          ++this.position;
+          return node;
+        }
+        case '[' -> {
+          ++this.position;
+          return this.characterClass();
+        }
+        case '.' -> {
+          ++this.position;
+          return new Chars(DOT);
+        }
+        case '\\' -> {
+          ++this.position;
+          return this.escape();
+        }
+        case '$' -> {
+          ++this.position;
+          if (!this.atEnd()) {
+            return this.fail();
+          }
+          return new Concat(List.of());
+        }
+        case '^', '*', '+', '?', '{' -> {
+          return this.fail();
+        }
+        default -> {
+          ++this.position;
+          return character(c, this.ignoreCase);
+        }
+      }
+    }
+
+    private Node escape()
+    {
+      if (this.atEnd()) {
+        return this.fail();
+      }
+
+      final var c = this.peek();
+      if (c == 'Q') {
+        ++this.position;
+        var end = this.text.indexOf("\\E", this.position);
+        if (end == -1) {
+          end = this.text.length();
+        }
+        final var quoted = this.text.substring(this.position, end);
+        this.position = Math.min(end + 2, this.text.length());
+        return literal(quoted, this.ignoreCase);
+      }
+
+      final var set = this.escapeSet();
+      if (set == null) {
+        return this.fail();
+      }
+      return new Chars(set);
+    }
+
+    /**
+     * Parse an escape sequence that denotes a set of characters. The
+     * position is expected to be just after the backslash.
+     */
+
+    private int[] escapeSet()
+    {
+      final var c = this.peek();
+      ++this.position;
+
+      final int[] set = switch (c) {
+        case 'd' -> DIGIT;
+        case 'D' -> complement(DIGIT);
+        case 'w' -> WORD;
+        case 'W' -> complement(WORD);
+        case 's' -> SPACE;
+        case 'S' -> complement(SPACE);
+        case 't' -> new int[]{'\t', '\t'};
+        case 'n' -> new int[]{'\n', '\n'};
+        case 'r' -> new int[]{'\r', '\r'};
+        case 'f' -> new int[]{'\f', '\f'};
+        case 'a' -> new int[]{'\u0007', '\u0007'};
+        case 'e' -> new int[]{'\u001b', '\u001b'};
+        default -> {
+          if (Character.isLetterOrDigit(c)) {
+            yield null;
+          }
+          yield this.ignoreCase ? fold(new int[]{c, c}) : new int[]{c, c};
+        }
+      };
+      return set;
+    }
+
+    private Node characterClass()
+    {
+      var negate = false;
+      if (!this.atEnd() && this.peek() == '^') {
+        negate = true;
+        ++this.position;
+      }
+      if (this.atEnd() || this.peek() == ']') {
+        return this.fail();
+      }
+
+      var set = new int[0];
+      while (true) {
+        if (this.atEnd()) {
+          return this.fail();
+        }
+
+        final var c = this.peek();
+        if (c == ']') {
+          ++this.position;
+          break;
+        }
+        if (c == '[' || this.text.startsWith("&&", this.position)) {
+          return this.fail();
+        }
+
+        final int[] item;
+        final int low;
+        if (c == '\\') {
+          ++this.position;
+          if (this.atEnd()) {
+            return this.fail();
+          }
+          item = this.escapeSet();
+          if (item == null) {
+            return this.fail();
+          }
+          low = (item.length == 2 && item[0] == item[1]) ? item[0] : -1;
+        } else {
+          ++this.position;
+          item = new int[]{c, c};
+          low = c;
+        }
+
+        final var isRange =
+          low != -1
+          && this.position + 1 < this.text.length()
+          && this.peek() == '-'
+          && this.text.charAt(this.position + 1) != ']';
+
+        if (isRange) {
+          ++this.position;
+          final var h = this.peek();
+          final int high;
+          if (h == '\\') {
+            ++this.position;
+            if (this.atEnd()) {
+              return this.fail();
+            }
+            final var escaped = this.peek();
+            ++this.position;
+            if (Character.isLetterOrDigit(escaped)) {
+              return this.fail();
+            }
+            high = escaped;
+          } else if (h == '[') {
+            return this.fail();
+          } else {
+            ++this.position;
+            high = h;
+          }
+          if (high < low) {
+            return this.fail();
+          }
+          set = union(set, new int[]{low, high});
+        } else {
+          set = union(set, item);
+        }
+      }
+
+      if (this.ignoreCase) {
+        set = fold(set);
+      }
+      return new Chars(negate ? complement(set) : set);
+    }
+  }
+
+  /**
+   * A builder for the combined NFA. Each state is either a character state
+   * (a set of symbols and a successor), an accepting state, or a state with
+   * only epsilon transitions.
+   */
+
+  private static final class NFABuilder
+  {
+    private final ArrayList<int[]> ranges = new ArrayList<>();
+    private final ArrayList<Integer> next = new ArrayList<>();
+    private final ArrayList<int[]> epsilon = new ArrayList<>();
+    private final ArrayList<Integer> accept = new ArrayList<>();
+
+    NFABuilder()
+    {
+
+    }
+
+    private int state(
+      final int[] set,
+      final int successor,
+      final int[] epsilons,
+      final int rule)
+    {
+      this.ranges.add(set);
+      this.next.add(Integer.valueOf(successor));
+      this.epsilon.add(epsilons);
+      this.accept.add(Integer.valueOf(rule));
+      return this.ranges.size() - 1;
+    }
+
+    int acceptState(
+      final int rule)
+    {
+      return this.state(null, -1, new int[0], rule);
+    }
+
+    int charState(
+      final int[] set,
+      final int successor)
+    {
+      return this.state(set, successor, new int[0], -1);
+    }
+
+    int splitState(
+      final int[] targets)
+    {
+      return this.state(null, -1, targets, -1);
+    }
+
+    /**
+     * Build the given node such that completing it leads to the given
+     * state.
+     *
+     * @return The start state of the node
+     */
+
+    int build(
+      final Node node,
+      final int successor)
+    {
+      return switch (node) {
+        case final Chars chars -> this.charState(chars.set, successor);
+        case final Concat concat -> {
+          var current = successor;
+          for (int index = concat.nodes.size() - 1; index >= 0; --index) {
+            current = this.build(concat.nodes.get(index), current);
+          }
+          yield current;
+        }
+        case final Alternation alternation -> {
+          final var targets = new int[alternation.nodes.size()];
+          for (int index = 0; index < targets.length; ++index) {
+            targets[index] = this.build(alternation.nodes.get(index), successor);
+          }
+          yield this.splitState(targets);
+        }
+        case final Repeat repeat -> this.buildRepeat(repeat, successor);
+      };
+    }
+
+    private int buildRepeat(
+      final Repeat repeat,
+      final int successor)
+    {
+      var current = successor;
+      if (repeat.maximum == -1) {
+        final var loop = this.splitState(new int[0]);
+        final var body = this.build(repeat.node, loop);
+        this.epsilon.set(loop, new int[]{body, successor});
+        current = loop;
+      } else {
+        for (int index = repeat.minimum; index < repeat.maximum; ++index) {
+          final var body = this.build(repeat.node, current);
+          current = this.splitState(new int[]{body, successor});
+        }
+      }
+      for (int index = 0; index < repeat.minimum; ++index) {
+        current = this.build(repeat.node, current);
+      }
+      return current;
+    }
+  }
+
+  private record StateKey(int[] states)
+  {
+    @Override
+    public boolean equals(
+      final Object other)
+    {
+      return other instanceof final StateKey key
+        && Arrays.equals(this.states, key.states);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return Arrays.hashCode(this.states);
+    }
+
+    @Override
+    public String toString()
+    {
+      return Arrays.toString(this.states);
+    }
+  }
+
+  private static final class DFAState
+  {
+    private final int[] states;
+    private final int[] accepts;
+    private final AtomicReferenceArray<DFAState> ascii;
+    private final ConcurrentHashMap<Integer, DFAState> other;
+
+    DFAState(
+      final int[] inStates,
+      final int[] inAccepts)
+    {
+      this.states = inStates;
+      this.accepts = inAccepts;
+      this.ascii = new AtomicReferenceArray<>(128);
+      this.other = new ConcurrentHashMap<>();
+    }
+  }
+
+  /**
+   * The lazily constructed DFA states. The cache is discarded and rebuilt
+   * if it grows too large.
+   */
+
+  private static final class Cache
+  {
+    private final QAutomaton automaton;
+    private final ConcurrentHashMap<StateKey, DFAState> states;
+    private final DFAState start;
+
+    Cache(
+      final QAutomaton inAutomaton)
+    {
+      this.automaton = inAutomaton;
+      this.states = new ConcurrentHashMap<>();
+      this.start = this.closure(new int[]{inAutomaton.start});
+    }
+
+    DFAState step(
+      final DFAState state,
+      final int symbol)
+    {
+      if (state.states.length == 0) {
+        return state;
+      }
+
+      if (symbol < 128) {
+        final var existing = state.ascii.get(symbol);
+        if (existing != null) {
+          return existing;
+        }
+        final var result = this.transition(state, symbol);
+        state.ascii.set(symbol, result);
+        return result;
+      }
+
+      final var key = Integer.valueOf(symbol);
+      final var existing = state.other.get(key);
+      if (existing != null) {
+        return existing;
+      }
+      final var result = this.transition(state, symbol);
+      state.other.put(key, result);
+      return result;
+    }
+
+    private DFAState transition(
+      final DFAState state,
+      final int symbol)
+    {
+      final var targets = new int[state.states.length];
+      int count = 0;
+      for (final var nfaState : state.states) {
+        final var set = this.automaton.ranges[nfaState];
+        if (set != null && contains(set, symbol)) {
+          targets[count++] = this.automaton.next[nfaState];
+        }
+      }
+      return this.closure(Arrays.copyOf(targets, count));
+    }
+
+    private DFAState closure(
+      final int[] seeds)
+    {
+      final var visited = new BitSet(this.automaton.ranges.length);
+      final var important = new BitSet(this.automaton.ranges.length);
+      final var stack = new ArrayList<Integer>();
+
+      for (final var seed : seeds) {
+        stack.add(Integer.valueOf(seed));
+      }
+
+      while (!stack.isEmpty()) {
+        final var nfaState = stack.remove(stack.size() - 1).intValue();
+        if (visited.get(nfaState)) {
+          continue;
+        }
+        visited.set(nfaState);
+
+        if (this.automaton.ranges[nfaState] != null
+            || this.automaton.accept[nfaState] != -1) {
+          important.set(nfaState);
+        }
+        for (final var target : this.automaton.epsilon[nfaState]) {
+          if (!visited.get(target)) {
+            stack.add(Integer.valueOf(target));
+          }
+        }
+      }
+
+      final var states = important.stream().toArray();
+      final var key = new StateKey(states);
+      final var existing = this.states.get(key);
+      if (existing != null) {
+        return existing;
+      }
+
+      final var accepts =
+        Arrays.stream(states)
+          .map(s -> this.automaton.accept[s])
+          .filter(r -> r != -1)
+          .sorted()
+          .toArray();
+
+      final var created = new DFAState(states, accepts);
+      final var raced = this.states.putIfAbsent(key, created);
+      return raced != null ? raced : created;
+    }
+  }
+}
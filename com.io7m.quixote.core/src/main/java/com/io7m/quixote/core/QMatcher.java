@@ -0,0 +1,291 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * A matcher for request methods or paths.
+ */
+
+sealed interface QMatcher
+{
+  /**
+   * The characters that have a special meaning in regular expressions.
+   */
+
+  String REGEX_METACHARACTERS = "\\[](){}.*+?^$|";
+
+  /**
+   * @param text The method or path
+   *
+   * @return {@code true} if the text is matched
+   */
+
+  boolean matches(String text);
+
+  /**
+   * Create a matcher for a path pattern, avoiding the regular expression
+   * engine if the pattern is equivalent to an exact match.
+   *
+   * @param pattern The pattern
+   *
+   * @return A matcher
+   */
+
+  static QMatcher ofPathPattern(
+    final Pattern pattern)
+  {
+    if (pattern.flags() == 0) {
+      final var text = pattern.pattern();
+      final var literal = text.startsWith("^") ? text.substring(1) : text;
+      if (isLiteral(literal)) {
+        return new Exact(literal, false);
+      }
+    }
+    return new Regex(pattern);
+  }
+
+  /**
+   * Create a matcher for a method pattern, avoiding the regular expression
+   * engine if the pattern is a plain method name.
+   *
+   * @param pattern The pattern
+   *
+   * @return A matcher
+   */
+
+  static QMatcher ofMethodPattern(
+    final Pattern pattern)
+  {
+    final var flags = pattern.flags();
+    if ((flags & ~Pattern.CASE_INSENSITIVE) == 0) {
+      final var text = pattern.pattern();
+      if (isMethodName(text)) {
+        return new Exact(text, flags != 0);
+      }
+    }
+    return new Regex(pattern);
+  }
+
+  private static boolean isLiteral(
+    final String text)
+  {
+    for (int index = 0; index < text.length(); ++index) {
+      if (REGEX_METACHARACTERS.indexOf(text.charAt(index)) >= 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isMethodName(
+    final String text)
+  {
+    if (text.isEmpty()) {
+      return false;
+    }
+    for (int index = 0; index < text.length(); ++index) {
+      final var c = text.charAt(index);
+      if (!((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z'))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A regular expression matcher.
+   *
+   * @param pattern The pattern
+   */
+
+  record Regex(Pattern pattern)
+    implements QMatcher
+  {
+    public Regex
+    {
+      Objects.requireNonNull(pattern, "pattern");
+    }
+
+    @Override
+    public boolean matches(
+      final String text)
+    {
+      return this.pattern.matcher(text).matches();
+    }
+  }
+
+  /**
+   * An exact matcher.
+   *
+   * @param value      The expected value
+   * @param ignoreCase {@code true} if case should be ignored
+   */
+
+  record Exact(
+    String value,
+    boolean ignoreCase)
+    implements QMatcher
+  {
+    public Exact
+    {
+      Objects.requireNonNull(value, "value");
+    }
+
+    @Override
+    public boolean matches(
+      final String text)
+    {
+      if (this.ignoreCase) {
+        return this.value.equalsIgnoreCase(text);
+      }
+      return this.value.equals(text);
+    }
+  }
+
+  /**
+   * A prefix matcher.
+   *
+   * @param prefix The prefix
+   */
+
+  record Prefix(String prefix)
+    implements QMatcher
+  {
+    public Prefix
+    {
+      Objects.requireNonNull(prefix, "prefix");
+    }
+
+    @Override
+    public boolean matches(
+      final String text)
+    {
+      return text.startsWith(this.prefix);
+    }
+  }
+
+  /**
+   * A glob matcher.
+   *
+   * @param glob The glob
+   *
+   * @see QWebPathMatchKind#GLOB
+   */
+
+  record Glob(String glob)
+    implements QMatcher
+  {
+    public Glob
+    {
+      Objects.requireNonNull(glob, "glob");
+    }
+
+    /**
+     * @return The literal text that any matching path must begin with
+     */
+
+    String literalPrefix()
+    {
+      final var builder = new StringBuilder(this.glob.length());
+      for (int index = 0; index < this.glob.length(); ++index) {
+        final var c = this.glob.charAt(index);
+        if (c == '*' || c == '?') {
+          break;
+        }
+        if (c == '\\') {
+          if (index + 1 >= this.glob.length()) {
+            break;
+          }
+          ++index;
+          builder.append(this.glob.charAt(index));
+        } else {
+          builder.append(c);
+        }
+      }
+      return builder.toString();
+    }
+
+    @Override
+    public boolean matches(
+      final String text)
+    {
+      /*
+       * Track the set of text positions that the glob consumed so far
+       * can have reached, one glob token at a time.
+       */
+
+      final var size = text.length();
+      var current = new boolean[size + 1];
+      var next = new boolean[size + 1];
+      current[0] = true;
+
+      int index = 0;
+      while (index < this.glob.length()) {
+        Arrays.fill(next, false);
+
+        final var c = this.glob.charAt(index);
+        switch (c) {
+          case '*' -> {
+            final var crossSegments =
+              index + 1 < this.glob.length()
+              && this.glob.charAt(index + 1) == '*';
+            index += crossSegments ? 2 : 1;
+
+            var reachable = false;
+            for (int position = 0; position <= size; ++position) {
+              reachable = current[position]
+                || (reachable
+                    && (crossSegments || text.charAt(position - 1) != '/'));
+              next[position] = reachable;
+            }
+          }
+          case '?' -> {
+            ++index;
+            for (int position = 0; position < size; ++position) {
+              next[position + 1] =
+                current[position] && text.charAt(position) != '/';
+            }
+          }
+          default -> {
+            final char literal;
+            if (c == '\\' && index + 1 < this.glob.length()) {
+              literal = this.glob.charAt(index + 1);
+              index += 2;
+            } else {
+              literal = c;
+              ++index;
+            }
+            for (int position = 0; position < size; ++position) {
+              next[position + 1] =
+                current[position] && text.charAt(position) == literal;
+            }
+          }
+        }
+
+        final var swap = current;
+        current = next;
+        next = swap;
+      }
+      return current[size];
+    }
+  }
+}
@@ -0,0 +1,647 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import static java.util.Locale.ROOT;
+import static java.util.regex.Pattern.CASE_INSENSITIVE;
+
+/**
+ * A mutable response shared by all of the web server implementations.
+ */
+
+final class QMutableResponse implements QWebResponseType
+{
+  /**
+   * The value of the hit counter for responses that can be returned an
+   * unlimited number of times.
+   */
+
+  static final long UNLIMITED = -1L;
+
+  /**
+   * The value of the bandwidth for responses that are written at the
+   * server's default bandwidth.
+   */
+
+  static final long SERVER_BANDWIDTH = -1L;
+
+  private final QResponseStore store;
+  private final long sequence;
+  private final HashMap<String, String> responseHeaders;
+  private int responseCode;
+  private volatile QMatcher pathMatcher;
+  private volatile String pathText;
+  private volatile QMatcher methodMatcher;
+  private volatile String methodText;
+  private final AtomicLong remaining;
+  private volatile boolean repeatable;
+  private InputStream responseData;
+  private byte[] responseBytes;
+  private Path responseFile;
+  private Path responseDirectory;
+  private volatile QWebWireResponse wire;
+  private volatile QWebWireResponse gzipWire;
+  private int gzipLevel;
+  private String contentType;
+  private long contentLength;
+  private volatile long bandwidth;
+  private volatile QWebDelay delay;
+
+  QMutableResponse(
+    final QResponseStore inStore,
+    final long inSequence)
+  {
+    this.store =
+      Objects.requireNonNull(inStore, "inStore");
+    this.sequence =
+      inSequence;
+    this.responseHeaders =
+      new HashMap<>();
+    this.remaining =
+      new AtomicLong(1L);
+    this.methodMatcher =
+      new QMatcher.Regex(Pattern.compile(".*", CASE_INSENSITIVE));
+    this.methodText =
+      ".*";
+    this.pathMatcher =
+      new QMatcher.Prefix("/");
+    this.pathText =
+      "^/.*";
+
+    this.contentType = "application/octet-stream";
+    this.responseCode = 200;
+    this.contentLength = -1L;
+    this.bandwidth = SERVER_BANDWIDTH;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[Response [Method %s] [Path %s]]",
+      this.methodText,
+      this.pathText
+    );
+  }
+
+  @Override
+  public QWebResponseType forMethod(
+    final String pattern)
+  {
+    Objects.requireNonNull(pattern, "pattern");
+    return this.forMethodPattern(Pattern.compile(pattern, CASE_INSENSITIVE));
+  }
+
+  QWebResponseType forMethodPattern(
+    final Pattern pattern)
+  {
+    Objects.requireNonNull(pattern, "pattern");
+    this.methodText = pattern.pattern();
+    this.methodMatcher = QMatcher.ofMethodPattern(pattern);
+    this.store.reindex(this);
+    return this;
+  }
+
+  @Override
+  public QWebResponseType forPath(
+    final String pattern)
+  {
+    Objects.requireNonNull(pattern, "pattern");
+    return this.forPathPattern(Pattern.compile("^" + pattern));
+  }
+
+  QWebResponseType forPathPattern(
+    final Pattern pattern)
+  {
+    Objects.requireNonNull(pattern, "pattern");
+    return this.setPath(QMatcher.ofPathPattern(pattern), pattern.pattern());
+  }
+
+  @Override
+  public QWebResponseType forPathExact(
+    final String path)
+  {
+    Objects.requireNonNull(path, "path");
+    return this.setPath(new QMatcher.Exact(path, false), "exact:" + path);
+  }
+
+  @Override
+  public QWebResponseType forPathPrefix(
+    final String prefix)
+  {
+    Objects.requireNonNull(prefix, "prefix");
+    return this.setPath(new QMatcher.Prefix(prefix), "prefix:" + prefix);
+  }
+
+  @Override
+  public QWebResponseType forPathGlob(
+    final String glob)
+  {
+    Objects.requireNonNull(glob, "glob");
+    return this.setPath(new QMatcher.Glob(glob), "glob:" + glob);
+  }
+
+  private QWebResponseType setPath(
+    final QMatcher matcher,
+    final String text)
+  {
+    this.pathText = text;
+    this.pathMatcher = matcher;
+    this.store.reindex(this);
+    return this;
+  }
+
+  @Override
+  public synchronized QWebResponseType withStatus(
+    final int code)
+  {
+    this.responseCode = code;
+    this.invalidate();
+    return this;
+  }
+
+  @Override
+  public synchronized QWebResponseType withHeader(
+    final String name,
+    final String value)
+  {
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(value, "value");
+
+    this.responseHeaders.put(name.toLowerCase(ROOT), value);
+    this.invalidate();
+    return this;
+  }
+
+  @Override
+  public synchronized QWebResponseType withData(
+    final InputStream data)
+  {
+    this.responseData = Objects.requireNonNull(data, "data");
+    this.responseBytes = null;
+    this.responseFile = null;
+    this.responseDirectory = null;
+    this.invalidate();
+    return this;
+  }
+
+  @Override
+  public synchronized QWebResponseType withFile(
+    final Path file)
+  {
+    this.responseFile = Objects.requireNonNull(file, "file");
+    this.responseDirectory = null;
+    this.responseData = null;
+    this.responseBytes = null;
+    this.invalidate();
+    return this;
+  }
+
+  @Override
+  public synchronized QWebResponseType withDirectory(
+    final Path directory)
+  {
+    this.responseDirectory =
+      Objects.requireNonNull(directory, "directory")
+        .toAbsolutePath()
+        .normalize();
+    this.responseFile = null;
+    this.responseData = null;
+    this.responseBytes = null;
+    this.invalidate();
+    return this;
+  }
+
+  @Override
+  public QWebResponseType withFixedData(
+    final byte[] data)
+  {
+    Objects.requireNonNull(data, "data");
+
+    synchronized (this) {
+      this.responseData = null;
+      this.responseBytes = data;
+      this.responseFile = null;
+      this.responseDirectory = null;
+      this.invalidate();
+    }
+    return this.withContentLength(Integer.toUnsignedLong(data.length));
+  }
+
+  @Override
+  public QWebResponseType times(
+    final long count)
+  {
+    if (count < 1L) {
+      throw new IllegalArgumentException(
+        "Count must be positive: %d".formatted(Long.valueOf(count))
+      );
+    }
+    this.repeatable = count > 1L;
+    this.remaining.set(count);
+    return this;
+  }
+
+  @Override
+  public QWebResponseType always()
+  {
+    this.repeatable = true;
+    this.remaining.set(UNLIMITED);
+    return this;
+  }
+
+  /**
+   * Attempt to consume one hit from this response.
+   *
+   * @return The number of hits that were remaining before this one was
+   * consumed, {@link #UNLIMITED}, or {@code 0} if the response is exhausted
+   */
+
+  long consume()
+  {
+    while (true) {
+      final var current = this.remaining.get();
+      if (current == UNLIMITED || current <= 0L) {
+        return current == UNLIMITED ? UNLIMITED : 0L;
+      }
+      if (this.remaining.compareAndSet(current, current - 1L)) {
+        return current;
+      }
+    }
+  }
+
+  /**
+   * @return The number of hits remaining, or {@link #UNLIMITED}
+   */
+
+  long remaining()
+  {
+    return this.remaining.get();
+  }
+
+  @Override
+  public synchronized QWebResponseType withContentType(
+    final String type)
+  {
+    this.contentType = Objects.requireNonNull(type, "type");
+    this.invalidate();
+    return this;
+  }
+
+  @Override
+  public synchronized QWebResponseType withContentLength(
+    final long size)
+  {
+    this.contentLength = size;
+    this.invalidate();
+    return this;
+  }
+
+  @Override
+  public QWebResponseType withBandwidth(
+    final long bytesPerSecond)
+  {
+    this.bandwidth = QWebTokenBucket.checkBandwidth(bytesPerSecond);
+    return this;
+  }
+
+  /**
+   * @return The bandwidth in bytes per second, {@code 0} if the bandwidth
+   * is unlimited, or {@link #SERVER_BANDWIDTH}
+   */
+
+  long bandwidth()
+  {
+    return this.bandwidth;
+  }
+
+  @Override
+  public QWebResponseType withDelay(
+    final QWebDelay newDelay)
+  {
+    this.delay = Objects.requireNonNull(newDelay, "delay");
+    return this;
+  }
+
+  /**
+   * @return The delay to apply before this response is written
+   */
+
+  Duration sampleDelay()
+  {
+    final var current = this.delay;
+    if (current == null) {
+      return Duration.ZERO;
+    }
+    return current.sample(ThreadLocalRandom.current());
+  }
+
+  boolean matches(
+    final String methodText,
+    final String pathText)
+  {
+    return this.methodMatcher.matches(methodText)
+      && this.pathMatcher.matches(pathText);
+  }
+
+  long sequence()
+  {
+    return this.sequence;
+  }
+
+  QMatcher methodMatcher()
+  {
+    return this.methodMatcher;
+  }
+
+  QMatcher pathMatcher()
+  {
+    return this.pathMatcher;
+  }
+
+  synchronized int statusCode()
+  {
+    return this.responseCode;
+  }
+
+  synchronized String contentType()
+  {
+    return this.contentType;
+  }
+
+  Map<String, String> headers()
+  {
+    return this.responseHeaders;
+  }
+
+  /**
+   * @return {@code true} if producing the body of this response may block,
+   * because the body is read from a file, or from a stream that has not
+   * yet been read into memory
+   */
+
+  synchronized boolean hasBlockingBody()
+  {
+    return this.responseFile != null
+           || this.responseDirectory != null
+           || (this.responseBytes == null && this.responseData != null);
+  }
+
+  /**
+   * @return The response data, or {@code null} if no data was specified
+   */
+
+  InputStream data()
+  {
+    final byte[] bytes;
+    synchronized (this) {
+      if (this.responseBytes == null && this.responseData != null) {
+        if (!this.repeatable) {
+          return this.responseData;
+        }
+
+        /*
+         * A stream can only be read once, so the data of a response that
+         * can be returned multiple times is read into memory on first use.
+         */
+
+        try (var stream = this.responseData) {
+          this.responseBytes = stream.readAllBytes();
+        } catch (final IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        this.responseData = null;
+      }
+      bytes = this.responseBytes;
+    }
+
+    if (bytes == null) {
+      return null;
+    }
+    return new ByteArrayInputStream(bytes);
+  }
+
+  /**
+   * @return The fixed body of the response, or {@code null} if the response
+   * does not have a fixed body
+   */
+
+  synchronized byte[] fixedData()
+  {
+    final var bytes = this.responseBytes;
+    if (bytes == null || this.contentLength != bytes.length) {
+      return null;
+    }
+    return bytes;
+  }
+
+  /**
+   * @return The response serialized in wire format, or {@code null} if the
+   * response does not have a fixed body
+   */
+
+  QWebWireResponse wire()
+  {
+    final var existing = this.wire;
+    if (existing != null) {
+      return existing;
+    }
+
+    synchronized (this) {
+      if (this.wire != null) {
+        return this.wire;
+      }
+
+      final var bytes = this.responseBytes;
+      if (bytes == null) {
+        return null;
+      }
+      if (this.contentLength != bytes.length) {
+        return null;
+      }
+      if (!QWebWireResponse.isEligible(this.responseHeaders)) {
+        return null;
+      }
+
+      this.wire =
+        QWebWireResponse.encode(
+          this.responseCode,
+          this.contentType,
+          this.responseHeaders,
+          bytes
+        );
+      return this.wire;
+    }
+  }
+
+  /**
+   * @param level The compression level
+   *
+   * @return The response compressed and serialized in wire format, or
+   * {@code null} if the response does not have a fixed body
+   */
+
+  QWebWireResponse gzipWire(
+    final int level)
+  {
+    final var existing = this.gzipWire;
+    if (existing != null && this.gzipLevel == level) {
+      return existing;
+    }
+
+    synchronized (this) {
+      if (this.gzipWire != null && this.gzipLevel == level) {
+        return this.gzipWire;
+      }
+
+      final var bytes = this.responseBytes;
+      if (bytes == null) {
+        return null;
+      }
+      if (this.contentLength != bytes.length) {
+        return null;
+      }
+      if (!QWebWireResponse.isEligible(this.responseHeaders)) {
+        return null;
+      }
+      if (this.responseHeaders.containsKey("content-encoding")) {
+        return null;
+      }
+
+      final var headers = new HashMap<>(this.responseHeaders);
+      headers.put("content-encoding", "gzip");
+
+      this.gzipLevel = level;
+      this.gzipWire =
+        QWebWireResponse.encode(
+          this.responseCode,
+          this.contentType,
+          headers,
+          QWebGZIP.compress(bytes, level)
+        );
+      return this.gzipWire;
+    }
+  }
+
+  /**
+   * Discard the serialized responses. This is always called with the lock
+   * held, along with the change to the field that the serialized responses
+   * were built from, so that a concurrent call to {@link #wire()} or
+   * {@link #gzipWire(int)} cannot cache a response built from stale fields
+   * after it has been invalidated.
+   */
+
+  private synchronized void invalidate()
+  {
+    this.wire = null;
+    this.gzipWire = null;
+  }
+
+  /**
+   * Determine the file that provides the body of this response for the
+   * given request path. For responses that serve a directory, the file is
+   * named by the part of the request path that follows the path prefix
+   * (or by the whole path, if the path is not matched by prefix), and must
+   * be a regular file inside the directory.
+   *
+   * @param requestPath The request path
+   *
+   * @return The file, or {@code null} if the response is not backed by a
+   * file
+   *
+   * @throws NoSuchFileException If the response serves a directory, and
+   *                             the directory does not contain the file
+   */
+
+  Path fileFor(
+    final String requestPath)
+    throws NoSuchFileException
+  {
+    final Path file;
+    final Path directory;
+    synchronized (this) {
+      file = this.responseFile;
+      directory = this.responseDirectory;
+    }
+
+    if (file != null) {
+      return file;
+    }
+    if (directory == null) {
+      return null;
+    }
+
+    final var name =
+      this.pathMatcher instanceof final QMatcher.Prefix prefix
+        && requestPath.startsWith(prefix.prefix())
+        ? requestPath.substring(prefix.prefix().length())
+        : requestPath;
+
+    final var relative = stripLeadingSlashes(name);
+    if (relative.isEmpty() || relative.indexOf('\0') != -1) {
+      throw new NoSuchFileException(requestPath);
+    }
+
+    final Path resolved;
+    try {
+      resolved = directory.resolve(relative).normalize();
+    } catch (final InvalidPathException e) {
+      throw new NoSuchFileException(requestPath);
+    }
+
+    if (!resolved.startsWith(directory) || !Files.isRegularFile(resolved)) {
+      throw new NoSuchFileException(requestPath);
+    }
+    return resolved;
+  }
+
+  private static String stripLeadingSlashes(
+    final String text)
+  {
+    var index = 0;
+    while (index < text.length() && text.charAt(index) == '/') {
+      ++index;
+    }
+    return text.substring(index);
+  }
+
+  /**
+   * @return The content length, or a negative value if the length is unknown
+   */
+
+  synchronized long contentLength()
+  {
+    return this.contentLength;
+  }
+}
@@ -0,0 +1,657 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import static java.util.Locale.ROOT;
+
+/**
+ * <p>A thread-safe store of queued responses.</p>
+ *
+ * <p>Responses are bucketed by method (when the method pattern is a plain
+ * method name). Within a bucket, responses with exact paths are placed into
+ * a hash table keyed by path, and all other responses are placed into a trie
+ * keyed by the literal prefix of their path. A lookup walks the trie along
+ * the request path and only evaluates the matchers of responses whose
+ * literal prefix is a prefix of the request path, so the cost of a lookup
+ * grows with the length of the path rather than with the number of queued
+ * responses. Each response is assigned a sequence number when it is added,
+ * and lookups always return the earliest added response that matches.</p>
+ *
+ * <p>Lookups do not lock. All changes to the structure of a bucket are made
+ * atomically by {@link ConcurrentHashMap#compute} on the bucket's entry, so
+ * that exact path entries, trie nodes, and buckets can be pruned as soon as
+ * they become empty without racing a response being added to them.</p>
+ *
+ * <p>In {@link QWebMatchingMode#AUTOMATON} mode, responses whose matchers
+ * can be compiled are instead held in a single {@link QAutomaton}, and the
+ * indexes above hold only the responses that could not be compiled. The
+ * automaton is rebuilt lazily, in bulk, when responses have been added or
+ * changed since it was last built.</p>
+ */
+
+final class QResponseStore
+{
+  private static final String ANY_METHOD = "*";
+  private static final String PATH_METACHARACTERS = "[](){}.*+?^$|";
+  private static final String OPTIONAL_QUANTIFIERS = "?*{";
+
+  private final AtomicLong sequences;
+  private final ConcurrentSkipListMap<Long, QMutableResponse> responses;
+  private final ConcurrentHashMap<Long, Location> locations;
+  private final ConcurrentHashMap<String, Bucket> buckets;
+  private final ConcurrentSkipListMap<Long, QAutomaton.Rule> automatonRules;
+  private volatile QWebMatchingMode mode;
+  private volatile QAutomaton automaton;
+  private volatile boolean automatonDirty;
+
+  QResponseStore()
+  {
+    this.sequences =
+      new AtomicLong();
+    this.responses =
+      new ConcurrentSkipListMap<>();
+    this.locations =
+      new ConcurrentHashMap<>();
+    this.buckets =
+      new ConcurrentHashMap<>();
+    this.automatonRules =
+      new ConcurrentSkipListMap<>();
+    this.mode =
+      QWebMatchingMode.INDEXED;
+    this.automaton =
+      QAutomaton.build(List.of());
+  }
+
+  /**
+   * Set the matching mode, reindexing all queued responses.
+   *
+   * @param newMode The matching mode
+   */
+
+  void setMatchingMode(
+    final QWebMatchingMode newMode)
+  {
+    this.mode = Objects.requireNonNull(newMode, "newMode");
+    for (final var response : this.responses.values()) {
+      this.reindex(response);
+    }
+  }
+
+  /**
+   * Rebuild the automaton if any responses have been added or changed since
+   * it was last built.
+   */
+
+  void rebuild()
+  {
+    synchronized (this.automatonRules) {
+      if (this.automatonDirty) {
+        this.automatonDirty = false;
+        this.automaton =
+          QAutomaton.build(List.copyOf(this.automatonRules.values()));
+      }
+    }
+  }
+
+  /**
+   * Create and index a new response.
+   *
+   * @return The new response
+   */
+
+  QMutableResponse add()
+  {
+    final var response =
+      new QMutableResponse(this, this.sequences.getAndIncrement());
+
+    this.responses.put(Long.valueOf(response.sequence()), response);
+    this.reindex(response);
+    return response;
+  }
+
+  /**
+   * @return The queued responses in the order in which they were added
+   */
+
+  List<QWebResponseType> responses()
+  {
+    return List.copyOf(this.responses.values());
+  }
+
+  /**
+   * Update the index for a response whose method or path patterns have
+   * changed.
+   *
+   * @param response The response
+   */
+
+  void reindex(
+    final QMutableResponse response)
+  {
+    final var sequence = Long.valueOf(response.sequence());
+
+    synchronized (response) {
+      this.unindex(sequence, response);
+      if (this.automatonRules.remove(sequence) != null) {
+        this.automatonDirty = true;
+      }
+
+      if (this.responses.get(sequence) != response) {
+        return;
+      }
+
+      if (this.mode == QWebMatchingMode.AUTOMATON) {
+        final var rule = QAutomaton.compile(response);
+        if (rule.isPresent()) {
+          this.automatonRules.put(sequence, rule.get());
+          this.automatonDirty = true;
+          return;
+        }
+      }
+
+      final var pathMatcher = response.pathMatcher();
+      this.buckets.compute(
+        methodKey(response.methodMatcher()),
+        (key, existing) -> {
+          final var bucket = existing != null ? existing : new Bucket();
+          final var location = bucket.locationFor(key, pathMatcher);
+          location.responses().put(sequence, response);
+          this.locations.put(sequence, location);
+          return bucket;
+        }
+      );
+    }
+  }
+
+  /**
+   * Remove a response from the indexes, pruning any exact path entry, trie
+   * nodes, and bucket that are left empty.
+   *
+   * @param sequence The response sequence number
+   * @param response The response
+   */
+
+  private void unindex(
+    final Long sequence,
+    final QMutableResponse response)
+  {
+    final var location = this.locations.remove(sequence);
+    if (location == null) {
+      return;
+    }
+
+    this.buckets.computeIfPresent(location.bucket(), (key, bucket) -> {
+      location.responses().remove(sequence, response);
+      bucket.prune(location);
+      return bucket.isEmpty() ? null : bucket;
+    });
+  }
+
+  /**
+   * Find the earliest added response that matches the given method and
+   * path, consuming one of its hits. The response is removed once it has
+   * no hits remaining.
+   *
+   * @param method The request method
+   * @param path   The request path
+   *
+   * @return The matching response, if any
+   */
+
+  Optional<QMutableResponse> take(
+    final String method,
+    final String path)
+  {
+    final var methodBucket =
+      this.buckets.get(method.toUpperCase(ROOT));
+    final var anyBucket =
+      this.buckets.get(ANY_METHOD);
+
+    while (true) {
+      QMutableResponse best = null;
+      if (this.mode == QWebMatchingMode.AUTOMATON) {
+        best = this.findInAutomaton(method, path);
+      }
+      best = findIn(methodBucket, method, path, best);
+      best = findIn(anyBucket, method, path, best);
+
+      if (best == null) {
+        return Optional.empty();
+      }
+
+      /*
+       * Another thread may have consumed the last hit of the response
+       * between it being found and now; if so, make sure that it is
+       * removed, and search again.
+       */
+
+      final var consumed = best.consume();
+      if (consumed == 0L) {
+        this.remove(best);
+        continue;
+      }
+      if (consumed == 1L) {
+        this.remove(best);
+      }
+      return Optional.of(best);
+    }
+  }
+
+  private void remove(
+    final QMutableResponse response)
+  {
+    final var sequence = Long.valueOf(response.sequence());
+    if (this.responses.remove(sequence, response)) {
+      synchronized (response) {
+        this.unindex(sequence, response);
+        this.automatonRules.remove(sequence);
+      }
+    }
+  }
+
+  private QMutableResponse findInAutomaton(
+    final String method,
+    final String path)
+  {
+    /*
+     * Claimed responses are left in the automaton until it is next rebuilt,
+     * but rebuild once they outnumber the live responses.
+     */
+
+    if (this.automaton.size() > 2 * this.automatonRules.size() + 64) {
+      this.automatonDirty = true;
+    }
+    if (this.automatonDirty) {
+      this.rebuild();
+    }
+
+    final var current = this.automaton;
+    final var matching = current.matching(method, path);
+    if (matching == null) {
+      for (final var rule : this.automatonRules.values()) {
+        if (rule.response().matches(method, path)) {
+          return rule.response();
+        }
+      }
+      return null;
+    }
+
+    for (final var index : matching) {
+      final var rule = current.rule(index);
+      final var sequence = Long.valueOf(rule.response().sequence());
+      if (this.automatonRules.get(sequence) == rule) {
+        return rule.response();
+      }
+    }
+    return null;
+  }
+
+  private static QMutableResponse findIn(
+    final Bucket bucket,
+    final String method,
+    final String path,
+    final QMutableResponse best)
+  {
+    if (bucket == null) {
+      return best;
+    }
+
+    var result = best;
+    final var exact = bucket.exact.get(path);
+    if (exact != null) {
+      result = earliestIn(exact, method, path, result);
+    }
+
+    var node = bucket.root;
+    result = earliestIn(node.responses, method, path, result);
+    for (int index = 0; index < path.length(); ++index) {
+      node = node.children.get(Character.valueOf(fold(path.charAt(index))));
+      if (node == null) {
+        break;
+      }
+      result = earliestIn(node.responses, method, path, result);
+    }
+    return result;
+  }
+
+  private static QMutableResponse earliestIn(
+    final ConcurrentSkipListMap<Long, QMutableResponse> responses,
+    final String method,
+    final String path,
+    final QMutableResponse best)
+  {
+    for (final var entry : responses.entrySet()) {
+      final var response = entry.getValue();
+      if (best != null && response.sequence() > best.sequence()) {
+        return best;
+      }
+      if (response.matches(method, path)) {
+        return response;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Fold ASCII characters to lower case. This is the same folding that
+   * {@link Pattern#CASE_INSENSITIVE} performs without
+   * {@link Pattern#UNICODE_CASE}, and so case-insensitive path patterns
+   * and case-sensitive path patterns can share a single trie.
+   */
+
+  private static char fold(
+    final char c)
+  {
+    if (c >= 'A' && c <= 'Z') {
+      return (char) (c + ('a' - 'A'));
+    }
+    return c;
+  }
+
+  /**
+   * Determine the bucket for a method matcher. Matchers that match a
+   * single method name are bucketed by that name, and everything else is
+   * placed in a bucket that is searched for every request.
+   *
+   * @param matcher The method matcher
+   *
+   * @return The bucket name
+   */
+
+  static String methodKey(
+    final QMatcher matcher)
+  {
+    return switch (matcher) {
+      case final QMatcher.Exact exact -> {
+        final var text = exact.value();
+        yield methodKey(Pattern.compile(text, Pattern.LITERAL));
+      }
+      case final QMatcher.Regex regex -> methodKey(regex.pattern());
+      case final QMatcher.Prefix prefix -> ANY_METHOD;
+      case final QMatcher.Glob glob -> ANY_METHOD;
+    };
+  }
+
+  private static String methodKey(
+    final Pattern pattern)
+  {
+    var text = pattern.pattern();
+    if ((pattern.flags() & Pattern.LITERAL) == 0) {
+      if (text.startsWith("^")) {
+        text = text.substring(1);
+      }
+      if (text.endsWith("$")) {
+        text = text.substring(0, text.length() - 1);
+      }
+    }
+
+    if (text.isEmpty()) {
+      return ANY_METHOD;
+    }
+    for (int index = 0; index < text.length(); ++index) {
+      final var c = text.charAt(index);
+      if (!((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z'))) {
+        return ANY_METHOD;
+      }
+    }
+    return text.toUpperCase(ROOT);
+  }
+
+  /**
+   * Determine the literal text that any path matching the given pattern
+   * must begin with. The result is conservative: it may be shorter than the
+   * true literal prefix, but any path that the pattern matches is guaranteed
+   * to begin with it (after ASCII case folding).
+   *
+   * @param pattern The path pattern
+   *
+   * @return The folded literal prefix
+   */
+
+  static String literalPrefix(
+    final Pattern pattern)
+  {
+    final var flags = pattern.flags();
+    final var text = pattern.pattern();
+    final var unicodeCase =
+      (flags & Pattern.CASE_INSENSITIVE) != 0
+      && (flags & Pattern.UNICODE_CASE) != 0;
+
+    if ((flags & (Pattern.COMMENTS | Pattern.CANON_EQ)) != 0) {
+      return "";
+    }
+
+    final var builder = new StringBuilder(text.length());
+    if ((flags & Pattern.LITERAL) != 0) {
+      for (int index = 0; index < text.length(); ++index) {
+        final var c = text.charAt(index);
+        if (Character.isSurrogate(c) || (unicodeCase && c > 0x7f)) {
+          break;
+        }
+        builder.append(fold(c));
+      }
+      return builder.toString();
+    }
+
+    /*
+     * An alternation anywhere in the pattern means that the leading text
+     * might not be required at all.
+     */
+
+    if (text.indexOf('|') >= 0) {
+      return "";
+    }
+
+    int index = 0;
+    while (index < text.length() && text.charAt(index) == '^') {
+      ++index;
+    }
+
+    while (index < text.length()) {
+      final var c = text.charAt(index);
+      final char literal;
+      final int next;
+
+      if (c == '\\') {
+        if (index + 1 >= text.length()) {
+          break;
+        }
+        final var escaped = text.charAt(index + 1);
+        if (Character.isLetterOrDigit(escaped)) {
+          break;
+        }
+        literal = escaped;
+        next = index + 2;
+      } else if (PATH_METACHARACTERS.indexOf(c) >= 0) {
+        break;
+      } else {
+        literal = c;
+        next = index + 1;
+      }
+
+      if (Character.isSurrogate(literal) || (unicodeCase && literal > 0x7f)) {
+        break;
+      }
+
+      if (next < text.length()) {
+        final var quantifier = text.charAt(next);
+        if (OPTIONAL_QUANTIFIERS.indexOf(quantifier) >= 0) {
+          break;
+        }
+        if (quantifier == '+') {
+          builder.append(fold(literal));
+          break;
+        }
+      }
+
+      builder.append(fold(literal));
+      index = next;
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Determine the literal text that any path matched by the given matcher
+   * must begin with, folded to lower case.
+   *
+   * @param matcher The path matcher
+   *
+   * @return The folded literal prefix
+   */
+
+  static String literalPrefix(
+    final QMatcher matcher)
+  {
+    return switch (matcher) {
+      case final QMatcher.Exact exact ->
+        literalPrefix(Pattern.compile(exact.value(), Pattern.LITERAL));
+      case final QMatcher.Prefix prefix ->
+        literalPrefix(Pattern.compile(prefix.prefix(), Pattern.LITERAL));
+      case final QMatcher.Glob glob ->
+        literalPrefix(Pattern.compile(glob.literalPrefix(), Pattern.LITERAL));
+      case final QMatcher.Regex regex -> literalPrefix(regex.pattern());
+    };
+  }
+
+  private static final class Bucket
+  {
+    private final Node root;
+    private final ConcurrentHashMap<String, ConcurrentSkipListMap<Long, QMutableResponse>> exact;
+
+    Bucket()
+    {
+      this.root =
+        new Node();
+      this.exact =
+        new ConcurrentHashMap<>();
+    }
+
+    Location locationFor(
+      final String bucket,
+      final QMatcher pathMatcher)
+    {
+      if (pathMatcher instanceof final QMatcher.Exact exactMatcher
+          && !exactMatcher.ignoreCase()) {
+        final var path = exactMatcher.value();
+        return new Location(
+          bucket,
+          path,
+          this.exact.computeIfAbsent(path, k -> new ConcurrentSkipListMap<>())
+        );
+      }
+
+      final var prefix = literalPrefix(pathMatcher);
+      var node = this.root;
+      for (int index = 0; index < prefix.length(); ++index) {
+        node = node.children.computeIfAbsent(
+          Character.valueOf(prefix.charAt(index)),
+          k -> new Node()
+        );
+      }
+      return new Location(bucket, prefix, node.responses);
+    }
+
+    /**
+     * Remove the exact path entry or the trie nodes of a location if they
+     * are now empty. Trie nodes are removed from the deepest upwards, for
+     * as long as they hold no responses and have no children.
+     */
+
+    void prune(
+      final Location location)
+    {
+      if (!location.responses().isEmpty()) {
+        return;
+      }
+
+      final var key = location.key();
+      if (this.exact.get(key) == location.responses()) {
+        this.exact.remove(key);
+        return;
+      }
+
+      final var path = new Node[key.length() + 1];
+      path[0] = this.root;
+      for (int index = 0; index < key.length(); ++index) {
+        final var child =
+          path[index].children.get(Character.valueOf(key.charAt(index)));
+        if (child == null) {
+          return;
+        }
+        path[index + 1] = child;
+      }
+
+      for (int index = key.length(); index > 0; --index) {
+        final var node = path[index];
+        if (!node.responses.isEmpty() || !node.children.isEmpty()) {
+          return;
+        }
+        path[index - 1].children.remove(
+          Character.valueOf(key.charAt(index - 1)),
+          node
+        );
+      }
+    }
+
+    boolean isEmpty()
+    {
+      return this.exact.isEmpty()
+             && this.root.children.isEmpty()
+             && this.root.responses.isEmpty();
+    }
+  }
+
+  /**
+   * The place in which a response is indexed.
+   *
+   * @param bucket    The name of the bucket
+   * @param key       The exact path, or the folded literal prefix of the
+   *                  trie node
+   * @param responses The responses held at the location
+   */
+
+  private record Location(
+    String bucket,
+    String key,
+    ConcurrentSkipListMap<Long, QMutableResponse> responses)
+  {
+
+  }
+
+  private static final class Node
+  {
+    private final ConcurrentHashMap<Character, Node> children;
+    private final ConcurrentSkipListMap<Long, QMutableResponse> responses;
+
+    Node()
+    {
+      this.children =
+        new ConcurrentHashMap<>();
+      this.responses =
+        new ConcurrentSkipListMap<>();
+    }
+  }
+}
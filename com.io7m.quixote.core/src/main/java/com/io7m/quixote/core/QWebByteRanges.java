@@ -0,0 +1,356 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Functions to interpret {@code Range} request headers (RFC 9110 section
+ * 14) against bodies of a known length.
+ */
+
+final class QWebByteRanges
+{
+  /**
+   * The maximum number of ranges that will be served for a single request.
+   * Requests with more ranges than this receive the whole body.
+   */
+
+  static final int MAXIMUM_RANGES = 64;
+
+  private static final String BOUNDARY =
+    "QUIXOTE_BYTERANGES_%016x".formatted(
+      Long.valueOf(ThreadLocalRandom.current().nextLong())
+    );
+
+  private QWebByteRanges()
+  {
+
+  }
+
+  /**
+   * A satisfiable range of bytes.
+   *
+   * @param first The first byte in the range
+   * @param last  The last byte in the range (inclusive)
+   */
+
+  record Range(
+    long first,
+    long last)
+  {
+    Range
+    {
+      if (first < 0L || last < first) {
+        throw new IllegalArgumentException(
+          "Invalid range %d-%d".formatted(Long.valueOf(first), Long.valueOf(last))
+        );
+      }
+    }
+
+    /**
+     * @return The number of bytes in the range
+     */
+
+    long length()
+    {
+      return this.last - this.first + 1L;
+    }
+
+    /**
+     * @param total The length of the whole body
+     *
+     * @return The value of a {@code Content-Range} header for this range
+     */
+
+    String contentRange(
+      final long total)
+    {
+      return "bytes %d-%d/%d".formatted(
+        Long.valueOf(this.first),
+        Long.valueOf(this.last),
+        Long.valueOf(total)
+      );
+    }
+  }
+
+  /**
+   * One part of a {@code multipart/byteranges} body.
+   *
+   * @param header The delimiter and headers that precede the range
+   * @param range  The range
+   */
+
+  record Part(
+    byte[] header,
+    Range range)
+  {
+
+  }
+
+  /**
+   * The layout of a {@code multipart/byteranges} body.
+   *
+   * @param contentType The content type of the body, including the boundary
+   * @param parts       The parts
+   * @param trailer     The closing delimiter
+   * @param length      The total length of the body
+   */
+
+  record Multipart(
+    String contentType,
+    List<Part> parts,
+    byte[] trailer,
+    long length)
+  {
+
+  }
+
+  /**
+   * Determine if range requests can be answered for the given response. Only
+   * successful responses that do not specify their own framing headers are
+   * eligible.
+   *
+   * @param response The response
+   *
+   * @return {@code true} if range requests can be answered
+   */
+
+  static boolean appliesTo(
+    final QMutableResponse response)
+  {
+    if (response.statusCode() != 200) {
+      return false;
+    }
+
+    final Map<String, String> headers = response.headers();
+    return !headers.containsKey("content-length")
+           && !headers.containsKey("content-range")
+           && !headers.containsKey("transfer-encoding");
+  }
+
+  /**
+   * Determine if a request should be answered with a partial response.
+   *
+   * @param method  The request method
+   * @param range   The {@code Range} header, if any
+   * @param ifRange The {@code If-Range} header, if any
+   *
+   * @return The {@code Range} header, or {@code null} if the request should
+   * be answered with the whole body
+   */
+
+  static String requestedRange(
+    final String method,
+    final String range,
+    final String ifRange)
+  {
+    if (range == null || ifRange != null) {
+      return null;
+    }
+
+    /*
+     * Responses have no validators, and so an If-Range precondition can
+     * never be satisfied.
+     */
+
+    return switch (method.toUpperCase(Locale.ROOT)) {
+      case "GET", "HEAD" -> range;
+      default -> null;
+    };
+  }
+
+  /**
+   * Parse a {@code Range} header.
+   *
+   * @param header The header value
+   * @param length The length of the body
+   *
+   * @return The satisfiable ranges, which may be empty if none of the ranges
+   * can be satisfied, or nothing if the header should be ignored
+   */
+
+  static Optional<List<Range>> parse(
+    final String header,
+    final long length)
+  {
+    final var text = header.trim();
+    final var equals = text.indexOf('=');
+    if (equals < 0) {
+      return Optional.empty();
+    }
+    if (!"bytes".equalsIgnoreCase(text.substring(0, equals).trim())) {
+      return Optional.empty();
+    }
+
+    final var ranges = new ArrayList<Range>();
+    var specifications = 0;
+    for (final var element : text.substring(equals + 1).split(",", -1)) {
+      final var specification = element.trim();
+      if (specification.isEmpty()) {
+        continue;
+      }
+
+      ++specifications;
+      if (specifications > MAXIMUM_RANGES) {
+        return Optional.empty();
+      }
+
+      final var dash = specification.indexOf('-');
+      if (dash < 0) {
+        return Optional.empty();
+      }
+
+      final var firstText = specification.substring(0, dash).trim();
+      final var lastText = specification.substring(dash + 1).trim();
+
+      if (firstText.isEmpty()) {
+        final var suffix = parseDigits(lastText);
+        if (suffix < 0L) {
+          return Optional.empty();
+        }
+        if (suffix > 0L && length > 0L) {
+          ranges.add(new Range(Math.max(0L, length - suffix), length - 1L));
+        }
+        continue;
+      }
+
+      final var first = parseDigits(firstText);
+      if (first < 0L) {
+        return Optional.empty();
+      }
+
+      final long last;
+      if (lastText.isEmpty()) {
+        last = Long.MAX_VALUE;
+      } else {
+        last = parseDigits(lastText);
+        if (last < first) {
+          return Optional.empty();
+        }
+      }
+
+      if (first < length) {
+        ranges.add(new Range(first, Math.min(last, length - 1L)));
+      }
+    }
+
+    if (specifications == 0) {
+      return Optional.empty();
+    }
+    return Optional.of(List.copyOf(ranges));
+  }
+
+  /**
+   * Parse a non-empty string of decimal digits, saturating on overflow.
+   *
+   * @param text The text
+   *
+   * @return The value, or {@code -1} if the text is not a string of digits
+   */
+
+  private static long parseDigits(
+    final String text)
+  {
+    if (text.isEmpty()) {
+      return -1L;
+    }
+
+    long value = 0L;
+    for (int index = 0; index < text.length(); ++index) {
+      final var c = text.charAt(index);
+      if (c < '0' || c > '9') {
+        return -1L;
+      }
+      if (value > (Long.MAX_VALUE - (c - '0')) / 10L) {
+        value = Long.MAX_VALUE;
+      } else {
+        value = value * 10L + (c - '0');
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Lay out a {@code multipart/byteranges} body.
+   *
+   * @param ranges      The ranges
+   * @param total       The length of the whole body
+   * @param contentType The content type of the whole body, if any
+   *
+   * @return The body layout
+   */
+
+  static Multipart multipart(
+    final List<Range> ranges,
+    final long total,
+    final String contentType)
+  {
+    final var parts = new ArrayList<Part>(ranges.size());
+    long length = 0L;
+
+    for (final var range : ranges) {
+      final var text = new StringBuilder(128);
+      if (!parts.isEmpty()) {
+        text.append("\r\n");
+      }
+      text.append("--").append(BOUNDARY).append("\r\n");
+      if (contentType != null) {
+        text.append("Content-Type: ").append(contentType).append("\r\n");
+      }
+      text.append("Content-Range: ")
+        .append(range.contentRange(total))
+        .append("\r\n\r\n");
+
+      final var header = text.toString().getBytes(UTF_8);
+      parts.add(new Part(header, range));
+      length += header.length + range.length();
+    }
+
+    final var trailer =
+      "\r\n--%s--\r\n".formatted(BOUNDARY).getBytes(UTF_8);
+    length += trailer.length;
+
+    return new Multipart(
+      "multipart/byteranges; boundary=" + BOUNDARY,
+      List.copyOf(parts),
+      trailer,
+      length
+    );
+  }
+
+  /**
+   * @param total The length of the whole body
+   *
+   * @return The value of a {@code Content-Range} header for an
+   * unsatisfiable request
+   */
+
+  static String unsatisfiable(
+    final long total)
+  {
+    return "bytes */%d".formatted(Long.valueOf(total));
+  }
+}
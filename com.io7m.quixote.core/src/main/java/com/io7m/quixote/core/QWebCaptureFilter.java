@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The application of a capture policy to received requests. The decision
+ * to capture a request is made from the request path alone, so that
+ * nothing is copied for requests that are not captured.
+ */
+
+final class QWebCaptureFilter
+{
+  private final QWebCapturePolicy policy;
+  private final String[] headerNames;
+  private final AtomicLong eligible;
+  private final LongAdder received;
+  private final LongAdder captured;
+  private final LongAdder excludedPath;
+  private final LongAdder excludedSample;
+
+  QWebCaptureFilter(
+    final QWebCapturePolicy inPolicy)
+  {
+    this.policy =
+      Objects.requireNonNull(inPolicy, "policy");
+    this.headerNames =
+      inPolicy.headers()
+        .map(names -> names.toArray(new String[0]))
+        .orElse(null);
+    this.eligible =
+      new AtomicLong();
+    this.received =
+      new LongAdder();
+    this.captured =
+      new LongAdder();
+    this.excludedPath =
+      new LongAdder();
+    this.excludedSample =
+      new LongAdder();
+  }
+
+  /**
+   * Determine if a request should be captured, updating the counters.
+   *
+   * @param path The request path
+   *
+   * @return {@code true} if the request should be captured
+   */
+
+  boolean accept(
+    final String path)
+  {
+    this.received.increment();
+
+    final var pattern = this.policy.pathPattern();
+    if (pattern.isPresent() && !pattern.get().matcher(path).matches()) {
+      this.excludedPath.increment();
+      return false;
+    }
+
+    final var interval = this.policy.sampleInterval();
+    if (interval > 1 && this.eligible.getAndIncrement() % interval != 0L) {
+      this.excludedSample.increment();
+      return false;
+    }
+
+    this.captured.increment();
+    return true;
+  }
+
+  /**
+   * @param headers The request headers
+   *
+   * @return An immutable copy of the headers retained by the policy
+   */
+
+  Map<String, String> headersOf(
+    final Map<String, String> headers)
+  {
+    if (this.headerNames == null) {
+      return Map.copyOf(headers);
+    }
+
+    final var selected = new HashMap<String, String>(this.headerNames.length);
+    for (final var name : this.headerNames) {
+      final var value = headers.get(name);
+      if (value != null) {
+        selected.put(name, value);
+      }
+    }
+    return Map.copyOf(selected);
+  }
+
+  /**
+   * @param spill The spill to which captured requests are written, or
+   *              {@code null} if there is none
+   *
+   * @return The current capture statistics
+   */
+
+  QWebCaptureStatistics statistics(
+    final QWebRequestSpill spill)
+  {
+    return new QWebCaptureStatistics(
+      this.received.sum(),
+      this.captured.sum(),
+      this.excludedPath.sum(),
+      this.excludedSample.sum(),
+      spill == null ? 0L : spill.spilled(),
+      spill == null ? 0L : spill.spilledWithoutFiles(),
+      spill == null ? 0L : spill.discarded(),
+      spill != null && spill.isFailed()
+    );
+  }
+}
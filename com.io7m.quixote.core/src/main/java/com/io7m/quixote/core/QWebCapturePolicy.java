@@ -0,0 +1,103 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static java.util.Locale.ROOT;
+
+/**
+ * The policy that determines which received requests are captured, and
+ * which parts of them are retained. Requests that are not captured are
+ * still counted, and are still answered as normal, but they are not
+ * recorded and are not passed to request callbacks.
+ *
+ * @param sampleInterval The interval at which requests are sampled; a
+ *                       value of {@code n} captures one in every {@code n}
+ *                       eligible requests, and {@code 1} captures every
+ *                       eligible request
+ * @param pathPattern    The pattern that request paths must match in order
+ *                       to be eligible for capture, if any
+ * @param headers        The names of the headers retained in captured
+ *                       requests, if only some headers are to be retained
+ *
+ * @see QWebServerType#captureStatistics()
+ * @since 1.4.0
+ */
+
+public record QWebCapturePolicy(
+  int sampleInterval,
+  Optional<Pattern> pathPattern,
+  Optional<Set<String>> headers)
+{
+  /**
+   * The policy that determines which received requests are captured, and
+   * which parts of them are retained. Header names are case-insensitive.
+   *
+   * @param sampleInterval The interval at which requests are sampled
+   * @param pathPattern    The pattern that request paths must match in
+   *                       order to be eligible for capture, if any
+   * @param headers        The names of the headers retained in captured
+   *                       requests, if only some headers are to be retained
+   */
+
+  public QWebCapturePolicy
+  {
+    Objects.requireNonNull(pathPattern, "pathPattern");
+    Objects.requireNonNull(headers, "headers");
+
+    if (sampleInterval < 1) {
+      throw new IllegalArgumentException(
+        String.format(
+          "Sample interval %d must be positive",
+          Integer.valueOf(sampleInterval)
+        )
+      );
+    }
+
+    headers = headers.map(names -> {
+      return names.stream()
+        .map(name -> name.toLowerCase(ROOT))
+        .collect(Collectors.toUnmodifiableSet());
+    });
+  }
+
+  /**
+   * @return A policy that captures every request in full
+   */
+
+  public static QWebCapturePolicy all()
+  {
+    return new QWebCapturePolicy(1, Optional.empty(), Optional.empty());
+  }
+
+  /**
+   * @return {@code true} if this policy captures every request in full
+   */
+
+  public boolean capturesAll()
+  {
+    return this.sampleInterval == 1
+           && this.pathPattern.isEmpty()
+           && this.headers.isEmpty();
+  }
+}
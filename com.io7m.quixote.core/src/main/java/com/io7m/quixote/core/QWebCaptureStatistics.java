@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+/**
+ * Statistics for the capture of received requests.
+ *
+ * @param received            The number of requests received
+ * @param captured            The number of requests captured
+ * @param excludedPath        The number of requests not captured because
+ *                            their paths did not match the capture path
+ *                            pattern
+ * @param excludedSample      The number of requests not captured because
+ *                            they were not sampled
+ * @param spilled             The number of captured requests written to
+ *                            the spill directory
+ * @param spilledWithoutFiles The number of spilled requests that were
+ *                            written before their bodies had been parsed,
+ *                            and so without their files
+ * @param spillDiscarded      The number of captured requests that were
+ *                            overwritten in the journal but discarded
+ *                            because spilling had stopped
+ * @param spillFailed         {@code true} if spilling stopped because of an
+ *                            I/O error, or because requests were
+ *                            overwritten faster than they could be spilled
+ *
+ * @see QWebCapturePolicy
+ * @since 1.4.0
+ */
+
+public record QWebCaptureStatistics(
+  long received,
+  long captured,
+  long excludedPath,
+  long excludedSample,
+  long spilled,
+  long spilledWithoutFiles,
+  long spillDiscarded,
+  boolean spillFailed)
+{
+
+}
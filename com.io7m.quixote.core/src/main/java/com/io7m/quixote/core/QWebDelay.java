@@ -0,0 +1,249 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.random.RandomGenerator;
+
+/**
+ * A delay applied to a response before it is written. Delays are used to
+ * simulate slow servers; a delayed response does not occupy a thread while
+ * it waits, where the server implementation allows it.
+ *
+ * @since 1.4.0
+ */
+
+public sealed interface QWebDelay
+{
+  /**
+   * Choose a delay.
+   *
+   * @param random A source of randomness
+   *
+   * @return The delay
+   */
+
+  Duration sample(RandomGenerator random);
+
+  /**
+   * A delay that is always the same.
+   *
+   * @param delay The delay
+   */
+
+  record Fixed(Duration delay) implements QWebDelay
+  {
+    /**
+     * A delay that is always the same.
+     *
+     * @param delay The delay
+     */
+
+    public Fixed
+    {
+      checkNonNegative(delay, "delay");
+    }
+
+    @Override
+    public Duration sample(
+      final RandomGenerator random)
+    {
+      return this.delay;
+    }
+  }
+
+  /**
+   * A delay chosen uniformly from a range.
+   *
+   * @param minimum The minimum delay (inclusive)
+   * @param maximum The maximum delay (inclusive)
+   */
+
+  record Uniform(
+    Duration minimum,
+    Duration maximum)
+    implements QWebDelay
+  {
+    /**
+     * A delay chosen uniformly from a range.
+     *
+     * @param minimum The minimum delay (inclusive)
+     * @param maximum The maximum delay (inclusive)
+     */
+
+    public Uniform
+    {
+      checkNonNegative(minimum, "minimum");
+      checkNonNegative(maximum, "maximum");
+
+      if (maximum.compareTo(minimum) < 0) {
+        throw new IllegalArgumentException(
+          "Maximum %s must not be less than minimum %s"
+            .formatted(maximum, minimum)
+        );
+      }
+    }
+
+    @Override
+    public Duration sample(
+      final RandomGenerator random)
+    {
+      final var low = nanosOf(this.minimum);
+      final var high = nanosOf(this.maximum);
+      if (low == high) {
+        return this.minimum;
+      }
+      final var bound = high == Long.MAX_VALUE ? high : high + 1L;
+      return Duration.ofNanos(random.nextLong(low, bound));
+    }
+  }
+
+  /**
+   * A delay whose distribution is described by a set of percentiles. For
+   * example, percentiles {@code 50 → 5ms} and {@code 99 → 400ms} describe
+   * a distribution in which half of the delays are at most 5ms and 1% of
+   * the delays are at least 400ms. Delays between the given percentiles are
+   * interpolated linearly; delays below the lowest percentile are
+   * interpolated from zero, and delays above the highest percentile are
+   * equal to the delay at the highest percentile.
+   *
+   * @param percentiles The percentiles, in strictly ascending order
+   */
+
+  record Percentiles(List<Percentile> percentiles)
+    implements QWebDelay
+  {
+    /**
+     * A delay whose distribution is described by a set of percentiles.
+     *
+     * @param percentiles The percentiles, in strictly ascending order
+     */
+
+    public Percentiles
+    {
+      percentiles = List.copyOf(percentiles);
+
+      if (percentiles.isEmpty()) {
+        throw new IllegalArgumentException(
+          "At least one percentile must be specified."
+        );
+      }
+
+      for (int index = 1; index < percentiles.size(); ++index) {
+        final var previous = percentiles.get(index - 1);
+        final var current = percentiles.get(index);
+        if (current.percentile() <= previous.percentile()) {
+          throw new IllegalArgumentException(
+            "Percentiles must be in strictly ascending order: %s follows %s"
+              .formatted(
+                Double.valueOf(current.percentile()),
+                Double.valueOf(previous.percentile()))
+          );
+        }
+        if (current.delay().compareTo(previous.delay()) < 0) {
+          throw new IllegalArgumentException(
+            "The delay %s at percentile %s is less than the delay %s at percentile %s"
+              .formatted(
+                current.delay(),
+                Double.valueOf(current.percentile()),
+                previous.delay(),
+                Double.valueOf(previous.percentile()))
+          );
+        }
+      }
+    }
+
+    @Override
+    public Duration sample(
+      final RandomGenerator random)
+    {
+      final var position = random.nextDouble() * 100.0;
+
+      var lowPercentile = 0.0;
+      var lowDelay = 0L;
+      for (final var percentile : this.percentiles) {
+        final var highPercentile = percentile.percentile();
+        final var highDelay = nanosOf(percentile.delay());
+        if (position <= highPercentile) {
+          final var fraction =
+            (position - lowPercentile) / (highPercentile - lowPercentile);
+          return Duration.ofNanos(
+            lowDelay + (long) (fraction * (double) (highDelay - lowDelay))
+          );
+        }
+        lowPercentile = highPercentile;
+        lowDelay = highDelay;
+      }
+      return Duration.ofNanos(lowDelay);
+    }
+
+    /**
+     * The delay at a given percentile.
+     *
+     * @param percentile The percentile in the range {@code (0, 100]}
+     * @param delay      The delay
+     */
+
+    public record Percentile(
+      double percentile,
+      Duration delay)
+    {
+      /**
+       * The delay at a given percentile.
+       *
+       * @param percentile The percentile in the range {@code (0, 100]}
+       * @param delay      The delay
+       */
+
+      public Percentile
+      {
+        if (!(percentile > 0.0 && percentile <= 100.0)) {
+          throw new IllegalArgumentException(
+            "Percentile must be in the range (0, 100]: %s"
+              .formatted(Double.valueOf(percentile))
+          );
+        }
+        checkNonNegative(delay, "delay");
+      }
+    }
+  }
+
+  private static void checkNonNegative(
+    final Duration delay,
+    final String name)
+  {
+    Objects.requireNonNull(delay, name);
+    if (delay.isNegative()) {
+      throw new IllegalArgumentException(
+        "Delay must be non-negative: %s".formatted(delay)
+      );
+    }
+  }
+
+  private static long nanosOf(
+    final Duration delay)
+  {
+    try {
+      return delay.toNanos();
+    } catch (final ArithmeticException e) {
+      return Long.MAX_VALUE;
+    }
+  }
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+/**
+ * <p>A bounded cache of open files, evicting the least recently used file
+ * when the cache is full.</p>
+ *
+ * <p>Open files are shared between all of the requests that are reading
+ * them, and are only ever read with positional reads and transfers. A file
+ * that is evicted while it is still being read is closed when the last
+ * reader releases it.</p>
+ */
+
+final class QWebFileCache implements Closeable
+{
+  /**
+   * The default maximum number of open files.
+   */
+
+  static final int DEFAULT_CAPACITY = 64;
+
+  private final int capacity;
+  private final LinkedHashMap<Path, Entry> entries;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  QWebFileCache(
+    final int inCapacity)
+  {
+    this.capacity = checkCapacity(inCapacity);
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * Check that the given capacity is valid.
+   *
+   * @param capacity The capacity
+   *
+   * @return The capacity
+   *
+   * @throws IllegalArgumentException If the capacity is negative
+   */
+
+  static int checkCapacity(
+    final int capacity)
+  {
+    if (capacity < 0) {
+      throw new IllegalArgumentException(
+        String.format(
+          "File cache capacity %d must be non-negative",
+          Integer.valueOf(capacity)
+        )
+      );
+    }
+    return capacity;
+  }
+
+  /**
+   * Open a file for reading, using an already-open file if one is cached.
+   * The returned handle must be closed when the caller has finished with it.
+   *
+   * @param file The file
+   *
+   * @return A handle to the open file
+   *
+   * @throws IOException On I/O errors
+   */
+
+  Handle open(
+    final Path file)
+    throws IOException
+  {
+    Objects.requireNonNull(file, "file");
+
+    synchronized (this) {
+      final var existing = this.entries.get(file);
+      if (existing != null) {
+        ++this.hits;
+        return this.acquire(existing);
+      }
+      ++this.misses;
+    }
+
+    /*
+     * The file is opened without holding the lock. If another thread opened
+     * the same file in the meantime, the other thread's channel is used.
+     */
+
+    final var channel = FileChannel.open(file, StandardOpenOption.READ);
+    synchronized (this) {
+      final var existing = this.entries.get(file);
+      if (existing != null) {
+        channel.close();
+        return this.acquire(existing);
+      }
+
+      final var entry = new Entry(channel);
+      this.entries.put(file, entry);
+      final var handle = this.acquire(entry);
+      this.evictExcess(this.capacity);
+      return handle;
+    }
+  }
+
+  private Handle acquire(
+    final Entry entry)
+    throws IOException
+  {
+    ++entry.references;
+    try {
+      return new Handle(this, entry, entry.channel.size());
+    } catch (final IOException e) {
+      this.release(entry);
+      throw e;
+    }
+  }
+
+  private void evictExcess(
+    final int limit)
+  {
+    final var iterator = this.entries.values().iterator();
+    while (this.entries.size() > limit) {
+      final var entry = iterator.next();
+      iterator.remove();
+      ++this.evictions;
+      entry.evicted = true;
+      if (entry.references == 0) {
+        closeQuietly(entry);
+      }
+    }
+  }
+
+  private synchronized void release(
+    final Entry entry)
+  {
+    --entry.references;
+    if (entry.references == 0 && entry.evicted) {
+      closeQuietly(entry);
+    }
+  }
+
+  private static void closeQuietly(
+    final Entry entry)
+  {
+    try {
+      entry.channel.close();
+    } catch (final IOException e) {
+      // Ignored
+    }
+  }
+
+  /**
+   * @return The current cache statistics
+   */
+
+  synchronized QWebFileCacheStatistics statistics()
+  {
+    return new QWebFileCacheStatistics(
+      this.hits,
+      this.misses,
+      this.evictions,
+      this.entries.size(),
+      this.capacity
+    );
+  }
+
+  /**
+   * Evict all files. Files that are still being read are closed when the
+   * last reader releases them.
+   */
+
+  @Override
+  public void close()
+  {
+    final var evicted = new ArrayList<Entry>();
+    synchronized (this) {
+      for (final var entry : this.entries.values()) {
+        entry.evicted = true;
+        if (entry.references == 0) {
+          evicted.add(entry);
+        }
+      }
+      this.entries.clear();
+    }
+
+    for (final var entry : evicted) {
+      closeQuietly(entry);
+    }
+  }
+
+  private static final class Entry
+  {
+    private final FileChannel channel;
+    private int references;
+    private boolean evicted;
+
+    Entry(
+      final FileChannel inChannel)
+    {
+      this.channel = inChannel;
+    }
+  }
+
+  /**
+   * A handle to an open file. The size of the file is fixed when the handle
+   * is created.
+   */
+
+  static final class Handle implements Closeable
+  {
+    private final QWebFileCache cache;
+    private final Entry entry;
+    private final long size;
+    private boolean closed;
+
+    private Handle(
+      final QWebFileCache inCache,
+      final Entry inEntry,
+      final long inSize)
+    {
+      this.cache = inCache;
+      this.entry = inEntry;
+      this.size = inSize;
+    }
+
+    /**
+     * @return The open file, which must only be accessed with positional
+     * operations
+     */
+
+    FileChannel channel()
+    {
+      return this.entry.channel;
+    }
+
+    /**
+     * @return The size of the file
+     */
+
+    long size()
+    {
+      return this.size;
+    }
+
+    /**
+     * @return A stream that reads the file from the start, and that closes
+     * this handle when it is closed
+     */
+
+    InputStream stream()
+    {
+      return this.releasing(this.slice(0L, this.size));
+    }
+
+    /**
+     * @param position The position of the first byte
+     * @param count    The number of bytes
+     *
+     * @return A stream that reads a part of the file, and that does not
+     * close this handle when it is closed
+     */
+
+    InputStream slice(
+      final long position,
+      final long count)
+    {
+      return new HandleStream(this, position, position + count);
+    }
+
+    /**
+     * @param stream A stream
+     *
+     * @return A stream that reads the given stream, and that closes this
+     * handle when it is closed
+     */
+
+    InputStream releasing(
+      final InputStream stream)
+    {
+      return new FilterInputStream(stream)
+      {
+        @Override
+        public void close()
+          throws IOException
+        {
+          try {
+            super.close();
+          } finally {
+            Handle.this.close();
+          }
+        }
+      };
+    }
+
+    @Override
+    public void close()
+    {
+      synchronized (this) {
+        if (this.closed) {
+          return;
+        }
+        this.closed = true;
+      }
+      this.cache.release(this.entry);
+    }
+  }
+
+  private static final class HandleStream extends InputStream
+  {
+    private final Handle handle;
+    private final long end;
+    private long position;
+
+    HandleStream(
+      final Handle inHandle,
+      final long inPosition,
+      final long inEnd)
+    {
+      this.handle = inHandle;
+      this.position = inPosition;
+      this.end = inEnd;
+    }
+
+    @Override
+    public int read()
+      throws IOException
+    {
+      final var buffer = new byte[1];
+      final var count = this.read(buffer, 0, 1);
+      if (count <= 0) {
+        return -1;
+      }
+      return buffer[0] & 0xff;
+    }
+
+    @Override
+    public int read(
+      final byte[] buffer,
+      final int offset,
+      final int length)
+      throws IOException
+    {
+      Objects.checkFromIndexSize(offset, length, buffer.length);
+
+      final var available = this.end - this.position;
+      if (available <= 0L) {
+        return -1;
+      }
+      if (length == 0) {
+        return 0;
+      }
+
+      final var target =
+        ByteBuffer.wrap(buffer, offset, (int) Math.min(length, available));
+      final var count =
+        this.handle.channel().read(target, this.position);
+      if (count < 0) {
+        return -1;
+      }
+      this.position += count;
+      return count;
+    }
+  }
+}
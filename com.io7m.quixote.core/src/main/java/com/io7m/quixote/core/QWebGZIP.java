@@ -0,0 +1,153 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Functions to GZIP-compress response bodies at a configurable level.
+ */
+
+final class QWebGZIP
+{
+  /**
+   * The default compression level.
+   */
+
+  static final int DEFAULT_LEVEL = 6;
+
+  /**
+   * The default size in bytes below which bodies are not compressed.
+   */
+
+  static final long DEFAULT_MINIMUM_SIZE = 0L;
+
+  private QWebGZIP()
+  {
+
+  }
+
+  /**
+   * Check that the given compression level is valid.
+   *
+   * @param level The level
+   *
+   * @return The level
+   *
+   * @throws IllegalArgumentException If the level is not in {@code [1, 9]}
+   */
+
+  static int checkLevel(
+    final int level)
+  {
+    if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException(
+        String.format(
+          "GZIP compression level %d must be in the range [%d, %d]",
+          Integer.valueOf(level),
+          Integer.valueOf(Deflater.BEST_SPEED),
+          Integer.valueOf(Deflater.BEST_COMPRESSION)
+        )
+      );
+    }
+    return level;
+  }
+
+  /**
+   * Check that the given minimum size is valid.
+   *
+   * @param size The size
+   *
+   * @return The size
+   *
+   * @throws IllegalArgumentException If the size is negative
+   */
+
+  static long checkMinimumSize(
+    final long size)
+  {
+    if (size < 0L) {
+      throw new IllegalArgumentException(
+        String.format(
+          "GZIP minimum size %d must be non-negative",
+          Long.valueOf(size)
+        )
+      );
+    }
+    return size;
+  }
+
+  /**
+   * Open a GZIP stream at the given compression level.
+   *
+   * @param output The underlying output stream
+   * @param level  The compression level
+   *
+   * @return A compressing stream
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static GZIPOutputStream open(
+    final OutputStream output,
+    final int level)
+    throws IOException
+  {
+    return new LevelGZIPOutputStream(output, level);
+  }
+
+  /**
+   * Compress the given data.
+   *
+   * @param data  The data
+   * @param level The compression level
+   *
+   * @return The compressed data
+   */
+
+  static byte[] compress(
+    final byte[] data,
+    final int level)
+  {
+    final var output = new ByteArrayOutputStream(data.length / 2 + 32);
+    try (var gzip = open(output, level)) {
+      gzip.write(data);
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return output.toByteArray();
+  }
+
+  private static final class LevelGZIPOutputStream
+    extends GZIPOutputStream
+  {
+    LevelGZIPOutputStream(
+      final OutputStream output,
+      final int level)
+      throws IOException
+    {
+      super(output);
+      this.def.setLevel(level);
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * The HTTP {@code Date} header. The formatted header line is cached and
+ * reformatted at most once per second, rather than for every response.
+ */
+
+final class QWebHTTPDate
+{
+  private static final DateTimeFormatter DATE_FORMAT =
+    DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+      .withZone(ZoneOffset.UTC);
+
+  private static volatile Line CURRENT =
+    format(Instant.now().getEpochSecond());
+
+  private QWebHTTPDate()
+  {
+
+  }
+
+  private record Line(
+    long second,
+    String text,
+    byte[] bytes,
+    ByteBuffer buffer)
+  {
+
+  }
+
+  private static Line format(
+    final long second)
+  {
+    final var text =
+      DATE_FORMAT.format(Instant.ofEpochSecond(second));
+    final var bytes =
+      "Date: %s\r\n".formatted(text).getBytes(US_ASCII);
+    final var buffer =
+      ByteBuffer.allocateDirect(bytes.length);
+
+    buffer.put(bytes);
+    buffer.flip();
+    return new Line(second, text, bytes, buffer.asReadOnlyBuffer());
+  }
+
+  private static Line current()
+  {
+    final var second = System.currentTimeMillis() / 1000L;
+    var line = CURRENT;
+    if (line.second != second) {
+      line = format(second);
+      CURRENT = line;
+    }
+    return line;
+  }
+
+  /**
+   * @return The current date, formatted for use in a {@code Date} header
+   */
+
+  static String text()
+  {
+    return current().text;
+  }
+
+  /**
+   * @return The complete current {@code Date} header line, including the
+   * trailing CRLF; the array must not be modified
+   */
+
+  static byte[] lineBytes()
+  {
+    return current().bytes;
+  }
+
+  /**
+   * @return A fresh read-only view of the complete current {@code Date}
+   * header line, including the trailing CRLF
+   */
+
+  static ByteBuffer lineBuffer()
+  {
+    return current().buffer.duplicate();
+  }
+}
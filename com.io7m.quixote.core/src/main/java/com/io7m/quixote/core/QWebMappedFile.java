@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * A read-only file mapped into memory as a series of windows, so that files
+ * larger than the maximum size of a single buffer can be mapped. Regions
+ * that lie within a single window are returned as slices of the mapping,
+ * and the rare regions that cross a window boundary are copied with
+ * positional reads. Regions may be read concurrently from any number of
+ * threads.
+ */
+
+final class QWebMappedFile implements Closeable
+{
+  /**
+   * The size of each mapped window.
+   */
+
+  static final long WINDOW_SIZE = 1L << 30;
+
+  private final FileChannel channel;
+  private final MappedByteBuffer[] windows;
+  private final long size;
+
+  private QWebMappedFile(
+    final FileChannel inChannel,
+    final MappedByteBuffer[] inWindows,
+    final long inSize)
+  {
+    this.channel = Objects.requireNonNull(inChannel, "channel");
+    this.windows = Objects.requireNonNull(inWindows, "windows");
+    this.size = inSize;
+  }
+
+  /**
+   * Map the given file.
+   *
+   * @param file The file
+   *
+   * @return The mapped file
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static QWebMappedFile open(
+    final Path file)
+    throws IOException
+  {
+    final var channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      final var size = channel.size();
+      final var count = Math.toIntExact((size + WINDOW_SIZE - 1L) / WINDOW_SIZE);
+      final var windows = new MappedByteBuffer[count];
+      for (int index = 0; index < count; ++index) {
+        final var base = index * WINDOW_SIZE;
+        windows[index] = channel.map(
+          FileChannel.MapMode.READ_ONLY,
+          base,
+          Math.min(WINDOW_SIZE, size - base)
+        );
+      }
+      return new QWebMappedFile(channel, windows, size);
+    } catch (final IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return The size of the mapped file
+   */
+
+  long size()
+  {
+    return this.size;
+  }
+
+  /**
+   * Obtain a region of the file. The returned buffer has a position of
+   * zero and a limit of {@code length}, and is not shared with any other
+   * caller.
+   *
+   * @param offset The offset of the region
+   * @param length The length of the region
+   *
+   * @return The region
+   *
+   * @throws IOException On I/O errors, or if the region extends beyond
+   *                     the end of the file
+   */
+
+  ByteBuffer region(
+    final long offset,
+    final int length)
+    throws IOException
+  {
+    if (offset < 0L || length < 0 || offset > this.size - length) {
+      throw new EOFException(
+        "Region [%d, %d) extends beyond the end of the file (%d)."
+          .formatted(
+            Long.valueOf(offset),
+            Long.valueOf(offset + length),
+            Long.valueOf(this.size))
+      );
+    }
+
+    final var windowIndex = (int) (offset / WINDOW_SIZE);
+    final var windowOffset = (int) (offset - windowIndex * WINDOW_SIZE);
+    if (length == 0) {
+      return ByteBuffer.allocate(0);
+    }
+
+    final var window = this.windows[windowIndex];
+    if (windowOffset + length <= window.capacity()) {
+      return window.slice(windowOffset, length);
+    }
+
+    final var copy = ByteBuffer.allocate(length);
+    while (copy.hasRemaining()) {
+      final var read =
+        this.channel.read(copy, offset + copy.position());
+      if (read < 0) {
+        throw new EOFException("Unexpected end of file.");
+      }
+    }
+    return copy.flip();
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    this.channel.close();
+  }
+}
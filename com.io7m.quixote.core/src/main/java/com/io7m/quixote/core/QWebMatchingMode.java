@@ -0,0 +1,44 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+/**
+ * The way in which queued responses are matched against requests.
+ *
+ * @since 1.4.0
+ */
+
+public enum QWebMatchingMode
+{
+  /**
+   * Responses are indexed by method and by the literal prefix of their
+   * paths, and the matchers of the responses that might match a request are
+   * evaluated one at a time.
+   */
+
+  INDEXED,
+
+  /**
+   * The matchers of all responses are compiled into a single automaton that
+   * yields every matching response in one pass over a request. Responses
+   * whose matchers use features that cannot be compiled are matched as in
+   * {@link #INDEXED} mode.
+   */
+
+  AUTOMATON
+}
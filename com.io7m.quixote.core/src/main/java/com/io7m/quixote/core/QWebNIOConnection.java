@@ -0,0 +1,854 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Locale.ROOT;
+
+/**
+ * A single HTTP/1.1 connection serviced by an event loop.
+ */
+
+final class QWebNIOConnection
+{
+  private static final int MAXIMUM_HEAD_SIZE = 8192;
+
+  private final QWebNIOEventLoop loop;
+  private final SocketChannel channel;
+  private final SelectionKey key;
+  private final String remoteAddress;
+  private ByteBuffer input;
+  private Request request;
+  private Request responding;
+  private QWebNIOResponseWriter writer;
+  private QWebRequestReceived parked;
+  private boolean dispatching;
+  private long writerDelay;
+  private boolean keepAlive;
+  private boolean closed;
+
+  QWebNIOConnection(
+    final QWebNIOEventLoop inLoop,
+    final SocketChannel inChannel,
+    final SelectionKey inKey)
+    throws IOException
+  {
+    this.loop = inLoop;
+    this.channel = inChannel;
+    this.key = inKey;
+    this.input = ByteBuffer.allocate(1024);
+    this.remoteAddress = remoteAddressOf(inChannel);
+  }
+
+  private static String remoteAddressOf(
+    final SocketChannel channel)
+    throws IOException
+  {
+    final var address = channel.getRemoteAddress();
+    if (address instanceof final InetSocketAddress inet) {
+      final var host = inet.getAddress();
+      if (host.isLoopbackAddress() || host.isAnyLocalAddress()) {
+        return "127.0.0.1";
+      }
+      return host.getHostAddress();
+    }
+    return "127.0.0.1";
+  }
+
+  void onReadable()
+    throws IOException
+  {
+    final var buffer = this.loop.readBuffer();
+    buffer.clear();
+
+    final var count = this.channel.read(buffer);
+    if (count < 0) {
+      this.close();
+      return;
+    }
+
+    buffer.flip();
+    this.append(buffer);
+    this.process();
+  }
+
+  void onWritable()
+    throws IOException
+  {
+    this.process();
+  }
+
+  void onWakeup()
+    throws IOException
+  {
+    this.process();
+  }
+
+  /**
+   * Try again to pass a parked request to the asynchronous request
+   * callback. The connection remains parked, neither reading requests nor
+   * writing its response, until the callback's queue has room. If work for
+   * the connection is still running on a worker thread, the connection
+   * tries again once the work has completed instead.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  private void onSpaceAvailable()
+    throws IOException
+  {
+    if (this.closed || this.dispatching || this.parked == null) {
+      return;
+    }
+
+    if (this.submitParked()) {
+      this.process();
+    }
+  }
+
+  /*
+   * Resume the connection once work offloaded to a worker thread has
+   * completed. The worker may have parked the request, and any
+   * notification that the queue had room while the worker was running
+   * has been ignored, so a parked request is submitted again here.
+   */
+
+  private void onDispatched()
+    throws IOException
+  {
+    this.dispatching = false;
+    if (this.closed) {
+      if (this.writer != null) {
+        this.writer.close();
+        this.writer = null;
+      }
+      return;
+    }
+
+    if (this.parked == null || this.submitParked()) {
+      this.process();
+    }
+  }
+
+  private boolean submitParked()
+  {
+    final var state = this.loop.state();
+    if (!state.requestSubmitWithoutWaiting(this.parked, this::requestResume)) {
+      return false;
+    }
+    this.parked = null;
+    return true;
+  }
+
+  private void requestResume()
+  {
+    this.loop.execute(this, this::onSpaceAvailable);
+  }
+
+  private void offload(
+    final Runnable work)
+  {
+    this.dispatching = true;
+    this.key.interestOps(0);
+    this.loop.offload(this, work, this::onDispatched);
+  }
+
+  private void append(
+    final ByteBuffer buffer)
+  {
+    if (this.input.remaining() < buffer.remaining()) {
+      final var required =
+        this.input.position() + buffer.remaining();
+      final var grown =
+        ByteBuffer.allocate(Math.max(required, this.input.capacity() * 2));
+      this.input.flip();
+      grown.put(this.input);
+      this.input = grown;
+    }
+    this.input.put(buffer);
+  }
+
+  private void consume(
+    final int count)
+  {
+    this.input.flip();
+    this.input.position(count);
+    this.input.compact();
+  }
+
+  private void process()
+    throws IOException
+  {
+    while (!this.closed) {
+      if (this.dispatching || this.parked != null) {
+        this.key.interestOps(0);
+        return;
+      }
+
+      if (this.writer != null) {
+        if (this.writerDelay > 0L) {
+          this.key.interestOps(0);
+          this.loop.wakeAfter(this, this.writerDelay);
+          this.writerDelay = 0L;
+          return;
+        }
+
+        if (!this.writer.write(this.channel)) {
+          final var delay = this.writer.throttleDelay();
+          if (delay > 0L) {
+            this.key.interestOps(0);
+            this.loop.wakeAfter(this, delay);
+          } else {
+            this.key.interestOps(SelectionKey.OP_WRITE);
+          }
+          return;
+        }
+
+        this.finishResponse();
+        if (!this.keepAlive) {
+          this.close();
+          return;
+        }
+        continue;
+      }
+
+      if (!this.readRequest()) {
+        this.key.interestOps(SelectionKey.OP_READ);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Read as much of the current request as is available.
+   *
+   * @return {@code true} if a complete request was read and a response is
+   * ready to be written, or if the connection is waiting for part of the
+   * body to be written to a temporary file
+   */
+
+  private boolean readRequest()
+    throws IOException
+  {
+    if (this.request == null) {
+      final var end = this.findHeadEnd();
+      if (end < 0) {
+        if (this.input.position() >= MAXIMUM_HEAD_SIZE) {
+          this.fail(431, "Request header fields too large.");
+          return true;
+        }
+        return false;
+      }
+
+      this.request =
+        Request.parse(this.input.array(), end, this.remoteAddress);
+      this.consume(end + 4);
+
+      if (this.request == null) {
+        this.fail(400, "BAD REQUEST: Syntax error.");
+        return true;
+      }
+    }
+
+    final var remaining = this.request.bodyRemaining;
+    if (remaining > 0L) {
+      final var available = this.input.position();
+      if (available == 0) {
+        return false;
+      }
+
+      final var count = (int) Math.min(available, remaining);
+      if (!this.request.bodyInMemory(count)) {
+        final var current = this.request;
+        final var data = Arrays.copyOf(this.input.array(), count);
+        current.bodyStream(count);
+        this.consume(count);
+        this.offload(() -> current.bodyWriteFile(data));
+        return true;
+      }
+
+      this.request.bodyWrite(this.input.array(), count);
+      this.consume(count);
+
+      if (this.request.bodyRemaining > 0L) {
+        return false;
+      }
+    }
+
+    this.dispatch();
+    return true;
+  }
+
+  private int findHeadEnd()
+  {
+    final var data = this.input.array();
+    final var limit = this.input.position() - 3;
+    for (int index = 0; index < limit; ++index) {
+      if (data[index] == '\r'
+          && data[index + 1] == '\n'
+          && data[index + 2] == '\r'
+          && data[index + 3] == '\n') {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  /*
+   * Dispatch a complete request. Evaluating the synchronous request
+   * callback and parsing a body that must be written to or read from a
+   * temporary file may block, and so are offloaded to a worker thread
+   * along with the rest of the response.
+   */
+
+  private void dispatch()
+  {
+    final var current = this.request;
+    this.request = null;
+    this.responding = current;
+    this.keepAlive = current.keepAlive();
+
+    final var state = this.loop.state();
+    if (state.hasRequestCallback() || current.parsesBlocking()) {
+      this.offload(() -> {
+        if (this.receive(state, current)) {
+          this.respond(state, current, false);
+        }
+      });
+      return;
+    }
+
+    if (this.receive(state, current)) {
+      this.respond(state, current, true);
+    }
+  }
+
+  /*
+   * Record the request and parse its body, producing an error response if
+   * the body cannot be parsed.
+   */
+
+  private boolean receive(
+    final QWebServerState state,
+    final Request current)
+  {
+    final var requestReceived =
+      state.requestReceived(current.method, current.path, current.headers);
+
+    final Map<String, String> files =
+      requestReceived != null ? requestReceived.files() : new HashMap<>();
+
+    try {
+      current.parseBody(files);
+      return true;
+    } catch (final Exception e) {
+      this.writer =
+        QWebNIOResponseWriter.forText(
+          this.loop,
+          503,
+          QWebServerState.failedResponse(current.method, current.path, e),
+          current.isHead(),
+          this.keepAlive
+        );
+      return false;
+    } finally {
+      this.requestParsed(state, requestReceived);
+    }
+  }
+
+  /*
+   * Prepare the response to the request. Responses whose bodies are read
+   * from files or streams are prepared on a worker thread, unless the
+   * caller is already running on one.
+   */
+
+  private void respond(
+    final QWebServerState state,
+    final Request current,
+    final boolean onLoop)
+  {
+    final var taken =
+      state.takeResponse(current.method, current.path);
+
+    if (taken.isEmpty()) {
+      this.writer =
+        QWebNIOResponseWriter.forText(
+          this.loop,
+          503,
+          QWebServerState.noMatchingResponses(current.method, current.path),
+          current.isHead(),
+          this.keepAlive
+        );
+      return;
+    }
+
+    final var response = taken.get();
+    if (onLoop && response.hasBlockingBody()) {
+      this.offload(() -> {
+        this.writer = this.responseWriter(state, current, response);
+      });
+      return;
+    }
+    this.writer = this.responseWriter(state, current, response);
+  }
+
+  /*
+   * Mark the request as parsed without blocking the loop. If the request
+   * cannot be passed to the asynchronous request callback because the
+   * callback's queue is full, the connection is parked until the queue has
+   * room, which applies backpressure to the client in the same way that a
+   * blocked request thread does.
+   */
+
+  private void requestParsed(
+    final QWebServerState state,
+    final QWebRequestReceived requestReceived)
+  {
+    final var submitted =
+      state.requestParsedWithoutWaiting(requestReceived, this::requestResume);
+    if (!submitted) {
+      this.parked = requestReceived;
+    }
+  }
+
+  private QWebNIOResponseWriter responseWriter(
+    final QWebServerState state,
+    final Request current,
+    final QMutableResponse response)
+  {
+    this.writerDelay = nanosOf(response.sampleDelay());
+
+    final Path path;
+    try {
+      path = response.fileFor(current.path);
+    } catch (final NoSuchFileException e) {
+      return QWebNIOResponseWriter.forText(
+        this.loop,
+        404,
+        QWebServerState.noSuchFile(current.method, current.path),
+        current.isHead(),
+        this.keepAlive
+      );
+    }
+
+    QWebFileCache.Handle file = null;
+    try {
+      if (path != null) {
+        file = state.openFile(path);
+      }
+      return QWebNIOResponseWriter.forResponse(
+        this.loop,
+        state,
+        response,
+        file,
+        current.range(),
+        current.isHead(),
+        this.keepAlive,
+        current.acceptsGzip()
+      ).throttle(state.bandwidthFor(response));
+    } catch (final IOException | UncheckedIOException e) {
+      if (file != null) {
+        file.close();
+      }
+      return QWebNIOResponseWriter.forText(
+        this.loop,
+        503,
+        QWebServerState.failedResponse(current.method, current.path, e),
+        current.isHead(),
+        this.keepAlive
+      );
+    }
+  }
+
+  private static long nanosOf(
+    final Duration delay)
+  {
+    try {
+      return delay.toNanos();
+    } catch (final ArithmeticException e) {
+      return Long.MAX_VALUE;
+    }
+  }
+
+  private void fail(
+    final int status,
+    final String message)
+  {
+    this.request = null;
+    this.keepAlive = false;
+    this.writer =
+      QWebNIOResponseWriter.forText(this.loop, status, message, false, false);
+  }
+
+  private void finishResponse()
+  {
+    this.writer.close();
+    this.writer = null;
+
+    if (this.responding != null) {
+      this.responding.close();
+      this.responding = null;
+    }
+  }
+
+  void close()
+  {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+
+    if (this.writer != null) {
+      this.writer.close();
+      this.writer = null;
+    }
+    if (this.request != null) {
+      this.request.close();
+      this.request = null;
+    }
+    if (this.responding != null) {
+      this.responding.close();
+      this.responding = null;
+    }
+
+    this.key.cancel();
+    try {
+      this.channel.close();
+    } catch (final IOException e) {
+      // Ignored
+    }
+  }
+
+  /**
+   * A request being read from the connection. Request bodies are handled in
+   * the same manner as NanoHTTPD: the body of a {@code PUT} request is saved
+   * to a temporary file, and the body of a {@code POST} request that is not
+   * form data is exposed as {@code postData}. As in NanoHTTPD, bodies of up
+   * to {@link #MEMORY_STORE_LIMIT} bytes are buffered in memory, and larger
+   * bodies are streamed to a temporary file as they are read. Temporary
+   * files are only ever written and read on worker threads, and the methods
+   * that do so are synchronized with {@link #close()} so that a connection
+   * closed by the event loop while a worker is using the file cannot leak
+   * it.
+   */
+
+  private static final class Request
+  {
+    private static final int MEMORY_STORE_LIMIT = 1024;
+
+    private final String method;
+    private final String path;
+    private final String protocol;
+    private final Map<String, String> headers;
+    private long bodyRemaining;
+    private ByteArrayOutputStream bodyData;
+    private boolean bodyStreaming;
+    private Path bodyFile;
+    private OutputStream bodyOutput;
+    private IOException bodyFailure;
+    private boolean closed;
+
+    private Request(
+      final String inMethod,
+      final String inPath,
+      final String inProtocol,
+      final Map<String, String> inHeaders,
+      final long inBodyLength)
+    {
+      this.method = inMethod;
+      this.path = inPath;
+      this.protocol = inProtocol;
+      this.headers = inHeaders;
+      this.bodyRemaining = inBodyLength;
+    }
+
+    static Request parse(
+      final byte[] data,
+      final int length,
+      final String remoteAddress)
+    {
+      final var lines =
+        new String(data, 0, length, ISO_8859_1).split("\r\n");
+      final var requestLine =
+        lines[0].trim().split("\\s+");
+
+      if (requestLine.length < 2) {
+        return null;
+      }
+
+      final var method =
+        requestLine[0].toUpperCase(ROOT);
+      final var uri =
+        requestLine[1];
+      final var protocol =
+        requestLine.length > 2 ? requestLine[2] : "HTTP/1.1";
+
+      final var query = uri.indexOf('?');
+      final var path =
+        decodePercent(query >= 0 ? uri.substring(0, query) : uri);
+
+      final var headers = new HashMap<String, String>();
+      for (int index = 1; index < lines.length; ++index) {
+        final var line = lines[index];
+        final var colon = line.indexOf(':');
+        if (colon >= 0) {
+          headers.put(
+            line.substring(0, colon).trim().toLowerCase(ROOT),
+            line.substring(colon + 1).trim()
+          );
+        }
+      }
+
+      headers.put("remote-addr", remoteAddress);
+      headers.put("http-client-ip", remoteAddress);
+
+      final long bodyLength;
+      try {
+        bodyLength =
+          Long.parseLong(headers.getOrDefault("content-length", "0"));
+      } catch (final NumberFormatException e) {
+        return null;
+      }
+      if (bodyLength < 0L) {
+        return null;
+      }
+
+      return new Request(method, path, protocol, headers, bodyLength);
+    }
+
+    private static String decodePercent(
+      final String text)
+    {
+      try {
+        return URLDecoder.decode(text, UTF_8);
+      } catch (final IllegalArgumentException e) {
+        return text;
+      }
+    }
+
+    boolean isHead()
+    {
+      return "HEAD".equals(this.method);
+    }
+
+    boolean keepAlive()
+    {
+      final var connection = this.headers.get("connection");
+      return "HTTP/1.1".equals(this.protocol)
+             && (connection == null
+                 || !connection.toLowerCase(ROOT).contains("close"));
+    }
+
+    boolean acceptsGzip()
+    {
+      final var accept = this.headers.get("accept-encoding");
+      return accept != null && accept.contains("gzip");
+    }
+
+    String range()
+    {
+      return QWebByteRanges.requestedRange(
+        this.method,
+        this.headers.get("range"),
+        this.headers.get("if-range")
+      );
+    }
+
+    private boolean hasBody()
+    {
+      return "PUT".equals(this.method) || "POST".equals(this.method);
+    }
+
+    /**
+     * @param count The number of body bytes that have been read
+     *
+     * @return {@code true} if the bytes can be buffered in memory, or are
+     * discarded; {@code false} if they must be written to the temporary
+     * file
+     */
+
+    boolean bodyInMemory(
+      final int count)
+    {
+      if (!this.hasBody()) {
+        return true;
+      }
+      if (this.bodyStreaming) {
+        return false;
+      }
+      final var size = this.bodyData == null ? 0 : this.bodyData.size();
+      return size + (long) count <= MEMORY_STORE_LIMIT;
+    }
+
+    void bodyWrite(
+      final byte[] data,
+      final int count)
+    {
+      this.bodyRemaining -= count;
+
+      if (this.hasBody()) {
+        if (this.bodyData == null) {
+          this.bodyData = new ByteArrayOutputStream();
+        }
+        this.bodyData.write(data, 0, count);
+      }
+    }
+
+    /**
+     * Note that the given number of body bytes will be written to the
+     * temporary file by {@link #bodyWriteFile(byte[])}. This method is
+     * called on the event loop.
+     */
+
+    void bodyStream(
+      final int count)
+    {
+      this.bodyRemaining -= count;
+      this.bodyStreaming = true;
+    }
+
+    /**
+     * Write part of the body to the temporary file, creating the file and
+     * moving any body buffered in memory into it if necessary. This method
+     * is called on a worker thread. A failure is reported when the body is
+     * parsed.
+     */
+
+    synchronized void bodyWriteFile(
+      final byte[] data)
+    {
+      if (this.closed || this.bodyFailure != null) {
+        return;
+      }
+
+      try {
+        if (this.bodyOutput == null) {
+          this.bodyFile = Files.createTempFile("quixote-", ".tmp");
+          this.bodyOutput = Files.newOutputStream(this.bodyFile);
+          if (this.bodyData != null) {
+            this.bodyData.writeTo(this.bodyOutput);
+            this.bodyData = null;
+          }
+        }
+        this.bodyOutput.write(data);
+      } catch (final IOException e) {
+        this.bodyFailure = e;
+      }
+    }
+
+    /**
+     * @return {@code true} if parsing the body requires file I/O
+     */
+
+    boolean parsesBlocking()
+    {
+      return "PUT".equals(this.method) || this.bodyStreaming;
+    }
+
+    synchronized void parseBody(
+      final Map<String, String> files)
+      throws IOException
+    {
+      if (this.closed) {
+        throw new IOException("Request is closed.");
+      }
+      if (this.bodyFailure != null) {
+        throw this.bodyFailure;
+      }
+      if (this.bodyOutput != null) {
+        this.bodyOutput.close();
+      }
+
+      switch (this.method) {
+        case "PUT" -> {
+          if (this.bodyFile == null) {
+            this.bodyFile = Files.createTempFile("quixote-", ".tmp");
+            try (var output = Files.newOutputStream(this.bodyFile)) {
+              if (this.bodyData != null) {
+                this.bodyData.writeTo(output);
+              }
+            }
+          }
+          files.put("content", this.bodyFile.toString());
+        }
+        case "POST" -> {
+          final var contentType =
+            this.headers.getOrDefault("content-type", "");
+          if (contentType.startsWith("multipart/form-data")
+              || contentType.startsWith("application/x-www-form-urlencoded")) {
+            return;
+          }
+
+          final String text;
+          if (this.bodyFile != null) {
+            text = new String(Files.readAllBytes(this.bodyFile), UTF_8);
+          } else if (this.bodyData != null) {
+            text = this.bodyData.toString(UTF_8);
+          } else {
+            text = "";
+          }
+          if (!text.isEmpty()) {
+            files.put("postData", text);
+          }
+        }
+        default -> {
+          // Nothing to parse.
+        }
+      }
+    }
+
+    synchronized void close()
+    {
+      this.closed = true;
+
+      try {
+        if (this.bodyOutput != null) {
+          this.bodyOutput.close();
+        }
+      } catch (final IOException e) {
+        // Ignored
+      }
+
+      try {
+        if (this.bodyFile != null) {
+          Files.deleteIfExists(this.bodyFile);
+        }
+      } catch (final IOException e) {
+        // Ignored
+      }
+    }
+  }
+}
@@ -0,0 +1,433 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A single-threaded event loop servicing a set of connections. Connections
+ * that must wait (for example, to pace the rate at which they write) ask
+ * the loop to wake them at a later time, and so no thread is ever blocked
+ * on behalf of a single connection. Work that may block (such as evaluating
+ * the synchronous request callback, or opening files) is offloaded to a
+ * shared worker executor, and the connection is resumed on the loop's own
+ * thread once the work has completed.
+ */
+
+final class QWebNIOEventLoop implements Closeable
+{
+  static final int BUFFER_SIZE = 16384;
+  private static final int BUFFER_POOL_MAXIMUM = 64;
+
+  private final QWebServerState state;
+  private final Executor workers;
+  private final Selector selector;
+  private final ConcurrentLinkedQueue<SocketChannel> incoming;
+  private final ConcurrentLinkedQueue<Task> tasks;
+  private final ByteBuffer readBuffer;
+  private final ArrayDeque<ByteBuffer> bufferPool;
+  private final PriorityQueue<Wakeup> wakeups;
+  private final Thread thread;
+  private long wakeupSequence;
+  private volatile boolean closed;
+
+  QWebNIOEventLoop(
+    final QWebServerState inState,
+    final Executor inWorkers,
+    final int index)
+    throws IOException
+  {
+    this.state =
+      inState;
+    this.workers =
+      inWorkers;
+    this.selector =
+      Selector.open();
+    this.incoming =
+      new ConcurrentLinkedQueue<>();
+    this.tasks =
+      new ConcurrentLinkedQueue<>();
+    this.readBuffer =
+      ByteBuffer.allocateDirect(BUFFER_SIZE);
+    this.bufferPool =
+      new ArrayDeque<>();
+    this.wakeups =
+      new PriorityQueue<>(
+        Comparator.comparingLong(Wakeup::deadline)
+          .thenComparingLong(Wakeup::sequence)
+      );
+    this.thread =
+      Thread.ofPlatform()
+        .name("com.io7m.quixote.nio.loop[%d]".formatted(Integer.valueOf(index)))
+        .daemon(true)
+        .unstarted(this::run);
+  }
+
+  QWebServerState state()
+  {
+    return this.state;
+  }
+
+  void start()
+  {
+    this.thread.start();
+  }
+
+  /**
+   * Register a newly accepted channel with this loop. This method may be
+   * called from any thread.
+   *
+   * @param channel The channel
+   */
+
+  void register(
+    final SocketChannel channel)
+  {
+    this.incoming.add(channel);
+    this.selector.wakeup();
+
+    if (this.closed) {
+      this.closeIncoming();
+    }
+  }
+
+  /**
+   * Run a task for a connection on the loop's own thread. If the task
+   * fails, the connection is closed. This method may be called from any
+   * thread.
+   *
+   * @param connection The connection
+   * @param task       The task
+   */
+
+  void execute(
+    final QWebNIOConnection connection,
+    final ConnectionTask task)
+  {
+    this.tasks.add(new Task(connection, task));
+    this.selector.wakeup();
+  }
+
+  /**
+   * Run work that may block on a worker thread, and then run the given
+   * continuation on the loop's own thread. If the work fails, the
+   * connection is closed instead. This method must only be called from the
+   * loop's own thread.
+   *
+   * @param connection   The connection
+   * @param work         The work
+   * @param continuation The continuation
+   */
+
+  void offload(
+    final QWebNIOConnection connection,
+    final Runnable work,
+    final ConnectionTask continuation)
+  {
+    try {
+      this.workers.execute(() -> {
+        try {
+          work.run();
+        } catch (final RuntimeException e) {
+          this.execute(connection, () -> {
+            throw e;
+          });
+          return;
+        }
+        this.execute(connection, continuation);
+      });
+    } catch (final RejectedExecutionException e) {
+      connection.close();
+    }
+  }
+
+  /**
+   * A task run for a connection on the loop's own thread.
+   */
+
+  interface ConnectionTask
+  {
+    /**
+     * Run the task.
+     *
+     * @throws IOException On I/O errors
+     */
+
+    void run()
+      throws IOException;
+  }
+
+  private record Task(
+    QWebNIOConnection connection,
+    ConnectionTask task)
+  {
+
+  }
+
+  /**
+   * @return The loop's shared direct read buffer
+   */
+
+  ByteBuffer readBuffer()
+  {
+    return this.readBuffer;
+  }
+
+  /**
+   * @return A direct buffer taken from the loop's buffer pool
+   */
+
+  ByteBuffer takeBuffer()
+  {
+    final var buffer = this.bufferPool.poll();
+    if (buffer != null) {
+      return buffer.clear();
+    }
+    return ByteBuffer.allocateDirect(BUFFER_SIZE);
+  }
+
+  /**
+   * Return a buffer to the loop's buffer pool.
+   *
+   * @param buffer The buffer
+   */
+
+  void returnBuffer(
+    final ByteBuffer buffer)
+  {
+    if (this.bufferPool.size() < BUFFER_POOL_MAXIMUM) {
+      this.bufferPool.push(buffer);
+    }
+  }
+
+  /**
+   * Arrange for a connection to be woken after the given delay. This method
+   * must only be called from the loop's own thread.
+   *
+   * @param connection The connection
+   * @param delay      The delay in nanoseconds
+   */
+
+  void wakeAfter(
+    final QWebNIOConnection connection,
+    final long delay)
+  {
+    final var now = System.nanoTime();
+    final var deadline = now + delay;
+    this.wakeups.add(
+      new Wakeup(
+        deadline < now ? Long.MAX_VALUE : deadline,
+        this.wakeupSequence++,
+        connection
+      )
+    );
+  }
+
+  private record Wakeup(
+    long deadline,
+    long sequence,
+    QWebNIOConnection connection)
+  {
+
+  }
+
+  private void run()
+  {
+    try {
+      while (!this.closed) {
+        this.select();
+        this.registerIncoming();
+        this.runTasks();
+
+        final var keys = this.selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          final var key = keys.next();
+          keys.remove();
+          this.handleKey(key);
+        }
+
+        this.runWakeups();
+      }
+    } catch (final IOException e) {
+      // The selector has failed; all connections are closed below.
+    } finally {
+      this.closeAll();
+    }
+  }
+
+  private void select()
+    throws IOException
+  {
+    final var next = this.wakeups.peek();
+    if (next == null) {
+      this.selector.select();
+      return;
+    }
+
+    final var remaining = next.deadline() - System.nanoTime();
+    if (remaining <= 0L) {
+      this.selector.selectNow();
+      return;
+    }
+
+    this.selector.select(Math.max(1L, (remaining + 999_999L) / 1_000_000L));
+  }
+
+  private void runWakeups()
+  {
+    final var now = System.nanoTime();
+    while (true) {
+      final var next = this.wakeups.peek();
+      if (next == null || next.deadline() - now > 0L) {
+        return;
+      }
+
+      this.wakeups.poll();
+      final var connection = next.connection();
+      try {
+        connection.onWakeup();
+      } catch (final IOException | RuntimeException e) {
+        connection.close();
+      }
+    }
+  }
+
+  private void runTasks()
+  {
+    while (true) {
+      final var next = this.tasks.poll();
+      if (next == null) {
+        return;
+      }
+
+      final var connection = next.connection();
+      try {
+        next.task().run();
+      } catch (final IOException | RuntimeException e) {
+        connection.close();
+      }
+    }
+  }
+
+  private void handleKey(
+    final SelectionKey key)
+  {
+    final var connection = (QWebNIOConnection) key.attachment();
+    try {
+      if (key.isValid() && key.isReadable()) {
+        connection.onReadable();
+      }
+      if (key.isValid() && key.isWritable()) {
+        connection.onWritable();
+      }
+    } catch (final IOException | RuntimeException e) {
+      connection.close();
+    }
+  }
+
+  private void registerIncoming()
+  {
+    while (true) {
+      final var channel = this.incoming.poll();
+      if (channel == null) {
+        return;
+      }
+
+      try {
+        channel.configureBlocking(false);
+        final var key = channel.register(this.selector, SelectionKey.OP_READ);
+        key.attach(new QWebNIOConnection(this, channel, key));
+      } catch (final IOException e) {
+        closeQuietly(channel);
+      }
+    }
+  }
+
+  private void closeIncoming()
+  {
+    while (true) {
+      final var channel = this.incoming.poll();
+      if (channel == null) {
+        return;
+      }
+      closeQuietly(channel);
+    }
+  }
+
+  private void closeAll()
+  {
+    this.wakeups.clear();
+    this.tasks.clear();
+
+    for (final var key : this.selector.keys()) {
+      final var connection = (QWebNIOConnection) key.attachment();
+      if (connection != null) {
+        connection.close();
+      } else {
+        closeQuietly(key.channel());
+      }
+    }
+
+    this.closeIncoming();
+
+    try {
+      this.selector.close();
+    } catch (final IOException e) {
+      // Ignored
+    }
+  }
+
+  private static void closeQuietly(
+    final Closeable closeable)
+  {
+    try {
+      closeable.close();
+    } catch (final IOException e) {
+      // Ignored
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    this.closed = true;
+
+    if (this.thread.getState() == Thread.State.NEW) {
+      this.closeAll();
+      return;
+    }
+
+    this.selector.wakeup();
+    try {
+      this.thread.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
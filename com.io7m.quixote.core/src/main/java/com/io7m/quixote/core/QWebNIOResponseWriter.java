@@ -0,0 +1,833 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A response being written to a non-blocking channel. The status line and
+ * headers are written first, followed by the body, which is streamed through
+ * a pooled direct buffer, optionally compressed and chunked. Responses that
+ * have been serialized (and, if necessary, compressed) in advance are written
+ * directly from their shared buffers, and uncompressed file bodies are
+ * transferred directly from the file to the channel. Partial responses are
+ * assembled from slices of fixed bodies or regions of files. Responses with
+ * limited bandwidth are paced by a token bucket; a writer that has run out
+ * of tokens reports how long its connection should wait before writing
+ * again.
+ */
+
+final class QWebNIOResponseWriter
+{
+  private static final byte[] CRLF =
+    "\r\n".getBytes(US_ASCII);
+  private static final byte[] LAST_CHUNK =
+    "0\r\n\r\n".getBytes(US_ASCII);
+
+  private final QWebNIOEventLoop loop;
+  private final ReadableByteChannel body;
+  private final QWebFileCache.Handle file;
+  private final ArrayDeque<Segment> segments;
+  private final boolean chunked;
+  private long position;
+  private long remaining;
+  private ByteBuffer staging;
+  private ByteBuffer[] pending;
+  private boolean finished;
+  private QWebTokenBucket bucket;
+
+  private QWebNIOResponseWriter(
+    final QWebNIOEventLoop inLoop,
+    final ByteBuffer[] inHead,
+    final ReadableByteChannel inBody,
+    final long inLength)
+  {
+    this.loop = inLoop;
+    this.body = inBody;
+    this.chunked = inBody != null && inLength < 0L;
+    this.file = null;
+    this.segments = null;
+    this.remaining = inLength;
+    this.pending = inHead;
+    this.finished = inBody == null;
+  }
+
+  private QWebNIOResponseWriter(
+    final QWebNIOEventLoop inLoop,
+    final QWebFileCache.Handle inFile,
+    final ByteBuffer inHead,
+    final List<Segment> inSegments)
+  {
+    this.loop = inLoop;
+    this.body = null;
+    this.chunked = false;
+    this.file = inFile;
+    this.segments = new ArrayDeque<>(inSegments);
+    this.remaining = 0L;
+    this.pending = new ByteBuffer[]{inHead};
+    this.finished = false;
+  }
+
+  /**
+   * A part of a file-backed body.
+   */
+
+  private sealed interface Segment
+  {
+    /**
+     * Bytes written from a buffer.
+     *
+     * @param buffer The buffer
+     */
+
+    record Bytes(ByteBuffer buffer) implements Segment
+    {
+
+    }
+
+    /**
+     * Bytes transferred from the file.
+     *
+     * @param position The position of the first byte in the file
+     * @param count    The number of bytes
+     */
+
+    record Region(long position, long count) implements Segment
+    {
+
+    }
+  }
+
+  private QWebNIOResponseWriter(
+    final QWebNIOEventLoop inLoop,
+    final ByteBuffer inHead,
+    final ReadableByteChannel inBody,
+    final long inLength)
+  {
+    this(inLoop, new ByteBuffer[]{inHead}, inBody, inLength);
+  }
+
+  static QWebNIOResponseWriter forText(
+    final QWebNIOEventLoop loop,
+    final int status,
+    final String text,
+    final boolean head,
+    final boolean keepAlive)
+  {
+    final var data = text.getBytes(UTF_8);
+    final var headText =
+      startHead(status, "text/plain")
+        .append(keepAlive ? "Connection: keep-alive\r\n" : "Connection: close\r\n")
+        .append("Content-Length: ")
+        .append(data.length)
+        .append("\r\n\r\n");
+
+    final var headBytes = headText.toString().getBytes(UTF_8);
+    if (head) {
+      return new QWebNIOResponseWriter(loop, ByteBuffer.wrap(headBytes), null, 0L);
+    }
+
+    final var buffer = ByteBuffer.allocate(headBytes.length + data.length);
+    buffer.put(headBytes);
+    buffer.put(data);
+    buffer.flip();
+    return new QWebNIOResponseWriter(loop, buffer, null, 0L);
+  }
+
+  static QWebNIOResponseWriter forResponse(
+    final QWebNIOEventLoop loop,
+    final QWebServerState state,
+    final QMutableResponse response,
+    final QWebFileCache.Handle file,
+    final String range,
+    final boolean head,
+    final boolean keepAlive,
+    final boolean gzipAccepted)
+  {
+    final var headers =
+      response.headers();
+    final var contentLength =
+      file != null ? file.size() : response.contentLength();
+
+    if (range != null && QWebByteRanges.appliesTo(response)) {
+      final var bytes = file == null ? response.fixedData() : null;
+      if (file != null || bytes != null) {
+        final var ranges = QWebByteRanges.parse(range, contentLength);
+        if (ranges.isPresent()) {
+          return forRanges(
+            loop,
+            response,
+            file,
+            bytes,
+            contentLength,
+            ranges.get(),
+            head,
+            keepAlive
+          );
+        }
+      }
+    }
+    final var gzip =
+      state.shouldCompress(response, contentLength, gzipAccepted);
+
+    if (file == null) {
+      final var wire = state.wireFor(response, gzip);
+      if (wire != null) {
+        return new QWebNIOResponseWriter(
+          loop,
+          wire.buffers(keepAlive, head),
+          null,
+          0L
+        );
+      }
+    }
+
+    final InputStream data;
+    final long length;
+    if (file != null) {
+      data = null;
+      length = contentLength;
+    } else {
+      data = response.data();
+      length = data == null ? 0L : contentLength;
+    }
+
+    final var headText =
+      startHead(response.statusCode(), response.contentType());
+
+    for (final var entry : headers.entrySet()) {
+      headText.append(entry.getKey())
+        .append(": ")
+        .append(entry.getValue())
+        .append("\r\n");
+    }
+
+    if (!headers.containsKey("connection")) {
+      headText.append(keepAlive ? "Connection: keep-alive\r\n" : "Connection: close\r\n");
+    }
+
+    final long bodyLength;
+    if (gzip) {
+      headText.append("Content-Encoding: gzip\r\n");
+      if (!head) {
+        headText.append("Transfer-Encoding: chunked\r\n");
+      }
+      bodyLength = -1L;
+    } else if (length < 0L) {
+      if (!head) {
+        headText.append("Transfer-Encoding: chunked\r\n");
+      }
+      bodyLength = -1L;
+    } else {
+      if (!headers.containsKey("content-length")) {
+        headText.append("Content-Length: ")
+          .append(length)
+          .append("\r\n");
+      }
+      bodyLength = length;
+    }
+
+    headText.append("\r\n");
+
+    final var headBuffer =
+      ByteBuffer.wrap(headText.toString().getBytes(UTF_8));
+
+    if (file != null) {
+      if (head) {
+        file.close();
+        return new QWebNIOResponseWriter(loop, headBuffer, null, 0L);
+      }
+      if (gzip) {
+        return new QWebNIOResponseWriter(
+          loop,
+          headBuffer,
+          new GZIPChannel(file.stream(), state.gzipLevel()),
+          bodyLength
+        );
+      }
+      return new QWebNIOResponseWriter(
+        loop,
+        file,
+        headBuffer,
+        List.of(new Segment.Region(0L, bodyLength))
+      );
+    }
+
+    if (head || data == null) {
+      return new QWebNIOResponseWriter(loop, headBuffer, null, 0L);
+    }
+
+    /*
+     * A stream supplied by the user may block when it is read, and so it is
+     * read into memory here (on a worker thread) rather than by the event
+     * loop as the body is written.
+     */
+
+    final InputStream buffered;
+    if (data instanceof ByteArrayInputStream) {
+      buffered = data;
+    } else {
+      try (data) {
+        buffered = new ByteArrayInputStream(data.readAllBytes());
+      } catch (final IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    final ReadableByteChannel bodyChannel;
+    if (gzip) {
+      bodyChannel = new GZIPChannel(buffered, state.gzipLevel());
+    } else {
+      bodyChannel = Channels.newChannel(buffered);
+    }
+    return new QWebNIOResponseWriter(loop, headBuffer, bodyChannel, bodyLength);
+  }
+
+  /**
+   * Create a writer for a partial response.
+   *
+   * @param loop      The event loop
+   * @param response  The response
+   * @param file      The open file, if the response is file-backed
+   * @param bytes     The fixed body, if the response is not file-backed
+   * @param total     The length of the whole body
+   * @param ranges    The satisfiable ranges
+   * @param head      {@code true} if the body should be omitted
+   * @param keepAlive {@code true} if the connection will be kept alive
+   *
+   * @return A writer
+   */
+
+  private static QWebNIOResponseWriter forRanges(
+    final QWebNIOEventLoop loop,
+    final QMutableResponse response,
+    final QWebFileCache.Handle file,
+    final byte[] bytes,
+    final long total,
+    final List<QWebByteRanges.Range> ranges,
+    final boolean head,
+    final boolean keepAlive)
+  {
+    final var connection =
+      keepAlive ? "Connection: keep-alive\r\n" : "Connection: close\r\n";
+
+    if (ranges.isEmpty()) {
+      if (file != null) {
+        file.close();
+      }
+
+      final var headText =
+        startHead(416, null)
+          .append("Content-Range: ")
+          .append(QWebByteRanges.unsatisfiable(total))
+          .append("\r\n")
+          .append(connection)
+          .append("Content-Length: 0\r\n\r\n");
+
+      return new QWebNIOResponseWriter(
+        loop,
+        ByteBuffer.wrap(headText.toString().getBytes(UTF_8)),
+        null,
+        0L
+      );
+    }
+
+    final var single =
+      ranges.size() == 1 ? ranges.get(0) : null;
+    final var multipart =
+      single == null
+        ? QWebByteRanges.multipart(ranges, total, response.contentType())
+        : null;
+
+    final var headText =
+      startHead(
+        206,
+        single != null ? response.contentType() : multipart.contentType()
+      );
+
+    for (final var entry : response.headers().entrySet()) {
+      headText.append(entry.getKey())
+        .append(": ")
+        .append(entry.getValue())
+        .append("\r\n");
+    }
+
+    if (single != null) {
+      headText.append("Content-Range: ")
+        .append(single.contentRange(total))
+        .append("\r\n");
+    }
+
+    if (!response.headers().containsKey("connection")) {
+      headText.append(connection);
+    }
+
+    headText.append("Content-Length: ")
+      .append(single != null ? single.length() : multipart.length())
+      .append("\r\n\r\n");
+
+    final var headBuffer =
+      ByteBuffer.wrap(headText.toString().getBytes(UTF_8));
+
+    if (head) {
+      if (file != null) {
+        file.close();
+      }
+      return new QWebNIOResponseWriter(loop, headBuffer, null, 0L);
+    }
+
+    /*
+     * The body is assembled from slices of the fixed body, or from regions
+     * of the file, and so nothing outside the requested ranges is read.
+     */
+
+    if (file != null) {
+      final var segments = new ArrayList<Segment>();
+      if (single != null) {
+        segments.add(new Segment.Region(single.first(), single.length()));
+      } else {
+        for (final var part : multipart.parts()) {
+          final var partRange = part.range();
+          segments.add(new Segment.Bytes(ByteBuffer.wrap(part.header())));
+          segments.add(new Segment.Region(partRange.first(), partRange.length()));
+        }
+        segments.add(new Segment.Bytes(ByteBuffer.wrap(multipart.trailer())));
+      }
+      return new QWebNIOResponseWriter(loop, file, headBuffer, segments);
+    }
+
+    final var buffers = new ArrayList<ByteBuffer>();
+    buffers.add(headBuffer);
+    if (single != null) {
+      buffers.add(slice(bytes, single));
+    } else {
+      for (final var part : multipart.parts()) {
+        buffers.add(ByteBuffer.wrap(part.header()));
+        buffers.add(slice(bytes, part.range()));
+      }
+      buffers.add(ByteBuffer.wrap(multipart.trailer()));
+    }
+
+    return new QWebNIOResponseWriter(
+      loop,
+      buffers.toArray(ByteBuffer[]::new),
+      null,
+      0L
+    );
+  }
+
+  private static ByteBuffer slice(
+    final byte[] bytes,
+    final QWebByteRanges.Range range)
+  {
+    return ByteBuffer.wrap(bytes, (int) range.first(), (int) range.length())
+      .slice();
+  }
+
+  private static StringBuilder startHead(
+    final int status,
+    final String contentType)
+  {
+    final var text = new StringBuilder(256);
+    text.append("HTTP/1.1 ")
+      .append(status)
+      .append(' ')
+      .append(QWebHTTPStatus.reasonPhrase(status))
+      .append("\r\n");
+
+    if (contentType != null) {
+      text.append("Content-Type: ")
+        .append(contentType)
+        .append("\r\n");
+    }
+
+    text.append("Date: ")
+      .append(QWebHTTPDate.text())
+      .append("\r\n");
+    return text;
+  }
+
+  /**
+   * Limit the rate at which the response is written.
+   *
+   * @param bandwidth The bandwidth in bytes per second, or
+   *                  {@link QWebTokenBucket#UNLIMITED}
+   *
+   * @return this
+   */
+
+  QWebNIOResponseWriter throttle(
+    final long bandwidth)
+  {
+    if (bandwidth != QWebTokenBucket.UNLIMITED) {
+      this.bucket = new QWebTokenBucket(bandwidth, System.nanoTime());
+    }
+    return this;
+  }
+
+  /**
+   * @return The time in nanoseconds that the writer should wait before
+   * writing again, or {@code 0} if it is only waiting for the channel to
+   * become writable
+   */
+
+  long throttleDelay()
+  {
+    if (this.bucket == null) {
+      return 0L;
+    }
+
+    final var wanted =
+      Math.min(this.bucket.capacity(), QWebNIOEventLoop.BUFFER_SIZE);
+    return this.bucket.delay(System.nanoTime(), wanted);
+  }
+
+  private long allowance()
+  {
+    if (this.bucket == null) {
+      return Long.MAX_VALUE;
+    }
+    return this.bucket.available(System.nanoTime());
+  }
+
+  private void spend(
+    final long count)
+  {
+    if (this.bucket != null) {
+      this.bucket.consume(count);
+    }
+  }
+
+  /**
+   * Write as much of the response as the channel will currently accept.
+   *
+   * @param channel The output channel
+   *
+   * @return {@code true} if the response has been completely written
+   *
+   * @throws IOException On I/O errors
+   */
+
+  boolean write(
+    final SocketChannel channel)
+    throws IOException
+  {
+    while (true) {
+      if (this.pending != null) {
+        final var allowance = this.allowance();
+        if (allowance == 0L) {
+          return false;
+        }
+
+        this.spend(this.writePending(channel, allowance));
+        if (this.pending[this.pending.length - 1].hasRemaining()) {
+          return false;
+        }
+        this.pending = null;
+      }
+
+      if (this.finished) {
+        return true;
+      }
+      if (this.file != null) {
+        if (!this.transfer(channel)) {
+          return false;
+        }
+      } else {
+        this.fill();
+      }
+    }
+  }
+
+  /**
+   * Write pending buffers, writing no more than the given number of bytes.
+   *
+   * @param channel   The output channel
+   * @param allowance The maximum number of bytes to write
+   *
+   * @return The number of bytes written
+   *
+   * @throws IOException On I/O errors
+   */
+
+  private long writePending(
+    final SocketChannel channel,
+    final long allowance)
+    throws IOException
+  {
+    final var buffers = this.pending;
+    if (allowance == Long.MAX_VALUE) {
+      return channel.write(buffers);
+    }
+
+    var total = 0L;
+    for (int index = 0; index < buffers.length; ++index) {
+      final var buffer = buffers[index];
+      final var available = allowance - total;
+      if (buffer.remaining() > available) {
+        final var limit = buffer.limit();
+        buffer.limit(buffer.position() + (int) available);
+        try {
+          return channel.write(buffers, 0, index + 1);
+        } finally {
+          buffer.limit(limit);
+        }
+      }
+      total += buffer.remaining();
+    }
+    return channel.write(buffers);
+  }
+
+  /**
+   * Transfer as much of the current region of the file as the channel will
+   * currently accept, directly from the file to the channel, moving to the
+   * next segment when the current region is exhausted.
+   *
+   * @param channel The output channel
+   *
+   * @return {@code false} if the channel cannot currently accept any data
+   *
+   * @throws IOException On I/O errors
+   */
+
+  private boolean transfer(
+    final SocketChannel channel)
+    throws IOException
+  {
+    if (this.remaining == 0L) {
+      switch (this.segments.poll()) {
+        case null -> this.finished = true;
+        case final Segment.Bytes bytes -> {
+          this.pending = new ByteBuffer[]{bytes.buffer()};
+        }
+        case final Segment.Region region -> {
+          this.position = region.position();
+          this.remaining = region.count();
+        }
+      }
+      return true;
+    }
+
+    final var allowance = this.allowance();
+    if (allowance == 0L) {
+      return false;
+    }
+
+    final var fileChannel =
+      this.file.channel();
+    final var count =
+      fileChannel.transferTo(
+        this.position,
+        Math.min(this.remaining, allowance),
+        channel
+      );
+    this.spend(count);
+
+    if (count == 0L) {
+      if (this.position >= fileChannel.size()) {
+        throw new IOException(
+          "File was truncated while it was being sent (%d bytes remain)"
+            .formatted(Long.valueOf(this.remaining))
+        );
+      }
+      return false;
+    }
+
+    this.position += count;
+    this.remaining -= count;
+    return true;
+  }
+
+  private void fill()
+    throws IOException
+  {
+    if (this.remaining == 0L) {
+      this.finishBody();
+      return;
+    }
+
+    if (this.staging == null) {
+      this.staging = this.loop.takeBuffer();
+    }
+
+    final var buffer = this.staging;
+    buffer.clear();
+    if (this.remaining > 0L && this.remaining < buffer.capacity()) {
+      buffer.limit((int) this.remaining);
+    }
+
+    final var count = this.body.read(buffer);
+    if (count < 0) {
+      this.finishBody();
+      return;
+    }
+
+    buffer.flip();
+    if (this.remaining > 0L) {
+      this.remaining -= count;
+    }
+
+    if (this.chunked) {
+      if (count == 0) {
+        return;
+      }
+      this.pending = new ByteBuffer[]{
+        ByteBuffer.wrap((Integer.toHexString(count) + "\r\n").getBytes(US_ASCII)),
+        buffer,
+        ByteBuffer.wrap(CRLF),
+      };
+    } else {
+      this.pending = new ByteBuffer[]{buffer};
+    }
+  }
+
+  private void finishBody()
+  {
+    this.finished = true;
+    if (this.chunked) {
+      this.pending = new ByteBuffer[]{ByteBuffer.wrap(LAST_CHUNK)};
+    }
+  }
+
+  /**
+   * Release any resources held by the writer.
+   */
+
+  void close()
+  {
+    if (this.staging != null) {
+      this.loop.returnBuffer(this.staging);
+      this.staging = null;
+    }
+
+    if (this.body != null) {
+      try {
+        this.body.close();
+      } catch (final IOException e) {
+        // Ignored
+      }
+    }
+
+    if (this.file != null) {
+      this.file.close();
+    }
+  }
+
+  /**
+   * A readable channel that GZIP-compresses an input stream as it is read.
+   */
+
+  private static final class GZIPChannel implements ReadableByteChannel
+  {
+    private final InputStream input;
+    private final ExposedByteArrayOutputStream compressed;
+    private final GZIPOutputStream gzip;
+    private final byte[] scratch;
+    private int compressedOffset;
+    private boolean inputFinished;
+    private boolean open;
+
+    GZIPChannel(
+      final InputStream inInput,
+      final int level)
+    {
+      this.input = inInput;
+      this.compressed = new ExposedByteArrayOutputStream();
+      this.scratch = new byte[QWebNIOEventLoop.BUFFER_SIZE];
+      this.open = true;
+
+      try {
+        this.gzip = QWebGZIP.open(this.compressed, level);
+      } catch (final IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public int read(
+      final ByteBuffer target)
+      throws IOException
+    {
+      while (this.compressedOffset == this.compressed.size()) {
+        if (this.inputFinished) {
+          return -1;
+        }
+
+        this.compressed.reset();
+        this.compressedOffset = 0;
+
+        final var count = this.input.read(this.scratch);
+        if (count < 0) {
+          this.gzip.finish();
+          this.inputFinished = true;
+        } else {
+          this.gzip.write(this.scratch, 0, count);
+        }
+      }
+
+      final var count =
+        Math.min(target.remaining(), this.compressed.size() - this.compressedOffset);
+      target.put(this.compressed.buffer(), this.compressedOffset, count);
+      this.compressedOffset += count;
+      return count;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+      return this.open;
+    }
+
+    @Override
+    public void close()
+      throws IOException
+    {
+      this.open = false;
+      this.input.close();
+    }
+  }
+
+  private static final class ExposedByteArrayOutputStream
+    extends ByteArrayOutputStream
+  {
+    ExposedByteArrayOutputStream()
+    {
+
+    }
+
+    byte[] buffer()
+    {
+      return this.buf;
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+/**
+ * The way in which the path of a response is matched against request paths.
+ *
+ * @since 1.4.0
+ */
+
+public enum QWebPathMatchKind
+{
+  /**
+   * The path is a regular expression that must match the entire request
+   * path.
+   */
+
+  REGEX,
+
+  /**
+   * The path must be exactly equal to the request path.
+   */
+
+  EXACT,
+
+  /**
+   * The path must be a prefix of the request path.
+   */
+
+  PREFIX,
+
+  /**
+   * The path is a glob. A {@code *} matches any sequence of characters
+   * within a single path segment, a {@code **} matches any sequence of
+   * characters including {@code /}, a {@code ?} matches any single
+   * character other than {@code /}, and a {@code \} causes the following
+   * character to be matched literally.
+   */
+
+  GLOB
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.util.Objects;
+
+/**
+ * The configuration of an asynchronous request callback.
+ *
+ * @param queueCapacity The maximum number of requests waiting to be passed
+ *                      to the callback
+ * @param batchSize     The maximum number of requests passed to the
+ *                      callback at once
+ * @param overflow      The action taken when the queue is full
+ *
+ * @see QWebServerType#setRequestBatchCallback(QWebRequestDispatchConfiguration, java.util.function.Consumer)
+ * @since 1.4.0
+ */
+
+public record QWebRequestDispatchConfiguration(
+  int queueCapacity,
+  int batchSize,
+  QWebRequestOverflowPolicy overflow)
+{
+  /**
+   * The default queue capacity.
+   */
+
+  public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
+  /**
+   * The default batch size.
+   */
+
+  public static final int DEFAULT_BATCH_SIZE = 256;
+
+  /**
+   * The configuration of an asynchronous request callback.
+   *
+   * @param queueCapacity The maximum number of requests waiting to be passed
+   *                      to the callback
+   * @param batchSize     The maximum number of requests passed to the
+   *                      callback at once
+   * @param overflow      The action taken when the queue is full
+   */
+
+  public QWebRequestDispatchConfiguration
+  {
+    Objects.requireNonNull(overflow, "overflow");
+
+    if (queueCapacity < 1) {
+      throw new IllegalArgumentException(
+        "Queue capacity must be positive: %d"
+          .formatted(Integer.valueOf(queueCapacity))
+      );
+    }
+    if (batchSize < 1) {
+      throw new IllegalArgumentException(
+        "Batch size must be positive: %d"
+          .formatted(Integer.valueOf(batchSize))
+      );
+    }
+  }
+
+  /**
+   * The configuration of an asynchronous request callback, using the
+   * default queue capacity and batch size.
+   *
+   * @param overflow The action taken when the queue is full
+   */
+
+  public QWebRequestDispatchConfiguration(
+    final QWebRequestOverflowPolicy overflow)
+  {
+    this(DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE, overflow);
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+/**
+ * Statistics for an asynchronous request callback.
+ *
+ * @param submitted         The number of requests submitted to the queue
+ * @param delivered         The number of requests passed to the callback
+ * @param dropped           The number of requests discarded because the
+ *                          queue was full
+ * @param batches           The number of times the callback was evaluated
+ * @param queueDepth        The number of requests currently in the queue
+ * @param queueDepthMaximum The largest number of requests that have been
+ *                          in the queue at once
+ * @param queueCapacity     The maximum number of requests in the queue
+ *
+ * @see QWebServerType#setRequestBatchCallback(QWebRequestDispatchConfiguration, java.util.function.Consumer)
+ * @since 1.4.0
+ */
+
+public record QWebRequestDispatchStatistics(
+  long submitted,
+  long delivered,
+  long dropped,
+  long batches,
+  int queueDepth,
+  int queueDepthMaximum,
+  int queueCapacity)
+{
+
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A bounded queue of received requests, drained in batches by a dedicated
+ * thread that passes them to an asynchronous request callback. Requests are
+ * submitted by the threads that handle them, which therefore never wait for
+ * the callback unless the queue is full and the overflow policy is
+ * {@link QWebRequestOverflowPolicy#BLOCK}. Threads that must never wait
+ * (such as event loop threads) use
+ * {@link #trySubmit(QWebRequestReceivedType, Runnable)} instead, and are
+ * notified when the queue has room.
+ */
+
+final class QWebRequestDispatcher implements Closeable
+{
+  private static final QWebRequestReceivedType STOP =
+    new QWebRequestReceived("", "", Map.of(), Map.of());
+
+  private final QWebRequestDispatchConfiguration configuration;
+  private final Consumer<List<QWebRequestReceivedType>> callback;
+  private final ArrayBlockingQueue<QWebRequestReceivedType> queue;
+  private final ConcurrentLinkedQueue<Runnable> spaceWaiters;
+  private final AtomicLong submitted;
+  private final AtomicLong delivered;
+  private final AtomicLong dropped;
+  private final AtomicLong batches;
+  private final AtomicInteger queueDepthMaximum;
+  private final Thread thread;
+  private volatile boolean closed;
+
+  QWebRequestDispatcher(
+    final QWebRequestDispatchConfiguration inConfiguration,
+    final Consumer<List<QWebRequestReceivedType>> inCallback)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.callback =
+      Objects.requireNonNull(inCallback, "callback");
+    this.queue =
+      new ArrayBlockingQueue<>(inConfiguration.queueCapacity());
+    this.spaceWaiters =
+      new ConcurrentLinkedQueue<>();
+    this.submitted =
+      new AtomicLong();
+    this.delivered =
+      new AtomicLong();
+    this.dropped =
+      new AtomicLong();
+    this.batches =
+      new AtomicLong();
+    this.queueDepthMaximum =
+      new AtomicInteger();
+    this.thread =
+      Thread.ofPlatform()
+        .name("com.io7m.quixote.request-dispatch")
+        .daemon(true)
+        .start(this::run);
+  }
+
+  /**
+   * Submit a request to be passed to the callback.
+   *
+   * @param request The request
+   */
+
+  void submit(
+    final QWebRequestReceivedType request)
+  {
+    this.submitted.incrementAndGet();
+
+    if (this.closed) {
+      this.dropped.incrementAndGet();
+      return;
+    }
+
+    switch (this.configuration.overflow()) {
+      case BLOCK -> this.submitWaiting(request);
+      case DROP_NEWEST -> this.submitDroppingNewest(request);
+      case DROP_OLDEST -> this.submitDroppingOldest(request);
+    }
+
+    this.queueDepthMaximum.accumulateAndGet(this.queue.size(), Math::max);
+  }
+
+  /**
+   * Submit a request to be passed to the callback, without waiting. If the
+   * queue is full and the overflow policy is
+   * {@link QWebRequestOverflowPolicy#BLOCK}, the request is not submitted,
+   * and the given function is evaluated on an arbitrary thread once the
+   * queue has room, or once the dispatcher is closed. The caller is then
+   * expected to submit the request again.
+   *
+   * @param request The request
+   * @param onSpace The function evaluated when the queue has room
+   *
+   * @return {@code false} if the request was not submitted
+   */
+
+  boolean trySubmit(
+    final QWebRequestReceivedType request,
+    final Runnable onSpace)
+  {
+    Objects.requireNonNull(onSpace, "onSpace");
+
+    if (this.closed
+        || this.configuration.overflow() != QWebRequestOverflowPolicy.BLOCK) {
+      this.submit(request);
+      return true;
+    }
+
+    /*
+     * The waiter is registered before the queue is checked for the second
+     * time, and the dispatch thread notifies waiters each time it removes
+     * requests from the queue, so a waiter cannot miss the queue gaining
+     * room.
+     */
+
+    if (!this.queue.offer(request)) {
+      this.spaceWaiters.add(onSpace);
+      if (!this.queue.offer(request)) {
+        return false;
+      }
+      this.spaceWaiters.remove(onSpace);
+    }
+
+    this.submitted.incrementAndGet();
+    this.queueDepthMaximum.accumulateAndGet(this.queue.size(), Math::max);
+    return true;
+  }
+
+  private void signalSpace()
+  {
+    while (true) {
+      final var waiter = this.spaceWaiters.poll();
+      if (waiter == null) {
+        return;
+      }
+      waiter.run();
+    }
+  }
+
+  private void submitWaiting(
+    final QWebRequestReceivedType request)
+  {
+    try {
+      while (!this.queue.offer(request, 100L, TimeUnit.MILLISECONDS)) {
+        if (this.closed) {
+          this.dropped.incrementAndGet();
+          return;
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      this.dropped.incrementAndGet();
+    }
+  }
+
+  private void submitDroppingNewest(
+    final QWebRequestReceivedType request)
+  {
+    if (!this.queue.offer(request)) {
+      this.dropped.incrementAndGet();
+    }
+  }
+
+  private void submitDroppingOldest(
+    final QWebRequestReceivedType request)
+  {
+    while (!this.queue.offer(request)) {
+      final var oldest = this.queue.poll();
+      if (oldest == STOP) {
+        this.queue.offer(STOP);
+        this.dropped.incrementAndGet();
+        return;
+      }
+      if (oldest != null) {
+        this.dropped.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * @return The current statistics
+   */
+
+  QWebRequestDispatchStatistics statistics()
+  {
+    return new QWebRequestDispatchStatistics(
+      this.submitted.get(),
+      this.delivered.get(),
+      this.dropped.get(),
+      this.batches.get(),
+      this.queue.size(),
+      this.queueDepthMaximum.get(),
+      this.configuration.queueCapacity()
+    );
+  }
+
+  private void run()
+  {
+    final var batchSize = this.configuration.batchSize();
+    final var batch = new ArrayList<QWebRequestReceivedType>(batchSize);
+
+    while (true) {
+      try {
+        batch.add(this.queue.take());
+      } catch (final InterruptedException e) {
+        return;
+      }
+      this.queue.drainTo(batch, batchSize - 1);
+      this.signalSpace();
+
+      final var stopping = batch.removeIf(r -> r == STOP);
+      this.deliver(batch);
+      batch.clear();
+
+      if (stopping) {
+        while (this.queue.drainTo(batch, batchSize) > 0) {
+          this.deliver(batch);
+          batch.clear();
+        }
+        return;
+      }
+    }
+  }
+
+  private void deliver(
+    final List<QWebRequestReceivedType> batch)
+  {
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    try {
+      this.callback.accept(List.copyOf(batch));
+    } catch (final Exception e) {
+      // Ignored, as for the synchronous request callback
+    }
+
+    this.delivered.addAndGet(batch.size());
+    this.batches.incrementAndGet();
+  }
+
+  /**
+   * Stop accepting requests, and wait for the requests already in the
+   * queue to be passed to the callback.
+   */
+
+  @Override
+  public void close()
+  {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    this.signalSpace();
+
+    if (Thread.currentThread() == this.thread) {
+      this.queue.offer(STOP);
+      return;
+    }
+
+    try {
+      this.queue.put(STOP);
+      this.thread.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
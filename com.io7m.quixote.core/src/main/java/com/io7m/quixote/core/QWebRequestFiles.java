@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+
+package com.io7m.quixote.core;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The files map of a received request. The map is populated while the
+ * request body is parsed, and becomes immutable once parsing has completed,
+ * so that the request can safely be read by other threads (such as the
+ * thread that spills the request to disk).
+ */
+
+final class QWebRequestFiles extends AbstractMap<String, String>
+{
+  private final HashMap<String, String> parsing;
+  private volatile Map<String, String> parsed;
+
+  QWebRequestFiles()
+  {
+    this.parsing = new HashMap<>();
+  }
+
+  /**
+   * @param request The request
+   *
+   * @return {@code true} if the body of the given request has been parsed
+   */
+
+  static boolean isParsed(
+    final QWebRequestReceivedType request)
+  {
+    if (request.files() instanceof final QWebRequestFiles files) {
+      return files.parsed != null;
+    }
+    return true;
+  }
+
+  /**
+   * Mark the body of the request as parsed. No further files can be added.
+   */
+
+  void complete()
+  {
+    if (this.parsed == null) {
+      this.parsed = Collections.unmodifiableMap(this.parsing);
+    }
+  }
+
+  private Map<String, String> current()
+  {
+    final var result = this.parsed;
+    return result != null ? result : this.parsing;
+  }
+
+  @Override
+  public String put(
+    final String key,
+    final String value)
+  {
+    if (this.parsed != null) {
+      throw new UnsupportedOperationException(
+        "Request body has already been parsed.");
+    }
+    return this.parsing.put(key, value);
+  }
+
+  @Override
+  public String get(
+    final Object key)
+  {
+    return this.current().get(key);
+  }
+
+  @Override
+  public boolean containsKey(
+    final Object key)
+  {
+    return this.current().containsKey(key);
+  }
+
+  @Override
+  public int size()
+  {
+    return this.current().size();
+  }
+
+  @Override
+  public Set<Entry<String, String>> entrySet()
+  {
+    return this.current().entrySet();
+  }
+}
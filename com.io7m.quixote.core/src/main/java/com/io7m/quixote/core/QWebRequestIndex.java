@@ -0,0 +1,324 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Secondary indexes over the requests in a request journal. Each index
+ * maps a key (a method, a path, or the value of a header) to the sequence
+ * numbers of the journal entries that have that key. Entries are added
+ * to the indexes when they are recorded, and removed when they are
+ * overwritten in the journal.
+ */
+
+final class QWebRequestIndex
+{
+  private final QWebRequestIndexConfiguration configuration;
+  private final ConcurrentHashMap<String, Postings> methods;
+  private final ConcurrentHashMap<String, Postings> paths;
+  private final Map<String, ConcurrentHashMap<String, Postings>> headers;
+
+  QWebRequestIndex(
+    final QWebRequestIndexConfiguration inConfiguration)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.methods =
+      new ConcurrentHashMap<>();
+    this.paths =
+      new ConcurrentHashMap<>();
+
+    final var byHeader =
+      new HashMap<String, ConcurrentHashMap<String, Postings>>();
+    for (final var name : inConfiguration.headers()) {
+      byHeader.put(name, new ConcurrentHashMap<>());
+    }
+    this.headers = Map.copyOf(byHeader);
+  }
+
+  QWebRequestIndexConfiguration configuration()
+  {
+    return this.configuration;
+  }
+
+  /**
+   * Add a journal entry to the indexes. If the entry has been overwritten
+   * in the journal by the time it has been added, it is removed again; this
+   * ensures that an entry that is overwritten while it is being added does
+   * not remain in the indexes.
+   *
+   * @param journal The journal
+   * @param entry   The entry
+   */
+
+  void add(
+    final QWebRequestJournal journal,
+    final QWebRequestJournalEntry entry)
+  {
+    this.update(entry, true);
+    if (journal.get(entry.sequence()) != entry) {
+      this.update(entry, false);
+    }
+  }
+
+  /**
+   * Remove a journal entry that has been overwritten from the indexes.
+   *
+   * @param entry The entry
+   */
+
+  void remove(
+    final QWebRequestJournalEntry entry)
+  {
+    this.update(entry, false);
+  }
+
+  private void update(
+    final QWebRequestJournalEntry entry,
+    final boolean add)
+  {
+    final var request = entry.request();
+    final var sequence = entry.sequence();
+
+    if (this.configuration.methods()) {
+      update(this.methods, request.method(), sequence, add);
+    }
+    if (this.configuration.paths()) {
+      update(this.paths, request.path(), sequence, add);
+    }
+    if (!this.headers.isEmpty()) {
+      final var requestHeaders = request.headers();
+      for (final var index : this.headers.entrySet()) {
+        final var value = requestHeaders.get(index.getKey());
+        if (value != null) {
+          update(index.getValue(), value, sequence, add);
+        }
+      }
+    }
+  }
+
+  private static void update(
+    final ConcurrentHashMap<String, Postings> index,
+    final String key,
+    final long sequence,
+    final boolean add)
+  {
+    if (add) {
+      index.compute(key, (k, existing) -> {
+        final var postings = existing == null ? new Postings() : existing;
+        postings.add(sequence);
+        return postings;
+      });
+    } else {
+      index.computeIfPresent(key, (k, existing) -> {
+        existing.remove(sequence);
+        return existing.isEmpty() ? null : existing;
+      });
+    }
+  }
+
+  /**
+   * Find the sequence numbers of the smallest set of candidate entries for
+   * the given query. Every entry that matches the query is a candidate, but
+   * not every candidate necessarily matches the query.
+   *
+   * @param query The query
+   *
+   * @return The sequence numbers in ascending order, or {@code null} if
+   * none of the query's criteria are indexed
+   */
+
+  long[] candidates(
+    final QWebRequestQuery query)
+  {
+    final var best = this.smallest(query);
+    if (best == null) {
+      return null;
+    }
+    if (best == Postings.EMPTY) {
+      return new long[0];
+    }
+    return best.toArray();
+  }
+
+  /**
+   * @param query The query
+   *
+   * @return The number of entries that match the query, or {@code -1} if
+   * the query cannot be answered from a single index
+   */
+
+  long count(
+    final QWebRequestQuery query)
+  {
+    final var criteria =
+      (query.method().isPresent() ? 1 : 0)
+      + (query.path().isPresent() ? 1 : 0)
+      + query.headers().size();
+
+    if (criteria != 1) {
+      return -1L;
+    }
+
+    final var best = this.smallest(query);
+    if (best == null) {
+      return -1L;
+    }
+    return best.size();
+  }
+
+  private Postings smallest(
+    final QWebRequestQuery query)
+  {
+    Postings best = null;
+
+    if (this.configuration.methods() && query.method().isPresent()) {
+      best = smaller(best, this.methods.get(query.method().get()));
+    }
+    if (this.configuration.paths() && query.path().isPresent()) {
+      best = smaller(best, this.paths.get(query.path().get()));
+    }
+    for (final var header : query.headers().entrySet()) {
+      final var index = this.headers.get(header.getKey());
+      if (index != null) {
+        best = smaller(best, index.get(header.getValue()));
+      }
+    }
+    return best;
+  }
+
+  private static Postings smaller(
+    final Postings best,
+    final Postings postings)
+  {
+    final var candidate = postings == null ? Postings.EMPTY : postings;
+    if (best == null || candidate.size() < best.size()) {
+      return candidate;
+    }
+    return best;
+  }
+
+  /**
+   * The sorted sequence numbers for a single key. Sequence numbers are
+   * almost always added in ascending order and removed from the front, so
+   * the numbers are held in a growable array with a movable start.
+   */
+
+  private static final class Postings
+  {
+    private static final Postings EMPTY = new Postings();
+
+    private long[] sequences;
+    private int start;
+    private int end;
+
+    Postings()
+    {
+      this.sequences = new long[4];
+    }
+
+    synchronized int size()
+    {
+      return this.end - this.start;
+    }
+
+    synchronized boolean isEmpty()
+    {
+      return this.end == this.start;
+    }
+
+    synchronized long[] toArray()
+    {
+      return Arrays.copyOfRange(this.sequences, this.start, this.end);
+    }
+
+    synchronized void add(
+      final long sequence)
+    {
+      var position = this.end;
+      while (position > this.start && this.sequences[position - 1] >= sequence) {
+        if (this.sequences[position - 1] == sequence) {
+          return;
+        }
+        --position;
+      }
+
+      if (this.end == this.sequences.length) {
+        this.compact();
+        position -= this.start;
+        this.end -= this.start;
+        this.start = 0;
+      }
+
+      System.arraycopy(
+        this.sequences,
+        position,
+        this.sequences,
+        position + 1,
+        this.end - position
+      );
+      this.sequences[position] = sequence;
+      ++this.end;
+    }
+
+    private void compact()
+    {
+      final var size = this.end - this.start;
+      final var target =
+        size + 1 > this.sequences.length / 2
+          ? new long[this.sequences.length * 2]
+          : this.sequences;
+
+      System.arraycopy(this.sequences, this.start, target, 0, size);
+      this.sequences = target;
+    }
+
+    synchronized void remove(
+      final long sequence)
+    {
+      final var index =
+        Arrays.binarySearch(this.sequences, this.start, this.end, sequence);
+      if (index < 0) {
+        return;
+      }
+
+      if (index == this.start) {
+        ++this.start;
+      } else {
+        System.arraycopy(
+          this.sequences,
+          index + 1,
+          this.sequences,
+          index,
+          this.end - index - 1
+        );
+        --this.end;
+      }
+
+      if (this.start == this.end) {
+        this.start = 0;
+        this.end = 0;
+      }
+    }
+  }
+}
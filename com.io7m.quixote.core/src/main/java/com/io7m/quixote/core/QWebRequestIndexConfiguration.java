@@ -0,0 +1,70 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static java.util.Locale.ROOT;
+
+/**
+ * The configuration of the indexes maintained over received requests.
+ *
+ * @param methods {@code true} if requests should be indexed by method
+ * @param paths   {@code true} if requests should be indexed by exact path
+ * @param headers The names of the headers by whose values requests should
+ *                be indexed
+ *
+ * @see QWebServerType#setRequestIndexes(QWebRequestIndexConfiguration)
+ * @since 1.4.0
+ */
+
+public record QWebRequestIndexConfiguration(
+  boolean methods,
+  boolean paths,
+  Set<String> headers)
+{
+  /**
+   * The configuration of the indexes maintained over received requests.
+   * Header names are case-insensitive.
+   *
+   * @param methods {@code true} if requests should be indexed by method
+   * @param paths   {@code true} if requests should be indexed by exact path
+   * @param headers The names of the headers by whose values requests should
+   *                be indexed
+   */
+
+  public QWebRequestIndexConfiguration
+  {
+    headers =
+      Objects.requireNonNull(headers, "headers")
+        .stream()
+        .map(name -> name.toLowerCase(ROOT))
+        .collect(Collectors.toUnmodifiableSet());
+  }
+
+  /**
+   * @return A configuration that maintains no indexes
+   */
+
+  public static QWebRequestIndexConfiguration none()
+  {
+    return new QWebRequestIndexConfiguration(false, false, Set.of());
+  }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A bounded journal of received requests. The journal is a ring buffer
+ * in which each request is assigned a monotonically increasing sequence
+ * number; once the journal is full, the oldest requests are overwritten.
+ * Requests are recorded and read without locking: a writer claims a
+ * sequence number and then publishes the entry into the slot for that
+ * sequence number, and readers treat any slot that does not yet contain
+ * the expected sequence number as not yet published.
+ */
+
+final class QWebRequestJournal
+{
+  /**
+   * The default maximum number of requests retained.
+   */
+
+  static final int DEFAULT_CAPACITY = 65536;
+
+  private final AtomicReferenceArray<QWebRequestJournalEntry> slots;
+  private final AtomicLong next;
+  private final int capacity;
+
+  QWebRequestJournal(
+    final int inCapacity,
+    final long inNext)
+  {
+    this.capacity = checkCapacity(inCapacity);
+    this.slots = new AtomicReferenceArray<>(this.capacity);
+    this.next = new AtomicLong(inNext);
+  }
+
+  /**
+   * Check that the given capacity is valid.
+   *
+   * @param capacity The capacity
+   *
+   * @return The capacity
+   *
+   * @throws IllegalArgumentException If the capacity is not positive
+   */
+
+  static int checkCapacity(
+    final int capacity)
+  {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException(
+        String.format(
+          "Journal capacity %d must be positive",
+          Integer.valueOf(capacity)
+        )
+      );
+    }
+    return capacity;
+  }
+
+  /**
+   * @return The sequence number that will be assigned to the next request
+   */
+
+  long nextSequence()
+  {
+    return this.next.get();
+  }
+
+  /**
+   * Record a request.
+   *
+   * @param request   The request
+   * @param onEvicted A function evaluated with the entry that was
+   *                  overwritten to make room for the request, if any, or
+   *                  with the new entry if it was itself overwritten before
+   *                  it could be published
+   *
+   * @return The journal entry
+   */
+
+  QWebRequestJournalEntry record(
+    final QWebRequestReceivedType request,
+    final Consumer<QWebRequestJournalEntry> onEvicted)
+  {
+    final var sequence =
+      this.next.getAndIncrement();
+    final var entry =
+      new QWebRequestJournalEntry(sequence, request);
+
+    /*
+     * A writer that is slow to publish its entry may find that the slot
+     * has already been claimed by a later request that wrapped around the
+     * journal. The later request always wins, and the entry is treated as
+     * if it had been overwritten immediately.
+     */
+
+    final var slot = this.slotOf(sequence);
+    while (true) {
+      final var existing = this.slots.get(slot);
+      if (existing != null && existing.sequence() > sequence) {
+        onEvicted.accept(entry);
+        return entry;
+      }
+      if (this.slots.compareAndSet(slot, existing, entry)) {
+        if (existing != null) {
+          onEvicted.accept(existing);
+        }
+        return entry;
+      }
+    }
+  }
+
+  /**
+   * @param sequence The sequence number
+   *
+   * @return The entry with the given sequence number, or {@code null} if
+   * the entry has not been published or has been overwritten
+   */
+
+  QWebRequestJournalEntry get(
+    final long sequence)
+  {
+    final var entry = this.slots.get(this.slotOf(sequence));
+    if (entry != null && entry.sequence() == sequence) {
+      return entry;
+    }
+    return null;
+  }
+
+  private int slotOf(
+    final long sequence)
+  {
+    return (int) Long.remainderUnsigned(sequence, this.capacity);
+  }
+
+  /**
+   * @param cursor The cursor
+   *
+   * @return {@code true} if the request with the given sequence number (or
+   * a later request that has overwritten it) has been published
+   */
+
+  boolean isPublished(
+    final long cursor)
+  {
+    final var entry = this.slots.get(this.slotOf(cursor));
+    return entry != null && entry.sequence() >= cursor;
+  }
+
+  /**
+   * Read the requests recorded since the given cursor. Reading stops at
+   * the first request that has been assigned a sequence number but that
+   * has not yet been published, so that the returned cursor never skips
+   * over a request that is still being recorded.
+   *
+   * @param cursor The cursor
+   *
+   * @return The requests
+   */
+
+  QWebRequestJournalPage since(
+    final long cursor)
+  {
+    checkCursor(cursor);
+
+    final var end = this.next.get();
+    if (cursor >= end) {
+      return new QWebRequestJournalPage(List.of(), cursor, 0L);
+    }
+
+    final var start = Math.max(cursor, end - this.capacity);
+    var missed = start - cursor;
+
+    final var entries =
+      new ArrayList<QWebRequestJournalEntry>(
+        (int) Math.min(end - start, 1024L)
+      );
+
+    var position = start;
+    while (position < end) {
+      final var entry = this.slots.get(this.slotOf(position));
+      if (entry == null || entry.sequence() < position) {
+        break;
+      }
+      if (entry.sequence() == position) {
+        entries.add(entry);
+      } else {
+        ++missed;
+      }
+      ++position;
+    }
+
+    return new QWebRequestJournalPage(entries, position, missed);
+  }
+
+  /**
+   * Find the cursor that {@link #since(long)} would return for the given
+   * cursor, without collecting the requests.
+   *
+   * @param cursor The cursor
+   *
+   * @return The cursor following the requests published since the cursor
+   */
+
+  long publishedSince(
+    final long cursor)
+  {
+    checkCursor(cursor);
+
+    final var end = this.next.get();
+    var position = Math.max(cursor, end - this.capacity);
+    while (position < end) {
+      final var entry = this.slots.get(this.slotOf(position));
+      if (entry == null || entry.sequence() < position) {
+        break;
+      }
+      ++position;
+    }
+    return position;
+  }
+
+  private static void checkCursor(
+    final long cursor)
+  {
+    if (cursor < 0L) {
+      throw new IllegalArgumentException(
+        String.format(
+          "Cursor %d must be non-negative",
+          Long.valueOf(cursor)
+        )
+      );
+    }
+  }
+
+  /**
+   * @return The requests currently retained in the journal, oldest first
+   */
+
+  List<QWebRequestReceivedType> snapshot()
+  {
+    final var end = this.next.get();
+    final var start = Math.max(0L, end - this.capacity);
+    final var entries = this.since(start).entries();
+    final var requests = new ArrayList<QWebRequestReceivedType>(entries.size());
+    for (final var entry : entries) {
+      requests.add(entry.request());
+    }
+    return List.copyOf(requests);
+  }
+
+  /**
+   * @return The maximum number of requests retained
+   */
+
+  int capacity()
+  {
+    return this.capacity;
+  }
+}
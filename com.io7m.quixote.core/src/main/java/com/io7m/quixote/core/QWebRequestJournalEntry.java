@@ -0,0 +1,48 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.util.Objects;
+
+/**
+ * A request recorded in a server's request journal.
+ *
+ * @param sequence The sequence number assigned to the request; sequence
+ *                 numbers start at {@code 0} and increase by one for each
+ *                 request received
+ * @param request  The request
+ *
+ * @since 1.4.0
+ */
+
+public record QWebRequestJournalEntry(
+  long sequence,
+  QWebRequestReceivedType request)
+{
+  /**
+   * A request recorded in a server's request journal.
+   *
+   * @param sequence The sequence number assigned to the request
+   * @param request  The request
+   */
+
+  public QWebRequestJournalEntry
+  {
+    Objects.requireNonNull(request, "request");
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The requests read from a server's request journal since a given cursor.
+ *
+ * @param entries The requests, in the order they were received
+ * @param cursor  The cursor to use to read the requests that follow
+ *                these requests
+ * @param missed  The number of requests since the given cursor that were
+ *                overwritten in the journal before they could be read
+ *
+ * @see QWebServerType#requestsSince(long)
+ * @since 1.4.0
+ */
+
+public record QWebRequestJournalPage(
+  List<QWebRequestJournalEntry> entries,
+  long cursor,
+  long missed)
+{
+  /**
+   * The requests read from a server's request journal since a given cursor.
+   *
+   * @param entries The requests, in the order they were received
+   * @param cursor  The cursor to use to read the requests that follow
+   *                these requests
+   * @param missed  The number of requests since the given cursor that were
+   *                overwritten in the journal before they could be read
+   */
+
+  public QWebRequestJournalPage
+  {
+    entries = List.copyOf(Objects.requireNonNull(entries, "entries"));
+  }
+}
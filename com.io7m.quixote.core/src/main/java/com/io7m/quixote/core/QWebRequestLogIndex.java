@@ -0,0 +1,388 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * <p>An index of the entries in a request log. Each entry is either a
+ * version 1 record or a version 2 or version 3 segment, and the index records the
+ * offset of each entry and the number of requests it contains, so that
+ * the entry holding any given request can be found with a binary search.</p>
+ *
+ * <p>The index also records the size of the prefix of the log that it
+ * covers. Because logs are only ever appended to, an index that covers a
+ * prefix of a log can be extended by scanning only the entries added since
+ * it was written. Because each entry records its size, building an index
+ * only reads the headers of entries, and never decompresses any segment.
+ * Incomplete entries at the end of a log, such as those still being
+ * written, are not indexed.</p>
+ *
+ * <p>Indexes are saved in a sidecar file consisting of the eight ASCII
+ * bytes {@code QUIXIDX!}, a 32-bit version number, the 64-bit size of the
+ * covered prefix, the 64-bit number of entries, the 64-bit offsets of all
+ * of the entries, and the 32-bit request counts of all of the entries, all
+ * in big-endian byte order.</p>
+ */
+
+final class QWebRequestLogIndex
+{
+  private static final byte[] MAGIC =
+    "QUIXIDX!".getBytes(US_ASCII);
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 28;
+
+  private long[] offsets;
+  private int[] records;
+  private long[] firstRecords;
+  private int entries;
+  private long recordCount;
+  private long coveredSize;
+
+  private QWebRequestLogIndex(
+    final long[] inOffsets,
+    final int[] inRecords,
+    final long inCoveredSize)
+  {
+    this.offsets = inOffsets;
+    this.records = inRecords;
+    this.entries = inOffsets.length;
+    this.firstRecords = new long[inOffsets.length];
+    this.coveredSize = inCoveredSize;
+
+    long first = 0L;
+    for (int index = 0; index < this.entries; ++index) {
+      this.firstRecords[index] = first;
+      first += Integer.toUnsignedLong(this.records[index]);
+    }
+    this.recordCount = first;
+  }
+
+  /**
+   * @return An index that covers nothing
+   */
+
+  static QWebRequestLogIndex empty()
+  {
+    return new QWebRequestLogIndex(new long[0], new int[0], 0L);
+  }
+
+  /**
+   * Load an index for the given log, if a valid index exists.
+   *
+   * @param indexFile The index file
+   * @param log       The log
+   *
+   * @return The index, or nothing if the index file does not exist or does
+   * not describe a prefix of the log
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static Optional<QWebRequestLogIndex> load(
+    final Path indexFile,
+    final QWebMappedFile log)
+    throws IOException
+  {
+    if (!Files.isRegularFile(indexFile)) {
+      return Optional.empty();
+    }
+
+    try (var channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+      final var size = channel.size();
+      if (size < HEADER_SIZE) {
+        return Optional.empty();
+      }
+
+      final var data =
+        channel.map(FileChannel.MapMode.READ_ONLY, 0L, size)
+          .order(ByteOrder.BIG_ENDIAN);
+
+      final var magic = new byte[MAGIC.length];
+      data.get(magic);
+      if (!Arrays.equals(magic, MAGIC) || data.getInt() != VERSION) {
+        return Optional.empty();
+      }
+
+      final var covered = data.getLong();
+      final var count = data.getLong();
+      if (covered > log.size()
+          || count < 0L
+          || count > (size - HEADER_SIZE) / 12L
+          || size != HEADER_SIZE + count * 12L) {
+        return Optional.empty();
+      }
+
+      final var offsets = new long[(int) count];
+      final var records = new int[(int) count];
+      data.asLongBuffer().get(offsets);
+      data.position(data.position() + offsets.length * Long.BYTES);
+      data.asIntBuffer().get(records);
+
+      if (count > 0L && !isEntryAt(log, offsets[offsets.length - 1])) {
+        return Optional.empty();
+      }
+      return Optional.of(new QWebRequestLogIndex(offsets, records, covered));
+    }
+  }
+
+  private static boolean isEntryAt(
+    final QWebMappedFile log,
+    final long offset)
+  {
+    try {
+      final var header = new byte[QWebRequestLogV2.HEADER_SIZE];
+      log.region(offset, header.length).get(header);
+      QWebRequestLogging.headerVersion(header);
+      return true;
+    } catch (final IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Save the index, replacing the given file atomically where possible.
+   *
+   * @param indexFile The index file
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void save(
+    final Path indexFile)
+    throws IOException
+  {
+    final var data =
+      ByteBuffer.allocate(HEADER_SIZE + this.entries * 12)
+        .order(ByteOrder.BIG_ENDIAN);
+
+    data.put(MAGIC);
+    data.putInt(VERSION);
+    data.putLong(this.coveredSize);
+    data.putLong(this.entries);
+    for (int index = 0; index < this.entries; ++index) {
+      data.putLong(this.offsets[index]);
+    }
+    for (int index = 0; index < this.entries; ++index) {
+      data.putInt(this.records[index]);
+    }
+    data.flip();
+
+    final var temporary =
+      indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+
+    try (var channel = FileChannel.open(
+      temporary,
+      StandardOpenOption.CREATE,
+      StandardOpenOption.WRITE,
+      StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (data.hasRemaining()) {
+        channel.write(data);
+      }
+    }
+
+    try {
+      Files.move(
+        temporary,
+        indexFile,
+        StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING
+      );
+    } catch (final AtomicMoveNotSupportedException e) {
+      Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Index the complete entries that have been added to the log since it was
+   * last indexed.
+   *
+   * @param log The log
+   *
+   * @return {@code true} if any entries were added to the index
+   *
+   * @throws IOException On I/O errors, or if the log is malformed
+   */
+
+  boolean extend(
+    final QWebMappedFile log)
+    throws IOException
+  {
+    final var size = log.size();
+    final var header = new byte[QWebRequestLogV2.HEADER_SIZE];
+    final var initialCovered = this.coveredSize;
+
+    var offset = this.coveredSize;
+    while (size - offset >= QWebRequestLogV2.HEADER_SIZE) {
+      log.region(offset, header.length).get(header);
+
+      final long end;
+      final int count;
+      final var version = QWebRequestLogging.headerVersion(header);
+      switch (version) {
+        case 1 -> {
+          final var lengthOffset = offset + header.length;
+          if (size - lengthOffset < Long.BYTES) {
+            return this.coveredSize != initialCovered;
+          }
+          final var length =
+            log.region(lengthOffset, Long.BYTES)
+              .order(ByteOrder.BIG_ENDIAN)
+              .getLong();
+          end = lengthOffset + Long.BYTES + length;
+          count = 1;
+        }
+        default -> {
+          final var prefixOffset = offset + header.length;
+          final var prefix =
+            log.region(prefixOffset, (int) Math.min(15L, size - prefixOffset));
+          try {
+            count = QWebRequestLogV2.readVarInt(prefix);
+            var length = QWebRequestLogV2.readVarInt(prefix);
+            if (version == 3) {
+              length = QWebRequestLogV2.readVarInt(prefix);
+            }
+            end = prefixOffset + prefix.position() + length;
+          } catch (final EOFException e) {
+            return this.coveredSize != initialCovered;
+          }
+        }
+      }
+
+      if (end > size || end < offset) {
+        break;
+      }
+      if (count > 0) {
+        this.add(offset, count);
+      }
+      offset = end;
+      this.coveredSize = end;
+    }
+    return this.coveredSize != initialCovered;
+  }
+
+  private void add(
+    final long offset,
+    final int count)
+  {
+    if (this.entries == this.offsets.length) {
+      final var capacity = Math.max(16, this.entries * 2);
+      this.offsets = Arrays.copyOf(this.offsets, capacity);
+      this.records = Arrays.copyOf(this.records, capacity);
+      this.firstRecords = Arrays.copyOf(this.firstRecords, capacity);
+    }
+
+    this.offsets[this.entries] = offset;
+    this.records[this.entries] = count;
+    this.firstRecords[this.entries] = this.recordCount;
+    this.recordCount += count;
+    ++this.entries;
+  }
+
+  /**
+   * @return The number of requests in the indexed entries
+   */
+
+  long recordCount()
+  {
+    return this.recordCount;
+  }
+
+  /**
+   * @return The number of indexed entries
+   */
+
+  int entries()
+  {
+    return this.entries;
+  }
+
+  /**
+   * @param entry The entry
+   *
+   * @return The offset of the entry in the log
+   */
+
+  long offset(
+    final int entry)
+  {
+    return this.offsets[entry];
+  }
+
+  /**
+   * @param entry The entry
+   *
+   * @return The number of requests in the entry
+   */
+
+  int records(
+    final int entry)
+  {
+    return this.records[entry];
+  }
+
+  /**
+   * @param entry The entry
+   *
+   * @return The index of the first request in the entry
+   */
+
+  long firstRecord(
+    final int entry)
+  {
+    return this.firstRecords[entry];
+  }
+
+  /**
+   * @param record The index of a request
+   *
+   * @return The entry that contains the request
+   */
+
+  int entryOf(
+    final long record)
+  {
+    Objects.checkIndex(record, this.recordCount);
+
+    int low = 0;
+    int high = this.entries - 1;
+    while (low < high) {
+      final var middle = (low + high + 1) >>> 1;
+      if (this.firstRecords[middle] <= record) {
+        low = middle;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return low;
+  }
+}
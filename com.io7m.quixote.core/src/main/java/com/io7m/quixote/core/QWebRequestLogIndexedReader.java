@@ -0,0 +1,446 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.Inflater;
+
+/**
+ * <p>A random-access reader of request logs. The log file is mapped into
+ * memory, and an index of the entries in the log is loaded from a sidecar
+ * file, or built and saved to the sidecar file if it does not exist. If the
+ * log has grown since the index was saved, only the new entries are indexed.
+ * Any request in the log can then be read without decoding more than the
+ * single version 1 record or version 2 or version 3 segment that contains
+ * it. Compressed version 3 segments are decompressed when they are first
+ * read, and the index allows any of them to be found without decompressing
+ * any other.</p>
+ *
+ * <p>The reader reflects the contents of the log at the time the reader was
+ * opened. The {@link #get(long)} method may be called from multiple threads,
+ * and each iterator returned by {@link #range(long, long)} may be used by
+ * one thread at a time, independently of all others.</p>
+ *
+ * @see QWebRequestLogWriter
+ * @since 1.4.0
+ */
+
+public final class QWebRequestLogIndexedReader implements Closeable
+{
+  private final QWebMappedFile log;
+  private final QWebRequestLogIndex index;
+  private final Cursor cursor;
+
+  private QWebRequestLogIndexedReader(
+    final QWebMappedFile inLog,
+    final QWebRequestLogIndex inIndex)
+  {
+    this.log = Objects.requireNonNull(inLog, "log");
+    this.index = Objects.requireNonNull(inIndex, "index");
+    this.cursor = new Cursor();
+  }
+
+  /**
+   * @param file The log file
+   *
+   * @return The sidecar index file used for the given log file by default
+   */
+
+  public static Path indexFileFor(
+    final Path file)
+  {
+    return file.resolveSibling(file.getFileName() + ".index");
+  }
+
+  /**
+   * Open a log file, using the default sidecar index file.
+   *
+   * @param file The log file
+   *
+   * @return A reader
+   *
+   * @throws IOException On I/O errors, or if the log is malformed
+   * @see #indexFileFor(Path)
+   */
+
+  public static QWebRequestLogIndexedReader open(
+    final Path file)
+    throws IOException
+  {
+    return open(file, indexFileFor(file));
+  }
+
+  /**
+   * Open a log file, using the given sidecar index file. The index file is
+   * created or updated if it does not describe the entire log.
+   *
+   * @param file      The log file
+   * @param indexFile The index file
+   *
+   * @return A reader
+   *
+   * @throws IOException On I/O errors, or if the log is malformed
+   */
+
+  public static QWebRequestLogIndexedReader open(
+    final Path file,
+    final Path indexFile)
+    throws IOException
+  {
+    Objects.requireNonNull(file, "file");
+    Objects.requireNonNull(indexFile, "indexFile");
+
+    final var log = QWebMappedFile.open(file);
+    try {
+      final var index =
+        QWebRequestLogIndex.load(indexFile, log)
+          .orElseGet(QWebRequestLogIndex::empty);
+
+      if (index.extend(log)) {
+        index.save(indexFile);
+      }
+      return new QWebRequestLogIndexedReader(log, index);
+    } catch (final IOException e) {
+      log.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Open a log file, extending the given index to cover any entries that
+   * have been added to the log since the index was last extended. The
+   * index is held only in memory, and so a log that is being written can
+   * be reopened repeatedly without rescanning or saving the index. The
+   * index must not be extended again while the returned reader is open.
+   *
+   * @param file  The log file
+   * @param index The index
+   *
+   * @return A reader
+   *
+   * @throws IOException On I/O errors, or if the log is malformed
+   */
+
+  static QWebRequestLogIndexedReader openIndexed(
+    final Path file,
+    final QWebRequestLogIndex index)
+    throws IOException
+  {
+    Objects.requireNonNull(file, "file");
+    Objects.requireNonNull(index, "index");
+
+    final var log = QWebMappedFile.open(file);
+    try {
+      index.extend(log);
+      return new QWebRequestLogIndexedReader(log, index);
+    } catch (final IOException e) {
+      log.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return The number of requests in the log
+   */
+
+  public long count()
+  {
+    return this.index.recordCount();
+  }
+
+  /**
+   * Read a request from the log.
+   *
+   * @param record The index of the request, starting at {@code 0}
+   *
+   * @return The request
+   *
+   * @throws IOException               On I/O errors, or if the log is
+   *                                   malformed
+   * @throws IndexOutOfBoundsException If the index is not in the range
+   *                                   {@code [0, count())}
+   */
+
+  public QWebRequestReceivedType get(
+    final long record)
+    throws IOException
+  {
+    Objects.checkIndex(record, this.count());
+
+    synchronized (this.cursor) {
+      return this.cursor.read(record);
+    }
+  }
+
+  /**
+   * Iterate over a range of requests in the log. The iterator throws
+   * {@link UncheckedIOException} if a request cannot be read.
+   *
+   * @param start The index of the first request (inclusive)
+   * @param end   The index of the last request (exclusive)
+   *
+   * @return An iterator over the requests
+   *
+   * @throws IndexOutOfBoundsException If the range is not within
+   *                                   {@code [0, count())}
+   */
+
+  public Iterator<QWebRequestReceivedType> range(
+    final long start,
+    final long end)
+  {
+    Objects.checkFromToIndex(start, end, this.count());
+    return Spliterators.iterator(new RangeSpliterator(start, end));
+  }
+
+  /**
+   * Stream the requests in the log. The stream is lazily decoded, and is
+   * backed by a spliterator that splits at entry boundaries, so that a
+   * parallel stream decodes disjoint parts of the log on multiple threads.
+   * The stream throws {@link UncheckedIOException} if a request cannot be
+   * read. Closing the stream does not close the reader.
+   *
+   * @return A stream of requests
+   */
+
+  public Stream<QWebRequestReceivedType> stream()
+  {
+    return StreamSupport.stream(
+      new RangeSpliterator(0L, this.count()),
+      false
+    );
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    this.log.close();
+  }
+
+  /**
+   * A spliterator over a range of requests. Splits are made at entry
+   * boundaries where possible, so that no version 2 segment is decoded by
+   * more than one spliterator.
+   */
+
+  private final class RangeSpliterator
+    implements Spliterator<QWebRequestReceivedType>
+  {
+    private final Cursor rangeCursor;
+    private final long end;
+    private long next;
+
+    RangeSpliterator(
+      final long inStart,
+      final long inEnd)
+    {
+      this.rangeCursor = new Cursor();
+      this.next = inStart;
+      this.end = inEnd;
+    }
+
+    @Override
+    public boolean tryAdvance(
+      final Consumer<? super QWebRequestReceivedType> action)
+    {
+      Objects.requireNonNull(action, "action");
+
+      if (this.next >= this.end) {
+        return false;
+      }
+      try {
+        action.accept(this.rangeCursor.read(this.next++));
+      } catch (final IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return true;
+    }
+
+    @Override
+    public Spliterator<QWebRequestReceivedType> trySplit()
+    {
+      if (this.end - this.next < 2L) {
+        return null;
+      }
+
+      final var idx =
+        QWebRequestLogIndexedReader.this.index;
+      final var middle =
+        this.next + (this.end - this.next) / 2L;
+      final var entry =
+        idx.entryOf(middle);
+
+      var split = idx.firstRecord(entry);
+      if (split <= this.next) {
+        split = idx.firstRecord(entry) + idx.records(entry);
+      }
+      if (split >= this.end) {
+        return null;
+      }
+
+      final var prefix = new RangeSpliterator(this.next, split);
+      this.next = split;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize()
+    {
+      return this.end - this.next;
+    }
+
+    @Override
+    public int characteristics()
+    {
+      return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+  }
+
+  /**
+   * The decoding state for the most recently read entry, so that requests
+   * read in order from the same version 2 segment are decoded only once.
+   */
+
+  private final class Cursor
+  {
+    private final QWebRequestLogV2.SegmentDecoder decoder;
+    private Inflater inflater;
+    private int entry;
+    private int version;
+    private int next;
+
+    Cursor()
+    {
+      this.decoder = new QWebRequestLogV2.SegmentDecoder();
+      this.entry = -1;
+    }
+
+    QWebRequestReceivedType read(
+      final long record)
+      throws IOException
+    {
+      final var idx =
+        QWebRequestLogIndexedReader.this.index;
+
+      final int target;
+      if (this.entry >= 0
+          && record >= idx.firstRecord(this.entry)
+          && record - idx.firstRecord(this.entry) < idx.records(this.entry)) {
+        target = this.entry;
+      } else {
+        target = idx.entryOf(record);
+      }
+
+      final var local = (int) (record - idx.firstRecord(target));
+      if (target != this.entry || local < this.next) {
+        this.open(target);
+      }
+
+      if (this.version == 1) {
+        ++this.next;
+        return this.readVersion1(idx.offset(target));
+      }
+
+      while (this.next < local) {
+        this.decoder.skip();
+        ++this.next;
+      }
+      ++this.next;
+      return this.decoder.next();
+    }
+
+    private void open(
+      final int target)
+      throws IOException
+    {
+      final var fileLog =
+        QWebRequestLogIndexedReader.this.log;
+      final var offset =
+        QWebRequestLogIndexedReader.this.index.offset(target);
+
+      final var header = new byte[QWebRequestLogV2.HEADER_SIZE];
+      fileLog.region(offset, header.length).get(header);
+
+      this.entry = -1;
+      this.version = QWebRequestLogging.headerVersion(header);
+      if (this.version != 1) {
+        final var prefixOffset = offset + header.length;
+        final var prefix =
+          fileLog.region(
+            prefixOffset,
+            (int) Math.min(15L, fileLog.size() - prefixOffset)
+          );
+        final var records = QWebRequestLogV2.readVarInt(prefix);
+        final var length = QWebRequestLogV2.readVarInt(prefix);
+        if (this.version == 2) {
+          this.decoder.reset(
+            fileLog.region(prefixOffset + prefix.position(), length),
+            records
+          );
+        } else {
+          final var compressedLength = QWebRequestLogV2.readVarInt(prefix);
+          if (this.inflater == null) {
+            this.inflater = new Inflater(true);
+          }
+          this.decoder.reset(
+            QWebRequestLogV2.inflate(
+              this.inflater,
+              fileLog.region(prefixOffset + prefix.position(), compressedLength),
+              length
+            ),
+            records
+          );
+        }
+      }
+      this.entry = target;
+      this.next = 0;
+    }
+
+    private QWebRequestReceivedType readVersion1(
+      final long offset)
+      throws IOException
+    {
+      final var fileLog =
+        QWebRequestLogIndexedReader.this.log;
+      final var lengthOffset =
+        offset + QWebRequestLogV2.HEADER_SIZE;
+      final var length =
+        fileLog.region(lengthOffset, Long.BYTES)
+          .order(ByteOrder.BIG_ENDIAN)
+          .getLong();
+
+      final var data =
+        new byte[Math.toIntExact(Long.BYTES + length)];
+      fileLog.region(lengthOffset, data.length).get(data);
+      return QWebRequestLogging.readVersion1(new ByteArrayInputStream(data));
+    }
+  }
+}
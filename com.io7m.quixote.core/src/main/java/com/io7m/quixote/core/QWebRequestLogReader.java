@@ -0,0 +1,168 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.zip.Inflater;
+
+/**
+ * A reader of logs in the binary request log format. Readers accept logs in
+ * the version 1, version 2, and compressed version 3 formats, including
+ * logs that contain a mixture of them.
+ *
+ * <p>Readers are not thread-safe.</p>
+ *
+ * @see QWebRequestLogWriter
+ * @see QWebRequestLogging
+ * @since 1.4.0
+ */
+
+public final class QWebRequestLogReader implements Closeable
+{
+  private final InputStream input;
+  private final QWebRequestLogV2.SegmentDecoder decoder;
+  private final Inflater inflater;
+
+  private QWebRequestLogReader(
+    final InputStream inInput)
+  {
+    this.input =
+      Objects.requireNonNull(inInput, "input");
+    this.decoder =
+      new QWebRequestLogV2.SegmentDecoder();
+    this.inflater =
+      new Inflater(true);
+  }
+
+  /**
+   * Create a reader that reads from the given stream.
+   *
+   * @param input The input stream
+   *
+   * @return A new reader
+   */
+
+  public static QWebRequestLogReader create(
+    final InputStream input)
+  {
+    if (input instanceof BufferedInputStream) {
+      return new QWebRequestLogReader(input);
+    }
+    return new QWebRequestLogReader(new BufferedInputStream(input));
+  }
+
+  /**
+   * Open a reader that reads from the given file.
+   *
+   * @param file The file
+   *
+   * @return A new reader
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static QWebRequestLogReader open(
+    final Path file)
+    throws IOException
+  {
+    return create(Files.newInputStream(file));
+  }
+
+  /**
+   * Read the next request from the log.
+   *
+   * @return The next request, or nothing if the end of the log has been
+   * reached
+   *
+   * @throws IOException On I/O errors or malformed logs
+   */
+
+  public Optional<QWebRequestReceivedType> read()
+    throws IOException
+  {
+    while (this.decoder.remaining() == 0) {
+      final var header =
+        this.input.readNBytes(QWebRequestLogV2.HEADER_SIZE);
+
+      if (header.length == 0) {
+        return Optional.empty();
+      }
+      if (header.length != QWebRequestLogV2.HEADER_SIZE) {
+        throw new EOFException("Unexpected end of log.");
+      }
+
+      switch (QWebRequestLogging.headerVersion(header)) {
+        case 1 -> {
+          return Optional.of(QWebRequestLogging.readVersion1(this.input));
+        }
+        case 2 -> {
+          final var records =
+            QWebRequestLogV2.readVarInt(this.input);
+          final var size =
+            QWebRequestLogV2.readVarInt(this.input);
+          this.decoder.reset(ByteBuffer.wrap(this.readBody(size)), records);
+        }
+        default -> {
+          final var records =
+            QWebRequestLogV2.readVarInt(this.input);
+          final var size =
+            QWebRequestLogV2.readVarInt(this.input);
+          final var compressedSize =
+            QWebRequestLogV2.readVarInt(this.input);
+          final var body =
+            QWebRequestLogV2.inflate(
+              this.inflater,
+              ByteBuffer.wrap(this.readBody(compressedSize)),
+              size
+            );
+          this.decoder.reset(body, records);
+        }
+      }
+    }
+
+    return Optional.of(this.decoder.next());
+  }
+
+  private byte[] readBody(
+    final int size)
+    throws IOException
+  {
+    final var body = this.input.readNBytes(size);
+    if (body.length != size) {
+      throw new EOFException("Unexpected end of log.");
+    }
+    return body;
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    this.inflater.end();
+    this.input.close();
+  }
+}
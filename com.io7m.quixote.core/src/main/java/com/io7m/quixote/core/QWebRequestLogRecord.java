@@ -0,0 +1,223 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>A request decoded from a version 2 request log segment. The record is
+ * a view over the encoded segment: each of the method, path, headers and
+ * files is decoded on first access and retained, so repeated accesses cost
+ * nothing and allocate nothing. Header names are shared with the other
+ * records in the segment.</p>
+ *
+ * <p>The decoded values are immutable and may be computed more than once if
+ * the record is accessed concurrently, which is harmless. The structure of
+ * the record is validated when the segment is decoded, so decoding a
+ * section on access cannot fail.</p>
+ */
+
+final class QWebRequestLogRecord implements QWebRequestReceivedType
+{
+  private final ByteBuffer data;
+  private final int start;
+  private final int headersStart;
+  private final int filesStart;
+  private final String[] names;
+  private String method;
+  private String path;
+  private Map<String, String> headers;
+  private Map<String, String> files;
+
+  QWebRequestLogRecord(
+    final ByteBuffer inData,
+    final int inStart,
+    final int inHeadersStart,
+    final int inFilesStart,
+    final String[] inNames)
+  {
+    this.data = Objects.requireNonNull(inData, "data");
+    this.start = inStart;
+    this.headersStart = inHeadersStart;
+    this.filesStart = inFilesStart;
+    this.names = Objects.requireNonNull(inNames, "names");
+  }
+
+  @Override
+  public String method()
+  {
+    var result = this.method;
+    if (result == null) {
+      result = this.decode(() -> this.cursor(this.start).readString());
+      this.method = result;
+    }
+    return result;
+  }
+
+  @Override
+  public String path()
+  {
+    var result = this.path;
+    if (result == null) {
+      result = this.decode(() -> {
+        final var cursor = this.cursor(this.start);
+        cursor.skipString();
+        return cursor.readString();
+      });
+      this.path = result;
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, String> headers()
+  {
+    var result = this.headers;
+    if (result == null) {
+      result = this.decode(this::decodeHeaders);
+      this.headers = result;
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, String> files()
+  {
+    var result = this.files;
+    if (result == null) {
+      result = this.decode(this::decodeFiles);
+      this.files = result;
+    }
+    return result;
+  }
+
+  private Map<String, String> decodeHeaders()
+    throws IOException
+  {
+    final var cursor = this.cursor(this.headersStart);
+    final var count = cursor.readVarInt();
+    if (count == 0) {
+      return Map.of();
+    }
+
+    @SuppressWarnings("unchecked")
+    final Map.Entry<String, String>[] entries =
+      (Map.Entry<String, String>[]) new Map.Entry<?, ?>[count];
+    for (int index = 0; index < count; ++index) {
+      final var reference = cursor.readVarInt();
+      final String name;
+      if (reference == 0) {
+        name = cursor.readString();
+      } else {
+        name = this.names[reference - 1];
+      }
+      entries[index] = Map.entry(name, cursor.readString());
+    }
+    return ofEntries(entries);
+  }
+
+  private Map<String, String> decodeFiles()
+    throws IOException
+  {
+    final var cursor = this.cursor(this.filesStart);
+    final var count = cursor.readVarInt();
+    if (count == 0) {
+      return Map.of();
+    }
+
+    @SuppressWarnings("unchecked")
+    final Map.Entry<String, String>[] entries =
+      (Map.Entry<String, String>[]) new Map.Entry<?, ?>[count];
+    for (int index = 0; index < count; ++index) {
+      final var name = cursor.readString();
+      entries[index] = Map.entry(name, cursor.readString());
+    }
+    return ofEntries(entries);
+  }
+
+  private static Map<String, String> ofEntries(
+    final Map.Entry<String, String>[] entries)
+    throws IOException
+  {
+    try {
+      return Map.ofEntries(entries);
+    } catch (final IllegalArgumentException e) {
+      throw new IOException("Duplicate names in request record.", e);
+    }
+  }
+
+  private QWebRequestLogV2.BufferCursor cursor(
+    final int position)
+  {
+    return new QWebRequestLogV2.BufferCursor(this.data, position);
+  }
+
+  private <T> T decode(
+    final Decoder<T> decoder)
+  {
+    try {
+      return decoder.decode();
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public boolean equals(
+    final Object other)
+  {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof final QWebRequestLogRecord that)) {
+      return false;
+    }
+    return this.method().equals(that.method())
+           && this.path().equals(that.path())
+           && this.headers().equals(that.headers())
+           && this.files().equals(that.files());
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return Objects.hash(
+      this.method(),
+      this.path(),
+      this.headers(),
+      this.files()
+    );
+  }
+
+  @Override
+  public String toString()
+  {
+    return "QWebRequestLogRecord[method=%s, path=%s, headers=%s, files=%s]"
+      .formatted(this.method(), this.path(), this.headers(), this.files());
+  }
+
+  private interface Decoder<T>
+  {
+    T decode()
+      throws IOException;
+  }
+}
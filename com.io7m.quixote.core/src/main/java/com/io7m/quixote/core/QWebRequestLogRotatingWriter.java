@@ -0,0 +1,310 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * <p>A request log writer that writes a series of log files in a directory,
+ * starting a new file when the current file reaches a configured size or
+ * age. The log files are named {@code <base>-<n>.bin} for increasing values
+ * of {@code n}, and a manifest named {@code <base>.manifest} lists the file
+ * names, one per line, in the order they were written. The manifest is
+ * replaced atomically, where possible, each time a file is started. Each
+ * file is a complete log that can be read independently of the others.</p>
+ *
+ * <p>The age of a file is checked when requests are appended, so a file may
+ * remain open past its maximum age if no requests are received. If the
+ * manifest already exists when the writer is opened, the writer starts a
+ * new file after the files that the manifest lists.</p>
+ *
+ * <p>Writers are not thread-safe. To avoid blocking the threads that
+ * receive requests, use a writer from an asynchronous request callback.</p>
+ *
+ * @see QWebServerType#setRequestBatchCallback(QWebRequestDispatchConfiguration, java.util.function.Consumer)
+ * @since 1.4.0
+ */
+
+public final class QWebRequestLogRotatingWriter
+  implements QWebRequestLogWriterType
+{
+  private final Path directory;
+  private final String baseName;
+  private final QWebRequestLogRotationConfiguration configuration;
+  private final Clock clock;
+  private final List<String> files;
+  private final Path manifest;
+  private QWebRequestLogWriter writer;
+  private Instant started;
+  private long appended;
+  private boolean closed;
+
+  private QWebRequestLogRotatingWriter(
+    final Path inDirectory,
+    final String inBaseName,
+    final QWebRequestLogRotationConfiguration inConfiguration,
+    final Clock inClock,
+    final List<String> inFiles)
+  {
+    this.directory =
+      Objects.requireNonNull(inDirectory, "directory");
+    this.baseName =
+      Objects.requireNonNull(inBaseName, "baseName");
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.clock =
+      Objects.requireNonNull(inClock, "clock");
+    this.files =
+      Objects.requireNonNull(inFiles, "files");
+    this.manifest =
+      manifestFor(inDirectory, inBaseName);
+  }
+
+  /**
+   * @param directory The log directory
+   * @param baseName  The base name of the log files
+   *
+   * @return The manifest file for the given log files
+   */
+
+  public static Path manifestFor(
+    final Path directory,
+    final String baseName)
+  {
+    return directory.resolve(baseName + ".manifest");
+  }
+
+  /**
+   * Read the list of log files from a manifest.
+   *
+   * @param manifest The manifest file
+   *
+   * @return The log files, in the order they were written
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static List<Path> readManifest(
+    final Path manifest)
+    throws IOException
+  {
+    final var parent = manifest.toAbsolutePath().getParent();
+    return Files.readAllLines(manifest, UTF_8)
+      .stream()
+      .filter(line -> !line.isBlank())
+      .map(parent::resolve)
+      .toList();
+  }
+
+  /**
+   * Open a rotating writer, creating the directory if necessary.
+   *
+   * @param directory     The log directory
+   * @param baseName      The base name of the log files
+   * @param configuration The writer configuration
+   *
+   * @return A new writer
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static QWebRequestLogRotatingWriter open(
+    final Path directory,
+    final String baseName,
+    final QWebRequestLogRotationConfiguration configuration)
+    throws IOException
+  {
+    return open(directory, baseName, configuration, Clock.systemUTC());
+  }
+
+  /**
+   * Open a rotating writer, creating the directory if necessary.
+   *
+   * @param directory     The log directory
+   * @param baseName      The base name of the log files
+   * @param configuration The writer configuration
+   * @param clock         The clock used to determine the age of log files
+   *
+   * @return A new writer
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static QWebRequestLogRotatingWriter open(
+    final Path directory,
+    final String baseName,
+    final QWebRequestLogRotationConfiguration configuration,
+    final Clock clock)
+    throws IOException
+  {
+    Files.createDirectories(directory);
+
+    final var manifest = manifestFor(directory, baseName);
+    final var files = new ArrayList<String>();
+    if (Files.isRegularFile(manifest)) {
+      for (final var file : readManifest(manifest)) {
+        files.add(file.getFileName().toString());
+      }
+    }
+
+    final var writer =
+      new QWebRequestLogRotatingWriter(
+        directory,
+        baseName,
+        configuration,
+        clock,
+        files
+      );
+    writer.startFile();
+    return writer;
+  }
+
+  /**
+   * @return The log files written so far, including the current file, in
+   * the order they were written
+   */
+
+  public List<Path> files()
+  {
+    return this.files.stream()
+      .map(this.directory::resolve)
+      .toList();
+  }
+
+  @Override
+  public void append(
+    final QWebRequestReceivedType request)
+    throws IOException
+  {
+    Objects.requireNonNull(request, "request");
+    this.checkNotClosed();
+
+    if (this.appended > 0L && this.isExpired()) {
+      this.rotate();
+    }
+
+    this.writer.append(request);
+    ++this.appended;
+    this.rotateIfFull();
+  }
+
+  @Override
+  public void flush()
+    throws IOException
+  {
+    this.checkNotClosed();
+    this.writer.flush();
+    this.rotateIfFull();
+  }
+
+  private boolean isExpired()
+  {
+    final var age =
+      Duration.between(this.started, this.clock.instant());
+    return age.compareTo(this.configuration.maximumFileAge()) >= 0;
+  }
+
+  private void rotateIfFull()
+    throws IOException
+  {
+    if (this.writer.bytesWritten() >= this.configuration.maximumFileSize()) {
+      this.rotate();
+    }
+  }
+
+  private void rotate()
+    throws IOException
+  {
+    this.writer.close();
+    this.startFile();
+  }
+
+  private void startFile()
+    throws IOException
+  {
+    final var name =
+      "%s-%08d.bin".formatted(
+        this.baseName,
+        Integer.valueOf(this.files.size() + 1)
+      );
+
+    this.writer =
+      QWebRequestLogWriter.open(
+        this.directory.resolve(name),
+        this.configuration.writer(),
+        StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE,
+        StandardOpenOption.APPEND
+      );
+    this.started = this.clock.instant();
+    this.appended = 0L;
+    this.files.add(name);
+    this.writeManifest();
+  }
+
+  private void writeManifest()
+    throws IOException
+  {
+    final var temporary =
+      this.manifest.resolveSibling(this.manifest.getFileName() + ".tmp");
+
+    Files.write(temporary, this.files, UTF_8);
+    try {
+      Files.move(
+        temporary,
+        this.manifest,
+        StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING
+      );
+    } catch (final AtomicMoveNotSupportedException e) {
+      Files.move(temporary, this.manifest, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private void checkNotClosed()
+    throws IOException
+  {
+    if (this.closed) {
+      throw new IOException("Writer is closed.");
+    }
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    this.writer.close();
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The configuration of a rotating request log writer.
+ *
+ * @param maximumFileSize The size in bytes at which a log file is closed
+ *                        and a new log file is started
+ * @param maximumFileAge  The age at which a log file is closed and a new
+ *                        log file is started
+ * @param writer          The configuration of the writer used for each
+ *                        log file
+ *
+ * @see QWebRequestLogRotatingWriter
+ * @since 1.4.0
+ */
+
+public record QWebRequestLogRotationConfiguration(
+  long maximumFileSize,
+  Duration maximumFileAge,
+  QWebRequestLogWriterConfiguration writer)
+{
+  /**
+   * The configuration of a rotating request log writer.
+   *
+   * @param maximumFileSize The size in bytes at which a log file is closed
+   *                        and a new log file is started
+   * @param maximumFileAge  The age at which a log file is closed and a new
+   *                        log file is started
+   * @param writer          The configuration of the writer used for each
+   *                        log file
+   */
+
+  public QWebRequestLogRotationConfiguration
+  {
+    Objects.requireNonNull(maximumFileAge, "maximumFileAge");
+    Objects.requireNonNull(writer, "writer");
+
+    if (maximumFileSize < 1L) {
+      throw new IllegalArgumentException(
+        "Maximum file size must be positive: %d"
+          .formatted(Long.valueOf(maximumFileSize))
+      );
+    }
+    if (maximumFileAge.isNegative() || maximumFileAge.isZero()) {
+      throw new IllegalArgumentException(
+        "Maximum file age must be positive: %s".formatted(maximumFileAge)
+      );
+    }
+  }
+}
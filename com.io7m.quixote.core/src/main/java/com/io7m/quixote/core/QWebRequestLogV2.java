@@ -0,0 +1,490 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Functions to encode and decode the version 2 binary request log format.
+ *
+ * <p>A version 2 log is a sequence of segments. Each segment begins with the
+ * log header (with a version number of {@code 2}), followed by the number of
+ * records in the segment and the size in bytes of the segment body, both
+ * encoded as unsigned variable-length integers. The body is a sequence of
+ * records, each of which consists of a method, a path, a list of headers,
+ * and a list of files. Strings are encoded as a length followed by UTF-8
+ * bytes. Header names are interned: each header name is written in full the
+ * first time it appears in a segment, and as a reference to that first
+ * occurrence thereafter. Segments are self-contained, so logs may be
+ * concatenated, and may contain version 1 records between segments.</p>
+ *
+ * <p>A version 3 segment is a compressed version 2 segment. The header (with
+ * a version number of {@code 3}) is followed by the number of records, the
+ * size in bytes of the uncompressed body, and the size in bytes of the
+ * compressed body, all encoded as unsigned variable-length integers. The
+ * compressed body is the raw deflate compression of the version 2 segment
+ * body. Version 2 and version 3 segments may be freely mixed in a log.</p>
+ */
+
+final class QWebRequestLogV2
+{
+  /**
+   * The size in bytes of the log header.
+   */
+
+  static final int HEADER_SIZE = 12;
+
+  private QWebRequestLogV2()
+  {
+
+  }
+
+  /**
+   * Write an unsigned variable-length integer.
+   *
+   * @param output The output
+   * @param value  The value
+   */
+
+  static void writeVarInt(
+    final ByteArrayOutputStream output,
+    final int value)
+  {
+    var v = value;
+    while ((v & ~0x7f) != 0) {
+      output.write((v & 0x7f) | 0x80);
+      v >>>= 7;
+    }
+    output.write(v);
+  }
+
+  /**
+   * Write a length-prefixed UTF-8 string.
+   *
+   * @param output The output
+   * @param value  The value
+   */
+
+  static void writeString(
+    final ByteArrayOutputStream output,
+    final String value)
+  {
+    final var bytes = value.getBytes(UTF_8);
+    writeVarInt(output, bytes.length);
+    output.writeBytes(bytes);
+  }
+
+  /**
+   * Encode a request into a segment body.
+   *
+   * @param output  The segment body
+   * @param names   The header names interned so far in the segment
+   * @param request The request
+   */
+
+  static void writeRecord(
+    final ByteArrayOutputStream output,
+    final Map<String, Integer> names,
+    final QWebRequestReceivedType request)
+  {
+    writeString(output, request.method());
+    writeString(output, request.path());
+
+    final var headers = request.headers();
+    writeVarInt(output, headers.size());
+    for (final var entry : headers.entrySet()) {
+      final var name = entry.getKey();
+      final var index = names.get(name);
+      if (index == null) {
+        writeVarInt(output, 0);
+        writeString(output, name);
+        names.put(name, Integer.valueOf(names.size() + 1));
+      } else {
+        writeVarInt(output, index.intValue());
+      }
+      writeString(output, entry.getValue());
+    }
+
+    final var files = request.files();
+    writeVarInt(output, files.size());
+    for (final var entry : files.entrySet()) {
+      writeString(output, entry.getKey());
+      writeString(output, entry.getValue());
+    }
+  }
+
+  /**
+   * Decompress the body of a version 3 segment.
+   *
+   * @param inflater   The inflater, which is reset before use
+   * @param compressed The compressed body, from its position to its limit
+   * @param size       The size of the uncompressed body
+   *
+   * @return The uncompressed body
+   *
+   * @throws IOException If the body is malformed, or its uncompressed size
+   *                     is not the given size
+   */
+
+  static ByteBuffer inflate(
+    final Inflater inflater,
+    final ByteBuffer compressed,
+    final int size)
+    throws IOException
+  {
+    final var output = new byte[size];
+    inflater.reset();
+    inflater.setInput(compressed);
+
+    try {
+      var written = 0;
+      while (!inflater.finished()) {
+        final var count = inflater.inflate(output, written, size - written);
+        written += count;
+        if (count == 0 && (inflater.needsInput() || written == size)) {
+          break;
+        }
+      }
+      if (!inflater.finished() || written != size) {
+        throw new IOException(
+          "Compressed segment does not decompress to %d bytes."
+            .formatted(Integer.valueOf(size))
+        );
+      }
+    } catch (final DataFormatException e) {
+      throw new IOException(e);
+    }
+    return ByteBuffer.wrap(output);
+  }
+
+  /**
+   * Read an unsigned variable-length integer from a stream.
+   *
+   * @param input The input
+   *
+   * @return The value
+   *
+   * @throws IOException On I/O errors or malformed input
+   */
+
+  static int readVarInt(
+    final InputStream input)
+    throws IOException
+  {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      final var b = input.read();
+      if (b == -1) {
+        throw new EOFException("Unexpected end of log.");
+      }
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return checkNonNegative(value);
+      }
+    }
+    throw new IOException("Malformed variable-length integer.");
+  }
+
+  /**
+   * Read an unsigned variable-length integer from a buffer, advancing the
+   * buffer's position.
+   *
+   * @param input The input
+   *
+   * @return The value
+   *
+   * @throws IOException On malformed input
+   */
+
+  static int readVarInt(
+    final ByteBuffer input)
+    throws IOException
+  {
+    int value = 0;
+    try {
+      for (int shift = 0; shift < 32; shift += 7) {
+        final var b = input.get();
+        value |= (b & 0x7f) << shift;
+        if ((b & 0x80) == 0) {
+          return checkNonNegative(value);
+        }
+      }
+    } catch (final BufferUnderflowException e) {
+      throw new EOFException("Unexpected end of log.");
+    }
+    throw new IOException("Malformed variable-length integer.");
+  }
+
+  private static int checkNonNegative(
+    final int value)
+    throws IOException
+  {
+    if (value < 0) {
+      throw new IOException(
+        "Variable-length integer out of range: %s"
+          .formatted(Integer.toUnsignedString(value))
+      );
+    }
+    return value;
+  }
+
+  /**
+   * A cursor over a buffer holding encoded values. Cursors only use
+   * absolute reads, so any number of cursors may read the same buffer
+   * concurrently.
+   */
+
+  static final class BufferCursor
+  {
+    private final ByteBuffer data;
+    private int position;
+
+    BufferCursor(
+      final ByteBuffer inData,
+      final int inPosition)
+    {
+      this.data = inData;
+      this.position = inPosition;
+    }
+
+    int position()
+    {
+      return this.position;
+    }
+
+    int readVarInt()
+      throws IOException
+    {
+      int value = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+        if (this.position >= this.data.limit()) {
+          throw new EOFException("Unexpected end of segment.");
+        }
+        final var b = this.data.get(this.position++);
+        value |= (b & 0x7f) << shift;
+        if ((b & 0x80) == 0) {
+          return checkNonNegative(value);
+        }
+      }
+      throw new IOException("Malformed variable-length integer.");
+    }
+
+    String readString()
+      throws IOException
+    {
+      final var length = this.skipString();
+      final var start = this.position - length;
+      if (this.data.hasArray()) {
+        return new String(
+          this.data.array(),
+          this.data.arrayOffset() + start,
+          length,
+          UTF_8
+        );
+      }
+      final var bytes = new byte[length];
+      this.data.get(start, bytes);
+      return new String(bytes, UTF_8);
+    }
+
+    int skipString()
+      throws IOException
+    {
+      final var length = this.readVarInt();
+      if (length > this.data.limit() - this.position) {
+        throw new EOFException("Unexpected end of segment.");
+      }
+      this.position += length;
+      return length;
+    }
+  }
+
+  /**
+   * A decoder for the records in a single segment body. Decoding a record
+   * only determines where its sections begin, and interns any header names
+   * that it introduces; the contents of each section are decoded by the
+   * returned record on first access.
+   */
+
+  static final class SegmentDecoder
+  {
+    private ByteBuffer data;
+    private BufferCursor cursor;
+    private String[] names;
+    private int nameCount;
+    private int remaining;
+
+    SegmentDecoder()
+    {
+      this.data = ByteBuffer.allocate(0);
+      this.cursor = new BufferCursor(this.data, 0);
+      this.names = new String[0];
+    }
+
+    /**
+     * Start decoding a new segment.
+     *
+     * @param newData    The segment body, from its position to its limit
+     * @param newRecords The number of records in the segment
+     */
+
+    void reset(
+      final ByteBuffer newData,
+      final int newRecords)
+    {
+      this.data = newData.slice();
+      this.cursor = new BufferCursor(this.data, 0);
+      this.names = new String[8];
+      this.nameCount = 0;
+      this.remaining = newRecords;
+    }
+
+    /**
+     * @return The number of records not yet decoded in the segment
+     */
+
+    int remaining()
+    {
+      return this.remaining;
+    }
+
+    /**
+     * Decode the next record in the segment.
+     *
+     * @return The request
+     *
+     * @throws IOException On malformed input
+     */
+
+    QWebRequestReceivedType next()
+      throws IOException
+    {
+      this.checkRemaining();
+
+      final var start = this.cursor.position();
+      this.cursor.skipString();
+      this.cursor.skipString();
+      final var headers = this.cursor.position();
+      this.skipHeaders();
+      final var files = this.cursor.position();
+      this.skipFiles();
+      this.finishRecord();
+
+      return new QWebRequestLogRecord(
+        this.data,
+        start,
+        headers,
+        files,
+        this.names
+      );
+    }
+
+    /**
+     * Skip the next record in the segment.
+     *
+     * @throws IOException On malformed input
+     */
+
+    void skip()
+      throws IOException
+    {
+      this.checkRemaining();
+
+      this.cursor.skipString();
+      this.cursor.skipString();
+      this.skipHeaders();
+      this.skipFiles();
+      this.finishRecord();
+    }
+
+    private void checkRemaining()
+    {
+      if (this.remaining == 0) {
+        throw new IllegalStateException("No records remain in the segment.");
+      }
+    }
+
+    private void skipHeaders()
+      throws IOException
+    {
+      final var count = this.cursor.readVarInt();
+      for (int index = 0; index < count; ++index) {
+        final var reference = this.cursor.readVarInt();
+        if (reference == 0) {
+          this.intern(this.cursor.readString());
+        } else if (reference > this.nameCount) {
+          throw new IOException(
+            "Header name reference %d out of range."
+              .formatted(Integer.valueOf(reference))
+          );
+        }
+        this.cursor.skipString();
+      }
+    }
+
+    private void skipFiles()
+      throws IOException
+    {
+      final var count = this.cursor.readVarInt();
+      for (int index = 0; index < count; ++index) {
+        this.cursor.skipString();
+        this.cursor.skipString();
+      }
+    }
+
+    private void finishRecord()
+      throws IOException
+    {
+      --this.remaining;
+
+      final var trailing = this.data.limit() - this.cursor.position();
+      if (this.remaining == 0 && trailing != 0) {
+        throw new IOException(
+          "Segment contains %d trailing bytes."
+            .formatted(Integer.valueOf(trailing))
+        );
+      }
+    }
+
+    /*
+     * Names are appended to an array that is replaced, rather than
+     * modified, when it is full. The array captured by a record therefore
+     * never changes at the indices the record refers to.
+     */
+
+    private void intern(
+      final String name)
+    {
+      if (this.nameCount == this.names.length) {
+        this.names = Arrays.copyOf(this.names, this.names.length * 2);
+      }
+      this.names[this.nameCount++] = name;
+    }
+  }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.Deflater;
+
+/**
+ * A writer of logs in the version 2 binary request log format.
+ *
+ * <p>Records are encoded into a buffer as they are appended, and the buffer
+ * is written to the log as a single segment with a single write when it
+ * reaches the configured limits, or when the writer is flushed. Callers that
+ * receive requests in batches should therefore append each batch and then
+ * flush the writer, so that each batch costs one write (and, if configured,
+ * one synchronization to storage) regardless of its size.</p>
+ *
+ * <p>If the configuration specifies a compression level, each segment is
+ * deflate-compressed as a whole, and is written as a version 3 segment.
+ * All of the log readers accept compressed segments.</p>
+ *
+ * <p>Writers are not thread-safe.</p>
+ *
+ * @see QWebRequestLogReader
+ * @since 1.4.0
+ */
+
+public final class QWebRequestLogWriter implements QWebRequestLogWriterType
+{
+  private final QWebRequestLogWriterConfiguration configuration;
+  private final OutputStream output;
+  private final FileChannel channel;
+  private final Buffer body;
+  private final ByteArrayOutputStream segment;
+  private final ByteArrayOutputStream compressed;
+  private final Deflater deflater;
+  private final byte[] chunk;
+  private final Map<String, Integer> names;
+  private int records;
+  private long bytesWritten;
+  private boolean closed;
+
+  private QWebRequestLogWriter(
+    final QWebRequestLogWriterConfiguration inConfiguration,
+    final OutputStream inOutput,
+    final FileChannel inChannel)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.output =
+      Objects.requireNonNull(inOutput, "output");
+    this.channel =
+      inChannel;
+    this.body =
+      new Buffer(inConfiguration.segmentBytes());
+    this.segment =
+      new ByteArrayOutputStream(inConfiguration.segmentBytes());
+
+    final var level = inConfiguration.compressionLevel();
+    if (level == QWebRequestLogWriterConfiguration.NO_COMPRESSION) {
+      this.compressed = null;
+      this.deflater = null;
+      this.chunk = null;
+    } else {
+      this.compressed = new ByteArrayOutputStream();
+      this.deflater = new Deflater(level, true);
+      this.chunk = new byte[8192];
+    }
+    this.names =
+      new HashMap<>();
+  }
+
+  /**
+   * Create a writer that writes to the given stream. If the stream is a
+   * {@link FileOutputStream}, and the configuration requests synchronous
+   * writes, the underlying file is synchronized to storage each time a
+   * segment is written.
+   *
+   * @param output        The output stream
+   * @param configuration The writer configuration
+   *
+   * @return A new writer
+   */
+
+  public static QWebRequestLogWriter create(
+    final OutputStream output,
+    final QWebRequestLogWriterConfiguration configuration)
+  {
+    final FileChannel channel;
+    if (output instanceof final FileOutputStream file) {
+      channel = file.getChannel();
+    } else {
+      channel = null;
+    }
+    return new QWebRequestLogWriter(configuration, output, channel);
+  }
+
+  /**
+   * Open a writer that writes to the given file.
+   *
+   * @param file          The file
+   * @param configuration The writer configuration
+   * @param options       The options used to open the file
+   *
+   * @return A new writer
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static QWebRequestLogWriter open(
+    final Path file,
+    final QWebRequestLogWriterConfiguration configuration,
+    final OpenOption... options)
+    throws IOException
+  {
+    final var channel =
+      FileChannel.open(file, options);
+    return new QWebRequestLogWriter(
+      configuration,
+      Channels.newOutputStream(channel),
+      channel
+    );
+  }
+
+  /**
+   * Append a request to the log. The request may be buffered until the
+   * writer is flushed.
+   *
+   * @param request The request
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Override
+  public void append(
+    final QWebRequestReceivedType request)
+    throws IOException
+  {
+    Objects.requireNonNull(request, "request");
+    this.checkNotClosed();
+
+    QWebRequestLogV2.writeRecord(this.body, this.names, request);
+    ++this.records;
+
+    if (this.records >= this.configuration.segmentRecords()
+        || this.body.size() >= this.configuration.segmentBytes()) {
+      this.writeSegment();
+    }
+  }
+
+  /**
+   * Write any buffered requests to the log.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Override
+  public void flush()
+    throws IOException
+  {
+    this.checkNotClosed();
+
+    if (this.records > 0) {
+      this.writeSegment();
+    }
+  }
+
+  private void writeSegment()
+    throws IOException
+  {
+    this.segment.reset();
+
+    if (this.deflater == null) {
+      this.segment.writeBytes(QWebRequestLogging.header(2));
+      QWebRequestLogV2.writeVarInt(this.segment, this.records);
+      QWebRequestLogV2.writeVarInt(this.segment, this.body.size());
+      this.body.writeTo(this.segment);
+    } else {
+      this.compress();
+      this.segment.writeBytes(QWebRequestLogging.header(3));
+      QWebRequestLogV2.writeVarInt(this.segment, this.records);
+      QWebRequestLogV2.writeVarInt(this.segment, this.body.size());
+      QWebRequestLogV2.writeVarInt(this.segment, this.compressed.size());
+      this.compressed.writeTo(this.segment);
+    }
+
+    /*
+     * The buffered requests are only discarded once the segment has been
+     * written, so that a failed write loses nothing and the next flush
+     * retries it.
+     */
+
+    this.segment.writeTo(this.output);
+    this.output.flush();
+    this.bytesWritten += this.segment.size();
+
+    this.body.reset();
+    this.names.clear();
+    this.records = 0;
+
+    if (this.channel != null && this.configuration.synchronous()) {
+      this.channel.force(false);
+    }
+  }
+
+  /**
+   * @return The number of bytes written to the log by this writer, not
+   * including any buffered requests
+   */
+
+  public long bytesWritten()
+  {
+    return this.bytesWritten;
+  }
+
+  private void compress()
+  {
+    this.compressed.reset();
+    this.deflater.reset();
+    this.deflater.setInput(this.body.contents());
+    this.deflater.finish();
+    while (!this.deflater.finished()) {
+      final var size = this.deflater.deflate(this.chunk);
+      this.compressed.write(this.chunk, 0, size);
+    }
+  }
+
+  private void checkNotClosed()
+    throws IOException
+  {
+    if (this.closed) {
+      throw new IOException("Writer is closed.");
+    }
+  }
+
+  /**
+   * Write any buffered requests to the log, and close the underlying
+   * output.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    if (this.closed) {
+      return;
+    }
+
+    try {
+      this.flush();
+    } finally {
+      this.closed = true;
+      if (this.deflater != null) {
+        this.deflater.end();
+      }
+      this.output.close();
+    }
+  }
+
+  private static final class Buffer extends ByteArrayOutputStream
+  {
+    Buffer(
+      final int size)
+    {
+      super(size);
+    }
+
+    ByteBuffer contents()
+    {
+      return ByteBuffer.wrap(this.buf, 0, this.count);
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+/**
+ * The configuration of a request log writer.
+ *
+ * @param segmentRecords   The maximum number of records buffered before
+ *                         they are written to the log
+ * @param segmentBytes     The maximum number of encoded bytes buffered
+ *                         before they are written to the log
+ * @param synchronous      {@code true} if the log file should be
+ *                         synchronized to storage each time buffered
+ *                         records are written
+ * @param compressionLevel The deflate compression level in the range
+ *                         {@code [1, 9]} used to compress each segment, or
+ *                         {@link #NO_COMPRESSION} to write uncompressed
+ *                         segments
+ *
+ * @see QWebRequestLogWriter
+ * @since 1.4.0
+ */
+
+public record QWebRequestLogWriterConfiguration(
+  int segmentRecords,
+  int segmentBytes,
+  boolean synchronous,
+  int compressionLevel)
+{
+  /**
+   * The default maximum number of buffered records.
+   */
+
+  public static final int DEFAULT_SEGMENT_RECORDS = 1024;
+
+  /**
+   * The default maximum number of buffered bytes.
+   */
+
+  public static final int DEFAULT_SEGMENT_BYTES = 65536;
+
+  /**
+   * The compression level that disables compression.
+   */
+
+  public static final int NO_COMPRESSION = 0;
+
+  /**
+   * The default compression level used when compression is enabled.
+   */
+
+  public static final int DEFAULT_COMPRESSION_LEVEL = 6;
+
+  /**
+   * The configuration of a request log writer.
+   *
+   * @param segmentRecords   The maximum number of records buffered before
+   *                         they are written to the log
+   * @param segmentBytes     The maximum number of encoded bytes buffered
+   *                         before they are written to the log
+   * @param synchronous      {@code true} if the log file should be
+   *                         synchronized to storage each time buffered
+   *                         records are written
+   * @param compressionLevel The deflate compression level in the range
+   *                         {@code [1, 9]} used to compress each segment, or
+   *                         {@link #NO_COMPRESSION} to write uncompressed
+   *                         segments
+   */
+
+  public QWebRequestLogWriterConfiguration
+  {
+    if (segmentRecords < 1) {
+      throw new IllegalArgumentException(
+        "Segment record count must be positive: %d"
+          .formatted(Integer.valueOf(segmentRecords))
+      );
+    }
+    if (segmentBytes < 1) {
+      throw new IllegalArgumentException(
+        "Segment size must be positive: %d"
+          .formatted(Integer.valueOf(segmentBytes))
+      );
+    }
+    if (compressionLevel < NO_COMPRESSION || compressionLevel > 9) {
+      throw new IllegalArgumentException(
+        "Compression level must be in the range [0, 9]: %d"
+          .formatted(Integer.valueOf(compressionLevel))
+      );
+    }
+  }
+
+  /**
+   * The configuration of a request log writer that writes uncompressed
+   * segments.
+   *
+   * @param segmentRecords The maximum number of records buffered before they
+   *                       are written to the log
+   * @param segmentBytes   The maximum number of encoded bytes buffered before
+   *                       they are written to the log
+   * @param synchronous    {@code true} if the log file should be synchronized
+   *                       to storage each time buffered records are written
+   */
+
+  public QWebRequestLogWriterConfiguration(
+    final int segmentRecords,
+    final int segmentBytes,
+    final boolean synchronous)
+  {
+    this(segmentRecords, segmentBytes, synchronous, NO_COMPRESSION);
+  }
+
+  /**
+   * The configuration of a request log writer that writes uncompressed
+   * segments, using the default segment limits.
+   *
+   * @param synchronous {@code true} if the log file should be synchronized
+   *                    to storage each time buffered records are written
+   */
+
+  public QWebRequestLogWriterConfiguration(
+    final boolean synchronous)
+  {
+    this(DEFAULT_SEGMENT_RECORDS, DEFAULT_SEGMENT_BYTES, synchronous);
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * A writer of request logs. Writers may buffer appended requests until they
+ * are flushed, and are not required to be thread-safe.
+ *
+ * @see QWebRequestLogWriter
+ * @see QWebRequestLogRotatingWriter
+ * @since 1.4.0
+ */
+
+@ProviderType
+public interface QWebRequestLogWriterType extends Closeable, Flushable
+{
+  /**
+   * Append a request to the log. The request may be buffered until the
+   * writer is flushed.
+   *
+   * @param request The request
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void append(QWebRequestReceivedType request)
+    throws IOException;
+
+  /**
+   * Write any buffered requests to the log.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Override
+  void flush()
+    throws IOException;
+
+  /**
+   * Write any buffered requests to the log, and close it.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Override
+  void close()
+    throws IOException;
+}
@@ -25,11 +25,14 @@ import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HexFormat;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -39,29 +42,86 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 public final class QWebRequestLogging
 {
-  private static final byte[] HEADER;
+  private static final String METHOD_KEY = "Info.Method";
+  private static final String PATH_KEY = "Info.Path";
+  private static final String HEADER_PREFIX = "Header.";
+  private static final String FILE_PREFIX = "File.";
+  private static final byte[] HEADER_V1 = makeHeader((byte) 1);
+  private static final byte[] HEADER_V2 = makeHeader((byte) 2);
+  private static final byte[] HEADER_V3 = makeHeader((byte) 3);
 
-  static {
+  private QWebRequestLogging()
+  {
+
+  }
+
+  private static byte[] makeHeader(
+    final byte version)
+  {
     try (var out = new ByteArrayOutputStream()) {
       out.writeBytes("QUIXOTE!".getBytes(UTF_8));
       out.write('\0');
       out.write('\0');
       out.write('\0');
-      out.write('\1');
+      out.write(version);
       out.flush();
-      HEADER = out.toByteArray();
+      return out.toByteArray();
     } catch (final IOException e) {
       throw new UncheckedIOException(e);
     }
   }
 
-  private QWebRequestLogging()
+  /**
+   * @param version The format version
+   *
+   * @return The log header for the given format version
+   */
+
+  static byte[] header(
+    final int version)
   {
+    return switch (version) {
+      case 1 -> HEADER_V1;
+      case 2 -> HEADER_V2;
+      case 3 -> HEADER_V3;
+      default -> throw new IllegalArgumentException(
+        "Unsupported version: %d".formatted(Integer.valueOf(version))
+      );
+    };
+  }
+
+  /**
+   * Determine the format version of a log header.
+   *
+   * @param header The header
+   *
+   * @return The format version
+   *
+   * @throws IOException If the header is not a supported log header
+   */
 
+  static int headerVersion(
+    final byte[] header)
+    throws IOException
+  {
+    if (Arrays.equals(header, HEADER_V1)) {
+      return 1;
+    }
+    if (Arrays.equals(header, HEADER_V2)) {
+      return 2;
+    }
+    if (Arrays.equals(header, HEADER_V3)) {
+      return 3;
+    }
+    throw new IOException(
+      "Invalid header: %s".formatted(HexFormat.of().formatHex(header))
+    );
   }
 
   /**
-   * Append a request to the given log.
+   * Append a request to the given log in the version 1 format. The version 2
+   * format, written by {@link QWebRequestLogWriter}, is considerably more
+   * efficient both in space and time.
    *
    * @param outputLog The output stream
    * @param request   The request
@@ -82,23 +142,22 @@ public final class QWebRequestLogging
     final QWebRequestReceivedType request)
     throws IOException
   {
-    outputLog.write(HEADER);
-    outputLog.flush();
+    outputLog.write(HEADER_V1);
 
     final var properties = new Properties();
-    properties.setProperty("Info.Path", request.path());
-    properties.setProperty("Info.Method", request.method());
+    properties.setProperty(PATH_KEY, request.path());
+    properties.setProperty(METHOD_KEY, request.method());
 
     for (final var entry : request.headers().entrySet()) {
       properties.setProperty(
-        "Header.%s".formatted(entry.getKey()),
+        HEADER_PREFIX + entry.getKey(),
         entry.getValue()
       );
     }
 
     for (final var entry : request.files().entrySet()) {
       properties.setProperty(
-        "File.%s".formatted(entry.getKey()),
+        FILE_PREFIX + entry.getKey(),
         entry.getValue()
       );
     }
@@ -129,7 +188,9 @@ public final class QWebRequestLogging
   }
 
   /**
-   * Read a request from the given log.
+   * Read a version 1 request from the given log. Logs in the version 2 and
+   * version 3 formats must be read with {@link QWebRequestLogReader}, which
+   * also accepts version 1 logs.
    *
    * @param inputLog The input stream
    *
@@ -145,12 +206,33 @@ public final class QWebRequestLogging
     final var header =
       inputLog.readNBytes(12);
 
-    if (!Arrays.equals(header, HEADER)) {
+    final var version = headerVersion(header);
+    if (version != 1) {
       throw new IOException(
-        "Invalid header: %s".formatted(HexFormat.of().formatHex(header))
+        "Version %d logs must be read with %s."
+          .formatted(
+            Integer.valueOf(version),
+            QWebRequestLogReader.class.getSimpleName())
       );
     }
 
+    return readVersion1(inputLog);
+  }
+
+  /**
+   * Read the body of a version 1 request, after its header.
+   *
+   * @param inputLog The input stream
+   *
+   * @return The parsed request properties
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static QWebRequestReceivedType readVersion1(
+    final InputStream inputLog)
+    throws IOException
+  {
     final var lengthArray =
       inputLog.readNBytes(8);
 
@@ -164,49 +246,99 @@ public final class QWebRequestLogging
     final var body =
       inputLog.readNBytes(Math.toIntExact(length));
 
+    final var properties = new Properties();
     try (var bodyStream = new ByteArrayInputStream(body)) {
-      final var properties = new Properties();
       properties.loadFromXML(bodyStream);
-      return new ImmutableRequest(properties);
     }
-  }
-
-  private record ImmutableRequest(
-    Properties properties)
-    implements QWebRequestReceivedType
-  {
 
-    @Override
-    public String method()
-    {
-      return this.properties.getProperty("Info.Method");
+    final var headers = new HashMap<String, String>();
+    final var files = new HashMap<String, String>();
+    for (final var entry : properties.entrySet()) {
+      final var key = (String) entry.getKey();
+      final var value = (String) entry.getValue();
+      if (key.startsWith(HEADER_PREFIX)) {
+        headers.put(key.substring(HEADER_PREFIX.length()), value);
+      } else if (key.startsWith(FILE_PREFIX)) {
+        files.put(key.substring(FILE_PREFIX.length()), value);
+      }
     }
 
-    @Override
-    public String path()
-    {
-      return this.properties.getProperty("Info.Path");
+    return new QWebRequestReceived(
+      Objects.requireNonNullElse(properties.getProperty(METHOD_KEY), ""),
+      Objects.requireNonNullElse(properties.getProperty(PATH_KEY), ""),
+      Map.copyOf(headers),
+      Map.copyOf(files)
+    );
+  }
 
-    }
+  /**
+   * Stream the requests in the given log file, which may be in any
+   * format. The log is memory-mapped and indexed as described by
+   * {@link QWebRequestLogIndexedReader}, creating or updating the default
+   * sidecar index file. The requests are decoded lazily, and the stream may
+   * be made parallel to decode disjoint parts of the log on multiple
+   * threads. The stream throws {@link UncheckedIOException} if a request
+   * cannot be read, and must be closed to release the mapped log.
+   *
+   * @param file The log file
+   *
+   * @return A stream of requests
+   *
+   * @throws IOException On I/O errors, or if the log is malformed
+   * @since 1.4.0
+   */
 
-    @Override
-    public Map<String, String> headers()
-    {
-      return this.properties.stringPropertyNames()
-        .stream()
-        .filter(x -> x.startsWith("Header."))
-        .map(x -> Map.entry(x, this.properties.getProperty(x)))
-        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-    }
+  public static Stream<QWebRequestReceivedType> stream(
+    final Path file)
+    throws IOException
+  {
+    final var reader = QWebRequestLogIndexedReader.open(file);
+    return reader.stream()
+      .onClose(() -> {
+        try {
+          reader.close();
+        } catch (final IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+  }
+
+  /**
+   * Convert a log to the version 2 format, or to the compressed version 3
+   * format if the writer configuration specifies a compression level. The
+   * input log may be in any format.
+   *
+   * @param inputLog      The input stream
+   * @param outputLog     The output stream
+   * @param configuration The configuration of the log writer
+   *
+   * @return The number of requests converted
+   *
+   * @throws IOException On I/O errors
+   * @since 1.4.0
+   */
 
-    @Override
-    public Map<String, String> files()
-    {
-      return this.properties.stringPropertyNames()
-        .stream()
-        .filter(x -> x.startsWith("File."))
-        .map(x -> Map.entry(x, this.properties.getProperty(x)))
-        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+  public static long convert(
+    final InputStream inputLog,
+    final OutputStream outputLog,
+    final QWebRequestLogWriterConfiguration configuration)
+    throws IOException
+  {
+    final var reader =
+      QWebRequestLogReader.create(inputLog);
+    final var writer =
+      QWebRequestLogWriter.create(outputLog, configuration);
+
+    long count = 0L;
+    while (true) {
+      final var next = reader.read();
+      if (next.isEmpty()) {
+        break;
+      }
+      writer.append(next.get());
+      ++count;
     }
+    writer.flush();
+    return count;
   }
 }
@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+/**
+ * The action taken when a request is received and the queue of requests
+ * waiting to be passed to an asynchronous request callback is full.
+ *
+ * @see QWebServerType#setRequestBatchCallback(QWebRequestDispatchConfiguration, java.util.function.Consumer)
+ * @since 1.4.0
+ */
+
+public enum QWebRequestOverflowPolicy
+{
+  /**
+   * The thread handling the request waits until there is space in the
+   * queue. No requests are lost, but clients see the latency of the
+   * callback when it falls behind.
+   */
+
+  BLOCK,
+
+  /**
+   * The oldest request in the queue is discarded to make space for the new
+   * request.
+   */
+
+  DROP_OLDEST,
+
+  /**
+   * The new request is discarded.
+   */
+
+  DROP_NEWEST
+}
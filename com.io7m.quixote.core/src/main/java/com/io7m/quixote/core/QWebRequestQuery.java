@@ -0,0 +1,153 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import static java.util.Locale.ROOT;
+
+/**
+ * A query over received requests. A request matches the query if it
+ * matches all of the given criteria.
+ *
+ * @param method  The exact request method, if any
+ * @param path    The exact request path, if any
+ * @param headers The exact values of request headers
+ *
+ * @see QWebServerType#requestsMatching(QWebRequestQuery)
+ * @see QWebServerType#requestCount(QWebRequestQuery)
+ * @since 1.4.0
+ */
+
+public record QWebRequestQuery(
+  Optional<String> method,
+  Optional<String> path,
+  Map<String, String> headers)
+{
+  /**
+   * A query over received requests. Header names are case-insensitive.
+   *
+   * @param method  The exact request method, if any
+   * @param path    The exact request path, if any
+   * @param headers The exact values of request headers
+   */
+
+  public QWebRequestQuery
+  {
+    Objects.requireNonNull(method, "method");
+    Objects.requireNonNull(path, "path");
+    Objects.requireNonNull(headers, "headers");
+
+    final var lowered = new HashMap<String, String>(headers.size());
+    for (final var entry : headers.entrySet()) {
+      lowered.put(
+        entry.getKey().toLowerCase(ROOT),
+        Objects.requireNonNull(entry.getValue(), "value")
+      );
+    }
+    headers = Map.copyOf(lowered);
+  }
+
+  /**
+   * @return A query that matches all requests
+   */
+
+  public static QWebRequestQuery any()
+  {
+    return new QWebRequestQuery(Optional.empty(), Optional.empty(), Map.of());
+  }
+
+  /**
+   * @param newMethod The exact request method
+   *
+   * @return This query, additionally matching on the request method
+   */
+
+  public QWebRequestQuery withMethod(
+    final String newMethod)
+  {
+    return new QWebRequestQuery(
+      Optional.of(newMethod),
+      this.path,
+      this.headers
+    );
+  }
+
+  /**
+   * @param newPath The exact request path
+   *
+   * @return This query, additionally matching on the request path
+   */
+
+  public QWebRequestQuery withPath(
+    final String newPath)
+  {
+    return new QWebRequestQuery(
+      this.method,
+      Optional.of(newPath),
+      this.headers
+    );
+  }
+
+  /**
+   * @param name  The header name
+   * @param value The exact header value
+   *
+   * @return This query, additionally matching on the given header
+   */
+
+  public QWebRequestQuery withHeader(
+    final String name,
+    final String value)
+  {
+    final var newHeaders = new HashMap<>(this.headers);
+    newHeaders.put(name.toLowerCase(ROOT), value);
+    return new QWebRequestQuery(this.method, this.path, newHeaders);
+  }
+
+  /**
+   * @param request The request
+   *
+   * @return {@code true} if the request matches this query
+   */
+
+  public boolean matches(
+    final QWebRequestReceivedType request)
+  {
+    if (this.method.isPresent()) {
+      if (!this.method.get().equals(request.method())) {
+        return false;
+      }
+    }
+    if (this.path.isPresent()) {
+      if (!this.path.get().equals(request.path())) {
+        return false;
+      }
+    }
+    final var requestHeaders = request.headers();
+    for (final var entry : this.headers.entrySet()) {
+      if (!entry.getValue().equals(requestHeaders.get(entry.getKey()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,714 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * The on-disk tier of a server's captured requests. Requests that are
+ * overwritten in the request journal are appended to a compressed request
+ * log, and are read back through a memory-mapped, indexed reader. Requests
+ * that are still buffered in the writer's current segment are also held in
+ * memory, so that reading them never forces a partial segment to be
+ * written, and the log is only remapped once a new segment has been
+ * written. The index of the log is held only in memory.
+ *
+ * Overwritten requests are only queued by the threads that overwrite them;
+ * the log is written by a dedicated thread, so that request threads (and
+ * in particular NIO event loops) never perform disk I/O, and never contend
+ * on the spill's monitor. Queued requests are readable from memory until
+ * they have been written.
+ *
+ * Requests are spilled in sequence order: a request that is overwritten
+ * before an earlier request (because the thread recording the earlier
+ * request has not yet finished) is held until the earlier request has
+ * been spilled. Similarly, a request is not spilled until its body has
+ * been parsed, because its file map is incomplete until then, unless so
+ * many requests are queued behind it that it must be spilled without its
+ * files. If the queue nonetheless grows beyond a fixed bound, or writing
+ * to the log fails, spilling stops and subsequent requests are discarded.
+ * The requests in the spill are therefore exactly the requests with
+ * sequence numbers in the range {@code [start(), end())}.
+ */
+
+final class QWebRequestSpill implements Closeable
+{
+  private static final QWebRequestLogWriterConfiguration WRITER_CONFIGURATION =
+    new QWebRequestLogWriterConfiguration(
+      QWebRequestLogWriterConfiguration.DEFAULT_SEGMENT_RECORDS,
+      QWebRequestLogWriterConfiguration.DEFAULT_SEGMENT_BYTES,
+      false,
+      QWebRequestLogWriterConfiguration.DEFAULT_COMPRESSION_LEVEL
+    );
+
+  private static final int READ_BATCH = 256;
+  private static final int WRITE_BATCH = 256;
+  private static final int QUEUED_MAXIMUM = 65536;
+  private static final int UNPARSED_QUEUED_MAXIMUM = 1024;
+
+  private final Path file;
+  private final QWebRequestLogWriter writer;
+  private final QWebRequestLogIndex index;
+  private final ArrayList<QWebRequestReceivedType> unflushed;
+  private final ConcurrentSkipListMap<Long, QWebRequestJournalEntry> queued;
+  private final AtomicInteger queuedCount;
+  private final LongAdder discarded;
+  private final LongAdder withoutFiles;
+  private final long start;
+  private final Thread thread;
+  private volatile long end;
+  private volatile boolean idle;
+  private volatile boolean closed;
+  private volatile IOException failure;
+  private volatile QWebRequestJournalEntry waiting;
+  private QWebRequestLogIndexedReader reader;
+  private long readable;
+
+  private QWebRequestSpill(
+    final Path inFile,
+    final QWebRequestLogWriter inWriter,
+    final long inStart)
+  {
+    this.file =
+      Objects.requireNonNull(inFile, "file");
+    this.writer =
+      Objects.requireNonNull(inWriter, "writer");
+    this.index =
+      QWebRequestLogIndex.empty();
+    this.unflushed =
+      new ArrayList<>();
+    this.queued =
+      new ConcurrentSkipListMap<>();
+    this.queuedCount =
+      new AtomicInteger();
+    this.discarded =
+      new LongAdder();
+    this.withoutFiles =
+      new LongAdder();
+    this.start = inStart;
+    this.end = inStart;
+    this.thread =
+      Thread.ofPlatform()
+        .name("com.io7m.quixote.request-spill")
+        .daemon(true)
+        .start(this::run);
+  }
+
+  /**
+   * Create a spill log in the given directory. The log is deleted when
+   * the spill is closed.
+   *
+   * @param directory The directory
+   * @param start     The sequence number of the first request that will
+   *                  be spilled
+   *
+   * @return A new spill
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static QWebRequestSpill create(
+    final Path directory,
+    final long start)
+    throws IOException
+  {
+    Files.createDirectories(directory);
+
+    final var file =
+      Files.createTempFile(directory, "quixote-requests-", ".bin");
+
+    try {
+      return new QWebRequestSpill(
+        file,
+        QWebRequestLogWriter.open(
+          file,
+          WRITER_CONFIGURATION,
+          WRITE,
+          TRUNCATE_EXISTING
+        ),
+        start
+      );
+    } catch (final IOException e) {
+      Files.deleteIfExists(file);
+      throw e;
+    }
+  }
+
+  /**
+   * @return The sequence number of the first request in the spill
+   */
+
+  long start()
+  {
+    return this.start;
+  }
+
+  /**
+   * @return The sequence number that follows the last request in the
+   * spill, including the queued requests that can be read from memory
+   */
+
+  synchronized long end()
+  {
+    var visible = this.end;
+    while (this.queued.containsKey(Long.valueOf(visible))) {
+      ++visible;
+    }
+    return visible;
+  }
+
+  /**
+   * @return {@code true} if requests are being spilled; {@code false} if
+   * the spill has been closed, or has failed and stopped spilling
+   */
+
+  boolean isActive()
+  {
+    return !this.closed && this.failure == null;
+  }
+
+  /**
+   * @return The number of requests written to the log
+   */
+
+  long spilled()
+  {
+    return this.end - this.start;
+  }
+
+  /**
+   * @return The number of requests written to the log before their bodies
+   * had been parsed, and so without their files
+   */
+
+  long spilledWithoutFiles()
+  {
+    return this.withoutFiles.sum();
+  }
+
+  /**
+   * @return The number of overwritten requests that were discarded because
+   * spilling had stopped
+   */
+
+  long discarded()
+  {
+    return this.discarded.sum();
+  }
+
+  /**
+   * @return {@code true} if spilling stopped because of an I/O error or
+   * because too many requests were queued
+   */
+
+  boolean isFailed()
+  {
+    return this.failure != null;
+  }
+
+  /**
+   * Queue an entry that has been overwritten in the journal to be spilled.
+   * This method never blocks and never performs I/O.
+   *
+   * @param entry The entry
+   */
+
+  void spill(
+    final QWebRequestJournalEntry entry)
+  {
+    if (!this.isActive()) {
+      this.discarded.increment();
+      return;
+    }
+
+    if (this.queuedCount.incrementAndGet() > QUEUED_MAXIMUM) {
+      this.queuedCount.decrementAndGet();
+      this.discarded.increment();
+      this.fail(new IOException(
+        String.format(
+          "More than %d requests are waiting to be spilled.",
+          Integer.valueOf(QUEUED_MAXIMUM)
+        )
+      ));
+      return;
+    }
+
+    this.queued.put(Long.valueOf(entry.sequence()), entry);
+    if (this.idle) {
+      LockSupport.unpark(this.thread);
+    }
+  }
+
+  private void fail(
+    final IOException e)
+  {
+    if (this.failure == null) {
+      this.failure = e;
+    }
+    LockSupport.unpark(this.thread);
+  }
+
+  /**
+   * Resume spilling after the body of the given request has been parsed,
+   * if spilling is waiting for it.
+   *
+   * @param request The request
+   */
+
+  void requestParsed(
+    final QWebRequestReceivedType request)
+  {
+    final var blocked = this.waiting;
+    if (blocked != null && blocked.request() == request) {
+      LockSupport.unpark(this.thread);
+    }
+  }
+
+  /*
+   * The spill thread writes queued entries until there are none that can
+   * be written, and then parks. The thread publishes that it is idle before
+   * checking for work, and queueing threads publish their entries before
+   * checking whether the thread is idle, so either the spill thread
+   * observes the new entry or the queueing thread observes the idle spill
+   * thread and unparks it.
+   */
+
+  private void run()
+  {
+    while (this.isActive()) {
+      final boolean progress;
+      synchronized (this) {
+        progress = this.drain();
+      }
+      if (!progress) {
+        this.idle = true;
+        if (this.isActive() && !this.isWritable()) {
+          LockSupport.park(this);
+        }
+        this.idle = false;
+      }
+    }
+
+    synchronized (this) {
+      this.discarded.add(this.queued.size());
+      this.queued.clear();
+    }
+  }
+
+  /**
+   * @return {@code true} if the first queued entry can be written (or
+   * discarded) now
+   */
+
+  private boolean isWritable()
+  {
+    final var head = this.queued.firstEntry();
+    if (head == null) {
+      return false;
+    }
+    final var sequence = head.getValue().sequence();
+    if (sequence < this.end) {
+      return true;
+    }
+    return sequence == this.end
+           && (QWebRequestFiles.isParsed(head.getValue().request())
+               || this.queuedCount.get() >= UNPARSED_QUEUED_MAXIMUM);
+  }
+
+  /*
+   * Write queued entries in sequence order, stopping at an entry whose
+   * body is still being parsed. The waiting entry is published before its
+   * parse state is checked, and the parsing thread marks the request as
+   * parsed before it reads the waiting entry, so at least one of the two
+   * threads observes the other and the entry cannot be left behind. At
+   * most a batch of entries is written at a time, so that readers are not
+   * held off for long.
+   */
+
+  private boolean drain()
+  {
+    var progress = false;
+    for (int count = 0; count < WRITE_BATCH && this.isActive(); ++count) {
+      final var head = this.queued.firstEntry();
+      if (head == null) {
+        break;
+      }
+
+      final var entry = head.getValue();
+      if (entry.sequence() < this.end) {
+        this.dequeue(head.getKey());
+        progress = true;
+        continue;
+      }
+      if (entry.sequence() != this.end) {
+        break;
+      }
+
+      this.waiting = entry;
+      var request = entry.request();
+      if (!QWebRequestFiles.isParsed(request)) {
+        if (this.queuedCount.get() < UNPARSED_QUEUED_MAXIMUM) {
+          break;
+        }
+        request = new QWebRequestReceived(
+          request.method(),
+          request.path(),
+          request.headers(),
+          Map.of()
+        );
+        this.withoutFiles.increment();
+      }
+      this.waiting = null;
+
+      try {
+        this.append(request);
+      } catch (final IOException e) {
+        this.fail(e);
+        break;
+      }
+      ++this.end;
+      this.dequeue(head.getKey());
+      progress = true;
+    }
+    return progress;
+  }
+
+  private void dequeue(
+    final Long sequence)
+  {
+    this.queued.remove(sequence);
+    this.queuedCount.decrementAndGet();
+  }
+
+  private void append(
+    final QWebRequestReceivedType request)
+    throws IOException
+  {
+    final var written = this.writer.bytesWritten();
+    this.writer.append(request);
+    if (this.writer.bytesWritten() != written) {
+      this.unflushed.clear();
+    } else {
+      this.unflushed.add(request);
+    }
+  }
+
+  /**
+   * @return The sequence number that follows the last request that has
+   * been written to the log file
+   */
+
+  private long flushedEnd()
+  {
+    return this.end - this.unflushed.size();
+  }
+
+  /**
+   * Read the spilled entries in the given range of sequence numbers.
+   *
+   * @param from The first sequence number (inclusive)
+   * @param to   The last sequence number (exclusive)
+   *
+   * @return The entries
+   *
+   * @throws IOException On I/O errors
+   */
+
+  synchronized List<QWebRequestJournalEntry> read(
+    final long from,
+    final long to)
+    throws IOException
+  {
+    this.checkNotClosed();
+    Objects.checkFromToIndex(
+      from - this.start,
+      to - this.start,
+      this.end() - this.start
+    );
+
+    final var flushed =
+      this.flushedEnd();
+    final var entries =
+      new ArrayList<QWebRequestJournalEntry>((int) (to - from));
+
+    var sequence = from;
+    if (from < flushed) {
+      final var fileTo = Math.min(to, flushed);
+      final var requests =
+        this.readerCovering(fileTo)
+          .range(from - this.start, fileTo - this.start);
+      while (requests.hasNext()) {
+        entries.add(new QWebRequestJournalEntry(sequence, requests.next()));
+        ++sequence;
+      }
+    }
+    for (; sequence < to; ++sequence) {
+      entries.add(new QWebRequestJournalEntry(sequence, this.get(sequence)));
+    }
+    return entries;
+  }
+
+  /**
+   * @param sequence The sequence number
+   *
+   * @return The spilled request with the given sequence number
+   *
+   * @throws IOException On I/O errors
+   */
+
+  synchronized QWebRequestReceivedType get(
+    final long sequence)
+    throws IOException
+  {
+    this.checkNotClosed();
+    if (sequence >= this.end) {
+      final var entry = this.queued.get(Long.valueOf(sequence));
+      if (entry == null) {
+        throw new IOException(
+          String.format(
+            "Request %d has not been spilled.",
+            Long.valueOf(sequence)
+          )
+        );
+      }
+      return entry.request();
+    }
+
+    Objects.checkIndex(sequence - this.start, this.end - this.start);
+    final var flushed = this.flushedEnd();
+    if (sequence >= flushed) {
+      return this.unflushed.get((int) (sequence - flushed));
+    }
+    return this.readerCovering(sequence + 1L).get(sequence - this.start);
+  }
+
+  private void checkNotClosed()
+    throws IOException
+  {
+    if (this.closed) {
+      throw new IOException("Request spill is closed.");
+    }
+  }
+
+  /**
+   * Ensure that the reader covers all requests before the given sequence
+   * number, which must not be greater than {@link #flushedEnd()}, reopening
+   * the reader if necessary. Reopening the reader only indexes the segments
+   * that have been written since it was last opened.
+   */
+
+  private QWebRequestLogIndexedReader readerCovering(
+    final long sequence)
+    throws IOException
+  {
+    if (this.reader == null || this.start + this.readable < sequence) {
+      if (this.reader != null) {
+        this.reader.close();
+        this.reader = null;
+      }
+      this.reader =
+        QWebRequestLogIndexedReader.openIndexed(this.file, this.index);
+      this.readable = this.reader.count();
+    }
+    return this.reader;
+  }
+
+  /**
+   * Iterate over the spilled entries in the given range of sequence
+   * numbers. Entries are read in batches, so that the iterator does not
+   * hold the spill's reader between calls. The iterator throws
+   * {@link UncheckedIOException} if a request cannot be read.
+   *
+   * @param from The first sequence number (inclusive)
+   * @param to   The last sequence number (exclusive)
+   *
+   * @return An iterator over the entries
+   */
+
+  Iterator<QWebRequestJournalEntry> iterator(
+    final long from,
+    final long to)
+  {
+    return new BatchIterator(from, to);
+  }
+
+  /**
+   * Produce a read-only list of all captured requests, consisting of the
+   * spilled requests followed by the given requests from the journal.
+   * Spilled requests are read from the log when they are accessed.
+   *
+   * @param spilledEnd The value of {@link #end()} at the time the requests
+   *                   were read from the journal
+   * @param recent     The requests from the journal that follow the spilled
+   *                   requests
+   *
+   * @return The list
+   */
+
+  List<QWebRequestReceivedType> listWith(
+    final long spilledEnd,
+    final List<QWebRequestReceivedType> recent)
+  {
+    return new TieredList(this.start, spilledEnd, List.copyOf(recent));
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    synchronized (this) {
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+    }
+
+    LockSupport.unpark(this.thread);
+    if (Thread.currentThread() != this.thread) {
+      try {
+        this.thread.join();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    synchronized (this) {
+      this.queued.clear();
+      this.unflushed.clear();
+    }
+
+    try {
+      this.writer.close();
+      if (this.reader != null) {
+        this.reader.close();
+      }
+    } finally {
+      Files.deleteIfExists(this.file);
+    }
+  }
+
+  private final class BatchIterator
+    implements Iterator<QWebRequestJournalEntry>
+  {
+    private final long to;
+    private long next;
+    private Iterator<QWebRequestJournalEntry> batch;
+
+    BatchIterator(
+      final long inFrom,
+      final long inTo)
+    {
+      this.next = inFrom;
+      this.to = inTo;
+      this.batch = List.<QWebRequestJournalEntry>of().iterator();
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return this.batch.hasNext() || this.next < this.to;
+    }
+
+    @Override
+    public QWebRequestJournalEntry next()
+    {
+      if (!this.batch.hasNext()) {
+        if (this.next >= this.to) {
+          throw new NoSuchElementException();
+        }
+
+        final var batchEnd = Math.min(this.to, this.next + READ_BATCH);
+        try {
+          this.batch = QWebRequestSpill.this.read(this.next, batchEnd).iterator();
+        } catch (final IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        this.next = batchEnd;
+      }
+      return this.batch.next();
+    }
+  }
+
+  /**
+   * A list of spilled requests followed by requests from the journal. A
+   * list can hold at most {@link Integer#MAX_VALUE} elements, so if more
+   * requests than that have been captured, only the most recent are
+   * included.
+   */
+
+  private final class TieredList
+    extends AbstractList<QWebRequestReceivedType>
+  {
+    private final long listStart;
+    private final int spilled;
+    private final List<QWebRequestReceivedType> recent;
+
+    TieredList(
+      final long inStart,
+      final long inEnd,
+      final List<QWebRequestReceivedType> inRecent)
+    {
+      final var spilledMaximum =
+        (long) (Integer.MAX_VALUE - inRecent.size());
+
+      this.listStart = Math.max(inStart, inEnd - spilledMaximum);
+      this.spilled = (int) (inEnd - this.listStart);
+      this.recent = inRecent;
+    }
+
+    @Override
+    public QWebRequestReceivedType get(
+      final int index)
+    {
+      Objects.checkIndex(index, this.size());
+
+      if (index >= this.spilled) {
+        return this.recent.get(index - this.spilled);
+      }
+      try {
+        return QWebRequestSpill.this.get(this.listStart + index);
+      } catch (final IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public int size()
+    {
+      return this.spilled + this.recent.size();
+    }
+  }
+}
@@ -16,42 +16,142 @@
 
 package com.io7m.quixote.core;
 
+import java.nio.file.Path;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.regex.Pattern;
 
 /**
  * A recorded response.
  *
- * @param method     The method for which this response will be returned
- * @param path       The path for which this response will be returned
- * @param statusCode The status code
- * @param headers    The headers
- * @param content    The content
+ * @param method           The method for which this response will be returned
+ * @param path             The path for which this response will be returned
+ * @param pathKind         The way in which the path is matched
+ * @param statusCode       The status code
+ * @param headers          The headers
+ * @param content          The content
+ * @param contentFile      The file containing the content, if the content
+ *                         is to be read from a file rather than held in
+ *                         memory
+ * @param contentDirectory The directory containing the content, if the
+ *                         response serves the files in a directory
+ * @param times            The number of times the response can be returned,
+ *                         or empty if it can be returned an unlimited
+ *                         number of times
+ * @param bandwidth        The bandwidth in bytes per second at which the
+ *                         response is written ({@code 0} for unlimited),
+ *                         or empty to use the server's default bandwidth
+ * @param delay            The delay applied before the response is written,
+ *                         if any
  */
 
 public record QWebResponseRecorded(
   Pattern method,
   Pattern path,
+  QWebPathMatchKind pathKind,
   int statusCode,
   Map<String, String> headers,
-  byte[] content)
+  byte[] content,
+  Optional<Path> contentFile,
+  Optional<Path> contentDirectory,
+  OptionalLong times,
+  OptionalLong bandwidth,
+  Optional<QWebDelay> delay)
 {
   /**
-   * A recorded response.
+   * A recorded response. For path match kinds other than
+   * {@link QWebPathMatchKind#REGEX}, the path is expected to have been
+   * compiled with {@link Pattern#LITERAL}, and its
+   * {@link Pattern#pattern()} text is used directly.
    *
-   * @param method     The method for which this response will be returned
-   * @param path       The path for which this response will be returned
-   * @param statusCode The status code
-   * @param headers    The headers
-   * @param content    The content
+   * @param method           The method for which this response will be returned
+   * @param path             The path for which this response will be returned
+   * @param pathKind         The way in which the path is matched
+   * @param statusCode       The status code
+   * @param headers          The headers
+   * @param content          The content
+   * @param contentFile      The file containing the content, if the content
+   *                         is to be read from a file rather than held in
+   *                         memory
+   * @param contentDirectory The directory containing the content, if the
+   *                         response serves the files in a directory
+   * @param times            The number of times the response can be returned,
+   *                         or empty if it can be returned an unlimited
+   *                         number of times
+   * @param bandwidth        The bandwidth in bytes per second at which the
+   *                         response is written ({@code 0} for unlimited),
+   *                         or empty to use the server's default bandwidth
+   * @param delay            The delay applied before the response is written,
+   *                         if any
    */
 
   public QWebResponseRecorded
   {
     Objects.requireNonNull(method, "method");
     Objects.requireNonNull(path, "path");
+    Objects.requireNonNull(pathKind, "pathKind");
     headers = Map.copyOf(headers);
     content = content.clone();
+    Objects.requireNonNull(contentFile, "contentFile");
+    Objects.requireNonNull(contentDirectory, "contentDirectory");
+    Objects.requireNonNull(times, "times");
+    Objects.requireNonNull(bandwidth, "bandwidth");
+    Objects.requireNonNull(delay, "delay");
+
+    final var sources =
+      (content.length != 0 ? 1 : 0)
+      + (contentFile.isPresent() ? 1 : 0)
+      + (contentDirectory.isPresent() ? 1 : 0);
+
+    if (sources > 1) {
+      throw new IllegalArgumentException(
+        "At most one of content, a content file, or a content directory may be specified."
+      );
+    }
+
+    if (times.isPresent() && times.getAsLong() < 1L) {
+      throw new IllegalArgumentException(
+        "Times must be positive: %d".formatted(Long.valueOf(times.getAsLong()))
+      );
+    }
+
+    if (bandwidth.isPresent()) {
+      QWebTokenBucket.checkBandwidth(bandwidth.getAsLong());
+    }
+  }
+
+  /**
+   * A recorded response with a regular expression path that will be
+   * returned once.
+   *
+   * @param method     The method for which this response will be returned
+   * @param path       The path for which this response will be returned
+   * @param statusCode The status code
+   * @param headers    The headers
+   * @param content    The content
+   */
+
+  public QWebResponseRecorded(
+    final Pattern method,
+    final Pattern path,
+    final int statusCode,
+    final Map<String, String> headers,
+    final byte[] content)
+  {
+    this(
+      method,
+      path,
+      QWebPathMatchKind.REGEX,
+      statusCode,
+      headers,
+      content,
+      Optional.empty(),
+      Optional.empty(),
+      OptionalLong.of(1L),
+      OptionalLong.empty(),
+      Optional.empty()
+    );
   }
 }
@@ -20,6 +20,7 @@ package com.io7m.quixote.core;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 
 /**
  * A queued response.
@@ -52,6 +53,49 @@ public interface QWebResponseType
   QWebResponseType forPath(
     String pattern);
 
+  /**
+   * Set the path against this response will match. The request path must
+   * be exactly equal to the given path.
+   *
+   * @param path The path
+   *
+   * @return this
+   *
+   * @since 1.4.0
+   */
+
+  QWebResponseType forPathExact(
+    String path);
+
+  /**
+   * Set the path against this response will match. The request path must
+   * begin with the given prefix.
+   *
+   * @param prefix The path prefix
+   *
+   * @return this
+   *
+   * @since 1.4.0
+   */
+
+  QWebResponseType forPathPrefix(
+    String prefix);
+
+  /**
+   * Set the path against this response will match. The request path must
+   * match the given glob.
+   *
+   * @param glob The path glob
+   *
+   * @return this
+   *
+   * @see QWebPathMatchKind#GLOB
+   * @since 1.4.0
+   */
+
+  QWebResponseType forPathGlob(
+    String glob);
+
   /**
    * The status code that will be returned.
    *
@@ -87,6 +131,43 @@ public interface QWebResponseType
   QWebResponseType withData(
     InputStream data);
 
+  /**
+   * A file whose contents will be returned in the response. The size of
+   * the file at the time the response is returned is used as the content
+   * length. Where possible, the contents are sent directly from the file to
+   * the client without being copied through the heap. The server may keep
+   * the file open between requests.
+   *
+   * @param file The file
+   *
+   * @return this
+   *
+   * @since 1.4.0
+   */
+
+  QWebResponseType withFile(
+    Path file);
+
+  /**
+   * A directory whose files will be returned in the response. The file
+   * returned is named by the part of the request path that follows the
+   * path prefix given to {@link #forPathPrefix(String)}, or by the whole
+   * request path if the response is not matched by prefix. If there is no
+   * such regular file in the directory, a 404 response is returned instead.
+   * Responses that serve directories are typically also marked with
+   * {@link #always()}.
+   *
+   * @param directory The directory
+   *
+   * @return this
+   *
+   * @see #withFile(Path)
+   * @since 1.4.0
+   */
+
+  QWebResponseType withDirectory(
+    Path directory);
+
   /**
    * The content type that will be returned in the response.
    *
@@ -109,6 +190,88 @@ public interface QWebResponseType
   QWebResponseType withContentLength(
     long size);
 
+  /**
+   * Limit the rate at which the response is written to the client. A
+   * bandwidth of {@code 0} indicates that the response is written as
+   * quickly as possible, regardless of the server's default bandwidth.
+   *
+   * <p>How the response is paced depends on the server engine. The servers
+   * created by {@link QWebServersNIO} pace responses on their event loops
+   * without blocking a thread for each client, and so many throttled
+   * responses can be in progress at once. The servers created by
+   * {@link QWebServers} dedicate a thread to each client and pace the
+   * response by sleeping on that thread between chunks, and so each
+   * throttled response that is in progress occupies its thread until the
+   * response has been written; see
+   * {@link QWebServerThreadKind#VIRTUAL_THREADS}.</p>
+   *
+   * @param bytesPerSecond The bandwidth in bytes per second
+   *
+   * @return this
+   *
+   * @see QWebServerConfiguration#bandwidth()
+   * @since 1.4.0
+   */
+
+  QWebResponseType withBandwidth(
+    long bytesPerSecond);
+
+  /**
+   * Delay the response before it is written to the client. A new delay is
+   * chosen each time the response is returned.
+   *
+   * <p>The cost of a delay depends on the server engine. The servers
+   * created by {@link QWebServers} dedicate a thread to each client, and the
+   * delay is spent sleeping on that thread: with
+   * {@link QWebServerThreadKind#PLATFORM_THREADS}, each delayed response
+   * that is in progress occupies a platform thread for the length of the
+   * delay, and so many concurrent delayed responses should use
+   * {@link QWebServerThreadKind#VIRTUAL_THREADS}. The servers created by
+   * {@link QWebServersNIO} schedule the write on the connection's event
+   * loop and do not occupy a thread while waiting.</p>
+   *
+   * @param delay The delay
+   *
+   * @return this
+   *
+   * @see QWebDelay
+   * @since 1.4.0
+   */
+
+  QWebResponseType withDelay(
+    QWebDelay delay);
+
+  /**
+   * Allow this response to be returned for the given number of matching
+   * requests. By default, a response is returned once and then removed.
+   * If the response data was specified as a stream, the stream is read
+   * into memory when the response is first returned.
+   *
+   * @param count The number of times the response can be returned
+   *
+   * @return this
+   *
+   * @throws IllegalArgumentException If {@code count} is not positive
+   *
+   * @since 1.4.0
+   */
+
+  QWebResponseType times(
+    long count);
+
+  /**
+   * Allow this response to be returned for an unlimited number of matching
+   * requests. The response is never removed, and so any responses added
+   * after it that match the same requests will never be returned.
+   *
+   * @return this
+   *
+   * @see #times(long)
+   * @since 1.4.0
+   */
+
+  QWebResponseType always();
+
   /**
    * The data that will be returned in the response.
    *
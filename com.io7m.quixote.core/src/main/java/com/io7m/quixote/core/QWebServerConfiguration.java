@@ -17,31 +17,401 @@
 
 package com.io7m.quixote.core;
 
+import java.nio.file.Path;
 import java.util.Objects;
+import java.util.Optional;
 
 /**
  * The web server configuration.
  *
- * @param hostName   The hostname to which to bind the server
- * @param port       The port to which to bind the server
- * @param enableGZIP Enable/disable GZIP
+ * @param hostName        The hostname to which to bind the server
+ * @param port            The port to which to bind the server
+ * @param enableGZIP      Enable/disable GZIP
+ * @param gzipLevel       The GZIP compression level in the range {@code [1, 9]}
+ * @param gzipMinimumSize The size in bytes below which response bodies
+ *                        are not compressed
+ * @param threads         The kind of threads used to execute requests
+ * @param matching        The way in which responses are matched against requests
+ * @param fileCacheSize   The maximum number of files kept open to serve
+ *                        file-backed responses
+ * @param bandwidth       The default bandwidth in bytes per second at which
+ *                        responses are written, or {@code 0} for unlimited
+ * @param journalCapacity The maximum number of received requests retained
+ *                        in memory
+ * @param spillDirectory  The directory to which received requests that
+ *                        exceed the journal capacity are spilled, if any
+ * @param capture         The policy that determines which received
+ *                        requests are captured
  */
 
 public record QWebServerConfiguration(
   String hostName,
   int port,
-  boolean enableGZIP)
+  boolean enableGZIP,
+  int gzipLevel,
+  long gzipMinimumSize,
+  QWebServerThreadKind threads,
+  QWebMatchingMode matching,
+  int fileCacheSize,
+  long bandwidth,
+  int journalCapacity,
+  Optional<Path> spillDirectory,
+  QWebCapturePolicy capture)
 {
   /**
    * The web server configuration.
    *
-   * @param hostName   The hostname to which to bind the server
-   * @param port       The port to which to bind the server
-   * @param enableGZIP Enable/disable GZIP
+   * @param hostName        The hostname to which to bind the server
+   * @param port            The port to which to bind the server
+   * @param enableGZIP      Enable/disable GZIP
+   * @param gzipLevel       The GZIP compression level in the range {@code [1, 9]}
+   * @param gzipMinimumSize The size in bytes below which response bodies
+   *                        are not compressed
+   * @param threads         The kind of threads used to execute requests
+   * @param matching        The way in which responses are matched against requests
+   * @param fileCacheSize   The maximum number of files kept open to serve
+   *                        file-backed responses
+   * @param bandwidth       The default bandwidth in bytes per second at which
+   *                        responses are written, or {@code 0} for unlimited
+   * @param journalCapacity The maximum number of received requests retained
+   *                        in memory
+   * @param spillDirectory  The directory to which received requests that
+   *                        exceed the journal capacity are spilled, if any
+   * @param capture         The policy that determines which received
+   *                        requests are captured
    */
 
   public QWebServerConfiguration
   {
     Objects.requireNonNull(hostName, "hostName");
+    Objects.requireNonNull(threads, "threads");
+    Objects.requireNonNull(matching, "matching");
+    QWebGZIP.checkLevel(gzipLevel);
+    QWebGZIP.checkMinimumSize(gzipMinimumSize);
+    QWebFileCache.checkCapacity(fileCacheSize);
+    QWebTokenBucket.checkBandwidth(bandwidth);
+    QWebRequestJournal.checkCapacity(journalCapacity);
+    Objects.requireNonNull(spillDirectory, "spillDirectory");
+    Objects.requireNonNull(capture, "capture");
+  }
+
+  /**
+   * The web server configuration, using default values for all unspecified
+   * parameters.
+   *
+   * @param hostName        The hostname to which to bind the server
+   * @param port            The port to which to bind the server
+   * @param enableGZIP      Enable/disable GZIP
+   */
+
+  public QWebServerConfiguration(
+    final String hostName,
+    final int port,
+    final boolean enableGZIP)
+  {
+    this(
+      hostName,
+      port,
+      enableGZIP,
+      QWebGZIP.DEFAULT_LEVEL,
+      QWebGZIP.DEFAULT_MINIMUM_SIZE,
+      QWebServerThreadKind.PLATFORM_THREADS,
+      QWebMatchingMode.INDEXED,
+      QWebFileCache.DEFAULT_CAPACITY,
+      QWebTokenBucket.UNLIMITED,
+      QWebRequestJournal.DEFAULT_CAPACITY,
+      Optional.empty(),
+      QWebCapturePolicy.all()
+    );
+  }
+
+  /**
+   * Derive a configuration from this one with the GZIP flag replaced.
+   *
+   * @param newValue The new value
+   *
+   * @return A copy of this configuration with the new value
+   *
+   * @since 1.4.0
+   */
+
+  public QWebServerConfiguration withGZIP(
+    final boolean newValue)
+  {
+    return new QWebServerConfiguration(
+      this.hostName,
+      this.port,
+      newValue,
+      this.gzipLevel,
+      this.gzipMinimumSize,
+      this.threads,
+      this.matching,
+      this.fileCacheSize,
+      this.bandwidth,
+      this.journalCapacity,
+      this.spillDirectory,
+      this.capture
+    );
+  }
+
+  /**
+   * Derive a configuration from this one with the GZIP level replaced.
+   *
+   * @param newValue The new value
+   *
+   * @return A copy of this configuration with the new value
+   *
+   * @since 1.4.0
+   */
+
+  public QWebServerConfiguration withGzipLevel(
+    final int newValue)
+  {
+    return new QWebServerConfiguration(
+      this.hostName,
+      this.port,
+      this.enableGZIP,
+      newValue,
+      this.gzipMinimumSize,
+      this.threads,
+      this.matching,
+      this.fileCacheSize,
+      this.bandwidth,
+      this.journalCapacity,
+      this.spillDirectory,
+      this.capture
+    );
+  }
+
+  /**
+   * Derive a configuration from this one with the GZIP minimum size replaced.
+   *
+   * @param newValue The new value
+   *
+   * @return A copy of this configuration with the new value
+   *
+   * @since 1.4.0
+   */
+
+  public QWebServerConfiguration withGzipMinimumSize(
+    final long newValue)
+  {
+    return new QWebServerConfiguration(
+      this.hostName,
+      this.port,
+      this.enableGZIP,
+      this.gzipLevel,
+      newValue,
+      this.threads,
+      this.matching,
+      this.fileCacheSize,
+      this.bandwidth,
+      this.journalCapacity,
+      this.spillDirectory,
+      this.capture
+    );
+  }
+
+  /**
+   * Derive a configuration from this one with the thread kind replaced.
+   *
+   * @param newValue The new value
+   *
+   * @return A copy of this configuration with the new value
+   *
+   * @since 1.4.0
+   */
+
+  public QWebServerConfiguration withThreads(
+    final QWebServerThreadKind newValue)
+  {
+    return new QWebServerConfiguration(
+      this.hostName,
+      this.port,
+      this.enableGZIP,
+      this.gzipLevel,
+      this.gzipMinimumSize,
+      newValue,
+      this.matching,
+      this.fileCacheSize,
+      this.bandwidth,
+      this.journalCapacity,
+      this.spillDirectory,
+      this.capture
+    );
+  }
+
+  /**
+   * Derive a configuration from this one with the matching mode replaced.
+   *
+   * @param newValue The new value
+   *
+   * @return A copy of this configuration with the new value
+   *
+   * @since 1.4.0
+   */
+
+  public QWebServerConfiguration withMatching(
+    final QWebMatchingMode newValue)
+  {
+    return new QWebServerConfiguration(
+      this.hostName,
+      this.port,
+      this.enableGZIP,
+      this.gzipLevel,
+      this.gzipMinimumSize,
+      this.threads,
+      newValue,
+      this.fileCacheSize,
+      this.bandwidth,
+      this.journalCapacity,
+      this.spillDirectory,
+      this.capture
+    );
+  }
+
+  /**
+   * Derive a configuration from this one with the file cache size replaced.
+   *
+   * @param newValue The new value
+   *
+   * @return A copy of this configuration with the new value
+   *
+   * @since 1.4.0
+   */
+
+  public QWebServerConfiguration withFileCacheSize(
+    final int newValue)
+  {
+    return new QWebServerConfiguration(
+      this.hostName,
+      this.port,
+      this.enableGZIP,
+      this.gzipLevel,
+      this.gzipMinimumSize,
+      this.threads,
+      this.matching,
+      newValue,
+      this.bandwidth,
+      this.journalCapacity,
+      this.spillDirectory,
+      this.capture
+    );
+  }
+
+  /**
+   * Derive a configuration from this one with the default bandwidth replaced.
+   *
+   * @param newValue The new value
+   *
+   * @return A copy of this configuration with the new value
+   *
+   * @since 1.4.0
+   */
+
+  public QWebServerConfiguration withBandwidth(
+    final long newValue)
+  {
+    return new QWebServerConfiguration(
+      this.hostName,
+      this.port,
+      this.enableGZIP,
+      this.gzipLevel,
+      this.gzipMinimumSize,
+      this.threads,
+      this.matching,
+      this.fileCacheSize,
+      newValue,
+      this.journalCapacity,
+      this.spillDirectory,
+      this.capture
+    );
+  }
+
+  /**
+   * Derive a configuration from this one with the journal capacity replaced.
+   *
+   * @param newValue The new value
+   *
+   * @return A copy of this configuration with the new value
+   *
+   * @since 1.4.0
+   */
+
+  public QWebServerConfiguration withJournalCapacity(
+    final int newValue)
+  {
+    return new QWebServerConfiguration(
+      this.hostName,
+      this.port,
+      this.enableGZIP,
+      this.gzipLevel,
+      this.gzipMinimumSize,
+      this.threads,
+      this.matching,
+      this.fileCacheSize,
+      this.bandwidth,
+      newValue,
+      this.spillDirectory,
+      this.capture
+    );
+  }
+
+  /**
+   * Derive a configuration from this one with the spill directory replaced.
+   *
+   * @param newValue The new value
+   *
+   * @return A copy of this configuration with the new value
+   *
+   * @since 1.4.0
+   */
+
+  public QWebServerConfiguration withSpillDirectory(
+    final Optional<Path> newValue)
+  {
+    return new QWebServerConfiguration(
+      this.hostName,
+      this.port,
+      this.enableGZIP,
+      this.gzipLevel,
+      this.gzipMinimumSize,
+      this.threads,
+      this.matching,
+      this.fileCacheSize,
+      this.bandwidth,
+      this.journalCapacity,
+      newValue,
+      this.capture
+    );
+  }
+
+  /**
+   * Derive a configuration from this one with the capture policy replaced.
+   *
+   * @param newValue The new value
+   *
+   * @return A copy of this configuration with the new value
+   *
+   * @since 1.4.0
+   */
+
+  public QWebServerConfiguration withCapture(
+    final QWebCapturePolicy newValue)
+  {
+    return new QWebServerConfiguration(
+      this.hostName,
+      this.port,
+      this.enableGZIP,
+      this.gzipLevel,
+      this.gzipMinimumSize,
+      this.threads,
+      this.matching,
+      this.fileCacheSize,
+      this.bandwidth,
+      this.journalCapacity,
+      this.spillDirectory,
+      newValue
+    );
   }
 }
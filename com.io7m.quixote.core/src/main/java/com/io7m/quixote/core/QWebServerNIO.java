@@ -0,0 +1,317 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * A web server built on non-blocking NIO channels. A single acceptor thread
+ * accepts connections and distributes them over a fixed set of event loops.
+ * Work that may block is offloaded from the event loops to a small pool of
+ * worker threads.
+ */
+
+final class QWebServerNIO implements QWebServerType
+{
+  private static final int WORKERS_PER_EVENT_LOOP = 2;
+  private static final long ACCEPT_BACKOFF_MINIMUM =
+    Duration.ofMillis(1L).toNanos();
+  private static final long ACCEPT_BACKOFF_MAXIMUM =
+    Duration.ofSeconds(1L).toNanos();
+
+  private final URI baseURI;
+  private final QWebServerState state;
+  private final ServerSocketChannel serverChannel;
+  private final List<QWebNIOEventLoop> eventLoops;
+  private final ExecutorService workers;
+  private final Thread acceptor;
+  private volatile boolean closed;
+
+  QWebServerNIO(
+    final String hostName,
+    final int port,
+    final int eventLoopCount)
+    throws IOException
+  {
+    this(hostName, port, eventLoopCount, new QWebServerState());
+  }
+
+  QWebServerNIO(
+    final String hostName,
+    final int port,
+    final int eventLoopCount,
+    final QWebServerState inState)
+    throws IOException
+  {
+    Objects.requireNonNull(hostName, "hostName");
+
+    this.state =
+      Objects.requireNonNull(inState, "state");
+    this.baseURI =
+      URI.create(
+        "http://%s:%d/"
+          .formatted(hostName, Integer.valueOf(port))
+      );
+
+    this.workers =
+      Executors.newFixedThreadPool(
+        eventLoopCount * WORKERS_PER_EVENT_LOOP,
+        Thread.ofPlatform()
+          .name("com.io7m.quixote.nio.worker[%d]-".formatted(Integer.valueOf(port)), 0L)
+          .daemon(true)
+          .factory()
+      );
+
+    final var loops =
+      new ArrayList<QWebNIOEventLoop>(eventLoopCount);
+    final var channel =
+      ServerSocketChannel.open();
+
+    try {
+      channel.setOption(StandardSocketOptions.SO_REUSEADDR, Boolean.TRUE);
+      channel.bind(new InetSocketAddress(hostName, port));
+
+      for (int index = 0; index < eventLoopCount; ++index) {
+        loops.add(new QWebNIOEventLoop(this.state, this.workers, index));
+      }
+    } catch (final IOException e) {
+      channel.close();
+      for (final var loop : loops) {
+        loop.close();
+      }
+      this.workers.shutdown();
+      throw e;
+    }
+
+    this.serverChannel = channel;
+    this.eventLoops = List.copyOf(loops);
+
+    this.acceptor =
+      Thread.ofPlatform()
+        .name("com.io7m.quixote.nio.acceptor[%d]".formatted(Integer.valueOf(port)))
+        .daemon(true)
+        .unstarted(this::runAcceptor);
+
+    for (final var loop : this.eventLoops) {
+      loop.start();
+    }
+    this.acceptor.start();
+  }
+
+  QWebServerState state()
+  {
+    return this.state;
+  }
+
+  /*
+   * Accept connections and hand them to the event loops in turn. A failure
+   * to accept is usually persistent for a while (such as the process
+   * running out of file descriptors), and so the acceptor backs off
+   * exponentially rather than retrying immediately and spinning.
+   */
+
+  private void runAcceptor()
+  {
+    var next = 0;
+    var backoff = 0L;
+    while (!this.closed) {
+      final SocketChannel channel;
+      try {
+        channel = this.serverChannel.accept();
+      } catch (final ClosedChannelException e) {
+        return;
+      } catch (final IOException e) {
+        backoff = Math.min(
+          ACCEPT_BACKOFF_MAXIMUM,
+          Math.max(ACCEPT_BACKOFF_MINIMUM, backoff * 2L)
+        );
+        LockSupport.parkNanos(backoff);
+        continue;
+      }
+
+      backoff = 0L;
+      try {
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+        this.eventLoops.get(next).register(channel);
+        next = (next + 1) % this.eventLoops.size();
+      } catch (final IOException | RuntimeException e) {
+        try {
+          channel.close();
+        } catch (final IOException ex) {
+          // Ignored
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    this.closed = true;
+    this.serverChannel.close();
+    LockSupport.unpark(this.acceptor);
+
+    try {
+      this.acceptor.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    for (final var loop : this.eventLoops) {
+      loop.close();
+    }
+
+    this.workers.shutdown();
+    this.state.close();
+  }
+
+  @Override
+  public URI uri()
+  {
+    return this.baseURI;
+  }
+
+  @Override
+  public QWebServerType enableGzip(
+    final boolean enable)
+  {
+    this.state.setGzipEnabled(enable);
+    return this;
+  }
+
+  @Override
+  public QWebResponseType addResponse()
+  {
+    return this.state.addResponse();
+  }
+
+  @Override
+  public List<QWebResponseType> responses()
+  {
+    return this.state.responses();
+  }
+
+  @Override
+  public List<QWebRequestReceivedType> requestsReceived()
+  {
+    return this.state.requestsReceived();
+  }
+
+  @Override
+  public QWebRequestJournalPage requestsSince(
+    final long cursor)
+  {
+    return this.state.requestsSince(cursor);
+  }
+
+  @Override
+  public long requestsCursor()
+  {
+    return this.state.requestsCursor();
+  }
+
+  @Override
+  public void setRequestIndexes(
+    final QWebRequestIndexConfiguration configuration)
+  {
+    this.state.setRequestIndexes(configuration);
+  }
+
+  @Override
+  public long requestCount(
+    final QWebRequestQuery query)
+  {
+    return this.state.requestCount(query);
+  }
+
+  @Override
+  public Iterator<QWebRequestJournalEntry> requestsMatching(
+    final QWebRequestQuery query)
+  {
+    return this.state.requestsMatching(query);
+  }
+
+  @Override
+  public List<QWebRequestReceivedType> awaitRequests(
+    final int count,
+    final Duration timeout)
+    throws InterruptedException, TimeoutException
+  {
+    return this.state.awaitRequests(count, timeout);
+  }
+
+  @Override
+  public QWebRequestReceivedType awaitRequest(
+    final Predicate<QWebRequestReceivedType> predicate,
+    final Duration timeout)
+    throws InterruptedException, TimeoutException
+  {
+    return this.state.awaitRequest(predicate, timeout);
+  }
+
+  @Override
+  public void setRequestCallback(
+    final Consumer<QWebRequestReceivedType> onRequest)
+  {
+    this.state.setRequestCallback(onRequest);
+  }
+
+  @Override
+  public void setRequestBatchCallback(
+    final QWebRequestDispatchConfiguration configuration,
+    final Consumer<List<QWebRequestReceivedType>> onRequests)
+  {
+    this.state.setRequestBatchCallback(configuration, onRequests);
+  }
+
+  @Override
+  public QWebRequestDispatchStatistics requestDispatchStatistics()
+  {
+    return this.state.requestDispatchStatistics();
+  }
+
+  @Override
+  public QWebFileCacheStatistics fileCacheStatistics()
+  {
+    return this.state.fileCacheStatistics();
+  }
+
+  @Override
+  public QWebCaptureStatistics captureStatistics()
+  {
+    return this.state.captureStatistics();
+  }
+}
@@ -0,0 +1,989 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The state shared by all of the web server implementations: the queued
+ * responses, the received requests, and the request callback.
+ */
+
+final class QWebServerState
+{
+  private final QResponseStore responses;
+  private volatile QWebFileCache files;
+  private volatile QWebRequestJournal journal;
+  private volatile QWebRequestIndex indexes;
+  private volatile QWebRequestSpill spill;
+  private volatile QWebCaptureFilter capture;
+  private final ReentrantLock arrivalLock;
+  private final Condition arrival;
+  private final AtomicInteger arrivalWaiters;
+  private volatile boolean gzipEnabled;
+  private volatile int gzipLevel;
+  private volatile long gzipMinimumSize;
+  private volatile long bandwidth;
+  private static final Consumer<QWebRequestReceivedType> NO_CALLBACK =
+    r -> {
+    };
+
+  private volatile Consumer<QWebRequestReceivedType> callback;
+  private volatile QWebRequestDispatcher dispatcher;
+
+  QWebServerState()
+  {
+    this.responses =
+      new QResponseStore();
+    this.journal =
+      new QWebRequestJournal(QWebRequestJournal.DEFAULT_CAPACITY, 0L);
+    this.arrivalLock =
+      new ReentrantLock();
+    this.arrival =
+      this.arrivalLock.newCondition();
+    this.arrivalWaiters =
+      new AtomicInteger();
+    this.capture =
+      new QWebCaptureFilter(QWebCapturePolicy.all());
+    this.callback =
+      NO_CALLBACK;
+    this.gzipLevel =
+      QWebGZIP.DEFAULT_LEVEL;
+    this.gzipMinimumSize =
+      QWebGZIP.DEFAULT_MINIMUM_SIZE;
+    this.files =
+      new QWebFileCache(QWebFileCache.DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Create state for a server with the given configuration. The journal
+   * is configured before the spill, which relies on receiving every
+   * request that is overwritten in the journal. If the state cannot be
+   * configured, any resources it has acquired are released.
+   *
+   * @param configuration The configuration
+   *
+   * @return The configured state
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static QWebServerState create(
+    final QWebConfiguration configuration)
+    throws IOException
+  {
+    final var state = new QWebServerState();
+    try {
+      state.configure(configuration);
+      return state;
+    } catch (final IOException | RuntimeException e) {
+      state.close();
+      throw e;
+    }
+  }
+
+  private void configure(
+    final QWebConfiguration configuration)
+    throws IOException
+  {
+    final var serverConfiguration =
+      configuration.serverConfiguration();
+
+    this.setGzipEnabled(serverConfiguration.enableGZIP());
+    this.setGzipLevel(serverConfiguration.gzipLevel());
+    this.setGzipMinimumSize(serverConfiguration.gzipMinimumSize());
+    this.setFileCacheSize(serverConfiguration.fileCacheSize());
+    this.setBandwidth(serverConfiguration.bandwidth());
+    this.setJournalCapacity(serverConfiguration.journalCapacity());
+    this.setCapturePolicy(serverConfiguration.capture());
+    this.setMatchingMode(serverConfiguration.matching());
+    this.addResponses(configuration);
+
+    final var spillDirectory = serverConfiguration.spillDirectory();
+    if (spillDirectory.isPresent()) {
+      this.setSpillDirectory(spillDirectory.get());
+    }
+  }
+
+  boolean gzipEnabled()
+  {
+    return this.gzipEnabled;
+  }
+
+  void setGzipEnabled(
+    final boolean enable)
+  {
+    this.gzipEnabled = enable;
+  }
+
+  void setGzipLevel(
+    final int level)
+  {
+    this.gzipLevel = QWebGZIP.checkLevel(level);
+  }
+
+  void setGzipMinimumSize(
+    final long size)
+  {
+    this.gzipMinimumSize = QWebGZIP.checkMinimumSize(size);
+  }
+
+  void setBandwidth(
+    final long bytesPerSecond)
+  {
+    this.bandwidth = QWebTokenBucket.checkBandwidth(bytesPerSecond);
+  }
+
+  /**
+   * @param response The response
+   *
+   * @return The bandwidth in bytes per second at which the response should
+   * be written, or {@link QWebTokenBucket#UNLIMITED}
+   */
+
+  long bandwidthFor(
+    final QMutableResponse response)
+  {
+    final var specific = response.bandwidth();
+    if (specific == QMutableResponse.SERVER_BANDWIDTH) {
+      return this.bandwidth;
+    }
+    return specific;
+  }
+
+  void setFileCacheSize(
+    final int capacity)
+  {
+    final var existing = this.files;
+    this.files = new QWebFileCache(capacity);
+    existing.close();
+  }
+
+  /**
+   * Replace the request journal. The requests in the existing journal are
+   * discarded. This must be called before
+   * {@link #setSpillDirectory(Path)}, because the spill relies on receiving
+   * every request that is overwritten in the journal.
+   *
+   * @param capacity The journal capacity
+   */
+
+  void setJournalCapacity(
+    final int capacity)
+  {
+    synchronized (this) {
+      if (this.spill != null) {
+        throw new IllegalStateException(
+          "The journal capacity cannot be changed once requests are spilled."
+        );
+      }
+
+      final var existing = this.journal;
+      this.journal =
+        new QWebRequestJournal(capacity, existing.nextSequence());
+
+      final var existingIndexes = this.indexes;
+      if (existingIndexes != null) {
+        this.indexes = new QWebRequestIndex(existingIndexes.configuration());
+      }
+    }
+  }
+
+  /**
+   * Spill requests that are overwritten in the journal to a log in the
+   * given directory, rather than discarding them. Any existing spilled
+   * requests are discarded.
+   *
+   * @param directory The directory
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void setSpillDirectory(
+    final Path directory)
+    throws IOException
+  {
+    Objects.requireNonNull(directory, "directory");
+
+    synchronized (this) {
+      final var existing = this.spill;
+      this.spill =
+        QWebRequestSpill.create(directory, this.journal.nextSequence());
+      if (existing != null) {
+        existing.close();
+      }
+    }
+  }
+
+  /**
+   * Replace the request indexes. The new indexes are published before they
+   * are populated from the existing contents of the journal so that
+   * requests received while they are being populated are not lost; a
+   * request that is added both by its request thread and here is only
+   * indexed once. Slots that have been claimed but not yet published are
+   * skipped rather than waited for: a request thread reads the indexes
+   * only after publishing its entry, and so the thread that publishes
+   * such a slot will see the new indexes and add its own entry.
+   *
+   * @param configuration The index configuration
+   */
+
+  void setRequestIndexes(
+    final QWebRequestIndexConfiguration configuration)
+  {
+    Objects.requireNonNull(configuration, "configuration");
+
+    synchronized (this) {
+      if (!configuration.methods()
+          && !configuration.paths()
+          && configuration.headers().isEmpty()) {
+        this.indexes = null;
+        return;
+      }
+
+      final var index = new QWebRequestIndex(configuration);
+      this.indexes = index;
+
+      final var current = this.journal;
+      final var end = current.nextSequence();
+      final var start = Math.max(0L, end - current.capacity());
+      for (var sequence = start; sequence < end; ++sequence) {
+        final var entry = current.get(sequence);
+        if (entry != null) {
+          index.add(current, entry);
+        }
+      }
+    }
+  }
+
+  long requestCount(
+    final QWebRequestQuery query)
+  {
+    Objects.requireNonNull(query, "query");
+
+    final var currentSpill = this.spill;
+    final var index = this.indexes;
+    if (index != null && currentSpill == null) {
+      final var count = index.count(query);
+      if (count >= 0L) {
+        return count;
+      }
+    }
+
+    var count = 0L;
+    final var iterator = this.requestsMatching(query);
+    while (iterator.hasNext()) {
+      iterator.next();
+      ++count;
+    }
+    return count;
+  }
+
+  Iterator<QWebRequestJournalEntry> requestsMatching(
+    final QWebRequestQuery query)
+  {
+    Objects.requireNonNull(query, "query");
+
+    final var current = this.journal;
+    final var index = this.indexes;
+    final var candidates =
+      index == null ? null : index.candidates(query);
+
+    final long spilledEnd;
+    final var currentSpill = this.spill;
+    if (currentSpill != null) {
+      spilledEnd = currentSpill.end();
+    } else {
+      spilledEnd = 0L;
+    }
+
+    final Stream<QWebRequestJournalEntry> recent;
+    if (candidates == null) {
+      recent = current.since(spilledEnd)
+        .entries()
+        .stream();
+    } else {
+      recent = Arrays.stream(candidates)
+        .filter(sequence -> sequence >= spilledEnd)
+        .mapToObj(current::get)
+        .filter(Objects::nonNull);
+    }
+
+    if (currentSpill == null) {
+      return recent.filter(e -> query.matches(e.request())).iterator();
+    }
+
+    /*
+     * Spilled requests are not indexed, and so are always examined.
+     */
+
+    final var spilled =
+      StreamSupport.stream(
+        Spliterators.spliteratorUnknownSize(
+          currentSpill.iterator(currentSpill.start(), spilledEnd),
+          Spliterator.ORDERED | Spliterator.NONNULL
+        ),
+        false
+      );
+
+    return Stream.concat(spilled, recent)
+      .filter(e -> query.matches(e.request()))
+      .iterator();
+  }
+
+  void setCapturePolicy(
+    final QWebCapturePolicy policy)
+  {
+    this.capture = new QWebCaptureFilter(policy);
+  }
+
+  QWebCaptureStatistics captureStatistics()
+  {
+    return this.capture.statistics(this.spill);
+  }
+
+  QWebFileCacheStatistics fileCacheStatistics()
+  {
+    return this.files.statistics();
+  }
+
+  /**
+   * Open a file that provides the body of a response.
+   *
+   * @param file The file
+   *
+   * @return The open file
+   *
+   * @throws IOException On I/O errors
+   * @see QMutableResponse#fileFor(String)
+   */
+
+  QWebFileCache.Handle openFile(
+    final Path file)
+    throws IOException
+  {
+    return this.files.open(file);
+  }
+
+  /**
+   * Determine if a response should be compressed. Responses are compressed
+   * if compression is enabled, the client accepts it, the response does not
+   * specify its own length, and the body is not known to be smaller than
+   * the minimum size.
+   *
+   * @param response The response
+   * @param length   The length of the body, or a negative value if the
+   *                 length is unknown
+   * @param accepted {@code true} if the client accepts GZIP encoding
+   *
+   * @return {@code true} if the response should be compressed
+   */
+
+  boolean shouldCompress(
+    final QMutableResponse response,
+    final long length,
+    final boolean accepted)
+  {
+    if (!accepted || !this.gzipEnabled) {
+      return false;
+    }
+    if (response.headers().containsKey("content-length")) {
+      return false;
+    }
+    return length < 0L || length >= this.gzipMinimumSize;
+  }
+
+  /**
+   * @param response The response
+   * @param compress {@code true} if the response should be compressed
+   *
+   * @return The response serialized in wire format, or {@code null} if the
+   * response does not have a fixed body
+   */
+
+  QWebWireResponse wireFor(
+    final QMutableResponse response,
+    final boolean compress)
+  {
+    if (compress) {
+      return response.gzipWire(this.gzipLevel);
+    }
+    return response.wire();
+  }
+
+  int gzipLevel()
+  {
+    return this.gzipLevel;
+  }
+
+  void setRequestCallback(
+    final Consumer<QWebRequestReceivedType> onRequest)
+  {
+    this.callback = Objects.requireNonNull(onRequest, "onRequest");
+  }
+
+  /**
+   * @return {@code true} if a synchronous request callback has been set,
+   * and so recording a request may block
+   */
+
+  boolean hasRequestCallback()
+  {
+    return this.callback != NO_CALLBACK;
+  }
+
+  void setRequestBatchCallback(
+    final QWebRequestDispatchConfiguration configuration,
+    final Consumer<List<QWebRequestReceivedType>> onRequests)
+  {
+    final QWebRequestDispatcher existing;
+    synchronized (this) {
+      existing = this.dispatcher;
+      this.dispatcher = new QWebRequestDispatcher(configuration, onRequests);
+    }
+    if (existing != null) {
+      existing.close();
+    }
+  }
+
+  QWebRequestDispatchStatistics requestDispatchStatistics()
+  {
+    final var current = this.dispatcher;
+    if (current == null) {
+      return new QWebRequestDispatchStatistics(0L, 0L, 0L, 0L, 0, 0, 0);
+    }
+    return current.statistics();
+  }
+
+  void setMatchingMode(
+    final QWebMatchingMode mode)
+  {
+    this.responses.setMatchingMode(mode);
+  }
+
+  QWebResponseType addResponse()
+  {
+    return this.responses.add();
+  }
+
+  void addResponses(
+    final QWebConfiguration configuration)
+  {
+    for (final var rec : configuration.responses()) {
+      final var r = this.responses.add();
+      r.forMethodPattern(rec.method());
+      switch (rec.pathKind()) {
+        case REGEX -> r.forPathPattern(rec.path());
+        case EXACT -> r.forPathExact(rec.path().pattern());
+        case PREFIX -> r.forPathPrefix(rec.path().pattern());
+        case GLOB -> r.forPathGlob(rec.path().pattern());
+      }
+      r.withStatus(rec.statusCode());
+      final var file = rec.contentFile();
+      final var directory = rec.contentDirectory();
+      if (file.isPresent()) {
+        r.withFile(file.get());
+      } else if (directory.isPresent()) {
+        r.withDirectory(directory.get());
+      } else {
+        r.withFixedData(rec.content());
+        r.withContentLength(rec.content().length);
+      }
+
+      final var bandwidth = rec.bandwidth();
+      if (bandwidth.isPresent()) {
+        r.withBandwidth(bandwidth.getAsLong());
+      }
+      rec.delay().ifPresent(r::withDelay);
+
+      final var times = rec.times();
+      if (times.isPresent()) {
+        r.times(times.getAsLong());
+      } else {
+        r.always();
+      }
+
+      for (final var entry : rec.headers().entrySet()) {
+        r.withHeader(entry.getKey(), entry.getValue());
+      }
+
+      /*
+       * The bodies of configured responses never change, so they are
+       * serialized and compressed here rather than on the first request.
+       */
+
+      this.wireFor(r, false);
+      if (this.shouldCompress(r, r.contentLength(), true)) {
+        this.wireFor(r, true);
+      }
+    }
+
+    this.responses.rebuild();
+  }
+
+  List<QWebResponseType> responses()
+  {
+    return this.responses.responses();
+  }
+
+  List<QWebRequestReceivedType> requestsReceived()
+  {
+    final var currentSpill = this.spill;
+    if (currentSpill == null) {
+      return this.journal.snapshot();
+    }
+
+    /*
+     * Requests that are queued to be spilled are read from the spill's
+     * memory. Requests that have been overwritten in the journal behind an
+     * earlier request that is still being recorded (and so has not yet
+     * been queued) are briefly absent from both tiers, and so are not
+     * included.
+     */
+
+    final var spilledEnd = currentSpill.end();
+    final var recent = new ArrayList<QWebRequestReceivedType>();
+    for (final var entry : this.journal.since(spilledEnd).entries()) {
+      recent.add(entry.request());
+    }
+    return currentSpill.listWith(spilledEnd, recent);
+  }
+
+  QWebRequestJournalPage requestsSince(
+    final long cursor)
+  {
+    final var currentSpill = this.spill;
+    if (currentSpill == null || !currentSpill.isActive()) {
+      return this.journal.since(cursor);
+    }
+
+    /*
+     * Spilled requests are returned in pages of at most the journal
+     * capacity, so that reading from the spill is bounded by the same
+     * memory budget as the journal.
+     */
+
+    final var current = this.journal;
+    final var spilledEnd = currentSpill.end();
+    if (cursor < spilledEnd) {
+      final var from = Math.max(cursor, currentSpill.start());
+      final var to = Math.min(spilledEnd, from + current.capacity());
+      try {
+        return new QWebRequestJournalPage(
+          currentSpill.read(from, to),
+          to,
+          from - cursor
+        );
+      } catch (final IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /*
+     * If requests after the cursor have been overwritten in the journal,
+     * they are about to be spilled, and so are not reported as missed.
+     */
+
+    final var page = current.since(cursor);
+    if (page.missed() > 0L) {
+      return new QWebRequestJournalPage(List.of(), cursor, 0L);
+    }
+    return page;
+  }
+
+  long requestsCursor()
+  {
+    return this.journal.nextSequence();
+  }
+
+  List<QWebRequestReceivedType> awaitRequests(
+    final int count,
+    final Duration timeout)
+    throws InterruptedException, TimeoutException
+  {
+    if (count < 0) {
+      throw new IllegalArgumentException(
+        String.format(
+          "Request count %d must be non-negative",
+          Integer.valueOf(count)
+        )
+      );
+    }
+
+    final var deadline = deadlineOf(timeout);
+    var cursor = 0L;
+    while (true) {
+      cursor = this.journal.publishedSince(cursor);
+      if (cursor >= count) {
+        return this.requestsReceived();
+      }
+      if (!this.awaitPublished(cursor, deadline)) {
+        throw new TimeoutException(
+          String.format(
+            "Timed out after %s waiting for %d requests (received %d).",
+            timeout,
+            Integer.valueOf(count),
+            Long.valueOf(cursor)
+          )
+        );
+      }
+    }
+  }
+
+  QWebRequestReceivedType awaitRequest(
+    final Predicate<QWebRequestReceivedType> predicate,
+    final Duration timeout)
+    throws InterruptedException, TimeoutException
+  {
+    Objects.requireNonNull(predicate, "predicate");
+
+    final var deadline = deadlineOf(timeout);
+    var cursor = 0L;
+    while (true) {
+      final var page = this.requestsSince(cursor);
+      for (final var entry : page.entries()) {
+        if (predicate.test(entry.request())) {
+          return entry.request();
+        }
+      }
+      cursor = page.cursor();
+      if (!this.awaitPublished(cursor, deadline)) {
+        throw new TimeoutException(
+          String.format(
+            "Timed out after %s waiting for a matching request.",
+            timeout
+          )
+        );
+      }
+    }
+  }
+
+  private static long deadlineOf(
+    final Duration timeout)
+  {
+    Objects.requireNonNull(timeout, "timeout");
+    if (timeout.isNegative()) {
+      throw new IllegalArgumentException(
+        String.format("Timeout %s must be non-negative", timeout)
+      );
+    }
+    return System.nanoTime() + timeout.toNanos();
+  }
+
+  /**
+   * Wait until the request with the given sequence number has been
+   * published in the journal. The number of waiting threads is published
+   * before the journal is checked, and the journal is updated before a
+   * request thread checks the number of waiting threads, so either the
+   * waiting thread observes the new request or the request thread
+   * observes the waiting thread and signals it.
+   *
+   * @param cursor   The sequence number
+   * @param deadline The deadline in terms of {@link System#nanoTime()}
+   *
+   * @return {@code false} if the deadline passed before the request was
+   * published
+   *
+   * @throws InterruptedException If the calling thread is interrupted
+   */
+
+  private boolean awaitPublished(
+    final long cursor,
+    final long deadline)
+    throws InterruptedException
+  {
+    this.arrivalWaiters.incrementAndGet();
+    this.arrivalLock.lock();
+    try {
+      while (!this.journal.isPublished(cursor)) {
+        final var remaining = deadline - System.nanoTime();
+        if (remaining <= 0L) {
+          return false;
+        }
+        this.arrival.awaitNanos(remaining);
+      }
+      return true;
+    } finally {
+      this.arrivalLock.unlock();
+      this.arrivalWaiters.decrementAndGet();
+    }
+  }
+
+  private void signalArrival()
+  {
+    if (this.arrivalWaiters.get() == 0) {
+      return;
+    }
+
+    this.arrivalLock.lock();
+    try {
+      this.arrival.signalAll();
+    } finally {
+      this.arrivalLock.unlock();
+    }
+  }
+
+  /**
+   * Record a received request and pass it to the request callback, if the
+   * capture policy captures it. The returned request has a file map that
+   * the caller populates while parsing the request body, after which the
+   * caller must call {@link #requestParsed(QWebRequestReceived)} or
+   * {@link #requestParsedWithoutWaiting(QWebRequestReceived, Runnable)}.
+   * No request is created for requests that are not captured, so that
+   * nothing is allocated for them.
+   *
+   * @param method  The request method
+   * @param path    The request path
+   * @param headers The request headers
+   *
+   * @return The recorded request, or {@code null} if the request was not
+   * captured
+   */
+
+  QWebRequestReceived requestReceived(
+    final String method,
+    final String path,
+    final Map<String, String> headers)
+  {
+    final var filter = this.capture;
+    if (!filter.accept(path)) {
+      return null;
+    }
+
+    final var requestReceived =
+      new QWebRequestReceived(
+        method,
+        path,
+        filter.headersOf(headers),
+        new QWebRequestFiles()
+      );
+
+    final var current = this.journal;
+    final var entry = current.record(requestReceived, this::requestEvicted);
+    final var index = this.indexes;
+    if (index != null) {
+      index.add(current, entry);
+    }
+    this.signalArrival();
+
+    try {
+      this.callback.accept(requestReceived);
+    } catch (final Exception e) {
+      // Ignored
+    }
+
+    return requestReceived;
+  }
+
+  private void requestEvicted(
+    final QWebRequestJournalEntry entry)
+  {
+    final var index = this.indexes;
+    if (index != null) {
+      index.remove(entry);
+    }
+    final var currentSpill = this.spill;
+    if (currentSpill != null) {
+      currentSpill.spill(entry);
+    }
+  }
+
+  /**
+   * Mark the body of a received request as parsed (or as having failed
+   * to parse), so that the request's file map is complete and the request
+   * can be spilled, and pass the request to the asynchronous request
+   * callback, if there is one.
+   *
+   * @param request The request, or {@code null} if the request was not
+   *                captured
+   */
+
+  void requestParsed(
+    final QWebRequestReceived request)
+  {
+    if (request == null) {
+      return;
+    }
+
+    this.markParsed(request);
+
+    final var current = this.dispatcher;
+    if (current != null) {
+      current.submit(request);
+    }
+  }
+
+  /**
+   * Mark the body of a received request as parsed, as
+   * {@link #requestParsed(QWebRequestReceived)} does, but never wait for
+   * room in the asynchronous request callback's queue. If the queue is full
+   * and its overflow policy is {@link QWebRequestOverflowPolicy#BLOCK}, the
+   * request is not passed to the callback, and the given function is
+   * evaluated on an arbitrary thread once the caller should try again with
+   * {@link #requestSubmitWithoutWaiting(QWebRequestReceived, Runnable)}.
+   *
+   * @param request The request, or {@code null} if the request was not
+   *                captured
+   * @param onSpace The function evaluated when the queue has room
+   *
+   * @return {@code false} if the request was not passed to the callback
+   */
+
+  boolean requestParsedWithoutWaiting(
+    final QWebRequestReceived request,
+    final Runnable onSpace)
+  {
+    if (request == null) {
+      return true;
+    }
+
+    this.markParsed(request);
+    return this.requestSubmitWithoutWaiting(request, onSpace);
+  }
+
+  /**
+   * Pass a parsed request to the asynchronous request callback, if there is
+   * one, without waiting for room in the callback's queue.
+   *
+   * @param request The request
+   * @param onSpace The function evaluated when the queue has room
+   *
+   * @return {@code false} if the request was not passed to the callback
+   *
+   * @see #requestParsedWithoutWaiting(QWebRequestReceived, Runnable)
+   */
+
+  boolean requestSubmitWithoutWaiting(
+    final QWebRequestReceived request,
+    final Runnable onSpace)
+  {
+    final var current = this.dispatcher;
+    if (current != null) {
+      return current.trySubmit(request, onSpace);
+    }
+    return true;
+  }
+
+  private void markParsed(
+    final QWebRequestReceived request)
+  {
+    ((QWebRequestFiles) request.files()).complete();
+    final var currentSpill = this.spill;
+    if (currentSpill != null) {
+      currentSpill.requestParsed(request);
+    }
+  }
+
+  /**
+   * Find the first queued response that matches the given method and path,
+   * consuming one of its hits.
+   *
+   * @param method The request method
+   * @param path   The request path
+   *
+   * @return The matching response, if any
+   */
+
+  Optional<QMutableResponse> takeResponse(
+    final String method,
+    final String path)
+  {
+    return this.responses.take(method, path);
+  }
+
+  static String noMatchingResponses(
+    final String method,
+    final String path)
+  {
+    return String.format(
+      "No matching responses for method %s and path '%s'.",
+      method,
+      path
+    );
+  }
+
+  static String noSuchFile(
+    final String method,
+    final String path)
+  {
+    return String.format(
+      "No file for method %s and path '%s'.",
+      method,
+      path
+    );
+  }
+
+  /**
+   * Release any resources held by the state.
+   */
+
+  void close()
+  {
+    final QWebRequestDispatcher existing;
+    synchronized (this) {
+      existing = this.dispatcher;
+      this.dispatcher = null;
+    }
+    if (existing != null) {
+      existing.close();
+    }
+    this.files.close();
+
+    final var currentSpill = this.spill;
+    if (currentSpill != null) {
+      try {
+        currentSpill.close();
+      } catch (final IOException e) {
+        // Ignored
+      }
+    }
+  }
+
+  static String failedResponse(
+    final String method,
+    final String path,
+    final Exception e)
+  {
+    return String.format(
+      "Failed response for method %s and path '%s': %s",
+      method,
+      path,
+      e
+    );
+  }
+}
@@ -20,8 +20,12 @@ import org.osgi.annotation.versioning.ProviderType;
 
 import java.io.Closeable;
 import java.net.URI;
+import java.time.Duration;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * A web server.
@@ -64,17 +68,202 @@ public interface QWebServerType extends Closeable
 
   /**
    * @return A read-only snapshot of the current list of requests that have been
-   * received, in the order they were received
+   * received, in the order they were received; at most
+   * {@link QWebServerConfiguration#journalCapacity()} of the most recent
+   * requests are retained
    */
 
   List<QWebRequestReceivedType> requestsReceived();
 
   /**
-   * Set the callback that will be evaluated on each request.
+   * Read the requests received since the given cursor. A cursor of
+   * {@code 0} reads from the first request the server received; the cursor
+   * in the returned page can be passed back to this method to read only
+   * the requests that have been received since. Requests that were
+   * overwritten in the journal before they could be read are counted in
+   * {@link QWebRequestJournalPage#missed()}.
+   *
+   * @param cursor The cursor
+   *
+   * @return The requests received since the cursor
+   *
+   * @see #requestsCursor()
+   * @since 1.4.0
+   */
+
+  QWebRequestJournalPage requestsSince(
+    long cursor);
+
+  /**
+   * @return A cursor that, when passed to {@link #requestsSince(long)},
+   * reads only the requests received after this method is called
+   *
+   * @since 1.4.0
+   */
+
+  long requestsCursor();
+
+  /**
+   * Wait until the server has received at least {@code count} requests.
+   * Every request the server has received counts towards {@code count},
+   * including requests that are no longer retained. The returned snapshot
+   * is bounded in the same way as {@link #requestsReceived()}: unless
+   * requests are spilled to a
+   * {@link QWebServerConfiguration#spillDirectory()}, it contains at most
+   * {@link QWebServerConfiguration#journalCapacity()} requests, and so may
+   * contain fewer than {@code count} requests if {@code count} exceeds the
+   * journal capacity.
+   *
+   * @param count   The number of requests
+   * @param timeout The maximum time to wait
+   *
+   * @return A read-only snapshot of the current list of requests that have
+   * been received, as returned by {@link #requestsReceived()}
+   *
+   * @throws InterruptedException If the calling thread is interrupted
+   * @throws TimeoutException     If fewer than {@code count} requests are
+   *                              received within the timeout
+   * @since 1.4.0
+   */
+
+  List<QWebRequestReceivedType> awaitRequests(
+    int count,
+    Duration timeout)
+    throws InterruptedException, TimeoutException;
+
+  /**
+   * Wait until the server has received a request that matches the given
+   * predicate. Requests that were received before this method was called,
+   * and that are still retained by the server, are also considered.
+   *
+   * @param predicate The predicate
+   * @param timeout   The maximum time to wait
+   *
+   * @return The earliest matching request
+   *
+   * @throws InterruptedException If the calling thread is interrupted
+   * @throws TimeoutException     If no matching request is received within
+   *                              the timeout
+   * @since 1.4.0
+   */
+
+  QWebRequestReceivedType awaitRequest(
+    Predicate<QWebRequestReceivedType> predicate,
+    Duration timeout)
+    throws InterruptedException, TimeoutException;
+
+  /**
+   * Set the indexes maintained over received requests. Indexes are
+   * maintained as requests are received, and allow
+   * {@link #requestCount(QWebRequestQuery)} and
+   * {@link #requestsMatching(QWebRequestQuery)} to avoid examining every
+   * retained request. Setting new indexes replaces any existing indexes,
+   * and populates the new indexes from the requests currently retained.
+   *
+   * @param configuration The index configuration
+   *
+   * @see QWebRequestIndexConfiguration#none()
+   * @since 1.4.0
+   */
+
+  void setRequestIndexes(
+    QWebRequestIndexConfiguration configuration);
+
+  /**
+   * Count the retained requests that match the given query. If the query
+   * consists of a single indexed criterion, the count is returned directly
+   * from the index.
+   *
+   * @param query The query
+   *
+   * @return The number of matching requests
+   *
+   * @see #setRequestIndexes(QWebRequestIndexConfiguration)
+   * @since 1.4.0
+   */
+
+  long requestCount(
+    QWebRequestQuery query);
+
+  /**
+   * Find the retained requests that match the given query. If any of the
+   * query's criteria are indexed, only the requests in the most selective
+   * index are examined; otherwise, every retained request is examined.
+   *
+   * @param query The query
+   *
+   * @return The matching requests, in the order they were received
+   *
+   * @see #setRequestIndexes(QWebRequestIndexConfiguration)
+   * @since 1.4.0
+   */
+
+  Iterator<QWebRequestJournalEntry> requestsMatching(
+    QWebRequestQuery query);
+
+  /**
+   * Set the callback that will be evaluated on each request. The callback
+   * is evaluated before the request body has been parsed, on the thread
+   * that handles the request; for servers created by
+   * {@link QWebServersNIO}, this is a worker thread, and never an event loop
+   * thread. The client does not receive a response until the callback
+   * returns, and so the callback should not block for long.
    *
    * @param onRequest The request receiver
    */
 
   void setRequestCallback(
     Consumer<QWebRequestReceivedType> onRequest);
+
+  /**
+   * Set a callback that will be evaluated asynchronously on batches of
+   * received requests. Requests are placed in a bounded queue by the
+   * threads that handle them, once their bodies have been parsed, and the
+   * queue is drained by a dedicated thread that passes the requests to the
+   * callback in the order they were received. Clients therefore do not wait
+   * for the callback unless the queue is full and the overflow policy is
+   * {@link QWebRequestOverflowPolicy#BLOCK}. This callback is independent of
+   * the callback set with {@link #setRequestCallback(Consumer)}. Setting a
+   * new batch callback replaces the existing one, after the requests queued
+   * for the existing callback have been passed to it.
+   *
+   * @param configuration The queue configuration
+   * @param onRequests    The request receiver
+   *
+   * @since 1.4.0
+   */
+
+  void setRequestBatchCallback(
+    QWebRequestDispatchConfiguration configuration,
+    Consumer<List<QWebRequestReceivedType>> onRequests);
+
+  /**
+   * @return The current statistics for the asynchronous request callback;
+   * all values are zero if no such callback has been set
+   *
+   * @see #setRequestBatchCallback(QWebRequestDispatchConfiguration, Consumer)
+   * @since 1.4.0
+   */
+
+  QWebRequestDispatchStatistics requestDispatchStatistics();
+
+  /**
+   * @return The current statistics for the cache of open files used to
+   * serve file-backed responses
+   *
+   * @see QWebResponseType#withFile(java.nio.file.Path)
+   * @see QWebResponseType#withDirectory(java.nio.file.Path)
+   * @since 1.4.0
+   */
+
+  QWebFileCacheStatistics fileCacheStatistics();
+
+  /**
+   * @return The current statistics for the capture of received requests
+   *
+   * @see QWebServerConfiguration#capture()
+   * @since 1.4.0
+   */
+
+  QWebCaptureStatistics captureStatistics();
 }
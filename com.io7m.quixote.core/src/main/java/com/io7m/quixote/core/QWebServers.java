@@ -18,22 +18,39 @@ package com.io7m.quixote.core;
 
 import fi.iki.elonen.NanoHTTPD;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
 import java.net.InetAddress;
 import java.net.URI;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
-import java.util.regex.Pattern;
+import java.util.function.Predicate;
 
+import static com.io7m.quixote.core.QWebServerThreadKind.PLATFORM_THREADS;
+import static fi.iki.elonen.NanoHTTPD.Response.Status.NOT_FOUND;
+import static fi.iki.elonen.NanoHTTPD.Response.Status.PARTIAL_CONTENT;
+import static fi.iki.elonen.NanoHTTPD.Response.Status.RANGE_NOT_SATISFIABLE;
 import static fi.iki.elonen.NanoHTTPD.Response.Status.SERVICE_UNAVAILABLE;
 import static fi.iki.elonen.NanoHTTPD.newFixedLengthResponse;
-import static java.util.Locale.ROOT;
-import static java.util.regex.Pattern.CASE_INSENSITIVE;
 
 /**
  * The default web servers.
@@ -126,7 +143,7 @@ public final class QWebServers implements QWebServerFactoryType
     final int port)
     throws IOException
   {
-    return new QWebServer("localhost", port);
+    return new QWebServer("localhost", port, PLATFORM_THREADS);
   }
 
   @Override
@@ -134,7 +151,7 @@ public final class QWebServers implements QWebServerFactoryType
     final int port)
     throws IOException
   {
-    return new QWebServer("[::]", port);
+    return new QWebServer("[::]", port, PLATFORM_THREADS);
   }
 
   @Override
@@ -143,7 +160,7 @@ public final class QWebServers implements QWebServerFactoryType
     final int port)
     throws IOException
   {
-    return new QWebServer(address.getHostName(), port);
+    return new QWebServer(address.getHostName(), port, PLATFORM_THREADS);
   }
 
   @Override
@@ -153,42 +170,19 @@ public final class QWebServers implements QWebServerFactoryType
   {
     final var serverConfiguration =
       configuration.serverConfiguration();
+    final var state =
+      QWebServerState.create(configuration);
 
-    final var server =
-      new QWebServer(
+    try {
+      return new QWebServer(
         serverConfiguration.hostName(),
-        serverConfiguration.port()
+        serverConfiguration.port(),
+        serverConfiguration.threads(),
+        state
       );
-
-    server.enableGzip(serverConfiguration.enableGZIP());
-
-    for (final var rec : configuration.responses()) {
-      final var r = server.addResponse();
-      r.withStatus(rec.statusCode());
-      r.withFixedData(rec.content());
-      r.withContentLength(rec.content().length);
-
-      for (final var entry : rec.headers().entrySet()) {
-        r.withHeader(entry.getKey(), entry.getValue());
-      }
-    }
-
-    return server;
-  }
-
-  private record QWebRequestReceived(
-    String method,
-    String path,
-    Map<String, String> headers,
-    Map<String, String> files)
-    implements QWebRequestReceivedType
-  {
-    private QWebRequestReceived
-    {
-      Objects.requireNonNull(method, "method");
-      Objects.requireNonNull(path, "path");
-      Objects.requireNonNull(headers, "headers");
-      Objects.requireNonNull(files, "files");
+    } catch (final IOException e) {
+      state.close();
+      throw e;
     }
   }
 
@@ -196,14 +190,22 @@ public final class QWebServers implements QWebServerFactoryType
     implements QWebServerType
   {
     private final URI baseURI;
-    private final LinkedList<QMutableResponse> responses;
-    private final LinkedList<QWebRequestReceived> requests;
-    private boolean gzipEnabled;
-    private Consumer<QWebRequestReceivedType> callback;
+    private final QWebServerState state;
 
     QWebServer(
       final String hostName,
-      final int port)
+      final int port,
+      final QWebServerThreadKind threads)
+      throws IOException
+    {
+      this(hostName, port, threads, new QWebServerState());
+    }
+
+    QWebServer(
+      final String hostName,
+      final int port,
+      final QWebServerThreadKind threads,
+      final QWebServerState inState)
       throws IOException
     {
       super(
@@ -211,13 +213,17 @@ public final class QWebServers implements QWebServerFactoryType
         port
       );
 
-      this.responses =
-        new LinkedList<>();
-      this.requests =
-        new LinkedList<>();
-      this.callback =
-        r -> {
-        };
+      switch (threads) {
+        case PLATFORM_THREADS -> {
+          // NanoHTTPD's default runner uses platform threads.
+        }
+        case VIRTUAL_THREADS -> {
+          this.setAsyncRunner(new QVirtualThreadRunner());
+        }
+      }
+
+      this.state =
+        Objects.requireNonNull(inState, "state");
 
       this.baseURI =
         URI.create(
@@ -234,68 +240,265 @@ public final class QWebServers implements QWebServerFactoryType
     public Response serve(
       final IHTTPSession session)
     {
+      final var methodName =
+        session.getMethod().name();
+      final var path =
+        session.getUri();
+
       final var requestReceived =
-        new QWebRequestReceived(
-          session.getMethod().name(),
-          session.getUri(),
-          Map.copyOf(session.getHeaders()),
-          new HashMap<>()
-        );
+        this.state.requestReceived(methodName, path, session.getHeaders());
 
-      this.requests.add(requestReceived);
+      final Map<String, String> files =
+        requestReceived != null ? requestReceived.files() : new HashMap<>();
 
       try {
-        this.callback.accept(requestReceived);
+        session.parseBody(files);
       } catch (final Exception e) {
-        // Ignored
+        return newFixedLengthResponse(
+          SERVICE_UNAVAILABLE,
+          "text/plain",
+          QWebServerState.failedResponse(methodName, path, e)
+        );
+      } finally {
+        this.state.requestParsed(requestReceived);
       }
 
+      final var gzip =
+        session.getHeaders()
+          .getOrDefault("accept-encoding", "")
+          .contains("gzip");
+      final var range =
+        QWebByteRanges.requestedRange(
+          methodName,
+          session.getHeaders().get("range"),
+          session.getHeaders().get("if-range")
+        );
+
+      return this.state.takeResponse(methodName, path)
+        .map(r -> this.httpResponse(r, methodName, path, range, gzip))
+        .orElseGet(() -> {
+          return newFixedLengthResponse(
+            SERVICE_UNAVAILABLE,
+            "text/plain",
+            QWebServerState.noMatchingResponses(methodName, path)
+          );
+        });
+    }
+
+    private Response httpResponse(
+      final QMutableResponse source,
+      final String methodName,
+      final String path,
+      final String range,
+      final boolean gzipAccepted)
+    {
+      delay(source.sampleDelay());
+
+      final Path filePath;
       try {
-        session.parseBody(requestReceived.files);
-      } catch (final Exception e) {
+        filePath = source.fileFor(path);
+      } catch (final NoSuchFileException e) {
+        return newFixedLengthResponse(
+          NOT_FOUND,
+          "text/plain",
+          QWebServerState.noSuchFile(methodName, path)
+        );
+      }
+
+      QWebFileCache.Handle file = null;
+      try {
+        if (filePath != null) {
+          file = this.state.openFile(filePath);
+        }
+        final var response =
+          this.httpResponseFor(source, file, range, gzipAccepted);
+        if (response instanceof final QPacedResponse paced) {
+          paced.setBandwidth(this.state.bandwidthFor(source));
+        }
+        return response;
+      } catch (final IOException | UncheckedIOException e) {
+        if (file != null) {
+          file.close();
+        }
         return newFixedLengthResponse(
           SERVICE_UNAVAILABLE,
           "text/plain",
-          String.format(
-            "Failed response for method %s and path '%s': %s",
-            session.getMethod(),
-            session.getUri(),
-            e)
+          QWebServerState.failedResponse(methodName, path, e)
+        );
+      }
+    }
+
+    /**
+     * Delay a response. NanoHTTPD dedicates a thread to each client, and
+     * so the delay is spent waiting on that thread; with virtual threads,
+     * a waiting request does not occupy a platform thread. This cost is
+     * documented on {@link QWebResponseType#withDelay(QWebDelay)}.
+     *
+     * @param delay The delay
+     */
+
+    private static void delay(
+      final Duration delay)
+    {
+      if (delay.isZero()) {
+        return;
+      }
+
+      try {
+        Thread.sleep(delay);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private Response httpResponseFor(
+      final QMutableResponse source,
+      final QWebFileCache.Handle file,
+      final String range,
+      final boolean gzipAccepted)
+    {
+      final var length =
+        file != null ? file.size() : source.contentLength();
+
+      if (range != null && QWebByteRanges.appliesTo(source)) {
+        final var bytes = file == null ? source.fixedData() : null;
+        if (file != null || bytes != null) {
+          final var ranges = QWebByteRanges.parse(range, length);
+          if (ranges.isPresent()) {
+            return rangeResponse(source, file, bytes, length, ranges.get());
+          }
+        }
+      }
+      final var compress =
+        this.state.shouldCompress(source, length, gzipAccepted);
+
+      if (file == null) {
+        final var wire = this.state.wireFor(source, compress);
+        if (wire != null) {
+          return new QWireResponse(wire);
+        }
+      }
+
+      final var response =
+        new QStreamResponse(
+          Response.Status.lookup(source.statusCode()),
+          source.contentType(),
+          file != null ? file.stream() : source.data(),
+          length,
+          compress
         );
+
+      for (final var entry : source.headers().entrySet()) {
+        response.addHeader(entry.getKey(), entry.getValue());
       }
 
-      final var iterator =
-        this.responses.iterator();
+      return response;
+    }
+
+    private static Response rangeResponse(
+      final QMutableResponse source,
+      final QWebFileCache.Handle file,
+      final byte[] bytes,
+      final long total,
+      final List<QWebByteRanges.Range> ranges)
+    {
+      if (ranges.isEmpty()) {
+        if (file != null) {
+          file.close();
+        }
+        final var response =
+          newFixedLengthResponse(RANGE_NOT_SATISFIABLE, "text/plain", "");
+        response.addHeader("Content-Range", QWebByteRanges.unsatisfiable(total));
+        return response;
+      }
 
-      while (iterator.hasNext()) {
-        final var response = iterator.next();
-        if (response.matches(session)) {
-          iterator.remove();
-          return response.httpResponse();
+      /*
+       * The body is assembled from slices of the fixed body, or from
+       * positional reads of the file, and so nothing outside the requested
+       * ranges is read.
+       */
+
+      final Response response;
+      if (ranges.size() == 1) {
+        final var single = ranges.get(0);
+        response =
+          new QStreamResponse(
+            PARTIAL_CONTENT,
+            source.contentType(),
+            releasing(file, slice(file, bytes, single)),
+            single.length(),
+            false
+          );
+        response.addHeader("Content-Range", single.contentRange(total));
+      } else {
+        final var multipart =
+          QWebByteRanges.multipart(ranges, total, source.contentType());
+        final var streams = new ArrayList<InputStream>();
+        for (final var part : multipart.parts()) {
+          streams.add(new ByteArrayInputStream(part.header()));
+          streams.add(slice(file, bytes, part.range()));
         }
+        streams.add(new ByteArrayInputStream(multipart.trailer()));
+
+        response =
+          new QStreamResponse(
+            PARTIAL_CONTENT,
+            multipart.contentType(),
+            releasing(
+              file,
+              new SequenceInputStream(Collections.enumeration(streams))
+            ),
+            multipart.length(),
+            false
+          );
       }
 
-      return newFixedLengthResponse(
-        SERVICE_UNAVAILABLE,
-        "text/plain",
-        String.format(
-          "No matching responses for method %s and path '%s'.",
-          session.getMethod(),
-          session.getUri())
+      for (final var entry : source.headers().entrySet()) {
+        response.addHeader(entry.getKey(), entry.getValue());
+      }
+      return response;
+    }
+
+    private static InputStream slice(
+      final QWebFileCache.Handle file,
+      final byte[] bytes,
+      final QWebByteRanges.Range range)
+    {
+      if (file != null) {
+        return file.slice(range.first(), range.length());
+      }
+      return new ByteArrayInputStream(
+        bytes,
+        (int) range.first(),
+        (int) range.length()
       );
     }
 
+    private static InputStream releasing(
+      final QWebFileCache.Handle file,
+      final InputStream stream)
+    {
+      return file != null ? file.releasing(stream) : stream;
+    }
+
     @Override
     protected boolean useGzipWhenAccepted(
       final Response r)
     {
-      return this.gzipEnabled;
+      if (r instanceof QWireResponse) {
+        return false;
+      }
+      if (r instanceof final QStreamResponse stream) {
+        return stream.compress;
+      }
+      return this.state.gzipEnabled();
     }
 
     @Override
     public void close()
     {
       super.stop();
+      this.state.close();
     }
 
     @Override
@@ -308,165 +511,326 @@ public final class QWebServers implements QWebServerFactoryType
     public QWebServerType enableGzip(
       final boolean enable)
     {
-      this.gzipEnabled = enable;
+      this.state.setGzipEnabled(enable);
       return this;
     }
 
     @Override
     public QWebResponseType addResponse()
     {
-      final var response = new QMutableResponse();
-      this.responses.add(response);
-      return response;
+      return this.state.addResponse();
     }
 
     @Override
     public List<QWebResponseType> responses()
     {
-      return List.copyOf(this.responses);
+      return this.state.responses();
     }
 
     @Override
     public List<QWebRequestReceivedType> requestsReceived()
     {
-      return List.copyOf(this.requests);
+      return this.state.requestsReceived();
     }
 
     @Override
-    public void setRequestCallback(
-      final Consumer<QWebRequestReceivedType> onRequest)
+    public QWebRequestJournalPage requestsSince(
+      final long cursor)
     {
-      this.callback = Objects.requireNonNull(onRequest, "onRequest");
+      return this.state.requestsSince(cursor);
     }
-  }
 
-  private static final class QMutableResponse implements QWebResponseType
-  {
-    private final HashMap<String, String> responseHeaders;
-    private int responseCode;
-    private Pattern patternPath;
-    private Pattern patternMethod;
-    private InputStream responseData;
-    private String contentType;
-    private long contentLength;
+    @Override
+    public long requestsCursor()
+    {
+      return this.state.requestsCursor();
+    }
 
     @Override
-    public String toString()
+    public void setRequestIndexes(
+      final QWebRequestIndexConfiguration configuration)
     {
-      return String.format(
-        "[Response [Method %s] [Path %s]]",
-        this.patternMethod,
-        this.patternPath
-      );
+      this.state.setRequestIndexes(configuration);
     }
 
-    private QMutableResponse()
+    @Override
+    public long requestCount(
+      final QWebRequestQuery query)
     {
-      this.responseHeaders =
-        new HashMap<>();
-      this.patternMethod =
-        Pattern.compile(".*", CASE_INSENSITIVE);
-      this.patternPath =
-        Pattern.compile("^/.*");
+      return this.state.requestCount(query);
+    }
 
-      this.contentType = "application/octet-stream";
-      this.responseCode = 200;
-      this.contentLength = -1L;
+    @Override
+    public Iterator<QWebRequestJournalEntry> requestsMatching(
+      final QWebRequestQuery query)
+    {
+      return this.state.requestsMatching(query);
     }
 
     @Override
-    public QWebResponseType forMethod(
-      final String pattern)
+    public List<QWebRequestReceivedType> awaitRequests(
+      final int count,
+      final Duration timeout)
+      throws InterruptedException, TimeoutException
     {
-      Objects.requireNonNull(pattern, "pattern");
-      this.patternMethod = Pattern.compile(pattern, CASE_INSENSITIVE);
-      return this;
+      return this.state.awaitRequests(count, timeout);
     }
 
     @Override
-    public QWebResponseType forPath(
-      final String pattern)
+    public QWebRequestReceivedType awaitRequest(
+      final Predicate<QWebRequestReceivedType> predicate,
+      final Duration timeout)
+      throws InterruptedException, TimeoutException
     {
-      Objects.requireNonNull(pattern, "pattern");
-      this.patternPath = Pattern.compile("^" + pattern);
-      return this;
+      return this.state.awaitRequest(predicate, timeout);
     }
 
     @Override
-    public QWebResponseType withStatus(
-      final int code)
+    public void setRequestCallback(
+      final Consumer<QWebRequestReceivedType> onRequest)
     {
-      this.responseCode = code;
-      return this;
+      this.state.setRequestCallback(onRequest);
     }
 
     @Override
-    public QWebResponseType withHeader(
-      final String name,
-      final String value)
+    public void setRequestBatchCallback(
+      final QWebRequestDispatchConfiguration configuration,
+      final Consumer<List<QWebRequestReceivedType>> onRequests)
     {
-      Objects.requireNonNull(name, "name");
-      Objects.requireNonNull(value, "value");
+      this.state.setRequestBatchCallback(configuration, onRequests);
+    }
 
-      this.responseHeaders.put(name.toLowerCase(ROOT), value);
-      return this;
+    @Override
+    public QWebRequestDispatchStatistics requestDispatchStatistics()
+    {
+      return this.state.requestDispatchStatistics();
     }
 
     @Override
-    public QWebResponseType withData(
-      final InputStream data)
+    public QWebFileCacheStatistics fileCacheStatistics()
     {
-      this.responseData = Objects.requireNonNull(data, "data");
-      return this;
+      return this.state.fileCacheStatistics();
     }
 
     @Override
-    public QWebResponseType withContentType(
-      final String type)
+    public QWebCaptureStatistics captureStatistics()
     {
-      this.contentType = Objects.requireNonNull(type, "type");
-      return this;
+      return this.state.captureStatistics();
+    }
+  }
+
+  /**
+   * A response that writes a response serialized in advance directly to the
+   * client, instead of formatting the status line and headers and copying
+   * the body through a stream.
+   */
+
+  private static final class QWireResponse extends QPacedResponse
+  {
+    private final QWebWireResponse wire;
+    private boolean keepAlive;
+
+    QWireResponse(
+      final QWebWireResponse inWire)
+    {
+      super(null, null, null, 0L);
+      this.wire = inWire;
+      this.keepAlive = true;
     }
 
     @Override
-    public QWebResponseType withContentLength(
-      final long size)
+    public void setKeepAlive(
+      final boolean useKeepAlive)
     {
-      this.contentLength = size;
-      return this;
+      super.setKeepAlive(useKeepAlive);
+      this.keepAlive = useKeepAlive;
     }
 
-    public boolean matches(
-      final NanoHTTPD.IHTTPSession session)
+    @Override
+    protected void send(
+      final OutputStream outputStream)
     {
-      final var methodText =
-        session.getMethod().name();
-      final var pathText =
-        session.getUri();
+      try {
+        this.wire.writeTo(
+          this.paced(outputStream),
+          this.keepAlive,
+          this.getRequestMethod() == NanoHTTPD.Method.HEAD
+        );
+        outputStream.flush();
+      } catch (final IOException e) {
+        // Ignored, as NanoHTTPD does for its own responses
+      }
+    }
+  }
 
-      final var methodMatches =
-        this.patternMethod.matcher(methodText).matches();
-      final var pathMatches =
-        this.patternPath.matcher(pathText).matches();
+  /**
+   * A response that streams its body, and that is compressed by NanoHTTPD
+   * if the server decided that it should be.
+   */
 
-      return methodMatches && pathMatches;
+  private static final class QStreamResponse extends QPacedResponse
+  {
+    private final boolean compress;
+
+    QStreamResponse(
+      final NanoHTTPD.Response.IStatus status,
+      final String mimeType,
+      final InputStream data,
+      final long totalBytes,
+      final boolean inCompress)
+    {
+      super(status, mimeType, data, totalBytes);
+      this.compress = inCompress;
     }
 
-    public NanoHTTPD.Response httpResponse()
+    @Override
+    protected void send(
+      final OutputStream outputStream)
     {
-      final var response =
-        newFixedLengthResponse(
-          NanoHTTPD.Response.Status.lookup(this.responseCode),
-          this.contentType,
-          this.responseData,
-          this.contentLength
-        );
+      super.send(this.paced(outputStream));
+    }
+  }
 
-      for (final var entry : this.responseHeaders.entrySet()) {
-        response.addHeader(entry.getKey(), entry.getValue());
+  /**
+   * A response that may be written at a limited bandwidth. NanoHTTPD
+   * dedicates a thread to each client, and so the response is paced by
+   * sleeping on that thread.
+   */
+
+  private abstract static class QPacedResponse extends NanoHTTPD.Response
+  {
+    private long bandwidth;
+
+    QPacedResponse(
+      final NanoHTTPD.Response.IStatus status,
+      final String mimeType,
+      final InputStream data,
+      final long totalBytes)
+    {
+      super(status, mimeType, data, totalBytes);
+      this.bandwidth = QWebTokenBucket.UNLIMITED;
+    }
+
+    final void setBandwidth(
+      final long bytesPerSecond)
+    {
+      this.bandwidth = bytesPerSecond;
+    }
+
+    final OutputStream paced(
+      final OutputStream outputStream)
+    {
+      if (this.bandwidth == QWebTokenBucket.UNLIMITED) {
+        return outputStream;
       }
+      return new QPacedOutputStream(outputStream, this.bandwidth);
+    }
+  }
 
-      return response;
+  /**
+   * An output stream that writes no faster than a token bucket allows.
+   */
+
+  private static final class QPacedOutputStream extends FilterOutputStream
+  {
+    private final QWebTokenBucket bucket;
+
+    QPacedOutputStream(
+      final OutputStream output,
+      final long bandwidth)
+    {
+      super(output);
+      this.bucket = new QWebTokenBucket(bandwidth, System.nanoTime());
+    }
+
+    @Override
+    public void write(
+      final int b)
+      throws IOException
+    {
+      this.write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(
+      final byte[] data,
+      final int offset,
+      final int length)
+      throws IOException
+    {
+      var position = offset;
+      var remaining = length;
+      while (remaining > 0) {
+        final var now = System.nanoTime();
+        final var available = this.bucket.available(now);
+        if (available == 0L) {
+          this.out.flush();
+          pause(this.bucket.delay(now, remaining));
+          continue;
+        }
+
+        final var count = (int) Math.min(available, remaining);
+        this.out.write(data, position, count);
+        this.bucket.consume(count);
+        position += count;
+        remaining -= count;
+      }
+    }
+
+    private static void pause(
+      final long nanos)
+      throws InterruptedIOException
+    {
+      try {
+        Thread.sleep(Duration.ofNanos(nanos));
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    }
+  }
+
+  /**
+   * A runner that executes each client connection on a new virtual thread.
+   */
+
+  private static final class QVirtualThreadRunner
+    implements NanoHTTPD.AsyncRunner
+  {
+    private final Set<NanoHTTPD.ClientHandler> running;
+    private final ThreadFactory threads;
+
+    QVirtualThreadRunner()
+    {
+      this.running =
+        ConcurrentHashMap.newKeySet();
+      this.threads =
+        Thread.ofVirtual()
+          .name("com.io7m.quixote.request-", 0L)
+          .factory();
+    }
+
+    @Override
+    public void closeAll()
+    {
+      for (final var handler : List.copyOf(this.running)) {
+        handler.close();
+      }
+    }
+
+    @Override
+    public void closed(
+      final NanoHTTPD.ClientHandler handler)
+    {
+      this.running.remove(handler);
+    }
+
+    @Override
+    public void exec(
+      final NanoHTTPD.ClientHandler handler)
+    {
+      this.running.add(handler);
+      this.threads.newThread(handler).start();
     }
   }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * Web servers built directly on non-blocking NIO channels. Each server uses
+ * a small fixed pool of event loop threads to service all connections,
+ * rather than a thread per connection, and so can handle very large numbers
+ * of concurrent keep-alive clients.
+ *
+ * <p>Event loop threads never run work that may block. The synchronous
+ * request callback, the saving of request bodies to temporary files, the
+ * opening of files for file-backed responses, and the reading of
+ * responses supplied as streams all run on a small pool of worker threads
+ * per server, after which the connection is resumed by its event loop. A
+ * request callback that blocks therefore delays the responses of the
+ * connections whose requests it is evaluating, but not those of other
+ * connections, unless every worker thread is blocked. Response data
+ * supplied as a stream is read into memory before it is sent.</p>
+ *
+ * <p>As with NanoHTTPD, request bodies larger than a small threshold are
+ * streamed to temporary files as they are read rather than being buffered
+ * in memory. Unlike NanoHTTPD, {@code multipart/form-data} and
+ * {@code application/x-www-form-urlencoded} bodies are not decoded: the
+ * recorded request has no uploaded files and no {@code postData} for
+ * them.</p>
+ *
+ * @since 1.4.0
+ */
+
+public final class QWebServersNIO implements QWebServerFactoryType
+{
+  private final int eventLoops;
+
+  /**
+   * Web servers built directly on non-blocking NIO channels, using a
+   * default number of event loops.
+   */
+
+  public QWebServersNIO()
+  {
+    this(defaultEventLoops());
+  }
+
+  /**
+   * Web servers built directly on non-blocking NIO channels.
+   *
+   * @param inEventLoops The number of event loop threads per server
+   */
+
+  public QWebServersNIO(
+    final int inEventLoops)
+  {
+    if (inEventLoops < 1) {
+      throw new IllegalArgumentException(
+        "Event loop count must be positive (received %d)"
+          .formatted(Integer.valueOf(inEventLoops))
+      );
+    }
+    this.eventLoops = inEventLoops;
+  }
+
+  private static int defaultEventLoops()
+  {
+    return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+  }
+
+  /**
+   * @return The number of event loop threads used by each server
+   */
+
+  public int eventLoops()
+  {
+    return this.eventLoops;
+  }
+
+  @Override
+  public QWebServerType create(
+    final int port)
+    throws IOException
+  {
+    return new QWebServerNIO("localhost", port, this.eventLoops);
+  }
+
+  @Override
+  public QWebServerType createForAll(
+    final int port)
+    throws IOException
+  {
+    return new QWebServerNIO("[::]", port, this.eventLoops);
+  }
+
+  @Override
+  public QWebServerType createForSpecific(
+    final InetAddress address,
+    final int port)
+    throws IOException
+  {
+    return new QWebServerNIO(address.getHostName(), port, this.eventLoops);
+  }
+
+  @Override
+  public QWebServerType createForConfiguration(
+    final QWebConfiguration configuration)
+    throws IOException
+  {
+    final var serverConfiguration =
+      configuration.serverConfiguration();
+    final var state =
+      QWebServerState.create(configuration);
+
+    try {
+      return new QWebServerNIO(
+        serverConfiguration.hostName(),
+        serverConfiguration.port(),
+        this.eventLoops,
+        state
+      );
+    } catch (final IOException e) {
+      state.close();
+      throw e;
+    }
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+/**
+ * A token bucket used to limit the rate at which response bodies are
+ * written. Tokens are bytes; the bucket refills continuously at the
+ * configured rate, up to a small burst capacity. The bucket is not
+ * thread-safe, and is expected to be owned by a single response.
+ */
+
+final class QWebTokenBucket
+{
+  /**
+   * The bandwidth value that indicates that bandwidth is not limited.
+   */
+
+  static final long UNLIMITED = 0L;
+
+  private static final long NANOS_PER_SECOND = 1_000_000_000L;
+  private static final long MINIMUM_BURST = 1024L;
+  private static final long MAXIMUM_BURST = 1024L * 1024L;
+
+  private final long rate;
+  private final long capacity;
+  private long tokens;
+  private long updated;
+
+  /**
+   * Create a full token bucket.
+   *
+   * @param inRate The rate in bytes per second
+   * @param now    The current time in nanoseconds
+   */
+
+  QWebTokenBucket(
+    final long inRate,
+    final long now)
+  {
+    if (inRate <= 0L) {
+      throw new IllegalArgumentException(
+        "Rate must be positive: %d".formatted(Long.valueOf(inRate))
+      );
+    }
+
+    this.rate = inRate;
+
+    /*
+     * The bucket holds roughly 50ms worth of data, so that a paced response
+     * is written in reasonably sized pieces without noticeably exceeding
+     * the rate over short intervals.
+     */
+
+    this.capacity =
+      Math.min(
+        Math.max(inRate / 20L, Math.min(inRate, MINIMUM_BURST)),
+        MAXIMUM_BURST
+      );
+    this.tokens = this.capacity;
+    this.updated = now;
+  }
+
+  /**
+   * Check that a bandwidth value is valid.
+   *
+   * @param bandwidth The bandwidth in bytes per second, or {@link #UNLIMITED}
+   *
+   * @return The bandwidth
+   */
+
+  static long checkBandwidth(
+    final long bandwidth)
+  {
+    if (bandwidth < 0L) {
+      throw new IllegalArgumentException(
+        "Bandwidth must be non-negative: %d".formatted(Long.valueOf(bandwidth))
+      );
+    }
+    return bandwidth;
+  }
+
+  /**
+   * @return The maximum number of tokens the bucket can hold
+   */
+
+  long capacity()
+  {
+    return this.capacity;
+  }
+
+  /**
+   * @param now The current time in nanoseconds
+   *
+   * @return The number of tokens currently available
+   */
+
+  long available(
+    final long now)
+  {
+    this.refill(now);
+    return this.tokens;
+  }
+
+  /**
+   * Remove tokens from the bucket.
+   *
+   * @param count The number of tokens, which must not exceed the number
+   *              available
+   */
+
+  void consume(
+    final long count)
+  {
+    this.tokens -= Math.min(count, this.tokens);
+  }
+
+  /**
+   * @param now    The current time in nanoseconds
+   * @param wanted The number of tokens wanted
+   *
+   * @return The time in nanoseconds until the wanted number of tokens (or a
+   * full bucket, if fewer) is available, or {@code 0} if they are available
+   * now
+   */
+
+  long delay(
+    final long now,
+    final long wanted)
+  {
+    this.refill(now);
+
+    final var needed = Math.min(wanted, this.capacity) - this.tokens;
+    if (needed <= 0L) {
+      return 0L;
+    }
+    return ((needed * NANOS_PER_SECOND) + this.rate - 1L) / this.rate;
+  }
+
+  private void refill(
+    final long now)
+  {
+    final var elapsed = now - this.updated;
+    if (elapsed <= 0L) {
+      return;
+    }
+
+    long added;
+    try {
+      added = Math.multiplyExact(elapsed, this.rate) / NANOS_PER_SECOND;
+    } catch (final ArithmeticException e) {
+      added = this.capacity;
+    }
+
+    if (added >= this.capacity - this.tokens) {
+      this.tokens = this.capacity;
+      this.updated = now;
+      return;
+    }
+
+    /*
+     * Only the time accounted for by whole tokens is consumed, so that
+     * fractional tokens accumulate across refills.
+     */
+
+    this.tokens += added;
+    this.updated += (added * NANOS_PER_SECOND) / this.rate;
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * <p>A response with a fixed body that has been serialized, once, into the
+ * bytes that are written to the socket.</p>
+ *
+ * <p>The serialized form is split around the {@code Date} header, which is
+ * the only part of the response that changes between requests, and so
+ * writing the response involves no formatting and no copying of headers or
+ * bodies. Separate small header blocks are kept for persistent and
+ * non-persistent connections, and the body is held once and shared by
+ * both; the parts are written with a single gathering write. A response
+ * without a body, as sent for {@code HEAD} requests, is written by omitting
+ * the body.</p>
+ */
+
+final class QWebWireResponse
+{
+  /**
+   * Headers that the wire response generates itself. Responses that set
+   * any of these headers explicitly are not eligible for serialization.
+   */
+
+  private static final Set<String> GENERATED_HEADERS =
+    Set.of("connection", "content-length", "date", "transfer-encoding");
+
+  private final byte[] status;
+  private final byte[] keepAliveHeaders;
+  private final byte[] closeHeaders;
+  private final byte[] body;
+  private volatile Buffers buffers;
+
+  private QWebWireResponse(
+    final byte[] inStatus,
+    final byte[] inKeepAliveHeaders,
+    final byte[] inCloseHeaders,
+    final byte[] inBody)
+  {
+    this.status = inStatus;
+    this.keepAliveHeaders = inKeepAliveHeaders;
+    this.closeHeaders = inCloseHeaders;
+    this.body = inBody;
+  }
+
+  private record Buffers(
+    ByteBuffer status,
+    ByteBuffer keepAliveHeaders,
+    ByteBuffer closeHeaders,
+    ByteBuffer body)
+  {
+
+  }
+
+  /**
+   * Determine if a response with the given headers can be serialized.
+   *
+   * @param headers The response headers, with lowercase names
+   *
+   * @return {@code true} if the response can be serialized
+   */
+
+  static boolean isEligible(
+    final Map<String, String> headers)
+  {
+    for (final var name : GENERATED_HEADERS) {
+      if (headers.containsKey(name)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Serialize a response.
+   *
+   * @param statusCode  The status code
+   * @param contentType The content type, if any
+   * @param headers     The headers
+   * @param body        The body, which is retained and must not be modified
+   *
+   * @return The serialized response
+   */
+
+  static QWebWireResponse encode(
+    final int statusCode,
+    final String contentType,
+    final Map<String, String> headers,
+    final byte[] body)
+  {
+    final var statusText = new StringBuilder(64);
+    statusText.append("HTTP/1.1 ")
+      .append(statusCode)
+      .append(' ')
+      .append(QWebHTTPStatus.reasonPhrase(statusCode))
+      .append("\r\n");
+
+    if (contentType != null) {
+      statusText.append("Content-Type: ")
+        .append(contentType)
+        .append("\r\n");
+    }
+
+    final var headerText = new StringBuilder(256);
+    for (final var entry : headers.entrySet()) {
+      headerText.append(entry.getKey())
+        .append(": ")
+        .append(entry.getValue())
+        .append("\r\n");
+    }
+
+    final var lengthText =
+      "Content-Length: %d\r\n\r\n".formatted(Integer.valueOf(body.length));
+
+    final var keepAliveText =
+      headerText + "Connection: keep-alive\r\n" + lengthText;
+    final var closeText =
+      headerText + "Connection: close\r\n" + lengthText;
+
+    return new QWebWireResponse(
+      statusText.toString().getBytes(UTF_8),
+      keepAliveText.getBytes(UTF_8),
+      closeText.getBytes(UTF_8),
+      body
+    );
+  }
+
+  /**
+   * Write the response to a stream.
+   *
+   * @param output    The output stream
+   * @param keepAlive {@code true} if the connection will be kept alive
+   * @param head      {@code true} if the body should be omitted
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void writeTo(
+    final OutputStream output,
+    final boolean keepAlive,
+    final boolean head)
+    throws IOException
+  {
+    output.write(this.status);
+    output.write(QWebHTTPDate.lineBytes());
+    output.write(keepAlive ? this.keepAliveHeaders : this.closeHeaders);
+    if (!head) {
+      output.write(this.body);
+    }
+  }
+
+  /**
+   * Obtain buffers suitable for a gathering write of the response. The
+   * returned buffers are fresh read-only views of shared direct memory.
+   *
+   * @param keepAlive {@code true} if the connection will be kept alive
+   * @param head      {@code true} if the body should be omitted
+   *
+   * @return The buffers
+   */
+
+  ByteBuffer[] buffers(
+    final boolean keepAlive,
+    final boolean head)
+  {
+    var current = this.buffers;
+    if (current == null) {
+      current = new Buffers(
+        direct(this.status),
+        direct(this.keepAliveHeaders),
+        direct(this.closeHeaders),
+        direct(this.body)
+      );
+      this.buffers = current;
+    }
+
+    final var headers =
+      (keepAlive ? current.keepAliveHeaders : current.closeHeaders)
+        .duplicate();
+
+    if (head) {
+      return new ByteBuffer[]{
+        current.status.duplicate(),
+        QWebHTTPDate.lineBuffer(),
+        headers,
+      };
+    }
+
+    return new ByteBuffer[]{
+      current.status.duplicate(),
+      QWebHTTPDate.lineBuffer(),
+      headers,
+      current.body.duplicate(),
+    };
+  }
+
+  private static ByteBuffer direct(
+    final byte[] data)
+  {
+    final var buffer = ByteBuffer.allocateDirect(data.length);
+    buffer.put(data);
+    buffer.flip();
+    return buffer.asReadOnlyBuffer();
+  }
+}
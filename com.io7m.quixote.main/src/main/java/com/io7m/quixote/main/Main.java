@@ -20,7 +20,14 @@ package com.io7m.quixote.main;
 import com.io7m.anethum.slf4j.ParseStatusLogging;
 import com.io7m.blackthorne.core.BTPreserveLexical;
 import com.io7m.quixote.core.QWebConfiguration;
+import com.io7m.quixote.core.QWebRequestDispatchConfiguration;
+import com.io7m.quixote.core.QWebRequestLogRotatingWriter;
+import com.io7m.quixote.core.QWebRequestLogRotationConfiguration;
+import com.io7m.quixote.core.QWebRequestLogWriter;
+import com.io7m.quixote.core.QWebRequestLogWriterConfiguration;
+import com.io7m.quixote.core.QWebRequestLogWriterType;
 import com.io7m.quixote.core.QWebRequestLogging;
+import com.io7m.quixote.core.QWebRequestOverflowPolicy;
 import com.io7m.quixote.core.QWebServers;
 import com.io7m.quixote.xml.QWebConfigurationXML;
 import org.slf4j.Logger;
@@ -29,8 +36,10 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.OpenOption;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.Objects;
 
 /**
@@ -42,6 +51,14 @@ public final class Main
   private static final Logger LOG =
     LoggerFactory.getLogger(Main.class);
 
+  private static final QWebRequestLogWriterConfiguration LOG_CONFIGURATION =
+    new QWebRequestLogWriterConfiguration(
+      QWebRequestLogWriterConfiguration.DEFAULT_SEGMENT_RECORDS,
+      QWebRequestLogWriterConfiguration.DEFAULT_SEGMENT_BYTES,
+      false,
+      QWebRequestLogWriterConfiguration.DEFAULT_COMPRESSION_LEVEL
+    );
+
   private static final OpenOption[] OPEN_OPTIONS = {
     StandardOpenOption.CREATE,
     StandardOpenOption.WRITE,
@@ -53,6 +70,54 @@ public final class Main
 
   }
 
+  private static void convert(
+    final Path inputFile,
+    final Path outputFile)
+    throws IOException
+  {
+    try (var input = Files.newInputStream(inputFile);
+         var output = Files.newOutputStream(outputFile)) {
+      final var count =
+        QWebRequestLogging.convert(
+          input,
+          output,
+          LOG_CONFIGURATION
+        );
+      LOG.info("Converted {} requests.", Long.valueOf(count));
+    }
+  }
+
+  /*
+   * With two arguments, requests are logged to a single file. With four
+   * arguments, requests are logged to a series of files in a directory,
+   * rotated when they reach a maximum size in bytes or a maximum age
+   * given as an ISO-8601 duration such as "PT1H".
+   */
+
+  private static QWebRequestLogWriterType openLog(
+    final Path output,
+    final String[] args)
+    throws IOException
+  {
+    if (args.length == 2) {
+      return QWebRequestLogWriter.open(output, LOG_CONFIGURATION, OPEN_OPTIONS);
+    }
+
+    final var rotation =
+      new QWebRequestLogRotationConfiguration(
+        Long.parseLong(args[2]),
+        Duration.parse(args[3]),
+        LOG_CONFIGURATION
+      );
+
+    LOG.info(
+      "Writing request logs to {} (manifest {})",
+      output,
+      QWebRequestLogRotatingWriter.manifestFor(output, "output")
+    );
+    return QWebRequestLogRotatingWriter.open(output, "output", rotation);
+  }
+
   /**
    * Server main entry point.
    *
@@ -72,15 +137,24 @@ public final class Main
       }
     }
 
-    if (args.length != 2) {
+    if (args.length == 3) {
+      if (Objects.equals(args[0], "convert")) {
+        convert(Paths.get(args[1]), Paths.get(args[2]));
+        return;
+      }
+    }
+
+    if (args.length != 2 && args.length != 4) {
       LOG.info("Usage: input.xml output.bin");
+      LOG.info("Usage: input.xml output-directory maximum-size maximum-age");
+      LOG.info("Usage: convert input.bin output.bin");
       throw new IllegalArgumentException(
         "Missing required command-line arguments.");
     }
 
     final var inputFile =
       Paths.get(args[0]).toAbsolutePath();
-    final var outputFile =
+    final var output =
       Paths.get(args[1]).toAbsolutePath();
 
     final QWebConfiguration configuration;
@@ -95,20 +169,24 @@ public final class Main
           });
     }
 
-    try (var outputLog =
-           Files.newOutputStream(outputFile, OPEN_OPTIONS)) {
+    try (var outputLog = openLog(output, args)) {
       try (var server =
              QWebServers.createServerForConfiguration(configuration)) {
 
         LOG.info("Quixote running at {}", server.uri());
 
-        server.setRequestCallback(r -> {
-          try {
-            QWebRequestLogging.append(outputLog, r);
-          } catch (final IOException e) {
-            LOG.error("Failed to write output log: ", e);
-          }
-        });
+        server.setRequestBatchCallback(
+          new QWebRequestDispatchConfiguration(QWebRequestOverflowPolicy.BLOCK),
+          batch -> {
+            try {
+              for (final var r : batch) {
+                outputLog.append(r);
+              }
+              outputLog.flush();
+            } catch (final IOException e) {
+              LOG.error("Failed to write output log: ", e);
+            }
+          });
 
         while (true) {
           try {
@@ -0,0 +1,706 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+
+package com.io7m.quixote.tests;
+
+import com.io7m.quixote.core.QWebConfiguration;
+import com.io7m.quixote.core.QWebPathMatchKind;
+import com.io7m.quixote.core.QWebResponseRecorded;
+import com.io7m.quixote.core.QWebServerConfiguration;
+import com.io7m.quixote.core.QWebServerType;
+import com.io7m.quixote.core.QWebServersNIO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.SplittableRandom;
+import java.util.regex.Pattern;
+
+import static com.io7m.quixote.core.QWebMatchingMode.AUTOMATON;
+import static java.net.http.HttpResponse.BodyHandlers.ofString;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Randomized comparisons of the responses selected in the automaton
+ * matching mode against the responses selected by {@link Pattern}.
+ */
+
+public final class QWebAutomatonMatchingTest
+{
+  private static final int PORT = 42002;
+  private static final int ROUNDS = 12;
+  private static final int PATTERNS = 16;
+  private static final int SAMPLES = 3;
+  private static final int PATHS = 16;
+
+  /*
+   * The characters from which paths are built. The set includes the line
+   * terminators that "." does not match, and letters that only fold to
+   * one another with Unicode case folding.
+   */
+
+  private static final String ALPHABET =
+    "abcABC0/.-_ \n\r\u0085\u2028éÉ";
+  private static final String EMOJI =
+    "😀";
+
+  private static final List<String> CLASSES = List.of(
+    "[abc]",
+    "[^a]",
+    "[a-c]",
+    "[A-C/]",
+    "[^/]",
+    "[.-]",
+    "[\\-x]",
+    "[a-]",
+    "[\\d_]",
+    "[^\\s]",
+    "[é]",
+    "\\d",
+    "\\D",
+    "\\w",
+    "\\W",
+    "\\s",
+    "\\S"
+  );
+
+  private static final List<Unsupported> UNSUPPORTED = List.of(
+    new Unsupported("\\b", ""),
+    new Unsupported("(?=a)", ""),
+    new Unsupported("a*+", "aa"),
+    new Unsupported("(a)\\1", "aa"),
+    new Unsupported("\\p{L}", "a"),
+    new Unsupported("(?i)a", "A"),
+    new Unsupported("a$", "a"),
+    new Unsupported("[a&&[ab]]", "a"),
+    new Unsupported(EMOJI, EMOJI)
+  );
+
+  private static final List<Pattern> METHODS = List.of(
+    Pattern.compile("GET"),
+    Pattern.compile("get", Pattern.CASE_INSENSITIVE),
+    Pattern.compile("G.T"),
+    Pattern.compile("POST|GET"),
+    Pattern.compile("PUT"),
+    Pattern.compile("[A-Z]+")
+  );
+
+  private HttpClient http;
+  private QWebServerType server;
+
+  @BeforeEach
+  public void setup()
+  {
+    this.http = HttpClient.newHttpClient();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws Exception
+  {
+    if (this.server != null) {
+      this.server.close();
+    }
+  }
+
+  /**
+   * Randomly generated patterns select the same responses as they do when
+   * evaluated by {@link Pattern}. The patterns cover character classes,
+   * negation, {@code .}, ASCII case folding, bounded repetition up to and
+   * beyond the supported maximum, alternation, reluctant quantifiers,
+   * {@code $}, quoting, and constructs that the automaton cannot compile
+   * and so must be matched by other means.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRandomPatterns()
+    throws Exception
+  {
+    for (long seed = 0L; seed < ROUNDS; ++seed) {
+      final var random = new SplittableRandom(seed);
+
+      final var methods = new ArrayList<Pattern>(PATTERNS);
+      final var patterns = new ArrayList<Pattern>(PATTERNS);
+      final var paths = new ArrayList<String>();
+
+      for (int index = 0; index < PATTERNS; ++index) {
+        final var generator = new Generator(random, flags(random));
+        final var nodes = new ArrayList<Node>();
+        final var count = 1 + random.nextInt(3);
+        for (int n = 0; n < count; ++n) {
+          nodes.add(generator.node(2));
+        }
+
+        final var text = new StringBuilder(32);
+        if (random.nextInt(4) == 0) {
+          text.append('^');
+        }
+        text.append('/');
+        for (final var node : nodes) {
+          text.append(node.regex());
+        }
+        if (random.nextInt(4) == 0) {
+          text.append('$');
+        }
+
+        methods.add(METHODS.get(random.nextInt(METHODS.size())));
+        patterns.add(Pattern.compile(text.toString(), generator.flags));
+
+        for (int sample = 0; sample < SAMPLES; ++sample) {
+          final var path = new StringBuilder(32);
+          path.append('/');
+          for (final var node : nodes) {
+            node.sample(random, path);
+          }
+          paths.add(path.toString());
+        }
+      }
+
+      for (int index = 0; index < PATHS; ++index) {
+        paths.add(randomPath(random));
+      }
+
+      this.start(methods, patterns);
+      for (final var path : paths) {
+        this.check(seed, methods, patterns, path);
+      }
+      this.server.close();
+      this.server = null;
+    }
+  }
+
+  /**
+   * A pattern whose DFA has far more states than the automaton caches
+   * continues to select the same responses as {@link Pattern} after the
+   * cache has been discarded.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testStateCacheReset()
+    throws Exception
+  {
+    final var methods =
+      List.of(METHODS.get(0));
+    final var patterns =
+      List.of(Pattern.compile("/(?:a|b)*a(?:a|b){15}"));
+
+    this.start(methods, patterns);
+
+    final var random = new SplittableRandom(0L);
+    int matched = 0;
+    for (int index = 0; index < 256; ++index) {
+      final var path = new StringBuilder(201);
+      path.append('/');
+      for (int c = 0; c < 200; ++c) {
+        path.append(random.nextBoolean() ? 'a' : 'b');
+      }
+      if (this.check(0L, methods, patterns, path.toString())) {
+        ++matched;
+      }
+    }
+
+    assertTrue(matched > 0);
+    assertTrue(matched < 256);
+  }
+
+  private void start(
+    final List<Pattern> methods,
+    final List<Pattern> patterns)
+    throws Exception
+  {
+    final var responses = new ArrayList<QWebResponseRecorded>(patterns.size());
+    for (int index = 0; index < patterns.size(); ++index) {
+      responses.add(
+        new QWebResponseRecorded(
+          methods.get(index),
+          patterns.get(index),
+          QWebPathMatchKind.REGEX,
+          200,
+          Map.of(),
+          Integer.toString(index).getBytes(UTF_8),
+          Optional.empty(),
+          Optional.empty(),
+          OptionalLong.empty(),
+          OptionalLong.empty(),
+          Optional.empty()
+        )
+      );
+    }
+
+    this.server = new QWebServersNIO(1).createForConfiguration(
+      new QWebConfiguration(
+        new QWebServerConfiguration("localhost", PORT, false)
+          .withMatching(AUTOMATON),
+        responses
+      )
+    );
+  }
+
+  private boolean check(
+    final long seed,
+    final List<Pattern> methods,
+    final List<Pattern> patterns,
+    final String path)
+    throws Exception
+  {
+    var expected = "503";
+    for (int index = 0; index < patterns.size(); ++index) {
+      if (methods.get(index).matcher("GET").matches()
+          && patterns.get(index).matcher(path).matches()) {
+        expected = Integer.toString(index);
+        break;
+      }
+    }
+
+    final var response =
+      this.http.send(
+        HttpRequest.newBuilder(this.server.uri().resolve(encode(path)))
+          .build(),
+        ofString()
+      );
+
+    final var received =
+      response.statusCode() == 200
+        ? response.body()
+        : Integer.toString(response.statusCode());
+
+    assertEquals(
+      expected,
+      received,
+      String.format(
+        "Seed %d, path '%s', patterns %s, methods %s",
+        Long.valueOf(seed),
+        path,
+        patterns,
+        methods
+      )
+    );
+    return response.statusCode() == 200;
+  }
+
+  private static int flags(
+    final SplittableRandom random)
+  {
+    return switch (random.nextInt(10)) {
+      case 0, 1, 2 -> Pattern.CASE_INSENSITIVE;
+      case 3 -> Pattern.DOTALL;
+      default -> 0;
+    };
+  }
+
+  private static String randomPath(
+    final SplittableRandom random)
+  {
+    final var path = new StringBuilder(16);
+    path.append('/');
+    final var length = random.nextInt(7);
+    for (int index = 0; index < length; ++index) {
+      if (random.nextInt(16) == 0) {
+        path.append(EMOJI);
+      } else {
+        path.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+      }
+    }
+    return path.toString();
+  }
+
+  /**
+   * Percent-encode everything other than ASCII letters and digits, so that
+   * the server sees exactly the given path.
+   */
+
+  private static String encode(
+    final String path)
+  {
+    final var text = new StringBuilder(path.length() * 3);
+    text.append('/');
+    final var bytes = path.substring(1).getBytes(UTF_8);
+    for (final var b : bytes) {
+      final var c = (char) (b & 0xff);
+      if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+          || (c >= '0' && c <= '9')) {
+        text.append(c);
+      } else {
+        text.append(String.format("%%%02X", Integer.valueOf(c)));
+      }
+    }
+    return text.toString();
+  }
+
+  /**
+   * A generated regular expression, along with a means to produce strings
+   * that it is likely to match.
+   */
+
+  private sealed interface Node
+  {
+    String regex();
+
+    void sample(
+      SplittableRandom random,
+      StringBuilder output);
+  }
+
+  private record Literal(
+    char c,
+    boolean ignoreCase)
+    implements Node
+  {
+    @Override
+    public String regex()
+    {
+      if (Character.isLetterOrDigit(this.c) || this.c == '/') {
+        return String.valueOf(this.c);
+      }
+      return "\\" + this.c;
+    }
+
+    @Override
+    public void sample(
+      final SplittableRandom random,
+      final StringBuilder output)
+    {
+      if (this.ignoreCase && random.nextBoolean()) {
+        output.append(Character.isUpperCase(this.c)
+                        ? Character.toLowerCase(this.c)
+                        : Character.toUpperCase(this.c));
+      } else {
+        output.append(this.c);
+      }
+    }
+  }
+
+  private record Quoted(String text)
+    implements Node
+  {
+    @Override
+    public String regex()
+    {
+      return "\\Q" + this.text + "\\E";
+    }
+
+    @Override
+    public void sample(
+      final SplittableRandom random,
+      final StringBuilder output)
+    {
+      output.append(this.text);
+    }
+  }
+
+  /**
+   * A single character expression, such as a class or {@code .}, that
+   * matches each of the given characters.
+   */
+
+  private record Chars(
+    String regex,
+    String matching)
+    implements Node
+  {
+    @Override
+    public void sample(
+      final SplittableRandom random,
+      final StringBuilder output)
+    {
+      if (this.matching.isEmpty()) {
+        output.append('a');
+      } else {
+        final var index = random.nextInt(this.matching.length());
+        output.append(this.matching.charAt(index));
+      }
+    }
+  }
+
+  private record Unsupported(
+    String regex,
+    String example)
+    implements Node
+  {
+    @Override
+    public void sample(
+      final SplittableRandom random,
+      final StringBuilder output)
+    {
+      output.append(this.example);
+    }
+  }
+
+  private record Sequence(List<Node> nodes)
+    implements Node
+  {
+    @Override
+    public String regex()
+    {
+      final var text = new StringBuilder(32);
+      text.append("(?:");
+      for (final var node : this.nodes) {
+        text.append(node.regex());
+      }
+      text.append(')');
+      return text.toString();
+    }
+
+    @Override
+    public void sample(
+      final SplittableRandom random,
+      final StringBuilder output)
+    {
+      for (final var node : this.nodes) {
+        node.sample(random, output);
+      }
+    }
+  }
+
+  private record Alternation(
+    List<Node> nodes,
+    boolean capturing)
+    implements Node
+  {
+    @Override
+    public String regex()
+    {
+      final var text = new StringBuilder(32);
+      text.append(this.capturing ? "(" : "(?:");
+      for (int index = 0; index < this.nodes.size(); ++index) {
+        if (index > 0) {
+          text.append('|');
+        }
+        text.append(this.nodes.get(index).regex());
+      }
+      text.append(')');
+      return text.toString();
+    }
+
+    @Override
+    public void sample(
+      final SplittableRandom random,
+      final StringBuilder output)
+    {
+      this.nodes.get(random.nextInt(this.nodes.size())).sample(random, output);
+    }
+  }
+
+  /**
+   * A repetition. A quantifier that follows quoted text applies only to the
+   * last quoted character.
+   */
+
+  private record Repeat(
+    Node node,
+    String quantifier,
+    int minimum,
+    int maximum)
+    implements Node
+  {
+    @Override
+    public String regex()
+    {
+      return switch (this.node) {
+        case final Repeat r -> "(?:" + r.regex() + ")" + this.quantifier;
+        case final Unsupported u -> "(?:" + u.regex() + ")" + this.quantifier;
+        default -> this.node.regex() + this.quantifier;
+      };
+    }
+
+    @Override
+    public void sample(
+      final SplittableRandom random,
+      final StringBuilder output)
+    {
+      final var upper =
+        this.maximum == -1
+          ? this.minimum + 2
+          : Math.min(this.maximum, this.minimum + 2);
+      final var count =
+        this.minimum + random.nextInt(upper - this.minimum + 1);
+
+      if (this.node instanceof final Quoted quoted) {
+        final var text = quoted.text;
+        output.append(text, 0, text.length() - 1);
+        final var last = text.charAt(text.length() - 1);
+        output.append(String.valueOf(last).repeat(count));
+        return;
+      }
+      for (int index = 0; index < count; ++index) {
+        this.node.sample(random, output);
+      }
+    }
+  }
+
+  private static final class Generator
+  {
+    private final SplittableRandom random;
+    private final int flags;
+
+    Generator(
+      final SplittableRandom inRandom,
+      final int inFlags)
+    {
+      this.random = inRandom;
+      this.flags = inFlags;
+    }
+
+    Node node(
+      final int depth)
+    {
+      final var choice =
+        this.random.nextInt(depth > 0 ? 12 : 6);
+
+      return switch (choice) {
+        case 0, 1 -> this.literal();
+        case 2 -> this.chars(this.characterClass());
+        case 3 -> this.chars(".");
+        case 4 -> this.quoted();
+        case 5 -> {
+          if (this.random.nextInt(4) == 0) {
+            yield UNSUPPORTED.get(this.random.nextInt(UNSUPPORTED.size()));
+          }
+          yield this.literal();
+        }
+        case 6, 7, 8 -> this.repeat(depth);
+        case 9, 10 -> {
+          final var count = 2 + this.random.nextInt(2);
+          final var nodes = new ArrayList<Node>(count);
+          for (int index = 0; index < count; ++index) {
+            nodes.add(this.node(depth - 1));
+          }
+          yield new Alternation(nodes, this.random.nextBoolean());
+        }
+        default -> {
+          final var count = 2 + this.random.nextInt(2);
+          final var nodes = new ArrayList<Node>(count);
+          for (int index = 0; index < count; ++index) {
+            nodes.add(this.node(depth - 1));
+          }
+          yield new Sequence(nodes);
+        }
+      };
+    }
+
+    private Node literal()
+    {
+      final var text = "abcABC0/-_ .*$()";
+      return new Literal(
+        text.charAt(this.random.nextInt(text.length())),
+        (this.flags & Pattern.CASE_INSENSITIVE) != 0
+      );
+    }
+
+    private Node quoted()
+    {
+      final var text = "abcAB.*$ ";
+      final var length = 1 + this.random.nextInt(3);
+      final var quoted = new StringBuilder(length);
+      for (int index = 0; index < length; ++index) {
+        quoted.append(text.charAt(this.random.nextInt(text.length())));
+      }
+      return new Quoted(quoted.toString());
+    }
+
+    private Node chars(
+      final String regex)
+    {
+      final var pattern = Pattern.compile(regex, this.flags);
+      final var matching = new StringBuilder(ALPHABET.length());
+      for (int index = 0; index < ALPHABET.length(); ++index) {
+        final var c = ALPHABET.charAt(index);
+        if (pattern.matcher(String.valueOf(c)).matches()) {
+          matching.append(c);
+        }
+      }
+      return new Chars(regex, matching.toString());
+    }
+
+    /**
+     * Generate a repetition. Repetitions are never nested, and large
+     * repetition counts are only applied to single characters, so that
+     * {@link Pattern} does not backtrack catastrophically.
+     */
+
+    private Node repeat(
+      final int depth)
+    {
+      final var reluctant = this.random.nextInt(3) == 0 ? "?" : "";
+
+      if (this.random.nextInt(8) == 0) {
+        final Node node = switch (this.random.nextInt(3)) {
+          case 0 -> this.literal();
+          case 1 -> this.chars(this.characterClass());
+          default -> this.chars(".");
+        };
+
+        return switch (this.random.nextInt(5)) {
+          case 0 -> new Repeat(node, "{256}" + reluctant, 256, 256);
+          case 1 -> new Repeat(node, "{0,256}" + reluctant, 0, 256);
+          case 2 -> new Repeat(node, "{250,256}" + reluctant, 250, 256);
+          case 3 -> new Repeat(node, "{257}" + reluctant, 257, 257);
+          default -> new Repeat(node, "{1,257}" + reluctant, 1, 257);
+        };
+      }
+
+      final Node node;
+      if (depth == 2 && this.random.nextBoolean()) {
+        final var count = 2 + this.random.nextInt(2);
+        final var nodes = new ArrayList<Node>(count);
+        for (int index = 0; index < count; ++index) {
+          nodes.add(this.node(0));
+        }
+        node = this.random.nextBoolean()
+          ? new Alternation(nodes, this.random.nextBoolean())
+          : new Sequence(nodes);
+      } else {
+        node = this.node(0);
+      }
+
+      final var n = this.random.nextInt(3);
+      final var m = n + this.random.nextInt(3);
+      final var low = Integer.valueOf(n);
+      final var high = Integer.valueOf(m);
+      return switch (this.random.nextInt(6)) {
+        case 0 -> new Repeat(node, "*" + reluctant, 0, -1);
+        case 1 -> new Repeat(node, "+" + reluctant, 1, -1);
+        case 2 -> new Repeat(node, "?" + reluctant, 0, 1);
+        case 3 -> new Repeat(node, "{%d}%s".formatted(low, reluctant), n, n);
+        case 4 -> new Repeat(node, "{%d,}%s".formatted(low, reluctant), n, -1);
+        default -> {
+          final var q = "{%d,%d}%s".formatted(low, high, reluctant);
+          yield new Repeat(node, q, n, m);
+        }
+      };
+    }
+
+    private String characterClass()
+    {
+      return CLASSES.get(this.random.nextInt(CLASSES.size()));
+    }
+  }
+}
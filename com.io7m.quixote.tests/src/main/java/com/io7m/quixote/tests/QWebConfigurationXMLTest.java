@@ -19,6 +19,10 @@ package com.io7m.quixote.tests;
 
 import com.io7m.anethum.api.ParsingException;
 import com.io7m.blackthorne.core.BTPreserveLexical;
+import com.io7m.quixote.core.QWebDelay;
+import com.io7m.quixote.core.QWebMatchingMode;
+import com.io7m.quixote.core.QWebPathMatchKind;
+import com.io7m.quixote.core.QWebServerThreadKind;
 import com.io7m.quixote.xml.QWebConfigurationXML;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.DynamicTest;
@@ -28,7 +32,13 @@ import org.junit.jupiter.api.TestFactory;
 import java.io.InputStream;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -57,10 +67,22 @@ public final class QWebConfigurationXMLTest
 
     assertEquals(20001, c.serverConfiguration().port());
     assertTrue(c.serverConfiguration().enableGZIP());
+    assertEquals(6, c.serverConfiguration().gzipLevel());
+    assertEquals(0L, c.serverConfiguration().gzipMinimumSize());
+    assertEquals(64, c.serverConfiguration().fileCacheSize());
+    assertEquals(
+      QWebServerThreadKind.PLATFORM_THREADS,
+      c.serverConfiguration().threads()
+    );
+    assertEquals(
+      QWebMatchingMode.INDEXED,
+      c.serverConfiguration().matching()
+    );
 
     {
       final var r = c.responses().get(0);
       assertEquals(200, r.statusCode());
+      assertEquals(OptionalLong.of(1L), r.times());
       assertEquals("GET", r.method().pattern());
       assertEquals("/", r.path().pattern());
       assertEquals(Map.ofEntries(
@@ -106,6 +128,7 @@ public final class QWebConfigurationXMLTest
     {
       final var r = c.responses().get(0);
       assertEquals(200, r.statusCode());
+      assertEquals(OptionalLong.of(1L), r.times());
       assertEquals("GET", r.method().pattern());
       assertEquals("/", r.path().pattern());
       assertEquals(Map.ofEntries(
@@ -126,6 +149,245 @@ public final class QWebConfigurationXMLTest
     assertEquals(1, c.responses().size());
   }
 
+  /**
+   * Configuration parsing.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testConfig2()
+    throws Exception
+  {
+    final var c =
+      QWebConfigurationXML.parse(
+        URI.create("urn:stdin"),
+        resource("conf-2.xml"),
+        BTPreserveLexical.DISCARD_LEXICAL_INFORMATION,
+        status -> {
+        }
+      );
+
+    assertEquals(20001, c.serverConfiguration().port());
+    assertTrue(c.serverConfiguration().enableGZIP());
+    assertEquals(
+      QWebServerThreadKind.VIRTUAL_THREADS,
+      c.serverConfiguration().threads()
+    );
+    assertEquals(1, c.responses().size());
+  }
+
+  /**
+   * Configuration parsing.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testConfig3()
+    throws Exception
+  {
+    final var c =
+      QWebConfigurationXML.parse(
+        URI.create("urn:stdin"),
+        resource("conf-3.xml"),
+        BTPreserveLexical.DISCARD_LEXICAL_INFORMATION,
+        status -> {
+        }
+      );
+
+    assertEquals(
+      QWebMatchingMode.AUTOMATON,
+      c.serverConfiguration().matching()
+    );
+
+    {
+      final var r = c.responses().get(0);
+      assertEquals(200, r.statusCode());
+      assertEquals(OptionalLong.of(1L), r.times());
+      assertEquals(QWebPathMatchKind.EXACT, r.pathKind());
+      assertEquals("/a/b", r.path().pattern());
+    }
+
+    {
+      final var r = c.responses().get(1);
+      assertEquals(201, r.statusCode());
+      assertEquals(OptionalLong.of(250L), r.times());
+      assertEquals(QWebPathMatchKind.PREFIX, r.pathKind());
+      assertEquals("/a/", r.path().pattern());
+    }
+
+    {
+      final var r = c.responses().get(2);
+      assertEquals(202, r.statusCode());
+      assertEquals(OptionalLong.empty(), r.times());
+      assertEquals(QWebPathMatchKind.GLOB, r.pathKind());
+      assertEquals("/a/*/c/**", r.path().pattern());
+    }
+
+    assertEquals(3, c.responses().size());
+  }
+
+  /**
+   * Configuration parsing.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testConfig4()
+    throws Exception
+  {
+    final var c =
+      QWebConfigurationXML.parse(
+        URI.create("urn:stdin"),
+        resource("conf-4.xml"),
+        BTPreserveLexical.DISCARD_LEXICAL_INFORMATION,
+        status -> {
+        }
+      );
+
+    assertTrue(c.serverConfiguration().enableGZIP());
+    assertEquals(9, c.serverConfiguration().gzipLevel());
+    assertEquals(1024L, c.serverConfiguration().gzipMinimumSize());
+  }
+
+  /**
+   * Configuration parsing.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testConfig5()
+    throws Exception
+  {
+    final var c =
+      QWebConfigurationXML.parse(
+        URI.create("urn:stdin"),
+        resource("conf-5.xml"),
+        BTPreserveLexical.DISCARD_LEXICAL_INFORMATION,
+        status -> {
+        }
+      );
+
+    final var r = c.responses().get(0);
+    assertEquals(
+      Optional.of(Path.of("fixtures/large.bin")),
+      r.contentFile()
+    );
+    assertEquals(0, r.content().length);
+  }
+
+  /**
+   * Configuration parsing.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testConfig6()
+    throws Exception
+  {
+    final var c =
+      QWebConfigurationXML.parse(
+        URI.create("urn:stdin"),
+        resource("conf-6.xml"),
+        BTPreserveLexical.DISCARD_LEXICAL_INFORMATION,
+        status -> {
+        }
+      );
+
+    assertEquals(256, c.serverConfiguration().fileCacheSize());
+
+    final var r = c.responses().get(0);
+    assertEquals(QWebPathMatchKind.PREFIX, r.pathKind());
+    assertEquals("/maven2/", r.path().pattern());
+    assertEquals(
+      Optional.of(Path.of("fixtures/maven2")),
+      r.contentDirectory()
+    );
+    assertEquals(Optional.empty(), r.contentFile());
+    assertEquals(OptionalLong.empty(), r.times());
+  }
+
+  /**
+   * Configuration parsing.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testConfig7()
+    throws Exception
+  {
+    final var c =
+      QWebConfigurationXML.parse(
+        URI.create("urn:stdin"),
+        resource("conf-7.xml"),
+        BTPreserveLexical.DISCARD_LEXICAL_INFORMATION,
+        status -> {
+        }
+      );
+
+    assertEquals(65536L, c.serverConfiguration().bandwidth());
+    assertEquals(1024, c.serverConfiguration().journalCapacity());
+
+    final var capture = c.serverConfiguration().capture();
+    assertEquals(4, capture.sampleInterval());
+    assertEquals("/api/.*", capture.pathPattern().orElseThrow().pattern());
+    assertEquals(Optional.of(Set.of("x-tenant", "accept")), capture.headers());
+    assertEquals(OptionalLong.of(1024L), c.responses().get(0).bandwidth());
+    assertEquals(OptionalLong.of(0L), c.responses().get(1).bandwidth());
+    assertEquals(OptionalLong.empty(), c.responses().get(2).bandwidth());
+  }
+
+  /**
+   * Configuration parsing.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testConfig8()
+    throws Exception
+  {
+    final var c =
+      QWebConfigurationXML.parse(
+        URI.create("urn:stdin"),
+        resource("conf-8.xml"),
+        BTPreserveLexical.DISCARD_LEXICAL_INFORMATION,
+        status -> {
+        }
+      );
+
+    assertEquals(
+      Optional.of(new QWebDelay.Fixed(Duration.ofMillis(250L))),
+      c.responses().get(0).delay()
+    );
+    assertEquals(
+      Optional.of(
+        new QWebDelay.Uniform(Duration.ofNanos(500_000L), Duration.ofMillis(20L))
+      ),
+      c.responses().get(1).delay()
+    );
+    assertEquals(
+      Optional.of(
+        new QWebDelay.Percentiles(
+          List.of(
+            new QWebDelay.Percentiles.Percentile(50.0, Duration.ofMillis(5L)),
+            new QWebDelay.Percentiles.Percentile(99.0, Duration.ofMillis(400L))
+          )
+        )
+      ),
+      c.responses().get(2).delay()
+    );
+    assertEquals(
+      "text/plain",
+      c.responses().get(2).headers().get("Content-Type")
+    );
+  }
+
   /**
    * Configuration parsing.
    */
@@ -135,7 +397,9 @@ public final class QWebConfigurationXMLTest
   {
     return Stream.of(
       "conf-error-0.xml",
-      "conf-error-1.xml"
+      "conf-error-1.xml",
+      "conf-error-2.xml",
+      "conf-error-3.xml"
     ).map(QWebConfigurationXMLTest::testParseError);
   }
 
@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.tests;
+
+import com.io7m.quixote.core.QWebDelay;
+import com.io7m.quixote.core.QWebDelay.Percentiles.Percentile;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class QWebDelayTest
+{
+  @Test
+  public void testFixed()
+  {
+    final var delay = new QWebDelay.Fixed(Duration.ofMillis(250L));
+    assertEquals(Duration.ofMillis(250L), delay.sample(new SplittableRandom(0L)));
+  }
+
+  @Test
+  public void testUniform()
+  {
+    final var delay =
+      new QWebDelay.Uniform(Duration.ofMillis(10L), Duration.ofMillis(20L));
+    final var random = new SplittableRandom(0L);
+
+    for (int index = 0; index < 10_000; ++index) {
+      final var sample = delay.sample(random);
+      assertTrue(sample.compareTo(Duration.ofMillis(10L)) >= 0);
+      assertTrue(sample.compareTo(Duration.ofMillis(20L)) <= 0);
+    }
+  }
+
+  @Test
+  public void testPercentiles()
+  {
+    final var delay =
+      new QWebDelay.Percentiles(
+        List.of(
+          new Percentile(50.0, Duration.ofMillis(5L)),
+          new Percentile(99.0, Duration.ofMillis(400L))
+        )
+      );
+
+    final var random = new SplittableRandom(0L);
+    final var samples = new long[100_000];
+    for (int index = 0; index < samples.length; ++index) {
+      samples[index] = delay.sample(random).toNanos();
+    }
+    Arrays.sort(samples);
+
+    final var p50 = Duration.ofNanos(samples[samples.length / 2]);
+    final var p99 = Duration.ofNanos(samples[(samples.length * 99) / 100]);
+    final var max = Duration.ofNanos(samples[samples.length - 1]);
+
+    assertTrue(p50.toMillis() >= 4L && p50.toMillis() <= 6L, p50.toString());
+    assertTrue(p99.toMillis() >= 390L && p99.toMillis() <= 400L, p99.toString());
+    assertEquals(Duration.ofMillis(400L), max);
+  }
+
+  @Test
+  public void testInvalid()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      new QWebDelay.Fixed(Duration.ofMillis(-1L));
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new QWebDelay.Uniform(Duration.ofMillis(2L), Duration.ofMillis(1L));
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new QWebDelay.Percentiles(List.of());
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new QWebDelay.Percentiles(
+        List.of(
+          new Percentile(99.0, Duration.ofMillis(400L)),
+          new Percentile(50.0, Duration.ofMillis(5L))
+        )
+      );
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new Percentile(0.0, Duration.ofMillis(5L));
+    });
+  }
+}
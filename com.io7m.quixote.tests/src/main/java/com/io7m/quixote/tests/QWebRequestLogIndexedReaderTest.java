@@ -0,0 +1,332 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.tests;
+
+import com.io7m.quixote.core.QWebRequestLogIndexedReader;
+import com.io7m.quixote.core.QWebRequestLogWriter;
+import com.io7m.quixote.core.QWebRequestLogWriterConfiguration;
+import com.io7m.quixote.core.QWebRequestLogging;
+import com.io7m.quixote.core.QWebRequestReceivedType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class QWebRequestLogIndexedReaderTest
+{
+  private Path directory;
+  private Path file;
+
+  @BeforeEach
+  public void setup()
+    throws IOException
+  {
+    this.directory = Files.createTempDirectory("quixote-");
+    this.file = this.directory.resolve("output.bin");
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws IOException
+  {
+    try (var paths = Files.walk(this.directory)) {
+      for (final var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.deleteIfExists(path);
+      }
+    }
+  }
+
+  /**
+   * Requests can be read in any order from logs containing both formats.
+   *
+   * @throws IOException On errors
+   */
+
+  @Test
+  public void testRandomAccess()
+    throws IOException
+  {
+    this.writeVersion2(0, 1000);
+    this.writeVersion1(1000, 10);
+    this.writeVersion2(1010, 990);
+
+    try (var reader = QWebRequestLogIndexedReader.open(this.file)) {
+      assertEquals(2000L, reader.count());
+      assertTrue(Files.isRegularFile(
+        QWebRequestLogIndexedReader.indexFileFor(this.file)));
+
+      for (final var index : new long[]{1999L, 0L, 1005L, 999L, 1000L, 77L}) {
+        checkRequest(index, reader.get(index));
+      }
+
+      final var iterator = reader.range(990L, 1020L);
+      for (long index = 990L; index < 1020L; ++index) {
+        checkRequest(index, iterator.next());
+      }
+      assertFalse(iterator.hasNext());
+
+      assertThrows(IndexOutOfBoundsException.class, () -> reader.get(2000L));
+      assertThrows(IndexOutOfBoundsException.class, () -> reader.get(-1L));
+      assertThrows(
+        IndexOutOfBoundsException.class,
+        () -> reader.range(10L, 2001L));
+    }
+  }
+
+  /**
+   * The sidecar index is reused, and extended when the log grows.
+   *
+   * @throws IOException On errors
+   */
+
+  @Test
+  public void testIndexExtended()
+    throws IOException
+  {
+    final var indexFile =
+      QWebRequestLogIndexedReader.indexFileFor(this.file);
+
+    this.writeVersion2(0, 100);
+    try (var reader = QWebRequestLogIndexedReader.open(this.file)) {
+      assertEquals(100L, reader.count());
+    }
+    final var indexBefore = Files.readAllBytes(indexFile);
+
+    try (var reader = QWebRequestLogIndexedReader.open(this.file)) {
+      assertEquals(100L, reader.count());
+    }
+    assertArrayEquals(indexBefore, Files.readAllBytes(indexFile));
+
+    this.writeVersion2(100, 50);
+    try (var reader = QWebRequestLogIndexedReader.open(this.file)) {
+      assertEquals(150L, reader.count());
+      checkRequest(149L, reader.get(149L));
+    }
+    assertNotEquals(
+      indexBefore.length,
+      Files.readAllBytes(indexFile).length
+    );
+  }
+
+  /**
+   * Incomplete entries at the end of a log are not indexed, and corrupt
+   * indexes are rebuilt.
+   *
+   * @throws IOException On errors
+   */
+
+  @Test
+  public void testIncompleteAndCorrupt()
+    throws IOException
+  {
+    this.writeVersion2(0, 20);
+    final var size = Files.size(this.file);
+    this.writeVersion2(20, 20);
+
+    try (var channel = Files.newByteChannel(
+      this.file, StandardOpenOption.WRITE)) {
+      channel.truncate(size + 10L);
+    }
+
+    try (var reader = QWebRequestLogIndexedReader.open(this.file)) {
+      assertEquals(20L, reader.count());
+    }
+
+    final var indexFile =
+      QWebRequestLogIndexedReader.indexFileFor(this.file);
+    Files.write(indexFile, new byte[]{1, 2, 3, 4});
+
+    try (var reader = QWebRequestLogIndexedReader.open(this.file)) {
+      assertEquals(20L, reader.count());
+      checkRequest(19L, reader.get(19L));
+    }
+  }
+
+  /**
+   * Logs can be streamed sequentially and in parallel.
+   *
+   * @throws IOException On errors
+   */
+
+  @Test
+  public void testStream()
+    throws IOException
+  {
+    this.writeVersion2(0, 3000);
+    this.writeVersion1(3000, 100);
+    this.writeVersion2(3100, 900);
+
+    final var expected =
+      LongStream.range(0L, 4000L)
+        .mapToObj("/r/%d"::formatted)
+        .toList();
+
+    try (var stream = QWebRequestLogging.stream(this.file)) {
+      assertEquals(
+        expected,
+        stream.map(QWebRequestReceivedType::path).toList()
+      );
+    }
+
+    try (var stream = QWebRequestLogging.stream(this.file)) {
+      assertEquals(
+        expected,
+        stream.parallel()
+          .map(QWebRequestReceivedType::path)
+          .toList()
+      );
+    }
+
+    try (var reader = QWebRequestLogIndexedReader.open(this.file)) {
+      final var spliterator = reader.stream().spliterator();
+      assertEquals(4000L, spliterator.getExactSizeIfKnown());
+
+      final var prefix = spliterator.trySplit();
+      assertNotNull(prefix);
+      assertEquals(
+        4000L,
+        prefix.getExactSizeIfKnown() + spliterator.getExactSizeIfKnown()
+      );
+      assertEquals(0L, prefix.getExactSizeIfKnown() % 64L);
+    }
+  }
+
+  /**
+   * Compressed segments can be read in any order.
+   *
+   * @throws IOException On errors
+   */
+
+  @Test
+  public void testCompressed()
+    throws IOException
+  {
+    this.writeVersion3(0, 1000);
+    this.writeVersion1(1000, 10);
+    this.writeVersion2(1010, 490);
+    this.writeVersion3(1500, 500);
+
+    try (var reader = QWebRequestLogIndexedReader.open(this.file)) {
+      assertEquals(2000L, reader.count());
+      for (final var index : new long[]{1999L, 0L, 1005L, 999L, 1500L, 1499L}) {
+        checkRequest(index, reader.get(index));
+      }
+    }
+
+    try (var stream = QWebRequestLogging.stream(this.file)) {
+      assertEquals(
+        LongStream.range(0L, 2000L).mapToObj("/r/%d"::formatted).toList(),
+        stream.parallel().map(QWebRequestReceivedType::path).toList()
+      );
+    }
+  }
+
+  private void writeVersion3(
+    final int start,
+    final int count)
+    throws IOException
+  {
+    try (var writer = QWebRequestLogWriter.open(
+      this.file,
+      new QWebRequestLogWriterConfiguration(64, 65536, false, 6),
+      StandardOpenOption.CREATE,
+      StandardOpenOption.WRITE,
+      StandardOpenOption.APPEND)) {
+      for (int index = start; index < start + count; ++index) {
+        writer.append(request(index));
+      }
+    }
+  }
+
+  private void writeVersion2(
+    final int start,
+    final int count)
+    throws IOException
+  {
+    try (var writer = QWebRequestLogWriter.open(
+      this.file,
+      new QWebRequestLogWriterConfiguration(64, 65536, false),
+      StandardOpenOption.CREATE,
+      StandardOpenOption.WRITE,
+      StandardOpenOption.APPEND)) {
+      for (int index = start; index < start + count; ++index) {
+        writer.append(request(index));
+      }
+    }
+  }
+
+  private void writeVersion1(
+    final int start,
+    final int count)
+    throws IOException
+  {
+    try (var output = Files.newOutputStream(
+      this.file,
+      StandardOpenOption.CREATE,
+      StandardOpenOption.WRITE,
+      StandardOpenOption.APPEND)) {
+      for (int index = start; index < start + count; ++index) {
+        QWebRequestLogging.append(output, request(index));
+      }
+    }
+  }
+
+  private static QWebRequestReceivedType request(
+    final long index)
+  {
+    return new Request(
+      "GET",
+      "/r/%d".formatted(Long.valueOf(index)),
+      Map.of("Host", "localhost"),
+      Map.of()
+    );
+  }
+
+  private static void checkRequest(
+    final long index,
+    final QWebRequestReceivedType request)
+  {
+    assertEquals("GET", request.method());
+    assertEquals("/r/%d".formatted(Long.valueOf(index)), request.path());
+  }
+
+  private record Request(
+    String method,
+    String path,
+    Map<String, String> headers,
+    Map<String, String> files)
+    implements QWebRequestReceivedType
+  {
+
+  }
+}
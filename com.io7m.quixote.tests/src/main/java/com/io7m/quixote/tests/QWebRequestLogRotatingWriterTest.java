@@ -0,0 +1,268 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.tests;
+
+import com.io7m.quixote.core.QWebRequestLogReader;
+import com.io7m.quixote.core.QWebRequestLogRotatingWriter;
+import com.io7m.quixote.core.QWebRequestLogRotationConfiguration;
+import com.io7m.quixote.core.QWebRequestLogWriterConfiguration;
+import com.io7m.quixote.core.QWebRequestReceivedType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class QWebRequestLogRotatingWriterTest
+{
+  private Path directory;
+  private MutableClock clock;
+
+  @BeforeEach
+  public void setup()
+    throws IOException
+  {
+    this.directory = Files.createTempDirectory("quixote-");
+    this.clock = new MutableClock();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws IOException
+  {
+    try (var paths = Files.walk(this.directory)) {
+      for (final var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.deleteIfExists(path);
+      }
+    }
+  }
+
+  /**
+   * Files are rotated when they reach the maximum size.
+   *
+   * @throws IOException On errors
+   */
+
+  @Test
+  public void testRotateBySize()
+    throws IOException
+  {
+    final var configuration =
+      new QWebRequestLogRotationConfiguration(
+        1000L,
+        Duration.ofDays(1L),
+        new QWebRequestLogWriterConfiguration(10, 65536, false)
+      );
+
+    final List<Path> files;
+    try (var writer = QWebRequestLogRotatingWriter.open(
+      this.directory, "output", configuration, this.clock)) {
+      for (int index = 0; index < 200; ++index) {
+        writer.append(request(index));
+      }
+      files = writer.files();
+    }
+
+    assertTrue(files.size() > 1, "Files %s".formatted(files));
+    assertEquals(
+      files,
+      QWebRequestLogRotatingWriter.readManifest(
+        QWebRequestLogRotatingWriter.manifestFor(this.directory, "output"))
+    );
+    for (final var file : files.subList(0, files.size() - 1)) {
+      assertTrue(Files.size(file) >= 1000L);
+    }
+    assertEquals(200, this.readAll(files).size());
+  }
+
+  /**
+   * Files are rotated when they reach the maximum age.
+   *
+   * @throws IOException On errors
+   */
+
+  @Test
+  public void testRotateByAge()
+    throws IOException
+  {
+    final var configuration =
+      new QWebRequestLogRotationConfiguration(
+        Long.MAX_VALUE,
+        Duration.ofMinutes(10L),
+        new QWebRequestLogWriterConfiguration(false)
+      );
+
+    try (var writer = QWebRequestLogRotatingWriter.open(
+      this.directory, "output", configuration, this.clock)) {
+      writer.append(request(0));
+      writer.flush();
+      this.clock.advance(Duration.ofMinutes(5L));
+      writer.append(request(1));
+      assertEquals(1, writer.files().size());
+
+      this.clock.advance(Duration.ofMinutes(5L));
+      writer.append(request(2));
+      assertEquals(2, writer.files().size());
+
+      this.clock.advance(Duration.ofMinutes(20L));
+      writer.flush();
+      assertEquals(2, writer.files().size());
+    }
+  }
+
+  /**
+   * Reopening a writer continues after the files in the manifest.
+   *
+   * @throws IOException On errors
+   */
+
+  @Test
+  public void testReopen()
+    throws IOException
+  {
+    final var configuration =
+      new QWebRequestLogRotationConfiguration(
+        Long.MAX_VALUE,
+        Duration.ofDays(1L),
+        new QWebRequestLogWriterConfiguration(false)
+      );
+
+    try (var writer = QWebRequestLogRotatingWriter.open(
+      this.directory, "output", configuration, this.clock)) {
+      writer.append(request(0));
+    }
+
+    final List<Path> files;
+    try (var writer = QWebRequestLogRotatingWriter.open(
+      this.directory, "output", configuration, this.clock)) {
+      writer.append(request(1));
+      files = writer.files();
+    }
+
+    assertEquals(
+      List.of(
+        this.directory.resolve("output-00000001.bin"),
+        this.directory.resolve("output-00000002.bin")
+      ),
+      files
+    );
+
+    final var requests = this.readAll(files);
+    assertEquals("/r/0", requests.get(0).path());
+    assertEquals("/r/1", requests.get(1).path());
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      new QWebRequestLogRotationConfiguration(
+        0L,
+        Duration.ofDays(1L),
+        new QWebRequestLogWriterConfiguration(false)
+      );
+    });
+  }
+
+  private List<QWebRequestReceivedType> readAll(
+    final List<Path> files)
+    throws IOException
+  {
+    final var requests = new ArrayList<QWebRequestReceivedType>();
+    for (final var file : files) {
+      try (var reader = QWebRequestLogReader.open(file)) {
+        while (true) {
+          final var next = reader.read();
+          if (next.isEmpty()) {
+            break;
+          }
+          requests.add(next.get());
+        }
+      }
+    }
+    for (int index = 0; index < requests.size(); ++index) {
+      assertEquals(
+        "/r/%d".formatted(Integer.valueOf(index)),
+        requests.get(index).path()
+      );
+    }
+    return requests;
+  }
+
+  private static QWebRequestReceivedType request(
+    final int index)
+  {
+    return new Request(
+      "GET",
+      "/r/%d".formatted(Integer.valueOf(index)),
+      Map.of("Host", "localhost"),
+      Map.of()
+    );
+  }
+
+  private record Request(
+    String method,
+    String path,
+    Map<String, String> headers,
+    Map<String, String> files)
+    implements QWebRequestReceivedType
+  {
+
+  }
+
+  private static final class MutableClock extends Clock
+  {
+    private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+    void advance(
+      final Duration duration)
+    {
+      this.now = this.now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone()
+    {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(
+      final ZoneId zone)
+    {
+      return this;
+    }
+
+    @Override
+    public Instant instant()
+    {
+      return this.now;
+    }
+  }
+}
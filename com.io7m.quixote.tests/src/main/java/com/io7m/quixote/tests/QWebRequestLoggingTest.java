@@ -17,6 +17,9 @@
 
 package com.io7m.quixote.tests;
 
+import com.io7m.quixote.core.QWebRequestLogReader;
+import com.io7m.quixote.core.QWebRequestLogWriter;
+import com.io7m.quixote.core.QWebRequestLogWriterConfiguration;
 import com.io7m.quixote.core.QWebRequestLogging;
 import com.io7m.quixote.core.QWebRequestReceivedType;
 import org.junit.jupiter.api.BeforeEach;
@@ -25,10 +28,19 @@ import org.mockito.Mockito;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
 
 public final class QWebRequestLoggingTest
@@ -89,4 +101,381 @@ public final class QWebRequestLoggingTest
       assertEquals(Map.of(), r.files());
     }
   }
+
+  /**
+   * Version 2 logs can be written and read back, across segments.
+   *
+   * @throws IOException On errors
+   */
+
+  @Test
+  public void testVersion2()
+    throws IOException
+  {
+    final var written = new ArrayList<QWebRequestReceivedType>();
+    for (int index = 0; index < 10; ++index) {
+      written.add(new Request(
+        "GET",
+        "/x/%d".formatted(Integer.valueOf(index)),
+        Map.of(
+          "Host", "localhost",
+          "X-Index", Integer.toString(index)
+        ),
+        Map.of()
+      ));
+    }
+
+    try (var writer = QWebRequestLogWriter.create(
+      this.out, new QWebRequestLogWriterConfiguration(3, 65536, false))) {
+      for (final var r : written) {
+        writer.append(r);
+      }
+    }
+
+    final var in =
+      new ByteArrayInputStream(this.out.toByteArray());
+
+    try (var reader = QWebRequestLogReader.create(in)) {
+      for (final var expected : written) {
+        final var r = reader.read().orElseThrow();
+        assertEquals(expected.method(), r.method());
+        assertEquals(expected.path(), r.path());
+        assertEquals(expected.headers(), r.headers());
+        assertEquals(expected.files(), r.files());
+      }
+      assertEquals(Optional.empty(), reader.read());
+    }
+  }
+
+  /**
+   * Buffered records are written as a single segment when flushed.
+   *
+   * @throws IOException On errors
+   */
+
+  @Test
+  public void testVersion2GroupCommit()
+    throws IOException
+  {
+    final var writes = new AtomicInteger();
+    final var counting = new FilterOutputStream(this.out)
+    {
+      @Override
+      public void write(
+        final byte[] b,
+        final int off,
+        final int len)
+        throws IOException
+      {
+        writes.incrementAndGet();
+        this.out.write(b, off, len);
+      }
+    };
+
+    final var request =
+      new Request("PUT", "/y", Map.of("Host", "localhost"), Map.of());
+
+    final var writer = QWebRequestLogWriter.create(
+      counting, new QWebRequestLogWriterConfiguration(false));
+    for (int index = 0; index < 100; ++index) {
+      writer.append(request);
+    }
+    assertEquals(0, writes.get());
+    writer.flush();
+    assertEquals(1, writes.get());
+    writer.flush();
+    assertEquals(1, writes.get());
+    writer.close();
+
+    final var v1 = new ByteArrayOutputStream();
+    for (int index = 0; index < 100; ++index) {
+      QWebRequestLogging.append(v1, request);
+    }
+    assertTrue(this.out.size() * 10 < v1.size());
+  }
+
+  /**
+   * A segment that fails to be written is retained, and written by the next
+   * flush.
+   *
+   * @throws IOException On errors
+   */
+
+  @Test
+  public void testVersion2WriteFailureRetained()
+    throws IOException
+  {
+    final var failures = new AtomicInteger(1);
+    final var failing = new FilterOutputStream(this.out)
+    {
+      @Override
+      public void write(
+        final byte[] b,
+        final int off,
+        final int len)
+        throws IOException
+      {
+        if (failures.getAndDecrement() > 0) {
+          throw new IOException("Write failed.");
+        }
+        this.out.write(b, off, len);
+      }
+    };
+
+    final var written = new ArrayList<QWebRequestReceivedType>();
+    for (int index = 0; index < 5; ++index) {
+      written.add(new Request(
+        "GET",
+        "/x/%d".formatted(Integer.valueOf(index)),
+        Map.of("Host", "localhost"),
+        Map.of()
+      ));
+    }
+
+    final var writer = QWebRequestLogWriter.create(
+      failing, new QWebRequestLogWriterConfiguration(false));
+    for (final var r : written) {
+      writer.append(r);
+    }
+
+    assertThrows(IOException.class, writer::flush);
+    assertEquals(0, this.out.size());
+    writer.flush();
+    writer.close();
+
+    try (var reader = QWebRequestLogReader.create(
+      new ByteArrayInputStream(this.out.toByteArray()))) {
+      for (final var expected : written) {
+        final var r = reader.read().orElseThrow();
+        assertEquals(expected.path(), r.path());
+        assertEquals(expected.headers(), r.headers());
+      }
+      assertEquals(Optional.empty(), reader.read());
+    }
+  }
+
+  /**
+   * Logs may contain a mixture of version 1 records and version 2 segments,
+   * and version 2 logs cannot be read with the version 1 reader.
+   *
+   * @throws IOException On errors
+   */
+
+  @Test
+  public void testMixedVersions()
+    throws IOException
+  {
+    final var request =
+      new Request("POST", "/z", Map.of(), Map.of("f", "/tmp/f"));
+
+    QWebRequestLogging.append(this.out, request);
+    try (var writer = QWebRequestLogWriter.create(
+      this.out, new QWebRequestLogWriterConfiguration(false))) {
+      writer.append(request);
+    }
+    QWebRequestLogging.append(this.out, request);
+
+    final var data = this.out.toByteArray();
+    try (var reader =
+           QWebRequestLogReader.create(new ByteArrayInputStream(data))) {
+      for (int index = 0; index < 3; ++index) {
+        final var r = reader.read().orElseThrow();
+        assertEquals("POST", r.method());
+        assertEquals("/z", r.path());
+        assertEquals(1, r.files().size());
+      }
+      assertEquals(Optional.empty(), reader.read());
+    }
+
+    final var in = new ByteArrayInputStream(data);
+    QWebRequestLogging.read(in);
+    assertThrows(IOException.class, () -> QWebRequestLogging.read(in));
+  }
+
+  /**
+   * Version 1 logs can be converted to version 2 logs.
+   *
+   * @throws IOException On errors
+   */
+
+  @Test
+  public void testConvert()
+    throws IOException
+  {
+    final var request =
+      new Request(
+        "GET",
+        "/a",
+        Map.of("Host", "localhost", "Accept", "*/*"),
+        Map.of("upload", "/tmp/upload")
+      );
+
+    for (int index = 0; index < 5; ++index) {
+      QWebRequestLogging.append(this.out, request);
+    }
+
+    final var converted = new ByteArrayOutputStream();
+    final var count =
+      QWebRequestLogging.convert(
+        new ByteArrayInputStream(this.out.toByteArray()),
+        converted,
+        new QWebRequestLogWriterConfiguration(false)
+      );
+
+    assertEquals(5L, count);
+    assertTrue(converted.size() < this.out.size());
+
+    try (var reader = QWebRequestLogReader.create(
+      new ByteArrayInputStream(converted.toByteArray()))) {
+      for (int index = 0; index < 5; ++index) {
+        final var r = reader.read().orElseThrow();
+        assertEquals(request.method(), r.method());
+        assertEquals(request.path(), r.path());
+        assertEquals(request.headers(), r.headers());
+        assertEquals(request.files(), r.files());
+      }
+      assertEquals(Optional.empty(), reader.read());
+    }
+  }
+
+  /**
+   * Truncated version 2 logs are rejected.
+   *
+   * @throws IOException On errors
+   */
+
+  @Test
+  public void testVersion2Truncated()
+    throws IOException
+  {
+    try (var writer = QWebRequestLogWriter.create(
+      this.out, new QWebRequestLogWriterConfiguration(false))) {
+      writer.append(new Request("GET", "/t", Map.of(), Map.of()));
+    }
+
+    final var data = this.out.toByteArray();
+    final var truncated = Arrays.copyOf(data, data.length - 1);
+    try (var reader = QWebRequestLogReader.create(
+      new ByteArrayInputStream(truncated))) {
+      assertThrows(IOException.class, reader::read);
+    }
+  }
+
+  /**
+   * Decoded records expose the original header and file names, and decode
+   * each section only once.
+   *
+   * @throws IOException On errors
+   */
+
+  @Test
+  public void testDecodedSections()
+    throws IOException
+  {
+    final var request =
+      new Request(
+        "GET",
+        "/d",
+        Map.of("Host", "localhost", "Accept", "*/*"),
+        Map.of("upload", "/tmp/upload")
+      );
+
+    QWebRequestLogging.append(this.out, request);
+    try (var writer = QWebRequestLogWriter.create(
+      this.out, new QWebRequestLogWriterConfiguration(false))) {
+      writer.append(request);
+      writer.append(request);
+    }
+
+    try (var reader = QWebRequestLogReader.create(
+      new ByteArrayInputStream(this.out.toByteArray()))) {
+      final var r0 = reader.read().orElseThrow();
+      final var r1 = reader.read().orElseThrow();
+      final var r2 = reader.read().orElseThrow();
+
+      for (final var r : List.of(r0, r1, r2)) {
+        assertEquals(request.headers(), r.headers());
+        assertEquals(request.files(), r.files());
+        assertSame(r.headers(), r.headers());
+        assertSame(r.files(), r.files());
+        assertSame(r.path(), r.path());
+        assertThrows(
+          UnsupportedOperationException.class,
+          () -> r.headers().put("x", "y"));
+      }
+
+      assertEquals(r1, r2);
+      assertEquals(r1.hashCode(), r2.hashCode());
+    }
+  }
+
+  /**
+   * Compressed segments can be written and read back, mixed with
+   * uncompressed segments, and are considerably smaller.
+   *
+   * @throws IOException On errors
+   */
+
+  @Test
+  public void testCompressed()
+    throws IOException
+  {
+    final var requests = new ArrayList<QWebRequestReceivedType>();
+    for (int index = 0; index < 1000; ++index) {
+      requests.add(new Request(
+        "GET",
+        "/c/%d".formatted(Integer.valueOf(index)),
+        Map.of(
+          "Host", "localhost",
+          "User-Agent", "Java-http-client/21.0.1",
+          "Accept", "text/html, application/xhtml+xml, application/xml"
+        ),
+        Map.of()
+      ));
+    }
+
+    final var uncompressed = new ByteArrayOutputStream();
+    try (var writer = QWebRequestLogWriter.create(
+      uncompressed, new QWebRequestLogWriterConfiguration(false))) {
+      for (final var r : requests) {
+        writer.append(r);
+      }
+    }
+
+    try (var writer = QWebRequestLogWriter.create(
+      this.out, new QWebRequestLogWriterConfiguration(100, 65536, false, 6))) {
+      for (final var r : requests) {
+        writer.append(r);
+      }
+    }
+    assertTrue(this.out.size() * 3 < uncompressed.size());
+
+    uncompressed.writeTo(this.out);
+
+    try (var reader = QWebRequestLogReader.create(
+      new ByteArrayInputStream(this.out.toByteArray()))) {
+      for (int pass = 0; pass < 2; ++pass) {
+        for (final var expected : requests) {
+          final var r = reader.read().orElseThrow();
+          assertEquals(expected.path(), r.path());
+          assertEquals(expected.headers(), r.headers());
+        }
+      }
+      assertEquals(Optional.empty(), reader.read());
+    }
+
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new QWebRequestLogWriterConfiguration(1, 1, false, 10));
+  }
+
+  private record Request(
+    String method,
+    String path,
+    Map<String, String> headers,
+    Map<String, String> files)
+    implements QWebRequestReceivedType
+  {
+
+  }
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.tests;
+
+import com.io7m.quixote.core.QWebServerConfiguration;
+import com.io7m.quixote.core.QWebServerFactoryType;
+import com.io7m.quixote.core.QWebServersNIO;
+
+import static com.io7m.quixote.core.QWebMatchingMode.AUTOMATON;
+
+public final class QWebServersAutomatonTest extends QWebServersTest
+{
+  @Override
+  protected QWebServerFactoryType servers()
+  {
+    return new QWebServersConfigured(
+      new QWebServersNIO(2),
+      (hostName, port) -> {
+        return new QWebServerConfiguration(hostName, port.intValue(), false)
+          .withMatching(AUTOMATON);
+      }
+    );
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.tests;
+
+import com.io7m.quixote.core.QWebConfiguration;
+import com.io7m.quixote.core.QWebServerConfiguration;
+import com.io7m.quixote.core.QWebServerFactoryType;
+import com.io7m.quixote.core.QWebServerType;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiFunction;
+
+/**
+ * A server factory that creates every server from a configuration, so that
+ * the server tests can be run against non-default server configurations. The
+ * thread kind and matching mode are taken from the given function, and all
+ * other settings are taken from the configuration being created.
+ */
+
+final class QWebServersConfigured implements QWebServerFactoryType
+{
+  private final QWebServerFactoryType servers;
+  private final BiFunction<String, Integer, QWebServerConfiguration> configurations;
+
+  QWebServersConfigured(
+    final QWebServerFactoryType inServers,
+    final BiFunction<String, Integer, QWebServerConfiguration> inConfigurations)
+  {
+    this.servers =
+      Objects.requireNonNull(inServers, "inServers");
+    this.configurations =
+      Objects.requireNonNull(inConfigurations, "inConfigurations");
+  }
+
+  @Override
+  public QWebServerType create(
+    final int port)
+    throws IOException
+  {
+    return this.createFor("localhost", port);
+  }
+
+  @Override
+  public QWebServerType createForAll(
+    final int port)
+    throws IOException
+  {
+    return this.createFor("[::]", port);
+  }
+
+  @Override
+  public QWebServerType createForSpecific(
+    final InetAddress address,
+    final int port)
+    throws IOException
+  {
+    return this.createFor(address.getHostName(), port);
+  }
+
+  private QWebServerType createFor(
+    final String hostName,
+    final int port)
+    throws IOException
+  {
+    return this.createForConfiguration(
+      new QWebConfiguration(
+        this.configurations.apply(hostName, Integer.valueOf(port)),
+        List.of()
+      )
+    );
+  }
+
+  @Override
+  public QWebServerType createForConfiguration(
+    final QWebConfiguration configuration)
+    throws IOException
+  {
+    final var base = configuration.serverConfiguration();
+    final var wanted = this.configurations.apply(
+      base.hostName(),
+      Integer.valueOf(base.port())
+    );
+    return this.servers.createForConfiguration(
+      new QWebConfiguration(
+        base.withThreads(wanted.threads())
+          .withMatching(wanted.matching()),
+        configuration.responses()
+      )
+    );
+  }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.quixote.tests;
+
+import com.io7m.quixote.core.QWebCapturePolicy;
+import com.io7m.quixote.core.QWebConfiguration;
+import com.io7m.quixote.core.QWebRequestDispatchConfiguration;
+import com.io7m.quixote.core.QWebRequestOverflowPolicy;
+import com.io7m.quixote.core.QWebServerConfiguration;
+import com.io7m.quixote.core.QWebServerFactoryType;
+import com.io7m.quixote.core.QWebServersNIO;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static java.net.http.HttpResponse.BodyHandlers.ofString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class QWebServersNIOTest extends QWebServersTest
+{
+  @Override
+  protected QWebServerFactoryType servers()
+  {
+    return new QWebServersNIO(2);
+  }
+
+  /**
+   * A full request queue with the BLOCK overflow policy parks the
+   * connections that cannot submit their requests, rather than blocking
+   * the event loop, and so other connections serviced by the same loop are
+   * still answered.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRequestBatchCallbackBlockParksConnection()
+    throws Exception
+  {
+    final var http =
+      HttpClient.newHttpClient();
+    final var release =
+      new CountDownLatch(1);
+
+    final var server = new QWebServersNIO(1).createForConfiguration(
+      new QWebConfiguration(
+        new QWebServerConfiguration("localhost", 42001, false)
+          .withCapture(
+            new QWebCapturePolicy(
+              1,
+              Optional.of(Pattern.compile("/stall/.*")),
+              Optional.empty()
+            )
+          ),
+        List.of()
+      )
+    );
+
+    try {
+
+      server.addResponse()
+        .withStatus(200)
+        .always();
+
+      server.setRequestBatchCallback(
+        new QWebRequestDispatchConfiguration(
+          1,
+          1,
+          QWebRequestOverflowPolicy.BLOCK
+        ),
+        batch -> {
+          try {
+            release.await();
+          } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      );
+
+      /*
+       * The first request is held by the stalled callback, the second
+       * fills the queue, and the third cannot be submitted.
+       */
+
+      final var stalled =
+        new LinkedList<CompletableFuture<HttpResponse<String>>>();
+      for (int index = 0; index < 3; ++index) {
+        final var path = "/stall/%d".formatted(Integer.valueOf(index));
+        stalled.add(
+          http.sendAsync(
+            HttpRequest.newBuilder(server.uri().resolve(path)).build(),
+            ofString()
+          )
+        );
+      }
+
+      server.awaitRequests(3, Duration.ofSeconds(10L));
+      final var deadline = System.nanoTime() + Duration.ofSeconds(10L).toNanos();
+      while (server.requestDispatchStatistics().queueDepth() < 1) {
+        assertTrue(System.nanoTime() < deadline);
+        Thread.sleep(10L);
+      }
+
+      for (int index = 0; index < 3; ++index) {
+        final var response =
+          http.send(
+            HttpRequest.newBuilder(server.uri().resolve("/other"))
+              .timeout(Duration.ofSeconds(10L))
+              .build(),
+            ofString()
+          );
+        assertEquals(200, response.statusCode());
+      }
+
+      release.countDown();
+      for (final var future : stalled) {
+        assertEquals(200, future.get(10L, TimeUnit.SECONDS).statusCode());
+      }
+
+      while (server.requestDispatchStatistics().delivered() < 3L) {
+        assertTrue(System.nanoTime() < deadline);
+        Thread.sleep(10L);
+      }
+      assertEquals(0L, server.requestDispatchStatistics().dropped());
+    } finally {
+      release.countDown();
+      server.close();
+    }
+  }
+
+  /**
+   * A synchronous request callback that blocks does not block the event
+   * loop, and so does not prevent other connections from being served.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRequestCallbackBlockDoesNotBlockEventLoop()
+    throws Exception
+  {
+    final var http =
+      HttpClient.newHttpClient();
+    final var release =
+      new CountDownLatch(1);
+
+    final var server = new QWebServersNIO(1).createForConfiguration(
+      new QWebConfiguration(
+        new QWebServerConfiguration("localhost", 42001, false),
+        List.of()
+      )
+    );
+
+    try {
+      server.addResponse()
+        .withStatus(200)
+        .always();
+
+      server.setRequestCallback(request -> {
+        if (request.path().startsWith("/stall")) {
+          try {
+            release.await();
+          } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+
+      final var stalled =
+        http.sendAsync(
+          HttpRequest.newBuilder(server.uri().resolve("/stall")).build(),
+          ofString()
+        );
+
+      server.awaitRequests(1, Duration.ofSeconds(10L));
+
+      for (int index = 0; index < 3; ++index) {
+        final var response =
+          http.send(
+            HttpRequest.newBuilder(server.uri().resolve("/other"))
+              .timeout(Duration.ofSeconds(10L))
+              .build(),
+            ofString()
+          );
+        assertEquals(200, response.statusCode());
+      }
+
+      assertFalse(stalled.isDone());
+      release.countDown();
+      assertEquals(200, stalled.get(10L, TimeUnit.SECONDS).statusCode());
+    } finally {
+      release.countDown();
+      server.close();
+    }
+  }
+
+  /**
+   * Request bodies larger than the in-memory threshold are streamed to a
+   * temporary file, and are exposed in the same manner as small bodies.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRequestBodiesLarge()
+    throws Exception
+  {
+    final var http =
+      HttpClient.newHttpClient();
+    final var text =
+      "0123456789abcdef".repeat(16 * 1024);
+
+    final var server = new QWebServersNIO(1).createForConfiguration(
+      new QWebConfiguration(
+        new QWebServerConfiguration("localhost", 42001, false),
+        List.of()
+      )
+    );
+
+    try {
+      server.addResponse()
+        .withStatus(200)
+        .always();
+
+      final var post =
+        http.send(
+          HttpRequest.newBuilder(server.uri().resolve("/post"))
+            .POST(BodyPublishers.ofString(text))
+            .setHeader("Content-Type", "text/plain")
+            .build(),
+          ofString()
+        );
+      assertEquals(200, post.statusCode());
+
+      final var put =
+        http.send(
+          HttpRequest.newBuilder(server.uri().resolve("/put"))
+            .PUT(BodyPublishers.ofString(text))
+            .build(),
+          ofString()
+        );
+      assertEquals(200, put.statusCode());
+
+      final var requests = server.requestsReceived();
+      assertEquals(2, requests.size());
+      assertEquals(text, requests.get(0).files().get("postData"));
+      assertTrue(requests.get(1).files().containsKey("content"));
+    } finally {
+      server.close();
+    }
+  }
+
+  /**
+   * Unlike the NanoHTTPD engine, multipart form data is not decoded, and so
+   * the recorded request has no files.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRequestBodyMultipartNotDecoded()
+    throws Exception
+  {
+    final var http =
+      HttpClient.newHttpClient();
+    final var body =
+      String.join(
+        "\r\n",
+        "--BOUNDARY",
+        "Content-Disposition: form-data; name=\"file\"; filename=\"x.txt\"",
+        "Content-Type: text/plain",
+        "",
+        "Hello.",
+        "--BOUNDARY--",
+        ""
+      );
+
+    final var server = new QWebServersNIO(1).createForConfiguration(
+      new QWebConfiguration(
+        new QWebServerConfiguration("localhost", 42001, false),
+        List.of()
+      )
+    );
+
+    try {
+      server.addResponse()
+        .withStatus(200)
+        .always();
+
+      final var response =
+        http.send(
+          HttpRequest.newBuilder(server.uri().resolve("/upload"))
+            .POST(BodyPublishers.ofString(body))
+            .setHeader(
+              "Content-Type",
+              "multipart/form-data; boundary=BOUNDARY")
+            .build(),
+          ofString()
+        );
+      assertEquals(200, response.statusCode());
+
+      final var requests = server.requestsReceived();
+      assertEquals(1, requests.size());
+      assertEquals(Map.of(), requests.get(0).files());
+    } finally {
+      server.close();
+    }
+  }
+}
@@ -16,7 +16,21 @@
 
 package com.io7m.quixote.tests;
 
+import com.io7m.quixote.core.QWebCapturePolicy;
+import com.io7m.quixote.core.QWebConfiguration;
+import com.io7m.quixote.core.QWebDelay;
+import com.io7m.quixote.core.QWebPathMatchKind;
+import com.io7m.quixote.core.QWebRequestDispatchConfiguration;
+import com.io7m.quixote.core.QWebRequestDispatchStatistics;
+import com.io7m.quixote.core.QWebRequestIndexConfiguration;
+import com.io7m.quixote.core.QWebRequestJournalEntry;
+import com.io7m.quixote.core.QWebRequestJournalPage;
+import com.io7m.quixote.core.QWebRequestOverflowPolicy;
+import com.io7m.quixote.core.QWebRequestQuery;
+import com.io7m.quixote.core.QWebResponseRecorded;
 import com.io7m.quixote.core.QWebServerAddresses;
+import com.io7m.quixote.core.QWebServerConfiguration;
+import com.io7m.quixote.core.QWebServerFactoryType;
 import com.io7m.quixote.core.QWebServerType;
 import com.io7m.quixote.core.QWebServers;
 import org.junit.jupiter.api.AfterEach;
@@ -29,26 +43,57 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 
 import static java.net.http.HttpResponse.BodyHandlers.ofByteArray;
 import static java.net.http.HttpResponse.BodyHandlers.ofString;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
-public final class QWebServersTest
+public class QWebServersTest
 {
   private QWebServerType server;
   private HttpClient http;
 
+  /**
+   * @return The server factory under test
+   */
+
+  protected QWebServerFactoryType servers()
+  {
+    return new QWebServers();
+  }
+
   @BeforeEach
   public void setup()
     throws IOException
   {
     this.server =
-      QWebServers.createServer(42000);
+      this.servers().create(42000);
     this.http =
       HttpClient.newHttpClient();
   }
@@ -210,7 +255,7 @@ public final class QWebServersTest
     /* Arrange */
 
     this.server.close();
-    this.server = QWebServers.createServerForAll(42000);
+    this.server = this.servers().createForAll(42000);
 
     this.server.addResponse()
       .forMethod("GET")
@@ -337,7 +382,7 @@ public final class QWebServersTest
     /* Arrange */
 
     this.server.close();
-    this.server = QWebServers.createServerForSpecific(
+    this.server = this.servers().createForSpecific(
       QWebServerAddresses.findPublicIP()
         .orElseThrow(),
       42000
@@ -753,4 +798,2018 @@ public final class QWebServersTest
     assertEquals(0, requests.size());
   }
 
+
+  /**
+   * The earliest added matching response is returned, regardless of how
+   * specific the method and path patterns of later responses are.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testGET_EarliestMatchWins()
+    throws Exception
+  {
+    /* Arrange */
+
+    this.server.addResponse()
+      .forMethod("G.T")
+      .forPath("/x.*")
+      .withFixedText("Response 0.");
+
+    this.server.addResponse()
+      .forMethod("GET")
+      .forPath("/xyz/abc")
+      .withFixedText("Response 1.");
+
+    this.server.addResponse()
+      .withFixedText("Response 2.");
+
+    this.server.addResponse()
+      .forMethod("get")
+      .forPath("/xyz/a.c")
+      .withFixedText("Response 3.");
+
+    /* Act */
+
+    final var request =
+      HttpRequest.newBuilder(this.server.uri().resolve("xyz/abc"))
+        .build();
+
+    final var responses = new LinkedList<String>();
+    for (int index = 0; index < 5; ++index) {
+      responses.add(this.http.send(request, ofString()).body());
+    }
+
+    /* Assert */
+
+    assertEquals(
+      List.of(
+        "Response 0.",
+        "Response 1.",
+        "Response 2.",
+        "Response 3.",
+        "No matching responses for method GET and path '/xyz/abc'."
+      ),
+      responses
+    );
+    assertEquals(0, this.server.responses().size());
+  }
+
+  /**
+   * Responses are found correctly among a large number of queued responses.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testGET_ManyResponses()
+    throws Exception
+  {
+    /* Arrange */
+
+    for (int index = 0; index < 10000; ++index) {
+      this.server.addResponse()
+        .forMethod(index % 2 == 0 ? "GET" : "POST")
+        .forPath("/item/%d".formatted(Integer.valueOf(index)))
+        .withFixedText("Item %d.".formatted(Integer.valueOf(index)));
+    }
+
+    /* Act */
+
+    final var response0 =
+      this.http.send(
+        HttpRequest.newBuilder(this.server.uri().resolve("item/9998"))
+          .build(),
+        ofString()
+      );
+    final var response1 =
+      this.http.send(
+        HttpRequest.newBuilder(this.server.uri().resolve("item/42"))
+          .build(),
+        ofString()
+      );
+    final var response2 =
+      this.http.send(
+        HttpRequest.newBuilder(this.server.uri().resolve("item/9999"))
+          .build(),
+        ofString()
+      );
+
+    /* Assert */
+
+    assertEquals("Item 9998.", response0.body());
+    assertEquals("Item 42.", response1.body());
+    assertEquals(503, response2.statusCode());
+    assertEquals(9998, this.server.responses().size());
+  }
+
+  /**
+   * Responses created from a configuration respect the configured method
+   * and path.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testGET_ConfigurationPatterns()
+    throws Exception
+  {
+    /* Arrange */
+
+    this.server.close();
+    this.server = this.servers().createForConfiguration(
+      new QWebConfiguration(
+        new QWebServerConfiguration("localhost", 42000, false),
+        List.of(
+          new QWebResponseRecorded(
+            Pattern.compile("POST", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("/abc", Pattern.CASE_INSENSITIVE),
+            200,
+            Map.of(),
+            "Hello 0.".getBytes(UTF_8)
+          ),
+          new QWebResponseRecorded(
+            Pattern.compile("GET", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("/ABC", Pattern.CASE_INSENSITIVE),
+            200,
+            Map.of(),
+            "Hello 1.".getBytes(UTF_8)
+          )
+        )
+      )
+    );
+
+    /* Act */
+
+    final var response0 =
+      this.http.send(
+        HttpRequest.newBuilder(this.server.uri().resolve("xyz"))
+          .build(),
+        ofString()
+      );
+    final var response1 =
+      this.http.send(
+        HttpRequest.newBuilder(this.server.uri().resolve("abc"))
+          .build(),
+        ofString()
+      );
+
+    /* Assert */
+
+    assertEquals(503, response0.statusCode());
+    assertEquals(200, response1.statusCode());
+    assertEquals("Hello 1.", response1.body());
+    assertEquals(1, this.server.responses().size());
+  }
+
+  /**
+   * Exact, prefix, and glob path matchers.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testGET_PathMatchers()
+    throws Exception
+  {
+    /* Arrange */
+
+    this.server.addResponse()
+      .forMethod("GET")
+      .forPathExact("/a/b")
+      .withFixedText("Exact.");
+
+    this.server.addResponse()
+      .forMethod("GET")
+      .forPathGlob("/a/*/c/**")
+      .withFixedText("Glob.");
+
+    this.server.addResponse()
+      .forMethod("GET")
+      .forPathPrefix("/a/")
+      .withFixedText("Prefix.");
+
+    assertEquals(
+      List.of(
+        "[Response [Method GET] [Path exact:/a/b]]",
+        "[Response [Method GET] [Path glob:/a/*/c/**]]",
+        "[Response [Method GET] [Path prefix:/a/]]"
+      ),
+      this.server.responses()
+        .stream()
+        .map(Object::toString)
+        .toList()
+    );
+
+    /* Act */
+
+    final var response0 =
+      this.http.send(
+        HttpRequest.newBuilder(this.server.uri().resolve("a/x/y/c/d/e"))
+          .build(),
+        ofString()
+      );
+    final var response1 =
+      this.http.send(
+        HttpRequest.newBuilder(this.server.uri().resolve("a/x/c/d/e"))
+          .build(),
+        ofString()
+      );
+    final var response2 =
+      this.http.send(
+        HttpRequest.newBuilder(this.server.uri().resolve("a/b/"))
+          .build(),
+        ofString()
+      );
+    final var response3 =
+      this.http.send(
+        HttpRequest.newBuilder(this.server.uri().resolve("a/b"))
+          .build(),
+        ofString()
+      );
+
+    /* Assert */
+
+    assertEquals("Prefix.", response0.body());
+    assertEquals("Glob.", response1.body());
+    assertEquals(503, response2.statusCode());
+    assertEquals("Exact.", response3.body());
+    assertEquals(0, this.server.responses().size());
+  }
+
+  /**
+   * Responses with expressions that cannot be compiled into an automaton
+   * are still matched in the order in which they were added.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testGET_MixedExpressions()
+    throws Exception
+  {
+    /* Arrange */
+
+    this.server.addResponse()
+      .forPath("/a(?=b).*")
+      .withFixedText("Response 0.");
+
+    this.server.addResponse()
+      .forMethod("GET|HEAD")
+      .forPath("/[a-z]+")
+      .withFixedText("Response 1.");
+
+    this.server.addResponse()
+      .forPath("/(a)\\1?b")
+      .withFixedText("Response 2.");
+
+    this.server.addResponse()
+      .forPathExact("/ab")
+      .withFixedText("Response 3.");
+
+    /* Act */
+
+    final var request =
+      HttpRequest.newBuilder(this.server.uri().resolve("ab"))
+        .build();
+
+    final var responses = new LinkedList<String>();
+    for (int index = 0; index < 5; ++index) {
+      responses.add(this.http.send(request, ofString()).body());
+    }
+
+    /* Assert */
+
+    assertEquals(
+      List.of(
+        "Response 0.",
+        "Response 1.",
+        "Response 2.",
+        "Response 3.",
+        "No matching responses for method GET and path '/ab'."
+      ),
+      responses
+    );
+  }
+
+  /**
+   * A response can be returned a fixed number of times, even if its data
+   * was given as a stream.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testGET_Times()
+    throws Exception
+  {
+    /* Arrange */
+
+    this.server.addResponse()
+      .forPathExact("/xyz")
+      .withData(new ByteArrayInputStream("Hello.".getBytes(UTF_8)))
+      .withContentLength(6L)
+      .times(3L);
+
+    /* Act */
+
+    final var request =
+      HttpRequest.newBuilder(this.server.uri().resolve("xyz"))
+        .build();
+
+    final var responses = new LinkedList<String>();
+    for (int index = 0; index < 4; ++index) {
+      responses.add(this.http.send(request, ofString()).body());
+    }
+
+    /* Assert */
+
+    assertEquals(
+      List.of(
+        "Hello.",
+        "Hello.",
+        "Hello.",
+        "No matching responses for method GET and path '/xyz'."
+      ),
+      responses
+    );
+    assertEquals(0, this.server.responses().size());
+  }
+
+  /**
+   * A response with an unlimited number of hits is never removed.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testGET_Always()
+    throws Exception
+  {
+    /* Arrange */
+
+    this.server.addResponse()
+      .forPathPrefix("/")
+      .withFixedText("Hello.")
+      .always();
+
+    this.server.addResponse()
+      .forPathPrefix("/")
+      .withFixedText("Unreachable.");
+
+    /* Act */
+
+    final var futures =
+      new LinkedList<CompletableFuture<HttpResponse<String>>>();
+    for (int index = 0; index < 100; ++index) {
+      futures.add(
+        this.http.sendAsync(
+          HttpRequest.newBuilder(this.server.uri().resolve("x" + index))
+            .build(),
+          ofString()
+        )
+      );
+    }
+
+    /* Assert */
+
+    for (final var future : futures) {
+      assertEquals("Hello.", future.get().body());
+    }
+    assertEquals(2, this.server.responses().size());
+  }
+
+  /**
+   * Concurrent requests consume exactly the permitted number of hits.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testGET_TimesConcurrent()
+    throws Exception
+  {
+    /* Arrange */
+
+    this.server.addResponse()
+      .forPathExact("/xyz")
+      .withFixedText("Hello.")
+      .times(50L);
+
+    /* Act */
+
+    final var request =
+      HttpRequest.newBuilder(this.server.uri().resolve("xyz"))
+        .build();
+
+    final var futures =
+      new LinkedList<CompletableFuture<HttpResponse<String>>>();
+    for (int index = 0; index < 100; ++index) {
+      futures.add(this.http.sendAsync(request, ofString()));
+    }
+
+    /* Assert */
+
+    int ok = 0;
+    int unavailable = 0;
+    for (final var future : futures) {
+      switch (future.get().statusCode()) {
+        case 200 -> ++ok;
+        case 503 -> ++unavailable;
+        default -> throw new IllegalStateException();
+      }
+    }
+
+    assertEquals(50, ok);
+    assertEquals(50, unavailable);
+    assertEquals(0, this.server.responses().size());
+  }
+
+  /**
+   * Fixed responses are returned intact, including for HEAD requests, and
+   * changes to a response after it has been returned are respected.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testGET_FixedResponses()
+    throws Exception
+  {
+    /* Arrange */
+
+    final var response =
+      this.server.addResponse()
+        .forPathExact("/xyz")
+        .withStatus(202)
+        .withContentType("text/plain")
+        .withHeader("Header-0", "A")
+        .withFixedText("Hello.")
+        .always();
+
+    final var request =
+      HttpRequest.newBuilder(this.server.uri().resolve("xyz"))
+        .build();
+    final var headRequest =
+      HttpRequest.newBuilder(this.server.uri().resolve("xyz"))
+        .method("HEAD", BodyPublishers.noBody())
+        .build();
+
+    /* Act */
+
+    final var response0 =
+      this.http.send(request, ofString());
+    final var response1 =
+      this.http.send(request, ofString());
+    final var response2 =
+      this.http.send(headRequest, ofString());
+
+    response.withHeader("Header-0", "B");
+    response.withFixedText("Goodbye.");
+
+    final var response3 =
+      this.http.send(request, ofString());
+
+    /* Assert */
+
+    for (final var r : List.of(response0, response1)) {
+      assertEquals(202, r.statusCode());
+      assertEquals("Hello.", r.body());
+      assertEquals(
+        "text/plain",
+        r.headers().firstValue("Content-Type").orElseThrow()
+      );
+      assertEquals(
+        "A",
+        r.headers().firstValue("Header-0").orElseThrow()
+      );
+      assertEquals(
+        "6",
+        r.headers().firstValue("Content-Length").orElseThrow()
+      );
+    }
+
+    assertEquals(202, response2.statusCode());
+    assertEquals("", response2.body());
+    assertEquals(
+      "A",
+      response2.headers().firstValue("Header-0").orElseThrow()
+    );
+
+    assertEquals(202, response3.statusCode());
+    assertEquals("Goodbye.", response3.body());
+    assertEquals(
+      "B",
+      response3.headers().firstValue("Header-0").orElseThrow()
+    );
+  }
+
+  /**
+   * Configured compression levels and minimum sizes are respected, and
+   * compressed responses have a fixed length.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testGET_GzipConfigured()
+    throws Exception
+  {
+    /* Arrange */
+
+    final var large =
+      "Hello, compressed world. ".repeat(100);
+
+    this.server.close();
+    this.server = this.servers().createForConfiguration(
+      new QWebConfiguration(
+        new QWebServerConfiguration("localhost", 42000, true)
+          .withGzipLevel(9)
+          .withGzipMinimumSize(64L),
+        List.of(
+          new QWebResponseRecorded(
+            Pattern.compile("GET", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("/small", Pattern.LITERAL),
+            QWebPathMatchKind.EXACT,
+            200,
+            Map.of(),
+            "Hello.".getBytes(UTF_8),
+            Optional.empty(),
+            Optional.empty(),
+            OptionalLong.empty(),
+            OptionalLong.empty(),
+            Optional.empty()
+          ),
+          new QWebResponseRecorded(
+            Pattern.compile("GET", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("/large", Pattern.LITERAL),
+            QWebPathMatchKind.EXACT,
+            200,
+            Map.of(),
+            large.getBytes(UTF_8),
+            Optional.empty(),
+            Optional.empty(),
+            OptionalLong.empty(),
+            OptionalLong.empty(),
+            Optional.empty()
+          )
+        )
+      )
+    );
+
+    /* Act */
+
+    final var small0 =
+      this.http.send(
+        HttpRequest.newBuilder(this.server.uri().resolve("small"))
+          .setHeader("Accept-Encoding", "gzip")
+          .build(),
+        ofString()
+      );
+
+    final var responses = new LinkedList<HttpResponse<byte[]>>();
+    for (int index = 0; index < 2; ++index) {
+      responses.add(
+        this.http.send(
+          HttpRequest.newBuilder(this.server.uri().resolve("large"))
+            .setHeader("Accept-Encoding", "gzip")
+            .build(),
+          ofByteArray()
+        )
+      );
+    }
+
+    final var large1 =
+      this.http.send(
+        HttpRequest.newBuilder(this.server.uri().resolve("large"))
+          .build(),
+        ofString()
+      );
+
+    /* Assert */
+
+    assertEquals(200, small0.statusCode());
+    assertEquals("Hello.", small0.body());
+    assertEquals(
+      Optional.empty(),
+      small0.headers().firstValue("Content-Encoding")
+    );
+
+    for (final var r : responses) {
+      assertEquals(200, r.statusCode());
+      assertEquals(
+        "gzip",
+        r.headers().firstValue("Content-Encoding").orElseThrow()
+      );
+      assertEquals(
+        Integer.toString(r.body().length),
+        r.headers().firstValue("Content-Length").orElseThrow()
+      );
+      assertTrue(r.body().length < large.length());
+
+      try (var stream =
+             new GZIPInputStream(new ByteArrayInputStream(r.body()))) {
+        assertEquals(large, new String(stream.readAllBytes(), UTF_8));
+      }
+    }
+
+    assertEquals(200, large1.statusCode());
+    assertEquals(large, large1.body());
+    assertEquals(
+      Optional.empty(),
+      large1.headers().firstValue("Content-Encoding")
+    );
+  }
+
+  /**
+   * File-backed responses return the contents of the file each time they
+   * are returned.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testGET_File()
+    throws Exception
+  {
+    /* Arrange */
+
+    final var data = new byte[4 * 1024 * 1024 + 17];
+    new Random(0x5eedL).nextBytes(data);
+
+    final var file = Files.createTempFile("quixote-", ".bin");
+    try {
+      Files.write(file, data);
+
+      this.server.addResponse()
+        .forMethod(".*")
+        .forPathExact("/file")
+        .withStatus(200)
+        .withFile(file)
+        .always();
+
+      final var request =
+        HttpRequest.newBuilder(this.server.uri().resolve("file"))
+          .build();
+
+      /* Act */
+
+      final var response0 =
+        this.http.send(request, ofByteArray());
+      final var response1 =
+        this.http.send(request, ofByteArray());
+      final var response2 =
+        this.http.send(
+          HttpRequest.newBuilder(this.server.uri().resolve("file"))
+            .method("HEAD", BodyPublishers.noBody())
+            .build(),
+          ofByteArray()
+        );
+
+      /* Assert */
+
+      for (final var r : List.of(response0, response1)) {
+        assertEquals(200, r.statusCode());
+        assertArrayEquals(data, r.body());
+        assertEquals(
+          Integer.toString(data.length),
+          r.headers().firstValue("Content-Length").orElseThrow()
+        );
+      }
+
+      assertEquals(200, response2.statusCode());
+      assertEquals(0, response2.body().length);
+      assertEquals(
+        Integer.toString(data.length),
+        response2.headers().firstValue("Content-Length").orElseThrow()
+      );
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /**
+   * File-backed responses fail cleanly if the file does not exist.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testGET_FileMissing()
+    throws Exception
+  {
+    /* Arrange */
+
+    final var file = Files.createTempFile("quixote-", ".bin");
+    Files.delete(file);
+
+    this.server.addResponse()
+      .forPathExact("/file")
+      .withFile(file);
+
+    /* Act */
+
+    final var response0 =
+      this.http.send(
+        HttpRequest.newBuilder(this.server.uri().resolve("file")).build(),
+        ofString()
+      );
+
+    /* Assert */
+
+    assertEquals(503, response0.statusCode());
+  }
+
+  /**
+   * Directory responses serve the files in a directory, and keep them open
+   * in the file cache.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testGET_Directory()
+    throws Exception
+  {
+    /* Arrange */
+
+    final var root = Files.createTempDirectory("quixote-");
+    try {
+      final var directory = Files.createDirectory(root.resolve("repo"));
+      Files.createDirectory(directory.resolve("sub"));
+      Files.writeString(directory.resolve("a.txt"), "A");
+      Files.writeString(directory.resolve("sub").resolve("b.txt"), "B");
+      Files.writeString(root.resolve("secret.txt"), "Secret");
+
+      this.server.addResponse()
+        .forMethod("GET")
+        .forPathPrefix("/repo/")
+        .withDirectory(directory)
+        .always();
+
+      /* Act */
+
+      final var responses = new LinkedList<HttpResponse<String>>();
+      for (final var path : List.of(
+        "/repo/a.txt",
+        "/repo/a.txt",
+        "/repo/sub/b.txt",
+        "/repo/missing.txt",
+        "/repo/sub",
+        "/repo/%2e%2e/secret.txt")) {
+        responses.add(
+          this.http.send(
+            HttpRequest.newBuilder(this.server.uri().resolve(path)).build(),
+            ofString()
+          )
+        );
+      }
+
+      /* Assert */
+
+      assertEquals(200, responses.get(0).statusCode());
+      assertEquals("A", responses.get(0).body());
+      assertEquals(200, responses.get(1).statusCode());
+      assertEquals("A", responses.get(1).body());
+      assertEquals(200, responses.get(2).statusCode());
+      assertEquals("B", responses.get(2).body());
+      assertEquals(404, responses.get(3).statusCode());
+      assertEquals(404, responses.get(4).statusCode());
+      assertEquals(404, responses.get(5).statusCode());
+
+      final var statistics = this.server.fileCacheStatistics();
+      assertEquals(1L, statistics.hits());
+      assertEquals(2L, statistics.misses());
+      assertEquals(0L, statistics.evictions());
+      assertEquals(2, statistics.size());
+      assertEquals(1, this.server.responses().size());
+    } finally {
+      deleteRecursively(root);
+    }
+  }
+
+  /**
+   * The least recently used files are evicted from the file cache.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testGET_DirectoryEviction()
+    throws Exception
+  {
+    /* Arrange */
+
+    final var directory = Files.createTempDirectory("quixote-");
+    try {
+      Files.writeString(directory.resolve("a.txt"), "A");
+      Files.writeString(directory.resolve("b.txt"), "B");
+
+      this.server.close();
+      this.server = this.servers().createForConfiguration(
+        new QWebConfiguration(
+          new QWebServerConfiguration("localhost", 42000, false)
+            .withFileCacheSize(1),
+          List.of(
+            new QWebResponseRecorded(
+              Pattern.compile("GET", Pattern.CASE_INSENSITIVE),
+              Pattern.compile("/", Pattern.LITERAL),
+              QWebPathMatchKind.PREFIX,
+              200,
+              Map.of(),
+              new byte[0],
+              Optional.empty(),
+              Optional.of(directory),
+              OptionalLong.empty(),
+              OptionalLong.empty(),
+              Optional.empty()
+            )
+          )
+        )
+      );
+
+      /* Act */
+
+      final var bodies = new LinkedList<String>();
+      for (final var path : List.of("a.txt", "b.txt", "a.txt", "a.txt")) {
+        bodies.add(
+          this.http.send(
+            HttpRequest.newBuilder(this.server.uri().resolve(path)).build(),
+            ofString()
+          ).body()
+        );
+      }
+
+      /* Assert */
+
+      assertEquals(List.of("A", "B", "A", "A"), bodies);
+
+      final var statistics = this.server.fileCacheStatistics();
+      assertEquals(1L, statistics.hits());
+      assertEquals(3L, statistics.misses());
+      assertEquals(2L, statistics.evictions());
+      assertEquals(1, statistics.size());
+      assertEquals(1, statistics.capacity());
+    } finally {
+      deleteRecursively(directory);
+    }
+  }
+
+  /**
+   * Range requests against fixed responses are answered with partial
+   * responses, and unsatisfiable or malformed ranges are handled.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testGET_Range()
+    throws Exception
+  {
+    /* Arrange */
+
+    this.server.addResponse()
+      .forPathExact("/xyz")
+      .withStatus(200)
+      .withContentType("text/plain")
+      .withFixedText("0123456789")
+      .always();
+
+    /* Act */
+
+    final var single =
+      this.http.send(this.rangeRequest("xyz", "bytes=2-4"), ofString());
+    final var suffix =
+      this.http.send(this.rangeRequest("xyz", "bytes=-3"), ofString());
+    final var open =
+      this.http.send(this.rangeRequest("xyz", "bytes=7-"), ofString());
+    final var multiple =
+      this.http.send(this.rangeRequest("xyz", "bytes=0-1,8-9"), ofString());
+    final var unsatisfiable =
+      this.http.send(this.rangeRequest("xyz", "bytes=20-30"), ofString());
+    final var malformed =
+      this.http.send(this.rangeRequest("xyz", "bytes=4-2"), ofString());
+    final var conditional =
+      this.http.send(
+        HttpRequest.newBuilder(this.server.uri().resolve("xyz"))
+          .header("Range", "bytes=2-4")
+          .header("If-Range", "\"x\"")
+          .build(),
+        ofString()
+      );
+
+    /* Assert */
+
+    assertEquals(206, single.statusCode());
+    assertEquals("234", single.body());
+    assertEquals(
+      "bytes 2-4/10",
+      single.headers().firstValue("Content-Range").orElseThrow()
+    );
+    assertEquals(
+      "3",
+      single.headers().firstValue("Content-Length").orElseThrow()
+    );
+
+    assertEquals(206, suffix.statusCode());
+    assertEquals("789", suffix.body());
+    assertEquals(
+      "bytes 7-9/10",
+      suffix.headers().firstValue("Content-Range").orElseThrow()
+    );
+
+    assertEquals(206, open.statusCode());
+    assertEquals("789", open.body());
+
+    assertEquals(206, multiple.statusCode());
+    final var contentType =
+      multiple.headers().firstValue("Content-Type").orElseThrow();
+    assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+    assertTrue(multiple.body().contains("Content-Range: bytes 0-1/10"));
+    assertTrue(multiple.body().contains("Content-Range: bytes 8-9/10"));
+    assertTrue(multiple.body().contains("\r\n\r\n01\r\n"));
+    assertTrue(multiple.body().contains("\r\n\r\n89\r\n"));
+    assertEquals(
+      Integer.toString(multiple.body().length()),
+      multiple.headers().firstValue("Content-Length").orElseThrow()
+    );
+
+    assertEquals(416, unsatisfiable.statusCode());
+    assertEquals(
+      "bytes */10",
+      unsatisfiable.headers().firstValue("Content-Range").orElseThrow()
+    );
+
+    assertEquals(200, malformed.statusCode());
+    assertEquals("0123456789", malformed.body());
+
+    assertEquals(200, conditional.statusCode());
+    assertEquals("0123456789", conditional.body());
+  }
+
+  /**
+   * Range requests against file-backed responses read only the requested
+   * ranges.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testGET_RangeFile()
+    throws Exception
+  {
+    /* Arrange */
+
+    final var data = new byte[1024 * 1024];
+    new Random(0x5eedL).nextBytes(data);
+
+    final var file = Files.createTempFile("quixote-", ".bin");
+    try {
+      Files.write(file, data);
+
+      this.server.addResponse()
+        .forMethod(".*")
+        .forPathExact("/file")
+        .withStatus(200)
+        .withFile(file)
+        .always();
+
+      /* Act */
+
+      final var single =
+        this.http.send(
+          this.rangeRequest("file", "bytes=1000-200999"),
+          ofByteArray()
+        );
+      final var multiple =
+        this.http.send(
+          this.rangeRequest("file", "bytes=0-9,-10"),
+          ofByteArray()
+        );
+      final var whole =
+        this.http.send(
+          HttpRequest.newBuilder(this.server.uri().resolve("file")).build(),
+          ofByteArray()
+        );
+
+      /* Assert */
+
+      assertEquals(206, single.statusCode());
+      assertArrayEquals(
+        Arrays.copyOfRange(data, 1000, 201000),
+        single.body()
+      );
+      assertEquals(
+        "bytes 1000-200999/%d".formatted(Integer.valueOf(data.length)),
+        single.headers().firstValue("Content-Range").orElseThrow()
+      );
+
+      assertEquals(206, multiple.statusCode());
+      assertEquals(
+        Integer.toString(multiple.body().length),
+        multiple.headers().firstValue("Content-Length").orElseThrow()
+      );
+
+      assertEquals(200, whole.statusCode());
+      assertArrayEquals(data, whole.body());
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /**
+   * Responses with limited bandwidth are written no faster than the given
+   * rate, including when many of them are written at once. Only lower
+   * bounds are asserted, so that the test does not depend on the speed of
+   * the machine running it.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testGET_Bandwidth()
+    throws Exception
+  {
+    /* Arrange */
+
+    final var data = new byte[32 * 1024];
+    new Random(0x5eedL).nextBytes(data);
+
+    this.server.addResponse()
+      .forPathExact("/slow")
+      .withStatus(200)
+      .withFixedData(data)
+      .withBandwidth(64L * 1024L)
+      .always();
+
+    final var request =
+      HttpRequest.newBuilder(this.server.uri().resolve("slow"))
+        .build();
+
+    /* Act */
+
+    final var timeSingle = System.nanoTime();
+    final var single = this.http.send(request, ofByteArray());
+    final var elapsedSingle = Duration.ofNanos(System.nanoTime() - timeSingle);
+
+    final var timeMany = System.nanoTime();
+    final var futures =
+      new LinkedList<CompletableFuture<HttpResponse<byte[]>>>();
+    for (int index = 0; index < 16; ++index) {
+      futures.add(this.http.sendAsync(request, ofByteArray()));
+    }
+    for (final var future : futures) {
+      final var response = future.get();
+      assertEquals(200, response.statusCode());
+      assertArrayEquals(data, response.body());
+    }
+    final var elapsedMany = Duration.ofNanos(System.nanoTime() - timeMany);
+
+    /* Assert */
+
+    assertEquals(200, single.statusCode());
+    assertArrayEquals(data, single.body());
+    assertTrue(
+      elapsedSingle.toMillis() >= 400L,
+      "Response took %s".formatted(elapsedSingle)
+    );
+    assertTrue(
+      elapsedMany.toMillis() >= 400L,
+      "Responses took %s".formatted(elapsedMany)
+    );
+  }
+
+  /**
+   * The server's default bandwidth applies to responses that do not specify
+   * their own.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testGET_BandwidthDefault()
+    throws Exception
+  {
+    /* Arrange */
+
+    final var data = new byte[16 * 1024];
+    new Random(0x5eedL).nextBytes(data);
+
+    this.server.close();
+    this.server = this.servers().createForConfiguration(
+      new QWebConfiguration(
+        new QWebServerConfiguration("localhost", 42000, false)
+          .withBandwidth(16L * 1024L),
+        List.of()
+      )
+    );
+
+    this.server.addResponse()
+      .forPathExact("/default")
+      .withStatus(200)
+      .withFixedData(data)
+      .always();
+    this.server.addResponse()
+      .forPathExact("/unlimited")
+      .withStatus(200)
+      .withFixedData(data)
+      .withBandwidth(0L)
+      .always();
+
+    /* Act */
+
+    final var timeDefault = System.nanoTime();
+    final var responseDefault =
+      this.http.send(
+        HttpRequest.newBuilder(this.server.uri().resolve("default")).build(),
+        ofByteArray()
+      );
+    final var elapsedDefault =
+      Duration.ofNanos(System.nanoTime() - timeDefault);
+
+    final var responseUnlimited =
+      this.http.send(
+        HttpRequest.newBuilder(this.server.uri().resolve("unlimited")).build(),
+        ofByteArray()
+      );
+
+    /* Assert */
+
+    assertArrayEquals(data, responseDefault.body());
+    assertArrayEquals(data, responseUnlimited.body());
+    assertTrue(
+      elapsedDefault.toMillis() >= 700L,
+      "Response took %s".formatted(elapsedDefault)
+    );
+  }
+
+  /**
+   * Delayed responses are delayed, including when many of them are delayed
+   * at once. Only lower bounds are asserted, so that the test does not
+   * depend on the speed of the machine running it.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testGET_Delay()
+    throws Exception
+  {
+    /* Arrange */
+
+    this.server.addResponse()
+      .forPathExact("/delayed")
+      .withStatus(200)
+      .withFixedText("Delayed.")
+      .withDelay(new QWebDelay.Fixed(Duration.ofMillis(500L)))
+      .always();
+
+    final var request =
+      HttpRequest.newBuilder(this.server.uri().resolve("delayed"))
+        .build();
+
+    /* Act */
+
+    final var timeSingle = System.nanoTime();
+    final var single = this.http.send(request, ofString());
+    final var elapsedSingle = Duration.ofNanos(System.nanoTime() - timeSingle);
+
+    final var timeMany = System.nanoTime();
+    final var futures =
+      new LinkedList<CompletableFuture<HttpResponse<String>>>();
+    for (int index = 0; index < 64; ++index) {
+      futures.add(this.http.sendAsync(request, ofString()));
+    }
+    for (final var future : futures) {
+      final var response = future.get();
+      assertEquals(200, response.statusCode());
+      assertEquals("Delayed.", response.body());
+    }
+    final var elapsedMany = Duration.ofNanos(System.nanoTime() - timeMany);
+
+    /* Assert */
+
+    assertEquals(200, single.statusCode());
+    assertEquals("Delayed.", single.body());
+    assertTrue(
+      elapsedSingle.toMillis() >= 500L,
+      "Response took %s".formatted(elapsedSingle)
+    );
+    assertTrue(
+      elapsedMany.toMillis() >= 500L,
+      "Responses took %s".formatted(elapsedMany)
+    );
+  }
+
+  /**
+   * Requests are passed to the asynchronous callback in batches, in the
+   * order in which they were received.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRequestBatchCallback()
+    throws Exception
+  {
+    /* Arrange */
+
+    final var received =
+      new CopyOnWriteArrayList<String>();
+
+    this.server.setRequestBatchCallback(
+      new QWebRequestDispatchConfiguration(QWebRequestOverflowPolicy.BLOCK),
+      batch -> {
+        for (final var r : batch) {
+          received.add(r.path());
+        }
+      }
+    );
+
+    this.server.addResponse()
+      .forMethod("GET")
+      .withStatus(200)
+      .always();
+
+    /* Act */
+
+    final var expected = new LinkedList<String>();
+    for (int index = 0; index < 20; ++index) {
+      final var path = "/r%d".formatted(Integer.valueOf(index));
+      expected.add(path);
+      this.http.send(
+        HttpRequest.newBuilder(this.server.uri().resolve(path)).build(),
+        ofString()
+      );
+    }
+
+    final var statistics = this.awaitDelivered(20L);
+
+    /* Assert */
+
+    assertEquals(expected, received);
+    assertEquals(20L, statistics.submitted());
+    assertEquals(20L, statistics.delivered());
+    assertEquals(0L, statistics.dropped());
+    assertEquals(0, statistics.queueDepth());
+    assertTrue(statistics.batches() >= 1L);
+    assertTrue(statistics.batches() <= 20L);
+  }
+
+  /**
+   * Requests that do not fit into a full queue are dropped.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRequestBatchCallbackDropNewest()
+    throws Exception
+  {
+    final var received =
+      this.runBlockedCallback(QWebRequestOverflowPolicy.DROP_NEWEST);
+
+    assertEquals(List.of("/r1", "/r2", "/r3"), received);
+    assertEquals(2L, this.server.requestDispatchStatistics().dropped());
+    assertEquals(2, this.server.requestDispatchStatistics().queueDepthMaximum());
+  }
+
+  /**
+   * The oldest queued requests are dropped to make room for new requests.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRequestBatchCallbackDropOldest()
+    throws Exception
+  {
+    final var received =
+      this.runBlockedCallback(QWebRequestOverflowPolicy.DROP_OLDEST);
+
+    assertEquals(List.of("/r1", "/r4", "/r5"), received);
+    assertEquals(2L, this.server.requestDispatchStatistics().dropped());
+    assertEquals(2, this.server.requestDispatchStatistics().queueDepthMaximum());
+  }
+
+  /**
+   * Requests can be read incrementally from the request journal.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRequestsSince()
+    throws Exception
+  {
+    this.server.addResponse()
+      .forMethod("GET")
+      .withStatus(200)
+      .always();
+
+    this.sendAll(List.of("/r0", "/r1"));
+
+    final var first = this.server.requestsSince(0L);
+    assertEquals(List.of("/r0", "/r1"), pathsOf(first));
+    assertEquals(0L, first.entries().get(0).sequence());
+    assertEquals(1L, first.entries().get(1).sequence());
+    assertEquals(2L, first.cursor());
+    assertEquals(0L, first.missed());
+    assertEquals(2L, this.server.requestsCursor());
+
+    final var empty = this.server.requestsSince(first.cursor());
+    assertEquals(List.of(), empty.entries());
+    assertEquals(2L, empty.cursor());
+
+    this.sendAll(List.of("/r2"));
+
+    final var second = this.server.requestsSince(first.cursor());
+    assertEquals(List.of("/r2"), pathsOf(second));
+    assertEquals(2L, second.entries().get(0).sequence());
+    assertEquals(3L, second.cursor());
+  }
+
+  /**
+   * The request journal retains only the most recent requests, and
+   * readers that fall behind are told how many requests they missed.
+   * Waiting for requests counts the requests that are no longer retained.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRequestsJournalCapacity()
+    throws Exception
+  {
+    this.server.close();
+    this.server = this.servers().createForConfiguration(
+      new QWebConfiguration(
+        new QWebServerConfiguration("localhost", 42000, false)
+          .withJournalCapacity(2),
+        List.of()
+      )
+    );
+
+    this.server.addResponse()
+      .forMethod("GET")
+      .withStatus(200)
+      .always();
+
+    this.sendAll(List.of("/r0", "/r1", "/r2", "/r3", "/r4"));
+
+    assertEquals(
+      List.of("/r3", "/r4"),
+      this.server.requestsReceived()
+        .stream()
+        .map(r -> r.path())
+        .toList()
+    );
+
+    final var page = this.server.requestsSince(1L);
+    assertEquals(List.of("/r3", "/r4"), pathsOf(page));
+    assertEquals(3L, page.entries().get(0).sequence());
+    assertEquals(5L, page.cursor());
+    assertEquals(2L, page.missed());
+
+    assertEquals(
+      List.of("/r3", "/r4"),
+      this.server.awaitRequests(5, Duration.ZERO)
+        .stream()
+        .map(r -> r.path())
+        .toList()
+    );
+  }
+
+  /**
+   * Requests received concurrently are assigned distinct, contiguous
+   * sequence numbers.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRequestsSinceConcurrent()
+    throws Exception
+  {
+    this.server.addResponse()
+      .forMethod("GET")
+      .withStatus(200)
+      .always();
+
+    final var futures =
+      new LinkedList<CompletableFuture<HttpResponse<String>>>();
+
+    for (int index = 0; index < 64; ++index) {
+      final var path = "/r%d".formatted(Integer.valueOf(index));
+      futures.add(
+        this.http.sendAsync(
+          HttpRequest.newBuilder(this.server.uri().resolve(path)).build(),
+          ofString()
+        )
+      );
+    }
+    for (final var future : futures) {
+      assertEquals(200, future.get(10L, TimeUnit.SECONDS).statusCode());
+    }
+
+    final var page = this.server.requestsSince(0L);
+    assertEquals(64, page.entries().size());
+    assertEquals(64L, page.cursor());
+    assertEquals(0L, page.missed());
+
+    for (int index = 0; index < 64; ++index) {
+      assertEquals((long) index, page.entries().get(index).sequence());
+    }
+    assertEquals(
+      64L,
+      page.entries()
+        .stream()
+        .map(e -> e.request().path())
+        .distinct()
+        .count()
+    );
+  }
+
+  /**
+   * Waiting for requests returns as soon as the requests arrive.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testAwaitRequests()
+    throws Exception
+  {
+    this.server.addResponse()
+      .forMethod("GET")
+      .withStatus(200)
+      .always();
+
+    final var futures =
+      new LinkedList<CompletableFuture<HttpResponse<String>>>();
+
+    for (final var path : List.of("/a", "/b", "/c")) {
+      futures.add(
+        this.http.sendAsync(
+          HttpRequest.newBuilder(this.server.uri().resolve(path)).build(),
+          ofString()
+        )
+      );
+    }
+
+    final var received =
+      this.server.awaitRequests(3, Duration.ofSeconds(10L));
+
+    assertEquals(3, received.size());
+    assertEquals(
+      List.of("/a", "/b", "/c"),
+      received.stream()
+        .map(r -> r.path())
+        .sorted()
+        .toList()
+    );
+
+    final var matched =
+      this.server.awaitRequest(
+        r -> r.path().equals("/b"),
+        Duration.ofSeconds(10L)
+      );
+    assertEquals("/b", matched.path());
+
+    for (final var future : futures) {
+      assertEquals(200, future.get(10L, TimeUnit.SECONDS).statusCode());
+    }
+  }
+
+  /**
+   * Waiting for a request that arrives later wakes the waiting thread.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testAwaitRequestLater()
+    throws Exception
+  {
+    this.server.addResponse()
+      .forMethod("GET")
+      .withStatus(200)
+      .always();
+
+    final var waiter =
+      CompletableFuture.supplyAsync(() -> {
+        try {
+          return this.server.awaitRequest(
+            r -> r.path().equals("/later"),
+            Duration.ofSeconds(10L)
+          );
+        } catch (final Exception e) {
+          throw new IllegalStateException(e);
+        }
+      });
+
+    this.sendAll(List.of("/early", "/later"));
+
+    assertEquals("/later", waiter.get(10L, TimeUnit.SECONDS).path());
+  }
+
+  /**
+   * Waiting for requests that never arrive times out.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testAwaitRequestsTimeout()
+    throws Exception
+  {
+    this.server.addResponse()
+      .forMethod("GET")
+      .withStatus(200)
+      .always();
+
+    this.sendAll(List.of("/a"));
+
+    assertEquals(1, this.server.awaitRequests(1, Duration.ZERO).size());
+    assertThrows(
+      TimeoutException.class,
+      () -> this.server.awaitRequests(2, Duration.ofMillis(100L))
+    );
+    assertThrows(
+      TimeoutException.class,
+      () -> this.server.awaitRequest(
+        r -> r.path().equals("/b"),
+        Duration.ofMillis(100L)
+      )
+    );
+  }
+
+  /**
+   * Requests can be counted and found using indexes.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRequestIndexes()
+    throws Exception
+  {
+    this.server.addResponse()
+      .withStatus(200)
+      .always();
+
+    this.send("GET", "/a", "t1");
+
+    this.server.setRequestIndexes(
+      new QWebRequestIndexConfiguration(true, true, Set.of("X-Tenant"))
+    );
+
+    this.send("POST", "/a", "t2");
+    this.send("GET", "/b", "t1");
+    this.send("GET", "/a", "t2");
+
+    assertEquals(
+      3L,
+      this.server.requestCount(QWebRequestQuery.any().withMethod("GET")));
+    assertEquals(
+      3L,
+      this.server.requestCount(QWebRequestQuery.any().withPath("/a")));
+    assertEquals(
+      2L,
+      this.server.requestCount(
+        QWebRequestQuery.any().withHeader("x-tenant", "t1")));
+    assertEquals(
+      0L,
+      this.server.requestCount(QWebRequestQuery.any().withPath("/c")));
+    assertEquals(
+      4L,
+      this.server.requestCount(QWebRequestQuery.any()));
+
+    final var query =
+      QWebRequestQuery.any()
+        .withMethod("GET")
+        .withPath("/a");
+
+    assertEquals(2L, this.server.requestCount(query));
+    assertEquals(
+      List.of(0L, 3L),
+      sequencesOf(this.server.requestsMatching(query))
+    );
+    assertEquals(
+      List.of(1L),
+      sequencesOf(
+        this.server.requestsMatching(
+          QWebRequestQuery.any()
+            .withPath("/a")
+            .withHeader("X-Tenant", "t2")
+            .withMethod("POST")
+        )
+      )
+    );
+    assertEquals(
+      List.of(),
+      sequencesOf(
+        this.server.requestsMatching(
+          QWebRequestQuery.any()
+            .withPath("/a")
+            .withHeader("X-Unindexed", "x")
+        )
+      )
+    );
+
+    this.server.setRequestIndexes(QWebRequestIndexConfiguration.none());
+    assertEquals(2L, this.server.requestCount(query));
+  }
+
+  /**
+   * Requests that are overwritten in the request journal are removed from
+   * the indexes.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRequestIndexesEviction()
+    throws Exception
+  {
+    this.server.close();
+    this.server = this.servers().createForConfiguration(
+      new QWebConfiguration(
+        new QWebServerConfiguration("localhost", 42000, false)
+          .withJournalCapacity(2),
+        List.of()
+      )
+    );
+
+    this.server.setRequestIndexes(
+      new QWebRequestIndexConfiguration(true, true, Set.of())
+    );
+    this.server.addResponse()
+      .withStatus(200)
+      .always();
+
+    this.send("GET", "/a", "t1");
+    this.send("GET", "/a", "t1");
+    this.send("POST", "/b", "t1");
+
+    assertEquals(
+      1L,
+      this.server.requestCount(QWebRequestQuery.any().withPath("/a")));
+    assertEquals(
+      List.of(1L),
+      sequencesOf(
+        this.server.requestsMatching(QWebRequestQuery.any().withPath("/a")))
+    );
+    assertEquals(
+      1L,
+      this.server.requestCount(QWebRequestQuery.any().withMethod("POST")));
+  }
+
+  /**
+   * Requests that exceed the journal capacity are spilled to disk, and
+   * are read back transparently.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRequestsSpill()
+    throws Exception
+  {
+    final var directory = Files.createTempDirectory("quixote-");
+    try {
+      this.server.close();
+      this.server = this.servers().createForConfiguration(
+        new QWebConfiguration(
+          new QWebServerConfiguration("localhost", 42000, false)
+            .withJournalCapacity(4)
+            .withSpillDirectory(Optional.of(directory)),
+          List.of()
+        )
+      );
+
+      this.server.addResponse()
+        .withStatus(200)
+        .always();
+
+      final var expected = new LinkedList<String>();
+      for (int index = 0; index < 10; ++index) {
+        final var path = "/r%d".formatted(Integer.valueOf(index));
+        this.send(index % 2 == 0 ? "GET" : "POST", path, "t1");
+        expected.add(path);
+      }
+
+      assertEquals(
+        expected,
+        this.server.requestsReceived()
+          .stream()
+          .map(r -> r.path())
+          .toList()
+      );
+
+      final var paths = new LinkedList<String>();
+      final var sequences = new LinkedList<Long>();
+      var cursor = 0L;
+      while (cursor < 10L) {
+        final var page = this.server.requestsSince(cursor);
+        assertEquals(0L, page.missed());
+        assertTrue(page.entries().size() <= 4);
+        for (final var entry : page.entries()) {
+          paths.add(entry.request().path());
+          sequences.add(Long.valueOf(entry.sequence()));
+        }
+        cursor = page.cursor();
+      }
+      assertEquals(expected, paths);
+      assertEquals(
+        List.of(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L),
+        sequences
+      );
+
+      assertEquals(
+        5L,
+        this.server.requestCount(QWebRequestQuery.any().withMethod("GET")));
+      assertEquals(
+        List.of(1L),
+        sequencesOf(
+          this.server.requestsMatching(QWebRequestQuery.any().withPath("/r1")))
+      );
+      assertEquals(
+        "/r2",
+        this.server.awaitRequest(
+          r -> r.path().equals("/r2"),
+          Duration.ofSeconds(10L)
+        ).path()
+      );
+
+      final var deadline = System.nanoTime() + Duration.ofSeconds(10L).toNanos();
+      while (this.server.captureStatistics().spilled() < 6L) {
+        assertTrue(System.nanoTime() < deadline);
+        Thread.sleep(10L);
+      }
+      final var statistics = this.server.captureStatistics();
+      assertEquals(6L, statistics.spilled());
+      assertEquals(0L, statistics.spilledWithoutFiles());
+      assertEquals(0L, statistics.spillDiscarded());
+      assertFalse(statistics.spillFailed());
+
+      this.server.close();
+      try (var files = Files.list(directory)) {
+        assertEquals(0L, files.count());
+      }
+    } finally {
+      deleteRecursively(directory);
+    }
+  }
+
+  /**
+   * Requests are not spilled until their bodies have been parsed, so
+   * spilled requests keep their files even when the journal is overwritten
+   * by concurrent requests.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRequestsSpillFiles()
+    throws Exception
+  {
+    final var directory = Files.createTempDirectory("quixote-");
+    try {
+      this.server.close();
+      this.server = this.servers().createForConfiguration(
+        new QWebConfiguration(
+          new QWebServerConfiguration("localhost", 42000, false)
+            .withJournalCapacity(1)
+            .withSpillDirectory(Optional.of(directory)),
+          List.of()
+        )
+      );
+
+      this.server.addResponse()
+        .withStatus(200)
+        .always();
+
+      final var futures =
+        new LinkedList<CompletableFuture<HttpResponse<String>>>();
+      for (int index = 0; index < 64; ++index) {
+        final var request =
+          HttpRequest.newBuilder(
+              this.server.uri().resolve("/r%d".formatted(Integer.valueOf(index))))
+            .POST(BodyPublishers.ofString("body-%d".formatted(Integer.valueOf(index))))
+            .header("Content-Type", "text/plain")
+            .build();
+        futures.add(this.http.sendAsync(request, ofString()));
+      }
+      for (final var future : futures) {
+        assertEquals(200, future.get(10L, TimeUnit.SECONDS).statusCode());
+      }
+
+      final var requests = this.server.requestsReceived();
+      assertEquals(64, requests.size());
+      for (final var request : requests) {
+        assertEquals(
+          request.path().replace("/r", "body-"),
+          request.files().get("postData"),
+          request.path()
+        );
+      }
+
+      this.server.close();
+    } finally {
+      deleteRecursively(directory);
+    }
+  }
+
+  /**
+   * Capture policies select which requests are recorded, and which of
+   * their headers are retained.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testCapturePolicy()
+    throws Exception
+  {
+    this.server.close();
+    this.server = this.servers().createForConfiguration(
+      new QWebConfiguration(
+        new QWebServerConfiguration("localhost", 42000, false)
+          .withCapture(new QWebCapturePolicy(
+            2,
+            Optional.of(Pattern.compile("/api/.*")),
+            Optional.of(Set.of("X-Tenant"))
+          )),
+        List.of()
+      )
+    );
+
+    final var callbacks = new CopyOnWriteArrayList<String>();
+    this.server.setRequestCallback(r -> callbacks.add(r.path()));
+    this.server.addResponse()
+      .withStatus(200)
+      .always();
+
+    this.send("GET", "/api/a", "t1");
+    this.send("GET", "/api/b", "t1");
+    this.send("GET", "/other", "t1");
+    this.send("GET", "/api/c", "t2");
+
+    final var received = this.server.requestsReceived();
+    assertEquals(
+      List.of("/api/a", "/api/c"),
+      received.stream()
+        .map(r -> r.path())
+        .toList()
+    );
+    assertEquals(List.of("/api/a", "/api/c"), callbacks);
+    assertEquals(Map.of("x-tenant", "t1"), received.get(0).headers());
+    assertEquals(Map.of("x-tenant", "t2"), received.get(1).headers());
+
+    final var statistics = this.server.captureStatistics();
+    assertEquals(4L, statistics.received());
+    assertEquals(2L, statistics.captured());
+    assertEquals(1L, statistics.excludedPath());
+    assertEquals(1L, statistics.excludedSample());
+  }
+
+  private void send(
+    final String method,
+    final String path,
+    final String tenant)
+    throws Exception
+  {
+    final var response =
+      this.http.send(
+        HttpRequest.newBuilder(this.server.uri().resolve(path))
+          .method(method, BodyPublishers.noBody())
+          .header("X-Tenant", tenant)
+          .build(),
+        ofString()
+      );
+    assertEquals(200, response.statusCode());
+  }
+
+  private static List<Long> sequencesOf(
+    final Iterator<QWebRequestJournalEntry> entries)
+  {
+    final var sequences = new LinkedList<Long>();
+    entries.forEachRemaining(e -> sequences.add(Long.valueOf(e.sequence())));
+    return List.copyOf(sequences);
+  }
+
+  private void sendAll(
+    final List<String> paths)
+    throws Exception
+  {
+    for (final var path : paths) {
+      final var response =
+        this.http.send(
+          HttpRequest.newBuilder(this.server.uri().resolve(path)).build(),
+          ofString()
+        );
+      assertEquals(200, response.statusCode());
+    }
+  }
+
+  private static List<String> pathsOf(
+    final QWebRequestJournalPage page)
+  {
+    return page.entries()
+      .stream()
+      .map(e -> e.request().path())
+      .toList();
+  }
+
+  private List<String> runBlockedCallback(
+    final QWebRequestOverflowPolicy overflow)
+    throws Exception
+  {
+    final var received =
+      new CopyOnWriteArrayList<String>();
+    final var entered =
+      new CountDownLatch(1);
+    final var release =
+      new CountDownLatch(1);
+
+    this.server.setRequestBatchCallback(
+      new QWebRequestDispatchConfiguration(2, 1, overflow),
+      batch -> {
+        for (final var r : batch) {
+          received.add(r.path());
+        }
+        entered.countDown();
+        try {
+          release.await();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    );
+
+    this.server.addResponse()
+      .forMethod("GET")
+      .withStatus(200)
+      .always();
+
+    this.http.send(
+      HttpRequest.newBuilder(this.server.uri().resolve("/r1")).build(),
+      ofString()
+    );
+    assertTrue(entered.await(10L, TimeUnit.SECONDS));
+
+    for (int index = 2; index <= 5; ++index) {
+      final var path = "/r%d".formatted(Integer.valueOf(index));
+      final var response =
+        this.http.send(
+          HttpRequest.newBuilder(this.server.uri().resolve(path)).build(),
+          ofString()
+        );
+      assertEquals(200, response.statusCode());
+    }
+
+    release.countDown();
+    this.awaitDelivered(3L);
+    return List.copyOf(received);
+  }
+
+  private QWebRequestDispatchStatistics awaitDelivered(
+    final long count)
+    throws InterruptedException
+  {
+    final var deadline = System.nanoTime() + Duration.ofSeconds(10L).toNanos();
+    while (true) {
+      final var statistics = this.server.requestDispatchStatistics();
+      if (statistics.delivered() >= count) {
+        return statistics;
+      }
+      assertTrue(
+        System.nanoTime() < deadline,
+        "Timed out waiting for requests: %s".formatted(statistics)
+      );
+      Thread.sleep(10L);
+    }
+  }
+
+  private HttpRequest rangeRequest(
+    final String path,
+    final String range)
+  {
+    return HttpRequest.newBuilder(this.server.uri().resolve(path))
+      .header("Range", range)
+      .build();
+  }
+
+  private static void deleteRecursively(
+    final Path root)
+    throws IOException
+  {
+    try (var paths = Files.walk(root)) {
+      for (final var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.deleteIfExists(path);
+      }
+    }
+  }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.tests;
+
+import com.io7m.quixote.core.QWebConfiguration;
+import com.io7m.quixote.core.QWebServerConfiguration;
+import com.io7m.quixote.core.QWebServerFactoryType;
+import com.io7m.quixote.core.QWebServerThreadKind;
+import com.io7m.quixote.core.QWebServers;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.io7m.quixote.core.QWebServerThreadKind.PLATFORM_THREADS;
+import static com.io7m.quixote.core.QWebServerThreadKind.VIRTUAL_THREADS;
+import static java.net.http.HttpResponse.BodyHandlers.ofString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public final class QWebServersVirtualThreadsTest extends QWebServersTest
+{
+  @Override
+  protected QWebServerFactoryType servers()
+  {
+    return new QWebServersConfigured(
+      new QWebServers(),
+      (hostName, port) -> {
+        return new QWebServerConfiguration(hostName, port.intValue(), false)
+          .withThreads(VIRTUAL_THREADS);
+      }
+    );
+  }
+
+  /**
+   * Requests are handled on virtual threads if, and only if, virtual
+   * threads are requested.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRequestCallbackThreadKind()
+    throws Exception
+  {
+    this.checkThreadKind(VIRTUAL_THREADS, true);
+    this.checkThreadKind(PLATFORM_THREADS, false);
+  }
+
+  private void checkThreadKind(
+    final QWebServerThreadKind threads,
+    final boolean virtual)
+    throws Exception
+  {
+    final var configuration =
+      new QWebConfiguration(
+        new QWebServerConfiguration("localhost", 42003, false)
+          .withThreads(threads),
+        List.of()
+      );
+
+    try (var server = new QWebServers().createForConfiguration(configuration)) {
+      final var observed = new CopyOnWriteArrayList<Boolean>();
+      server.setRequestCallback(r -> {
+        observed.add(Boolean.valueOf(Thread.currentThread().isVirtual()));
+      });
+      server.addResponse()
+        .withStatus(200)
+        .always();
+
+      final var response =
+        HttpClient.newHttpClient()
+          .send(
+            HttpRequest.newBuilder(server.uri().resolve("/thread")).build(),
+            ofString()
+          );
+
+      assertEquals(200, response.statusCode());
+      assertEquals(List.of(Boolean.valueOf(virtual)), observed);
+    }
+  }
+}
@@ -20,6 +20,9 @@ package com.io7m.quixote.xml.v1;
 import com.io7m.blackthorne.core.BTQualifiedName;
 import com.io7m.quixote.xml.QWebSchemas;
 
+import java.math.BigDecimal;
+import java.time.Duration;
+
 /**
  * Functions over v1 elements.
  */
@@ -48,4 +51,41 @@ public final class QWX1
     );
   }
 
+  /**
+   * Parse a number of milliseconds, which may have a fractional part.
+   *
+   * @param text The text
+   *
+   * @return The duration
+   */
+
+  static Duration parseMilliseconds(
+    final String text)
+  {
+    return Duration.ofNanos(
+      new BigDecimal(text)
+        .movePointRight(6)
+        .toBigInteger()
+        .longValueExact()
+    );
+  }
+
+  /**
+   * Format a duration as a number of milliseconds.
+   *
+   * @param duration The duration
+   *
+   * @return The text
+   *
+   * @see #parseMilliseconds(String)
+   */
+
+  static String formatMilliseconds(
+    final Duration duration)
+  {
+    return BigDecimal.valueOf(duration.toNanos())
+      .movePointLeft(6)
+      .stripTrailingZeros()
+      .toPlainString();
+  }
 }
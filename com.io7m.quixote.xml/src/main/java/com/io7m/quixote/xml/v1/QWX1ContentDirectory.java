@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.xml.v1;
+
+import com.io7m.blackthorne.core.BTElementHandlerType;
+import com.io7m.blackthorne.core.BTElementParsingContextType;
+import org.xml.sax.Attributes;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * XML element handler.
+ */
+
+public final class QWX1ContentDirectory
+  implements BTElementHandlerType<Object, QWX1ContentDirectory.Directory>
+{
+  private Directory result;
+
+  /**
+   * XML element handler.
+   *
+   * @param context The parse context
+   */
+
+  public QWX1ContentDirectory(
+    final BTElementParsingContextType context)
+  {
+
+  }
+
+  @Override
+  public void onElementStart(
+    final BTElementParsingContextType context,
+    final Attributes attributes)
+  {
+    this.result = new Directory(Path.of(attributes.getValue("Directory")));
+  }
+
+  @Override
+  public Directory onElementFinished(
+    final BTElementParsingContextType context)
+  {
+    return this.result;
+  }
+
+  /**
+   * A content directory.
+   *
+   * @param directory The directory
+   */
+
+  record Directory(Path directory)
+  {
+    Directory
+    {
+      Objects.requireNonNull(directory, "directory");
+    }
+  }
+}
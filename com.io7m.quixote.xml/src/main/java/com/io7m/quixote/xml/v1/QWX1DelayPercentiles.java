@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.quixote.xml.v1;
+
+import com.io7m.blackthorne.core.BTElementHandlerConstructorType;
+import com.io7m.blackthorne.core.BTElementHandlerType;
+import com.io7m.blackthorne.core.BTElementParsingContextType;
+import com.io7m.blackthorne.core.BTQualifiedName;
+import com.io7m.quixote.core.QWebDelay;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * XML element handler.
+ */
+
+public final class QWX1DelayPercentiles
+  implements BTElementHandlerType<QWebDelay.Percentiles.Percentile, QWebDelay>
+{
+  private final ArrayList<QWebDelay.Percentiles.Percentile> percentiles;
+
+  /**
+   * XML element handler.
+   *
+   * @param context The parse context
+   */
+
+  public QWX1DelayPercentiles(
+    final BTElementParsingContextType context)
+  {
+    this.percentiles = new ArrayList<>();
+  }
+
+  @Override
+  public Map<
+    BTQualifiedName,
+    BTElementHandlerConstructorType<?, ? extends QWebDelay.Percentiles.Percentile>>
+  onChildHandlersRequested(
+    final BTElementParsingContextType context)
+  {
+    return Map.ofEntries(
+      Map.entry(
+        QWX1.element("Percentile"),
+        QWX1DelayPercentile::new
+      )
+    );
+  }
+
+  @Override
+  public void onChildValueProduced(
+    final BTElementParsingContextType context,
+    final QWebDelay.Percentiles.Percentile result)
+  {
+    this.percentiles.add(result);
+  }
+
+  @Override
+  public QWebDelay onElementFinished(
+    final BTElementParsingContextType context)
+  {
+    return new QWebDelay.Percentiles(this.percentiles);
+  }
+}
@@ -23,16 +23,24 @@ import com.io7m.blackthorne.core.BTElementParsingContextType;
 import com.io7m.blackthorne.core.BTIgnoreUnrecognizedElements;
 import com.io7m.blackthorne.core.BTQualifiedName;
 import com.io7m.blackthorne.core.Blackthorne;
+import com.io7m.quixote.core.QWebCapturePolicy;
 import com.io7m.quixote.core.QWebConfiguration;
+import com.io7m.quixote.core.QWebMatchingMode;
 import com.io7m.quixote.core.QWebResponseRecorded;
 import com.io7m.quixote.core.QWebServerConfiguration;
+import com.io7m.quixote.core.QWebServerThreadKind;
 import org.xml.sax.Attributes;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 /**
  * XML element handler.
@@ -41,10 +49,22 @@ import java.util.Objects;
 public final class QWX1File
   implements BTElementHandlerType<Object, QWebConfiguration>
 {
+  private static final Pattern WHITESPACE =
+    Pattern.compile("\\s+");
+
   private List<QWebResponseRecorded> responses;
   private int port;
   private boolean gzip;
+  private int gzipLevel;
+  private long gzipMinimumSize;
   private String hostname;
+  private QWebServerThreadKind threads;
+  private QWebMatchingMode matching;
+  private int fileCacheSize;
+  private long bandwidth;
+  private int journalCapacity;
+  private Optional<Path> spillDirectory;
+  private QWebCapturePolicy capture;
 
   /**
    * XML element handler.
@@ -91,6 +111,105 @@ public final class QWX1File
       Integer.parseUnsignedInt(attributes.getValue("Port"));
     this.gzip =
       Boolean.parseBoolean(attributes.getValue("GZIP"));
+    this.gzipLevel =
+      Integer.parseUnsignedInt(
+        Objects.requireNonNullElse(
+          attributes.getValue("GZIPLevel"),
+          "6"
+        )
+      );
+    this.gzipMinimumSize =
+      Long.parseUnsignedLong(
+        Objects.requireNonNullElse(
+          attributes.getValue("GZIPMinimumSize"),
+          "0"
+        )
+      );
+    this.threads =
+      parseThreadKind(
+        Objects.requireNonNullElse(
+          attributes.getValue("Threads"),
+          "Platform"
+        )
+      );
+    this.fileCacheSize =
+      Integer.parseUnsignedInt(
+        Objects.requireNonNullElse(
+          attributes.getValue("FileCacheSize"),
+          "64"
+        )
+      );
+    this.matching =
+      parseMatchingMode(
+        Objects.requireNonNullElse(
+          attributes.getValue("Matching"),
+          "Indexed"
+        )
+      );
+    this.bandwidth =
+      Long.parseUnsignedLong(
+        Objects.requireNonNullElse(
+          attributes.getValue("Bandwidth"),
+          "0"
+        )
+      );
+    this.journalCapacity =
+      Integer.parseUnsignedInt(
+        Objects.requireNonNullElse(
+          attributes.getValue("JournalCapacity"),
+          "65536"
+        )
+      );
+    this.spillDirectory =
+      Optional.ofNullable(attributes.getValue("SpillDirectory"))
+        .map(Paths::get);
+    this.capture =
+      new QWebCapturePolicy(
+        Integer.parseUnsignedInt(
+          Objects.requireNonNullElse(
+            attributes.getValue("CaptureSampleInterval"),
+            "1"
+          )
+        ),
+        Optional.ofNullable(attributes.getValue("CapturePath"))
+          .map(Pattern::compile),
+        Optional.ofNullable(attributes.getValue("CaptureHeaders"))
+          .map(QWX1File::parseHeaderNames)
+      );
+  }
+
+  private static QWebMatchingMode parseMatchingMode(
+    final String text)
+  {
+    return switch (text) {
+      case "Indexed" -> QWebMatchingMode.INDEXED;
+      case "Automaton" -> QWebMatchingMode.AUTOMATON;
+      default -> throw new IllegalArgumentException(
+        "Unrecognized matching mode: " + text
+      );
+    };
+  }
+
+  private static Set<String> parseHeaderNames(
+    final String text)
+  {
+    final var trimmed = text.trim();
+    if (trimmed.isEmpty()) {
+      return Set.of();
+    }
+    return Set.copyOf(List.of(WHITESPACE.split(trimmed)));
+  }
+
+  private static QWebServerThreadKind parseThreadKind(
+    final String text)
+  {
+    return switch (text) {
+      case "Platform" -> QWebServerThreadKind.PLATFORM_THREADS;
+      case "Virtual" -> QWebServerThreadKind.VIRTUAL_THREADS;
+      default -> throw new IllegalArgumentException(
+        "Unrecognized thread kind: " + text
+      );
+    };
   }
 
   @Override
@@ -129,7 +248,16 @@ public final class QWX1File
       new QWebServerConfiguration(
         this.hostname,
         this.port,
-        this.gzip
+        this.gzip,
+        this.gzipLevel,
+        this.gzipMinimumSize,
+        this.threads,
+        this.matching,
+        this.fileCacheSize,
+        this.bandwidth,
+        this.journalCapacity,
+        this.spillDirectory,
+        this.capture
       ),
       this.responses
     );
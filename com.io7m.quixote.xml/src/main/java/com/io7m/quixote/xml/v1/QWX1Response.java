@@ -21,14 +21,20 @@ import com.io7m.blackthorne.core.BTElementHandlerConstructorType;
 import com.io7m.blackthorne.core.BTElementHandlerType;
 import com.io7m.blackthorne.core.BTElementParsingContextType;
 import com.io7m.blackthorne.core.BTQualifiedName;
+import com.io7m.quixote.core.QWebDelay;
+import com.io7m.quixote.core.QWebPathMatchKind;
 import com.io7m.quixote.core.QWebResponseRecorded;
 import org.xml.sax.Attributes;
 
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * XML element handler.
@@ -39,9 +45,15 @@ public final class QWX1Response
 {
   private final Map<String, String> headers;
   private Pattern path;
+  private QWebPathMatchKind pathKind;
   private byte[] content;
+  private Optional<Path> contentFile;
+  private Optional<Path> contentDirectory;
   private Pattern method;
   private int statusCode;
+  private OptionalLong times;
+  private OptionalLong bandwidth;
+  private Optional<QWebDelay> delay;
 
   /**
    * XML element handler.
@@ -59,10 +71,22 @@ public final class QWX1Response
       200;
     this.content =
       new byte[0];
+    this.contentFile =
+      Optional.empty();
+    this.contentDirectory =
+      Optional.empty();
     this.method =
       Pattern.compile(".*", Pattern.CASE_INSENSITIVE);
     this.path =
       Pattern.compile("^/.*", Pattern.CASE_INSENSITIVE);
+    this.pathKind =
+      QWebPathMatchKind.REGEX;
+    this.times =
+      OptionalLong.of(1L);
+    this.bandwidth =
+      OptionalLong.empty();
+    this.delay =
+      Optional.empty();
   }
 
   @Override
@@ -82,6 +106,26 @@ public final class QWX1Response
       Map.entry(
         QWX1.element("ContentUTF8"),
         QWX1ContentUTF8::new
+      ),
+      Map.entry(
+        QWX1.element("ContentFile"),
+        QWX1ContentFile::new
+      ),
+      Map.entry(
+        QWX1.element("ContentDirectory"),
+        QWX1ContentDirectory::new
+      ),
+      Map.entry(
+        QWX1.element("DelayFixed"),
+        QWX1DelayFixed::new
+      ),
+      Map.entry(
+        QWX1.element("DelayUniform"),
+        QWX1DelayUniform::new
+      ),
+      Map.entry(
+        QWX1.element("DelayPercentiles"),
+        QWX1DelayPercentiles::new
       )
     );
   }
@@ -104,6 +148,18 @@ public final class QWX1Response
         this.content = data;
       }
 
+      case final Path file -> {
+        this.contentFile = Optional.of(file);
+      }
+
+      case final QWX1ContentDirectory.Directory directory -> {
+        this.contentDirectory = Optional.of(directory.directory());
+      }
+
+      case final QWebDelay newDelay -> {
+        this.delay = Optional.of(newDelay);
+      }
+
       default -> {
         throw new IllegalStateException("Unexpected value: " + result);
       }
@@ -123,16 +179,69 @@ public final class QWX1Response
         ),
         Pattern.CASE_INSENSITIVE
       );
-    this.path =
-      Pattern.compile(
-        Objects.requireNonNullElse(
-          attributes.getValue("Path"),
-          "^/.*"
-        ),
-        Pattern.CASE_INSENSITIVE
-      );
+    this.parsePath(attributes);
     this.statusCode =
       Integer.parseUnsignedInt(attributes.getValue("Status"));
+    this.times =
+      parseRepeat(
+        Objects.requireNonNullElse(attributes.getValue("Repeat"), "1")
+      );
+
+    final var bandwidthText = attributes.getValue("Bandwidth");
+    if (bandwidthText != null) {
+      this.bandwidth = OptionalLong.of(Long.parseUnsignedLong(bandwidthText));
+    }
+  }
+
+  private static OptionalLong parseRepeat(
+    final String text)
+  {
+    if ("Unbounded".equals(text)) {
+      return OptionalLong.empty();
+    }
+    return OptionalLong.of(Long.parseUnsignedLong(text));
+  }
+
+  private void parsePath(
+    final Attributes attributes)
+  {
+    final var pathRegex =
+      attributes.getValue("Path");
+    final var pathExact =
+      attributes.getValue("PathExact");
+    final var pathPrefix =
+      attributes.getValue("PathPrefix");
+    final var pathGlob =
+      attributes.getValue("PathGlob");
+
+    final var count =
+      Stream.of(pathRegex, pathExact, pathPrefix, pathGlob)
+        .filter(Objects::nonNull)
+        .count();
+
+    if (count > 1L) {
+      throw new IllegalArgumentException(
+        "At most one of Path, PathExact, PathPrefix, or PathGlob may be specified."
+      );
+    }
+
+    if (pathExact != null) {
+      this.pathKind = QWebPathMatchKind.EXACT;
+      this.path = Pattern.compile(pathExact, Pattern.LITERAL);
+    } else if (pathPrefix != null) {
+      this.pathKind = QWebPathMatchKind.PREFIX;
+      this.path = Pattern.compile(pathPrefix, Pattern.LITERAL);
+    } else if (pathGlob != null) {
+      this.pathKind = QWebPathMatchKind.GLOB;
+      this.path = Pattern.compile(pathGlob, Pattern.LITERAL);
+    } else {
+      this.pathKind = QWebPathMatchKind.REGEX;
+      this.path =
+        Pattern.compile(
+          Objects.requireNonNullElse(pathRegex, "^/.*"),
+          Pattern.CASE_INSENSITIVE
+        );
+    }
   }
 
   @Override
@@ -142,9 +251,15 @@ public final class QWX1Response
     return new QWebResponseRecorded(
       this.method,
       this.path,
+      this.pathKind,
       this.statusCode,
       this.headers,
-      this.content
+      this.content,
+      this.contentFile,
+      this.contentDirectory,
+      this.times,
+      this.bandwidth,
+      this.delay
     );
   }
 }
@@ -18,6 +18,7 @@
 package com.io7m.quixote.xml.v1;
 
 import com.io7m.quixote.core.QWebConfiguration;
+import com.io7m.quixote.core.QWebDelay;
 import com.io7m.quixote.core.QWebResponseRecorded;
 import com.io7m.quixote.xml.QWebSchemas;
 
@@ -25,6 +26,7 @@ import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 import java.io.OutputStream;
+import java.nio.file.Path;
 import java.util.Base64;
 import java.util.List;
 import java.util.Map;
@@ -96,6 +98,70 @@ public final class QWX1Serializer
       "GZIP",
       Boolean.toString(configuration.serverConfiguration().enableGZIP())
     );
+    this.output.writeAttribute(
+      "GZIPLevel",
+      Integer.toString(configuration.serverConfiguration().gzipLevel())
+    );
+    this.output.writeAttribute(
+      "GZIPMinimumSize",
+      Long.toUnsignedString(configuration.serverConfiguration().gzipMinimumSize())
+    );
+    this.output.writeAttribute(
+      "Threads",
+      switch (configuration.serverConfiguration().threads()) {
+        case PLATFORM_THREADS -> "Platform";
+        case VIRTUAL_THREADS -> "Virtual";
+      }
+    );
+    this.output.writeAttribute(
+      "Matching",
+      switch (configuration.serverConfiguration().matching()) {
+        case INDEXED -> "Indexed";
+        case AUTOMATON -> "Automaton";
+      }
+    );
+    this.output.writeAttribute(
+      "FileCacheSize",
+      Integer.toUnsignedString(configuration.serverConfiguration().fileCacheSize())
+    );
+    this.output.writeAttribute(
+      "Bandwidth",
+      Long.toUnsignedString(configuration.serverConfiguration().bandwidth())
+    );
+    this.output.writeAttribute(
+      "JournalCapacity",
+      Integer.toUnsignedString(configuration.serverConfiguration().journalCapacity())
+    );
+
+    final var spillDirectory =
+      configuration.serverConfiguration().spillDirectory();
+    if (spillDirectory.isPresent()) {
+      this.output.writeAttribute(
+        "SpillDirectory",
+        spillDirectory.get().toString()
+      );
+    }
+
+    final var capture =
+      configuration.serverConfiguration().capture();
+    if (capture.sampleInterval() != 1) {
+      this.output.writeAttribute(
+        "CaptureSampleInterval",
+        Integer.toUnsignedString(capture.sampleInterval())
+      );
+    }
+    if (capture.pathPattern().isPresent()) {
+      this.output.writeAttribute(
+        "CapturePath",
+        capture.pathPattern().get().pattern()
+      );
+    }
+    if (capture.headers().isPresent()) {
+      this.output.writeAttribute(
+        "CaptureHeaders",
+        String.join(" ", new TreeSet<>(capture.headers().get()))
+      );
+    }
 
     this.serializeResponses(configuration.responses());
     this.output.writeEndElement();
@@ -121,7 +187,12 @@ public final class QWX1Serializer
     this.output.writeStartElement("Response");
 
     this.output.writeAttribute(
-      "Path",
+      switch (response.pathKind()) {
+        case REGEX -> "Path";
+        case EXACT -> "PathExact";
+        case PREFIX -> "PathPrefix";
+        case GLOB -> "PathGlob";
+      },
       response.path().pattern());
     this.output.writeAttribute(
       "Method",
@@ -130,12 +201,81 @@ public final class QWX1Serializer
       "Status",
       Integer.toUnsignedString(response.statusCode()));
 
+    final var times = response.times();
+    if (times.isPresent()) {
+      this.output.writeAttribute(
+        "Repeat",
+        Long.toUnsignedString(times.getAsLong()));
+    } else {
+      this.output.writeAttribute("Repeat", "Unbounded");
+    }
+
+    final var bandwidth = response.bandwidth();
+    if (bandwidth.isPresent()) {
+      this.output.writeAttribute(
+        "Bandwidth",
+        Long.toUnsignedString(bandwidth.getAsLong()));
+    }
+
     this.serializeHeaders(response.headers());
-    this.serializeContent(response.content());
+    final var delay = response.delay();
+    if (delay.isPresent()) {
+      this.serializeDelay(delay.get());
+    }
+    final var file = response.contentFile();
+    final var directory = response.contentDirectory();
+    if (file.isPresent()) {
+      this.serializeContentFile(file.get());
+    } else if (directory.isPresent()) {
+      this.serializeContentDirectory(directory.get());
+    } else {
+      this.serializeContent(response.content());
+    }
 
     this.output.writeEndElement();
   }
 
+  private void serializeDelay(
+    final QWebDelay delay)
+    throws XMLStreamException
+  {
+    switch (delay) {
+      case final QWebDelay.Fixed fixed -> {
+        this.output.writeStartElement("DelayFixed");
+        this.output.writeAttribute(
+          "Milliseconds",
+          QWX1.formatMilliseconds(fixed.delay()));
+        this.output.writeEndElement();
+      }
+
+      case final QWebDelay.Uniform uniform -> {
+        this.output.writeStartElement("DelayUniform");
+        this.output.writeAttribute(
+          "MinimumMilliseconds",
+          QWX1.formatMilliseconds(uniform.minimum()));
+        this.output.writeAttribute(
+          "MaximumMilliseconds",
+          QWX1.formatMilliseconds(uniform.maximum()));
+        this.output.writeEndElement();
+      }
+
+      case final QWebDelay.Percentiles percentiles -> {
+        this.output.writeStartElement("DelayPercentiles");
+        for (final var percentile : percentiles.percentiles()) {
+          this.output.writeStartElement("Percentile");
+          this.output.writeAttribute(
+            "Percentile",
+            Double.toString(percentile.percentile()));
+          this.output.writeAttribute(
+            "Milliseconds",
+            QWX1.formatMilliseconds(percentile.delay()));
+          this.output.writeEndElement();
+        }
+        this.output.writeEndElement();
+      }
+    }
+  }
+
   private void serializeContent(
     final byte[] content)
     throws XMLStreamException
@@ -145,6 +285,24 @@ public final class QWX1Serializer
     this.output.writeEndElement();
   }
 
+  private void serializeContentFile(
+    final Path file)
+    throws XMLStreamException
+  {
+    this.output.writeStartElement("ContentFile");
+    this.output.writeAttribute("File", file.toString());
+    this.output.writeEndElement();
+  }
+
+  private void serializeContentDirectory(
+    final Path directory)
+    throws XMLStreamException
+  {
+    this.output.writeStartElement("ContentDirectory");
+    this.output.writeAttribute("Directory", directory.toString());
+    this.output.writeEndElement();
+  }
+
   private void serializeHeaders(
     final Map<String, String> headers)
     throws XMLStreamException